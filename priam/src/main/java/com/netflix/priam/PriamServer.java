@@ -21,6 +21,7 @@ import com.google.inject.Singleton;
 import com.netflix.priam.aws.UpdateCleanupPolicy;
 import com.netflix.priam.aws.UpdateSecuritySettings;
 import com.netflix.priam.backup.CommitLogBackupTask;
+import com.netflix.priam.backup.DeepVerifyTask;
 import com.netflix.priam.backup.IncrementalBackup;
 import com.netflix.priam.backup.SnapshotBackup;
 import com.netflix.priam.cluster.management.Compaction;
@@ -136,6 +137,13 @@ public class PriamServer {
                     CommitLogBackupTask.getTimer(config));
         }
 
+        // Verify the content of a sample of the files of the latest snapshot, if enabled.
+        if (DeepVerifyTask.getTimer(config) != null) {
+            scheduler.addTask(
+                    DeepVerifyTask.JOBNAME, DeepVerifyTask.class, DeepVerifyTask.getTimer(config));
+            logger.info("Added deep verification job");
+        }
+
         // Determine if we need to restore from backup else start cassandra.
         if (restoreContext.isRestoreEnabled()) {
             restoreContext.restore();
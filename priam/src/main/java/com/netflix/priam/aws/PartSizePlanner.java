@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.aws;
+
+import com.netflix.priam.backup.TransferMemoryBudget;
+import com.netflix.priam.config.IConfiguration;
+import com.netflix.priam.merics.BackupMetrics;
+import com.netflix.spectator.api.DistributionSummary;
+import java.nio.file.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Picks the part size of each multipart upload. The configured chunk size is the preferred size,
+ * which is adjusted for the file:
+ *
+ * <ul>
+ *   <li>Grown so that a part takes a couple of seconds at the observed per request throughput,
+ *       which keeps the per request overhead small on fast links.
+ *   <li>Shrunk so that a medium file is still uploaded by all the concurrent requests.
+ *   <li>Shrunk so that the parts buffered by the upload threads fit in the memory budget.
+ *   <li>Never below the S3 minimum part size, nor so small that the file needs more than the S3
+ *       maximum number of parts.
+ * </ul>
+ */
+public class PartSizePlanner {
+    private static final Logger logger = LoggerFactory.getLogger(PartSizePlanner.class);
+    static final long MIN_PART_SIZE = 5 * 1024 * 1024L;
+    static final long MAX_PART_SIZE = 5 * 1024 * 1024 * 1024L;
+    static final int MAX_PARTS = 10000;
+    private static final long PART_SIZE_ALIGNMENT = 1024 * 1024L;
+    private static final double TARGET_PART_SECONDS = 2;
+
+    private final IConfiguration config;
+    private final S3ThrottleController throttleController;
+    private final TransferMemoryBudget memoryBudget;
+    private final DistributionSummary partSize;
+
+    public PartSizePlanner(
+            IConfiguration config,
+            S3ThrottleController throttleController,
+            TransferMemoryBudget memoryBudget,
+            BackupMetrics backupMetrics) {
+        this.config = config;
+        this.throttleController = throttleController;
+        this.memoryBudget = memoryBudget;
+        this.partSize =
+                backupMetrics.getRegistry().distributionSummary(BackupMetrics.uploadPartSize);
+    }
+
+    /**
+     * @param localPath file to upload.
+     * @return size of the parts of the file.
+     */
+    public long plan(Path localPath) {
+        long fileSize = localPath.toFile().length();
+        int concurrency = throttleController.getConcurrencyLimit();
+        double throughput = throttleController.getRequestThroughput();
+        long size =
+                plan(
+                        fileSize,
+                        config.getBackupChunkSize(),
+                        concurrency,
+                        config.getBackupThreads(),
+                        memoryBudget.getLimit(),
+                        throughput);
+        partSize.record(size);
+        logger.info(
+                "Uploading {} of {} bytes in parts of {} bytes, concurrency: {}, throughput per request: {} bytes/s",
+                localPath,
+                fileSize,
+                size,
+                concurrency,
+                (long) throughput);
+        return size;
+    }
+
+    /**
+     * @param fileSize size of the file.
+     * @param preferredSize configured part size.
+     * @param concurrency current limit of the concurrent upload requests.
+     * @param threads number of upload threads, each buffers a part in flight and one queued.
+     * @param memoryLimit bytes of the memory budget.
+     * @param throughput observed bytes per second of a single request, 0 if unknown.
+     * @return size of the parts of the file.
+     */
+    static long plan(
+            long fileSize,
+            long preferredSize,
+            int concurrency,
+            int threads,
+            long memoryLimit,
+            double throughput) {
+        long size = preferredSize;
+        if (throughput > 0) size = Math.max(size, (long) (throughput * TARGET_PART_SECONDS));
+        size = Math.min(size, divideRoundUp(fileSize, Math.max(1, concurrency)));
+        size = Math.min(size, memoryLimit / (2L * Math.max(1, threads) + 1));
+        size = Math.max(size, Math.max(MIN_PART_SIZE, divideRoundUp(fileSize, MAX_PARTS)));
+        size = divideRoundUp(size, PART_SIZE_ALIGNMENT) * PART_SIZE_ALIGNMENT;
+        return Math.min(size, MAX_PART_SIZE);
+    }
+
+    private static long divideRoundUp(long value, long divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+}
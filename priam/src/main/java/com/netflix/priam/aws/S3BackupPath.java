@@ -21,20 +21,33 @@ import com.google.inject.Inject;
 import com.netflix.priam.backup.AbstractBackupPath;
 import com.netflix.priam.config.IConfiguration;
 import com.netflix.priam.identity.InstanceIdentity;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import org.apache.commons.lang3.StringUtils;
 
 /** Represents an S3 object key */
 public class S3BackupPath extends AbstractBackupPath {
+    // Directory under the token which holds a time sortable copy of every snapshot meta file.
+    static final String META_INDEX_DIR = BackupFileType.META.name();
+    // Shard parsed from the remote key, empty if the key is not sharded. null if not parsed.
+    private String shard;
 
     @Inject
     public S3BackupPath(IConfiguration config, InstanceIdentity factory) {
         super(config, factory);
     }
 
+    /* The shard of a key follows from its file name, so a renamed path is sharded again. */
+    @Override
+    public void setFileName(String fileName) {
+        super.setFileName(fileName);
+        shard = null;
+    }
+
     /**
      * Format of backup path:
-     * BASE/REGION/CLUSTER/TOKEN/[SNAPSHOTTIME]/[SST|SNP|META]/KEYSPACE/COLUMNFAMILY/FILE
+     * BASE/REGION/CLUSTER/[SHARD]/TOKEN/[SNAPSHOTTIME]/[SST|SNP|META]/KEYSPACE/COLUMNFAMILY/FILE
      */
     @Override
     public String getRemotePath() {
@@ -42,6 +55,7 @@ public class S3BackupPath extends AbstractBackupPath {
         buff.append(baseDir).append(S3BackupPath.PATH_SEP); // Base dir
         buff.append(region).append(S3BackupPath.PATH_SEP);
         buff.append(clusterName).append(S3BackupPath.PATH_SEP); // Cluster name
+        appendShard(buff);
         buff.append(token).append(S3BackupPath.PATH_SEP);
         buff.append(formatDate(time)).append(S3BackupPath.PATH_SEP);
         buff.append(type).append(S3BackupPath.PATH_SEP);
@@ -54,6 +68,36 @@ public class S3BackupPath extends AbstractBackupPath {
         return buff.toString();
     }
 
+    /**
+     * Format of meta index path: BASE/REGION/CLUSTER/[SHARD]/TOKEN/META/[SNAPSHOTTIME]/FILE
+     *
+     * <p>Keeping the snapshot time after a fixed directory allows the latest snapshot meta file to
+     * be found by listing only the meta index instead of every file in the restore window.
+     */
+    @Override
+    public String getRemoteMetaIndexPath() {
+        StringBuilder buff = new StringBuilder();
+        buff.append(baseDir).append(S3BackupPath.PATH_SEP); // Base dir
+        buff.append(region).append(S3BackupPath.PATH_SEP);
+        buff.append(clusterName).append(S3BackupPath.PATH_SEP); // Cluster name
+        appendShard(buff);
+        buff.append(token).append(S3BackupPath.PATH_SEP);
+        buff.append(META_INDEX_DIR).append(S3BackupPath.PATH_SEP);
+        buff.append(formatDate(time)).append(S3BackupPath.PATH_SEP);
+        buff.append(fileName);
+        return buff.toString();
+    }
+
+    /*
+     * A key parsed from the remote file system keeps its shard, so files backed up before the
+     * number of shards changed can still be restored.
+     */
+    private void appendShard(StringBuilder buff) {
+        String keyShard =
+                shard != null ? shard : getShard(config.getBackupShardCount(), token, fileName);
+        if (!keyShard.isEmpty()) buff.append(keyShard).append(S3BackupPath.PATH_SEP);
+    }
+
     @Override
     public void parseRemote(String remoteFilePath) {
         String[] elements = remoteFilePath.split(String.valueOf(S3BackupPath.PATH_SEP));
@@ -67,12 +111,20 @@ public class S3BackupPath extends AbstractBackupPath {
         baseDir = pieces.get(0);
         region = pieces.get(1);
         clusterName = pieces.get(2);
-        token = pieces.get(3);
-        time = parseDate(pieces.get(4));
-        type = BackupFileType.valueOf(pieces.get(5));
+        int index = parseShard(pieces);
+        token = pieces.get(index);
+        if (META_INDEX_DIR.equals(pieces.get(index + 1))) {
+            // Meta index entry, resolves to the snapshot meta file it was copied from.
+            type = BackupFileType.META;
+            time = parseDate(pieces.get(index + 2));
+            fileName = pieces.get(pieces.size() - 1);
+            return;
+        }
+        time = parseDate(pieces.get(index + 1));
+        type = BackupFileType.valueOf(pieces.get(index + 2));
         if (BackupFileType.isDataFile(type)) {
-            keyspace = pieces.get(6);
-            columnFamily = pieces.get(7);
+            keyspace = pieces.get(index + 3);
+            columnFamily = pieces.get(index + 4);
         }
         // append the rest
         fileName = pieces.get(pieces.size() - 1);
@@ -91,7 +143,21 @@ public class S3BackupPath extends AbstractBackupPath {
         baseDir = pieces.get(0);
         region = pieces.get(1);
         clusterName = pieces.get(2);
-        token = pieces.get(3);
+        token = pieces.get(parseShard(pieces));
+    }
+
+    /*
+     * Parse the optional shard after the cluster name.
+     *
+     * @return index of the token.
+     */
+    private int parseShard(List<String> pieces) {
+        if (pieces.size() > 4 && SHARD_PATTERN.matcher(pieces.get(3)).matches()) {
+            shard = pieces.get(3);
+            return 4;
+        }
+        shard = "";
+        return 3;
     }
 
     @Override
@@ -104,6 +170,16 @@ public class S3BackupPath extends AbstractBackupPath {
         return buff.toString();
     }
 
+    @Override
+    public String remoteMetaIndexPrefix(Date start, Date end, String location) {
+        StringBuilder buff = new StringBuilder(clusterPrefix(location));
+        token = instanceIdentity.getInstance().getToken();
+        buff.append(token).append(S3BackupPath.PATH_SEP);
+        buff.append(META_INDEX_DIR).append(S3BackupPath.PATH_SEP);
+        buff.append(match(start, end));
+        return buff.toString();
+    }
+
     @Override
     public String clusterPrefix(String location) {
         StringBuilder buff = new StringBuilder();
@@ -124,4 +200,21 @@ public class S3BackupPath extends AbstractBackupPath {
 
         return buff.toString();
     }
+
+    /** Inserts each shard after the cluster prefix, the first three elements of the prefix. */
+    @Override
+    public List<String> shardPrefixes(String prefix) {
+        int shards = Math.min(config.getBackupShardCount(), MAX_SHARDS);
+        if (shards <= 0) return super.shardPrefixes(prefix);
+        int clusterPrefixEnd = StringUtils.ordinalIndexOf(prefix, String.valueOf(PATH_SEP), 3);
+        List<String> prefixes = new ArrayList<>(shards + 1);
+        // Keys backed up before sharding was enabled.
+        prefixes.add(prefix);
+        if (clusterPrefixEnd < 0) return prefixes;
+        String clusterPrefix = prefix.substring(0, clusterPrefixEnd + 1);
+        String rest = prefix.substring(clusterPrefixEnd + 1);
+        for (int i = 0; i < shards; i++)
+            prefixes.add(String.format("%ss%02x%c%s", clusterPrefix, i, PATH_SEP, rest));
+        return prefixes;
+    }
 }
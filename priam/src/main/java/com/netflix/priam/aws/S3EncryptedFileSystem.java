@@ -19,19 +19,23 @@ import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
 import com.amazonaws.services.s3.model.PartETag;
 import com.google.common.collect.Lists;
+import com.google.common.hash.HashingInputStream;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import com.netflix.priam.backup.AbstractBackupPath;
 import com.netflix.priam.backup.BackupRestoreException;
-import com.netflix.priam.backup.RangeReadInputStream;
+import com.netflix.priam.backup.TransferMemoryBudget;
+import com.netflix.priam.backup.TransferTraces;
 import com.netflix.priam.compress.ICompression;
 import com.netflix.priam.config.IConfiguration;
 import com.netflix.priam.cred.ICredential;
 import com.netflix.priam.cryptography.IFileCryptography;
 import com.netflix.priam.identity.config.InstanceInfo;
 import com.netflix.priam.merics.BackupMetrics;
+import com.netflix.priam.merics.BackupMetrics.Stage;
+import com.netflix.priam.merics.BackupMetrics.StageRecorder;
 import com.netflix.priam.notification.BackupNotificationMgr;
 import java.io.*;
 import java.nio.file.Path;
@@ -57,31 +61,43 @@ public class S3EncryptedFileSystem extends S3FileSystemBase {
             @Named("filecryptoalgorithm") IFileCryptography fileCryptography,
             BackupMetrics backupMetrics,
             BackupNotificationMgr backupNotificationMgr,
-            InstanceInfo instanceInfo) {
+            InstanceInfo instanceInfo,
+            S3ThrottleController throttleController,
+            TransferMemoryBudget memoryBudget,
+            TransferTraces transferTraces) {
 
-        super(pathProvider, compress, config, backupMetrics, backupNotificationMgr);
+        super(
+                pathProvider,
+                compress,
+                config,
+                backupMetrics,
+                backupNotificationMgr,
+                throttleController,
+                memoryBudget,
+                transferTraces);
         this.encryptor = fileCryptography;
         super.s3Client =
                 AmazonS3Client.builder()
                         .withCredentials(cred.getAwsCredentialProvider())
                         .withRegion(instanceInfo.getRegion())
+                        .withRequestHandlers(new S3RequestMetrics(backupMetrics))
                         .build();
     }
 
+    @Override
+    protected String getCodec() {
+        return super.getCodec() + "+encrypted";
+    }
+
     @Override
     protected void downloadFileImpl(Path remotePath, Path localPath) throws BackupRestoreException {
         try (OutputStream os = new FileOutputStream(localPath.toFile());
-                RangeReadInputStream rris =
-                        new RangeReadInputStream(
-                                s3Client,
-                                getPrefix(config),
-                                super.getFileSize(remotePath),
-                                remotePath.toString())) {
+                InputStream is = getRangeReadInputStream(remotePath)) {
             /*
              * To handle use cases where decompression should be done outside of the download.  For example, the file have been compressed and then encrypted.
              * Hence, decompressing it here would compromise the decryption.
              */
-            IOUtils.copyLarge(rris, os);
+            IOUtils.copyLarge(is, os);
         } catch (Exception e) {
             throw new BackupRestoreException(
                     "Exception encountered downloading "
@@ -96,7 +112,7 @@ public class S3EncryptedFileSystem extends S3FileSystemBase {
 
     @Override
     protected long uploadFileImpl(Path localPath, Path remotePath) throws BackupRestoreException {
-        long chunkSize = getChunkSize(localPath);
+        long chunkSize = partSizePlanner.plan(localPath);
         // initialize chunking request to aws
         InitiateMultipartUploadRequest initRequest =
                 new InitiateMultipartUploadRequest(config.getBackupPrefix(), remotePath.toString());
@@ -109,6 +125,7 @@ public class S3EncryptedFileSystem extends S3FileSystemBase {
                         initResponse.getUploadId());
         // Metadata on number of parts to be uploaded
         List<PartETag> partETags = Lists.newArrayList();
+        StageRecorder recorder = getStageRecorder(remotePath);
 
         // Read chunks from src, compress it, and write to temp file
         File compressedDstFile = new File(localPath.toString() + ".compressed");
@@ -118,14 +135,21 @@ public class S3EncryptedFileSystem extends S3FileSystemBase {
                     compressedDstFile.getAbsolutePath(),
                     chunkSize);
 
-        try (InputStream in = new FileInputStream(localPath.toFile());
+        String checksum;
+        try (HashingInputStream in = newChecksumStream(localPath);
                 BufferedOutputStream compressedBos =
                         new BufferedOutputStream(new FileOutputStream(compressedDstFile))) {
             Iterator<byte[]> compressedChunks = this.compress.compress(in, chunkSize);
             while (compressedChunks.hasNext()) {
-                byte[] compressedChunk = compressedChunks.next();
-                compressedBos.write(compressedChunk);
+                byte[] compressedChunk =
+                        nextChunk(compressedChunks, chunkSize, Stage.COMPRESS, recorder);
+                try {
+                    compressedBos.write(compressedChunk);
+                } finally {
+                    memoryBudget.release(compressedChunk.length);
+                }
             }
+            checksum = recordChecksum(in);
         } catch (Exception e) {
             String message =
                     "Exception in compressing the input data during upload to EncryptedStore  Msg: "
@@ -145,9 +169,9 @@ public class S3EncryptedFileSystem extends S3FileSystemBase {
             long encryptedFileSize = 0;
 
             while (chunks.hasNext()) {
-                byte[] chunk = chunks.next();
+                byte[] chunk = nextChunk(chunks, chunkSize, Stage.ENCRYPT, recorder);
                 // throttle upload to endpoint
-                rateLimiter.acquire(chunk.length);
+                acquireUploadRate(chunk.length, recorder);
 
                 DataPart dp =
                         new DataPart(
@@ -156,9 +180,11 @@ public class S3EncryptedFileSystem extends S3FileSystemBase {
                                 config.getBackupPrefix(),
                                 remotePath.toString(),
                                 initResponse.getUploadId());
-                S3PartUploader partUploader = new S3PartUploader(s3Client, dp, partETags);
+                S3PartUploader partUploader =
+                        new S3PartUploader(
+                                s3Client, dp, partETags, null, throttleController, uploadHedger);
                 encryptedFileSize += chunk.length;
-                executor.submit(partUploader);
+                submitPart(partUploader, chunk.length, recorder);
             }
 
             executor.sleepTillEmpty();
@@ -173,9 +199,12 @@ public class S3EncryptedFileSystem extends S3FileSystemBase {
 
             // complete the aws chunking upload by providing to aws the ETag that uniquely
             // identifies the combined object datav
+            long start = System.nanoTime();
             CompleteMultipartUploadResult resultS3MultiPartUploadComplete =
                     new S3PartUploader(s3Client, part, partETags).completeUpload();
+            recorder.record(Stage.COMPLETE, System.nanoTime() - start);
             checkSuccessfulUpload(resultS3MultiPartUploadComplete, localPath);
+            tagChecksum(remotePath, checksum);
             return encryptedFileSize;
         } catch (Exception e) {
             new S3PartUploader(s3Client, part, partETags).abortUpload();
@@ -45,13 +45,29 @@ public class S3FileIterator implements Iterator<AbstractBackupPath> {
             String path,
             Date start,
             Date till) {
+        this(
+                pathProvider,
+                s3Client,
+                path,
+                pathProvider.get().remotePrefix(start, till, path),
+                start,
+                till);
+    }
+
+    S3FileIterator(
+            Provider<AbstractBackupPath> pathProvider,
+            AmazonS3 s3Client,
+            String path,
+            String prefix,
+            Date start,
+            Date till) {
         this.start = start;
         this.till = till;
         this.pathProvider = pathProvider;
         ListObjectsRequest listReq = new ListObjectsRequest();
         String[] paths = path.split(String.valueOf(S3BackupPath.PATH_SEP));
         listReq.setBucketName(paths[0]);
-        listReq.setPrefix(pathProvider.get().remotePrefix(start, till, path));
+        listReq.setPrefix(prefix);
         this.s3Client = s3Client;
         objectListing = s3Client.listObjects(listReq);
         iterator = createIterator();
@@ -75,6 +91,8 @@ public class S3FileIterator implements Iterator<AbstractBackupPath> {
         for (S3ObjectSummary summary : objectListing.getObjectSummaries()) {
             AbstractBackupPath path = pathProvider.get();
             path.parseRemote(summary.getKey());
+            path.setCompressedFileSize(summary.getSize());
+            path.setETag(summary.getETag());
             logger.debug(
                     "New key {} path = {} start: {} end: {} my {}",
                     summary.getKey(),
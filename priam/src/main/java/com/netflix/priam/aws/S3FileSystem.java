@@ -19,6 +19,7 @@ package com.netflix.priam.aws;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.S3ResponseMetadata;
 import com.amazonaws.services.s3.model.*;
+import com.google.common.hash.HashingInputStream;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
@@ -26,13 +27,15 @@ import com.google.inject.name.Named;
 import com.netflix.priam.aws.auth.IS3Credential;
 import com.netflix.priam.backup.AbstractBackupPath;
 import com.netflix.priam.backup.BackupRestoreException;
-import com.netflix.priam.backup.RangeReadInputStream;
+import com.netflix.priam.backup.TransferMemoryBudget;
+import com.netflix.priam.backup.TransferTraces;
 import com.netflix.priam.compress.ICompression;
 import com.netflix.priam.config.IConfiguration;
 import com.netflix.priam.identity.config.InstanceInfo;
 import com.netflix.priam.merics.BackupMetrics;
+import com.netflix.priam.merics.BackupMetrics.Stage;
+import com.netflix.priam.merics.BackupMetrics.StageRecorder;
 import com.netflix.priam.notification.BackupNotificationMgr;
-import com.netflix.priam.utils.BoundedExponentialRetryCallable;
 import java.io.*;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -41,6 +44,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,31 +61,32 @@ public class S3FileSystem extends S3FileSystemBase {
             final IConfiguration config,
             BackupMetrics backupMetrics,
             BackupNotificationMgr backupNotificationMgr,
-            InstanceInfo instanceInfo) {
-        super(pathProvider, compress, config, backupMetrics, backupNotificationMgr);
+            InstanceInfo instanceInfo,
+            S3ThrottleController throttleController,
+            TransferMemoryBudget memoryBudget,
+            TransferTraces transferTraces) {
+        super(
+                pathProvider,
+                compress,
+                config,
+                backupMetrics,
+                backupNotificationMgr,
+                throttleController,
+                memoryBudget,
+                transferTraces);
         s3Client =
                 AmazonS3Client.builder()
                         .withCredentials(cred.getAwsCredentialProvider())
                         .withRegion(instanceInfo.getRegion())
+                        .withRequestHandlers(new S3RequestMetrics(backupMetrics))
                         .build();
     }
 
     @Override
     protected void downloadFileImpl(Path remotePath, Path localPath) throws BackupRestoreException {
         try {
-            long remoteFileSize = super.getFileSize(remotePath);
-            RangeReadInputStream rris =
-                    new RangeReadInputStream(
-                            s3Client,
-                            getPrefix(this.config),
-                            remoteFileSize,
-                            remotePath.toString());
-            final long bufSize =
-                    MAX_BUFFERED_IN_STREAM_SIZE > remoteFileSize
-                            ? remoteFileSize
-                            : MAX_BUFFERED_IN_STREAM_SIZE;
             compress.decompressAndClose(
-                    new BufferedInputStream(rris, (int) bufSize),
+                    getRangeReadInputStream(remotePath),
                     new BufferedOutputStream(new FileOutputStream(localPath.toFile())));
         } catch (Exception e) {
             throw new BackupRestoreException(
@@ -95,6 +100,24 @@ public class S3FileSystem extends S3FileSystemBase {
         }
     }
 
+    @Override
+    protected void downloadRawFileImpl(Path remotePath, Path localPath)
+            throws BackupRestoreException {
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(localPath.toFile()));
+                InputStream is = getRangeReadInputStream(remotePath)) {
+            IOUtils.copyLarge(is, os);
+        } catch (Exception e) {
+            throw new BackupRestoreException(
+                    "Exception encountered downloading "
+                            + remotePath
+                            + " from S3 bucket "
+                            + getPrefix(config)
+                            + ", Msg: "
+                            + e.getMessage(),
+                    e);
+        }
+    }
+
     private ObjectMetadata getObjectMetadata(Path path) {
         ObjectMetadata ret = new ObjectMetadata();
         long lastModified = path.toFile().lastModified();
@@ -111,7 +134,7 @@ public class S3FileSystem extends S3FileSystemBase {
     }
 
     private long uploadMultipart(Path localPath, Path remotePath) throws BackupRestoreException {
-        long chunkSize = getChunkSize(localPath);
+        long chunkSize = partSizePlanner.plan(localPath);
         if (logger.isDebugEnabled())
             logger.debug(
                     "Uploading to {}/{} with chunk size {}",
@@ -128,8 +151,9 @@ public class S3FileSystem extends S3FileSystemBase {
                         remotePath.toString(),
                         initResponse.getUploadId());
         List<PartETag> partETags = Collections.synchronizedList(new ArrayList<PartETag>());
+        StageRecorder recorder = getStageRecorder(remotePath);
 
-        try (InputStream in = new FileInputStream(localPath.toFile())) {
+        try (HashingInputStream in = newChecksumStream(localPath)) {
             Iterator<byte[]> chunks = compress.compress(in, chunkSize);
             // Upload parts.
             int partNum = 0;
@@ -137,8 +161,8 @@ public class S3FileSystem extends S3FileSystemBase {
             long compressedFileSize = 0;
 
             while (chunks.hasNext()) {
-                byte[] chunk = chunks.next();
-                rateLimiter.acquire(chunk.length);
+                byte[] chunk = nextChunk(chunks, chunkSize, Stage.COMPRESS, recorder);
+                acquireUploadRate(chunk.length, recorder);
                 DataPart dp =
                         new DataPart(
                                 ++partNum,
@@ -147,11 +171,18 @@ public class S3FileSystem extends S3FileSystemBase {
                                 remotePath.toString(),
                                 initResponse.getUploadId());
                 S3PartUploader partUploader =
-                        new S3PartUploader(s3Client, dp, partETags, partsUploaded);
+                        new S3PartUploader(
+                                s3Client,
+                                dp,
+                                partETags,
+                                partsUploaded,
+                                throttleController,
+                                uploadHedger);
                 compressedFileSize += chunk.length;
                 // TODO: Get the future over here and create a new arraylist.
-                Future<Void> future = executor.submit(partUploader);
+                Future<Void> future = submitPart(partUploader, chunk.length, recorder);
             }
+            String checksum = recordChecksum(in);
 
             // TODO: Instead of waiting for executor thread to be empty we should wait for all the
             // futures to finish.
@@ -170,9 +201,12 @@ public class S3FileSystem extends S3FileSystemBase {
                                 + partETags.size()
                                 + ")");
 
+            long start = System.nanoTime();
             CompleteMultipartUploadResult resultS3MultiPartUploadComplete =
                     new S3PartUploader(s3Client, part, partETags).completeUpload();
+            recorder.record(Stage.COMPLETE, System.nanoTime() - start);
             checkSuccessfulUpload(resultS3MultiPartUploadComplete, localPath);
+            tagChecksum(remotePath, checksum);
 
             if (logger.isDebugEnabled()) {
                 final S3ResponseMetadata responseMetadata =
@@ -207,18 +241,30 @@ public class S3FileSystem extends S3FileSystemBase {
                         config.getBackupPrefix(),
                         remotePath);
 
+            // Bytes of the memory budget held by the buffered compressed file.
+            long bufferBytes = 0;
+            StageRecorder recorder = getStageRecorder(remotePath);
             try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-                    InputStream in =
-                            new BufferedInputStream(new FileInputStream(localPath.toFile()))) {
+                    HashingInputStream checksumIn = newChecksumStream(localPath);
+                    InputStream in = new BufferedInputStream(checksumIn)) {
+                // Estimated to be no larger than the file until it is compressed.
+                memoryBudget.acquire(fileSize);
+                bufferBytes = fileSize;
+                long start = System.nanoTime();
                 Iterator<byte[]> chunkedStream = compress.compress(in, chunkSize);
                 while (chunkedStream.hasNext()) {
                     byteArrayOutputStream.write(chunkedStream.next());
                 }
                 byte[] chunk = byteArrayOutputStream.toByteArray();
+                String checksum = recordChecksum(checksumIn);
+                recorder.record(Stage.COMPRESS, System.nanoTime() - start, chunk.length);
+                memoryBudget.resize(bufferBytes, chunk.length);
+                bufferBytes = chunk.length;
                 long compressedFileSize = chunk.length;
-                rateLimiter.acquire(chunk.length);
+                acquireUploadRate(chunk.length, recorder);
                 ObjectMetadata objectMetadata = getObjectMetadata(localPath);
                 objectMetadata.setContentLength(chunk.length);
+                objectMetadata.addUserMetadata(CHECKSUM_METADATA, checksum);
                 PutObjectRequest putObjectRequest =
                         new PutObjectRequest(
                                 config.getBackupPrefix(),
@@ -226,24 +272,25 @@ public class S3FileSystem extends S3FileSystemBase {
                                 new ByteArrayInputStream(chunk),
                                 objectMetadata);
                 // Retry if failed.
+                start = System.nanoTime();
                 PutObjectResult upload =
-                        new BoundedExponentialRetryCallable<PutObjectResult>(1000, 10000, 5) {
-                            @Override
-                            public PutObjectResult retriableCall() throws Exception {
-                                return s3Client.putObject(putObjectRequest);
-                            }
-                        }.call();
+                        throttleController.call(
+                                () -> s3Client.putObject(putObjectRequest), chunk.length, 5);
+                recorder.record(Stage.PART_PUT, System.nanoTime() - start, chunk.length);
 
                 if (logger.isDebugEnabled())
                     logger.debug(
                             "Successfully uploaded file with putObject: {} and etag: {}",
                             remotePath,
                             upload.getETag());
+                recordETag(upload.getETag());
 
                 return compressedFileSize;
             } catch (Exception e) {
                 throw new BackupRestoreException(
                         "Error uploading file: " + localPath.toFile().getName(), e);
+            } finally {
+                memoryBudget.release(bufferBytes);
             }
         } else return uploadMultipart(localPath, remotePath);
     }
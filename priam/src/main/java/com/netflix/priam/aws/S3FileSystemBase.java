@@ -13,60 +13,293 @@
  */
 package com.netflix.priam.aws;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.BucketLifecycleConfiguration;
 import com.amazonaws.services.s3.model.BucketLifecycleConfiguration.Rule;
 import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.GetObjectTaggingRequest;
+import com.amazonaws.services.s3.model.GetObjectTaggingResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.ObjectTagging;
+import com.amazonaws.services.s3.model.SetObjectTaggingRequest;
+import com.amazonaws.services.s3.model.Tag;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
 import com.google.common.util.concurrent.RateLimiter;
 import com.google.inject.Provider;
 import com.netflix.priam.backup.AbstractBackupPath;
 import com.netflix.priam.backup.AbstractFileSystem;
 import com.netflix.priam.backup.BackupRestoreException;
+import com.netflix.priam.backup.RangeReadInputStream;
+import com.netflix.priam.backup.RawFileStream;
+import com.netflix.priam.backup.TransferMemoryBudget;
+import com.netflix.priam.backup.TransferTrace;
+import com.netflix.priam.backup.TransferTraces;
 import com.netflix.priam.compress.ICompression;
 import com.netflix.priam.config.IConfiguration;
 import com.netflix.priam.merics.BackupMetrics;
+import com.netflix.priam.merics.BackupMetrics.Stage;
+import com.netflix.priam.merics.BackupMetrics.StageRecorder;
 import com.netflix.priam.notification.BackupNotificationMgr;
 import com.netflix.priam.scheduler.BlockingSubmitThreadPoolExecutor;
+import com.netflix.priam.scheduler.NamedThreadPoolExecutor;
+import com.netflix.priam.utils.AdaptiveConcurrencyLimiter;
+import com.netflix.spectator.api.patterns.PolledMeter;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Collectors;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public abstract class S3FileSystemBase extends AbstractFileSystem {
-    private static final int MAX_CHUNKS = 10000;
+    private static final int LIST_THREADS = 16;
     static final long MAX_BUFFERED_IN_STREAM_SIZE = 5 * 1024 * 1024;
+    // User metadata of the CRC32C of the original file. Only known up front for a single PUT, as
+    // the metadata of a multipart upload is set before its parts are read, so a multipart object
+    // has a tag of the same name instead.
+    static final String CHECKSUM_METADATA = "local-crc32c";
     private static final Logger logger = LoggerFactory.getLogger(S3FileSystemBase.class);
     AmazonS3 s3Client;
     final IConfiguration config;
     private final Provider<AbstractBackupPath> pathProvider;
     final ICompression compress;
     final BlockingSubmitThreadPoolExecutor executor;
+    // lists the shards of the remote keys in parallel.
+    private final ThreadPoolExecutor listExecutor;
     // a throttling mechanism, we can limit the amount of bytes uploaded to endpoint per second.
     final RateLimiter rateLimiter;
+    // shared by all the upload threads to back off together when S3 throttles requests.
+    final S3ThrottleController throttleController;
+    // bounds the heap used by the buffers of all the uploads and downloads.
+    final TransferMemoryBudget memoryBudget;
+    // picks the part size of each multipart upload.
+    final PartSizePlanner partSizePlanner;
+    // limits the amount of bytes downloaded from endpoint per second.
+    private final RateLimiter downloadRateLimiter;
+    // adapts the number of range requests in flight to the throughput of the endpoint.
+    private final AdaptiveConcurrencyLimiter downloadConcurrencyLimiter;
+    // hedge slow part uploads and range reads, null if hedging is disabled.
+    final S3RequestHedger uploadHedger;
+    private final S3RequestHedger downloadHedger;
 
     S3FileSystemBase(
             Provider<AbstractBackupPath> pathProvider,
             ICompression compress,
             final IConfiguration config,
             BackupMetrics backupMetrics,
-            BackupNotificationMgr backupNotificationMgr) {
-        super(config, backupMetrics, backupNotificationMgr);
+            BackupNotificationMgr backupNotificationMgr,
+            S3ThrottleController throttleController,
+            TransferMemoryBudget memoryBudget,
+            TransferTraces transferTraces) {
+        super(config, backupMetrics, backupNotificationMgr, transferTraces);
         this.pathProvider = pathProvider;
         this.compress = compress;
         this.config = config;
+        this.throttleController = throttleController;
+        this.memoryBudget = memoryBudget;
+        this.partSizePlanner =
+                new PartSizePlanner(config, throttleController, memoryBudget, backupMetrics);
 
         int threads = config.getBackupThreads();
         LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<>(threads);
         this.executor =
-                new BlockingSubmitThreadPoolExecutor(threads, queue, config.getUploadTimeout());
+                newTransferExecutor(
+                        "upload.part", threads, queue, config.getUploadTimeout(), config);
+        this.listExecutor = new NamedThreadPoolExecutor(LIST_THREADS, "S3ShardLister");
+        listExecutor.allowCoreThreadTimeOut(true);
 
         double throttleLimit = config.getUploadThrottle();
         this.rateLimiter = RateLimiter.create(throttleLimit < 1 ? Double.MAX_VALUE : throttleLimit);
+
+        double downloadThrottleLimit = config.getDownloadThrottle();
+        this.downloadRateLimiter =
+                RateLimiter.create(
+                        downloadThrottleLimit < 1 ? Double.MAX_VALUE : downloadThrottleLimit);
+        this.downloadConcurrencyLimiter =
+                new AdaptiveConcurrencyLimiter(
+                        config.getRestoreMinConcurrency(), config.getRestoreMaxConcurrency());
+        this.uploadHedger =
+                config.isHedgingEnabled()
+                        ? new S3RequestHedger("upload.part", config, backupMetrics)
+                        : null;
+        this.downloadHedger =
+                config.isHedgingEnabled()
+                        ? new S3RequestHedger("download.range", config, backupMetrics)
+                        : null;
+        PolledMeter.using(backupMetrics.getRegistry())
+                .withName(BackupMetrics.downloadConcurrencyLimit)
+                .monitorValue(downloadConcurrencyLimiter, AdaptiveConcurrencyLimiter::getLimit);
+        PolledMeter.using(backupMetrics.getRegistry())
+                .withName(BackupMetrics.downloadConcurrency)
+                .monitorValue(downloadConcurrencyLimiter, AdaptiveConcurrencyLimiter::getInFlight);
+        PolledMeter.using(backupMetrics.getRegistry())
+                .withName(BackupMetrics.downloadThroughput)
+                .monitorValue(
+                        downloadConcurrencyLimiter, AdaptiveConcurrencyLimiter::getThroughput);
+    }
+
+    /*
+     * Stream of the stored bytes of the remote file, read with ranged requests throttled by the
+     * download rate.
+     */
+    InputStream getRangeReadInputStream(Path remotePath) throws BackupRestoreException {
+        return getRangeReadInputStream(remotePath, getFileSize(remotePath), null);
+    }
+
+    /*
+     * A stream with a class rate is read at low priority: within the class rate, and from the
+     * download rate only when the other reads leave it free.
+     */
+    private InputStream getRangeReadInputStream(
+            Path remotePath, long remoteFileSize, RateLimiter classRateLimiter)
+            throws BackupRestoreException {
+        // Buffer size is the size of a range request.
+        int bufSize = (int) Math.max(1, Math.min(MAX_BUFFERED_IN_STREAM_SIZE, remoteFileSize));
+        // The buffer of the stream and the response of the range request being read.
+        long bufferBytes = 2L * bufSize;
+        try {
+            memoryBudget.acquire(bufferBytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BackupRestoreException("Interrupted while waiting to download " + remotePath);
+        }
+        RangeReadInputStream rris =
+                new RangeReadInputStream(
+                        s3Client,
+                        getPrefix(config),
+                        remoteFileSize,
+                        remotePath.toString(),
+                        downloadConcurrencyLimiter,
+                        downloadRateLimiter,
+                        classRateLimiter,
+                        downloadHedger);
+        return new BufferedInputStream(rris, bufSize) {
+            private boolean released;
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!released) memoryBudget.release(bufferBytes);
+                    released = true;
+                }
+            }
+        };
+    }
+
+    @Override
+    public InputStream openRawStream(Path remotePath, RateLimiter rateLimiter)
+            throws BackupRestoreException {
+        return getRangeReadInputStream(remotePath, getFileSize(remotePath), rateLimiter);
+    }
+
+    @Override
+    public RawFileStream openRawStream(Path remotePath) throws BackupRestoreException {
+        ObjectMetadata metadata =
+                s3Client.getObjectMetadata(getPrefix(config), remotePath.toString());
+        String checksum = getChecksum(remotePath, metadata);
+        return new RawFileStream(
+                getRangeReadInputStream(remotePath, metadata.getContentLength(), null), checksum);
+    }
+
+    /*
+     * Recorder of the stages of a remote file, tagged by the type and keyspace parsed from its
+     * path. Files which cannot be parsed are tagged as unknown. The stages are also added to the
+     * trace of the file.
+     */
+    StageRecorder getStageRecorder(Path remotePath) {
+        try {
+            AbstractBackupPath path = pathProvider.get();
+            path.parseRemote(remotePath.toString());
+            return backupMetrics.getStageRecorder(
+                    path.getType(), path.getKeyspace(), getCurrentTrace());
+        } catch (RuntimeException | AssertionError e) {
+            return backupMetrics.getStageRecorder(null, null, getCurrentTrace());
+        }
+    }
+
+    @Override
+    protected String getCodec() {
+        return StringUtils.removeEnd(compress.getClass().getSimpleName(), "Compression")
+                .toLowerCase();
+    }
+
+    /*
+     * Next chunk of a file to upload, produced by the given stage e.g. compression. Its size is
+     * acquired from the memory budget before the chunk is buffered, estimated to be the chunk size
+     * of the file.
+     */
+    byte[] nextChunk(Iterator<byte[]> chunks, long chunkSize, Stage stage, StageRecorder recorder)
+            throws InterruptedException {
+        memoryBudget.acquire(chunkSize);
+        byte[] chunk;
+        long start = System.nanoTime();
+        try {
+            chunk = chunks.next();
+        } catch (RuntimeException e) {
+            memoryBudget.release(chunkSize);
+            throw e;
+        }
+        recorder.record(stage, System.nanoTime() - start, chunk.length);
+        memoryBudget.resize(chunkSize, chunk.length);
+        return chunk;
+    }
+
+    /*
+     * Wait for the rate of the priority class of the file, and then for the upload rate limiter
+     * shared by all the files, to send the bytes.
+     */
+    void acquireUploadRate(int bytes, StageRecorder recorder) {
+        double waitSeconds =
+                acquireUploadClassRate(bytes) + rateLimiter.acquire(Math.max(1, bytes));
+        recorder.record(Stage.RATE_LIMIT_WAIT, (long) (waitSeconds * 1e9));
+    }
+
+    /*
+     * Upload a chunk from nextChunk as a part. Its size is released to the memory budget once the
+     * part is uploaded.
+     */
+    Future<Void> submitPart(S3PartUploader partUploader, int chunkSize, StageRecorder recorder) {
+        try {
+            return executor.submit(
+                    () -> {
+                        long start = System.nanoTime();
+                        try {
+                            Void result = partUploader.call();
+                            recorder.record(Stage.PART_PUT, System.nanoTime() - start, chunkSize);
+                            return result;
+                        } finally {
+                            memoryBudget.release(chunkSize);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            memoryBudget.release(chunkSize);
+            throw e;
+        }
+    }
+
+    @Override
+    protected <T> T retryUpload(Callable<T> upload, int retry) throws Exception {
+        return throttleController.retry(upload, retry);
     }
 
     private AmazonS3 getS3Client() {
@@ -161,6 +394,7 @@ public abstract class S3FileSystemBase extends AbstractFileSystem {
                     "Uploaded file: {}, object eTag: {}",
                     localPath,
                     resultS3MultiPartUploadComplete.getETag());
+            recordETag(resultS3MultiPartUploadComplete.getETag());
         } else {
             throw new BackupRestoreException(
                     "Error uploading file as ETag or CompleteMultipartUploadResult is NULL -"
@@ -168,12 +402,80 @@ public abstract class S3FileSystemBase extends AbstractFileSystem {
         }
     }
 
+    /*
+     * Stream of a local file to upload, which computes the checksum of the original file as it is
+     * read, so that its content can be verified after a restore without reading it again.
+     */
+    HashingInputStream newChecksumStream(Path localPath) throws FileNotFoundException {
+        return new HashingInputStream(Hashing.crc32c(), new FileInputStream(localPath.toFile()));
+    }
+
+    /*
+     * Record the checksum of the file uploaded by the current thread, once it is read to the end.
+     * @return the checksum.
+     */
+    String recordChecksum(HashingInputStream in) {
+        String checksum = in.hash().toString();
+        TransferTrace trace = getCurrentTrace();
+        if (trace != null) trace.setChecksum(checksum);
+        return checksum;
+    }
+
+    /*
+     * Record the entity tag of the object uploaded by the current thread, so that backup
+     * verification can compare it with the listing of the bucket.
+     */
+    void recordETag(String eTag) {
+        TransferTrace trace = getCurrentTrace();
+        if (trace != null) trace.setETag(eTag);
+    }
+
     @Override
     public long getFileSize(Path remotePath) throws BackupRestoreException {
         return s3Client.getObjectMetadata(getPrefix(config), remotePath.toString())
                 .getContentLength();
     }
 
+    @Override
+    public String getChecksum(Path remotePath) throws BackupRestoreException {
+        return getChecksum(
+                remotePath, s3Client.getObjectMetadata(getPrefix(config), remotePath.toString()));
+    }
+
+    /*
+     * Checksum of the object from its metadata, or from its tags if it is a multipart upload,
+     * whose entity tag ends with the number of parts.
+     */
+    String getChecksum(Path remotePath, ObjectMetadata metadata) {
+        String checksum = metadata.getUserMetaDataOf(CHECKSUM_METADATA);
+        if (checksum != null || metadata.getETag() == null || !metadata.getETag().contains("-"))
+            return checksum;
+        GetObjectTaggingResult tagging =
+                s3Client.getObjectTagging(
+                        new GetObjectTaggingRequest(getPrefix(config), remotePath.toString()));
+        for (Tag tag : tagging.getTagSet())
+            if (CHECKSUM_METADATA.equals(tag.getKey())) return tag.getValue();
+        return null;
+    }
+
+    /*
+     * Record the checksum of a multipart upload as a tag of the object once it is complete. The
+     * upload is kept if the tag cannot be set, only its content cannot be verified on restore.
+     */
+    void tagChecksum(Path remotePath, String checksum) {
+        try {
+            s3Client.setObjectTagging(
+                    new SetObjectTaggingRequest(
+                            config.getBackupPrefix(),
+                            remotePath.toString(),
+                            new ObjectTagging(
+                                    Collections.singletonList(
+                                            new Tag(CHECKSUM_METADATA, checksum)))));
+        } catch (AmazonClientException e) {
+            logger.warn("Unable to tag {} with its checksum", remotePath, e);
+        }
+    }
+
     @Override
     public void shutdown() {
         if (executor != null) executor.shutdown();
@@ -186,20 +488,106 @@ public abstract class S3FileSystemBase extends AbstractFileSystem {
 
     @Override
     public Iterator<AbstractBackupPath> list(String path, Date start, Date till) {
-        return new S3FileIterator(pathProvider, s3Client, path, start, till);
+        return list(path, pathProvider.get().remotePrefix(start, till, path), start, till);
+    }
+
+    @Override
+    public Iterator<AbstractBackupPath> listSnapshotMetas(String path, Date start, Date till) {
+        return list(
+                path, pathProvider.get().remoteMetaIndexPrefix(start, till, path), start, till);
     }
 
-    final long getChunkSize(Path localPath) throws BackupRestoreException {
-        long chunkSize = config.getBackupChunkSize();
-        long fileSize = localPath.toFile().length();
+    /*
+     * If remote keys are sharded, the first page of every shard is listed in parallel and the
+     * shards are merged as they are read, so that the files are listed in the same order as if the
+     * keys were not sharded, and only a page of each shard is held in memory.
+     */
+    private Iterator<AbstractBackupPath> list(String path, String prefix, Date start, Date till) {
+        List<String> prefixes = pathProvider.get().shardPrefixes(prefix);
+        Iterator<AbstractBackupPath> iterator;
+        if (prefixes.size() == 1) {
+            iterator = new S3FileIterator(pathProvider, s3Client, path, prefix, start, till);
+        } else {
+            List<CompletableFuture<S3FileIterator>> shards =
+                    prefixes.stream()
+                            .map(
+                                    shardPrefix ->
+                                            CompletableFuture.supplyAsync(
+                                                    () -> listShard(path, shardPrefix, start, till),
+                                                    listExecutor))
+                            .collect(Collectors.toList());
+            iterator =
+                    mergeShards(
+                            shards.stream()
+                                    .map(CompletableFuture::join)
+                                    .collect(Collectors.toList()));
+        }
+        return new TimedIterator<>(iterator, backupMetrics.getStageRecorder(null, null));
+    }
+
+    // Lists the first page of a shard.
+    private S3FileIterator listShard(String path, String prefix, Date start, Date till) {
+        return new S3FileIterator(pathProvider, s3Client, path, prefix, start, till);
+    }
+
+    /*
+     * Merges the listings of the shards, each in the order of its keys, into a single listing in
+     * the order of the keys without their shard.
+     */
+    static Iterator<AbstractBackupPath> mergeShards(
+            List<? extends Iterator<AbstractBackupPath>> shards) {
+        return Iterators.mergeSorted(shards, Comparator.comparing(S3FileSystemBase::unshardedPath));
+    }
+
+    /*
+     * Remote path of the file without the shard after the cluster name, if any.
+     */
+    static String unshardedPath(AbstractBackupPath path) {
+        String remotePath = path.getRemotePath();
+        String separator = String.valueOf(AbstractBackupPath.PATH_SEP);
+        int shardStart = StringUtils.ordinalIndexOf(remotePath, separator, 3) + 1;
+        int shardEnd = remotePath.indexOf(separator, shardStart);
+        if (shardStart == 0 || shardEnd < 0) return remotePath;
+        String shard = remotePath.substring(shardStart, shardEnd);
+        if (!AbstractBackupPath.SHARD_PATTERN.matcher(shard).matches()) return remotePath;
+        return remotePath.substring(0, shardStart) + remotePath.substring(shardEnd + 1);
+    }
+
+    /*
+     * Records the time spent listing, as the listing is paged in lazily, once it is read to the
+     * end.
+     */
+    private static class TimedIterator<T> implements Iterator<T> {
+        private final Iterator<T> iterator;
+        private final StageRecorder recorder;
+        private long nanos;
+        private boolean recorded;
 
-        // compute the size of each block we will upload to endpoint
-        if (fileSize > 0)
-            chunkSize =
-                    (fileSize / chunkSize >= MAX_CHUNKS)
-                            ? (fileSize / (MAX_CHUNKS - 1))
-                            : chunkSize;
+        TimedIterator(Iterator<T> iterator, StageRecorder recorder) {
+            this.iterator = iterator;
+            this.recorder = recorder;
+        }
+
+        @Override
+        public boolean hasNext() {
+            long start = System.nanoTime();
+            boolean hasNext = iterator.hasNext();
+            nanos += System.nanoTime() - start;
+            if (!hasNext && !recorded) {
+                recorded = true;
+                recorder.record(Stage.LIST, nanos);
+            }
+            return hasNext;
+        }
 
-        return chunkSize;
+        @Override
+        public T next() {
+            long start = System.nanoTime();
+            try {
+                return iterator.next();
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
     }
 }
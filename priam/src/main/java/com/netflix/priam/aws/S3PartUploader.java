@@ -16,7 +16,6 @@
  */
 package com.netflix.priam.aws;
 
-import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.*;
 import com.netflix.priam.backup.BackupRestoreException;
@@ -33,6 +32,8 @@ public class S3PartUploader extends BoundedExponentialRetryCallable<Void> {
     private final DataPart dataPart;
     private final List<PartETag> partETags;
     private AtomicInteger partsUploaded = null; // num of data parts successfully uploaded
+    private S3ThrottleController throttleController = null;
+    private S3RequestHedger hedger = null;
 
     private static final Logger logger = LoggerFactory.getLogger(S3PartUploader.class);
     private static final int MAX_RETRIES = 5;
@@ -54,7 +55,34 @@ public class S3PartUploader extends BoundedExponentialRetryCallable<Void> {
         this.partsUploaded = partsUploaded;
     }
 
-    private Void uploadPart() throws AmazonClientException, BackupRestoreException {
+    public S3PartUploader(
+            AmazonS3 client,
+            DataPart dp,
+            List<PartETag> partETags,
+            AtomicInteger partsUploaded,
+            S3ThrottleController throttleController,
+            S3RequestHedger hedger) {
+        this(client, dp, partETags, partsUploaded);
+        this.throttleController = throttleController;
+        this.hedger = hedger;
+    }
+
+    private Void uploadPart() throws Exception {
+        // A slow part is uploaded again if hedging, S3 keeps either of the identical parts.
+        UploadPartResult res =
+                hedger != null
+                        ? hedger.call(() -> client.uploadPart(getUploadPartRequest()))
+                        : client.uploadPart(getUploadPartRequest());
+        PartETag partETag = res.getPartETag();
+        if (!partETag.getETag().equals(SystemUtils.toHex(dataPart.getMd5())))
+            throw new BackupRestoreException(
+                    "Unable to match MD5 for part " + dataPart.getPartNo());
+        partETags.add(partETag);
+        if (this.partsUploaded != null) this.partsUploaded.incrementAndGet();
+        return null;
+    }
+
+    private UploadPartRequest getUploadPartRequest() {
         UploadPartRequest req = new UploadPartRequest();
         req.setBucketName(dataPart.getBucketName());
         req.setKey(dataPart.getS3key());
@@ -63,14 +91,7 @@ public class S3PartUploader extends BoundedExponentialRetryCallable<Void> {
         req.setPartSize(dataPart.getPartData().length);
         req.setMd5Digest(SystemUtils.toBase64(dataPart.getMd5()));
         req.setInputStream(new ByteArrayInputStream(dataPart.getPartData()));
-        UploadPartResult res = client.uploadPart(req);
-        PartETag partETag = res.getPartETag();
-        if (!partETag.getETag().equals(SystemUtils.toHex(dataPart.getMd5())))
-            throw new BackupRestoreException(
-                    "Unable to match MD5 for part " + dataPart.getPartNo());
-        partETags.add(partETag);
-        if (this.partsUploaded != null) this.partsUploaded.incrementAndGet();
-        return null;
+        return req;
     }
 
     public CompleteMultipartUploadResult completeUpload() throws BackupRestoreException {
@@ -92,7 +113,14 @@ public class S3PartUploader extends BoundedExponentialRetryCallable<Void> {
     }
 
     @Override
-    public Void retriableCall() throws AmazonClientException, BackupRestoreException {
+    public Void call() throws Exception {
+        if (throttleController == null) return super.call();
+        return throttleController.call(
+                this::retriableCall, dataPart.getPartData().length, MAX_RETRIES);
+    }
+
+    @Override
+    public Void retriableCall() throws Exception {
         logger.debug(
                 "Picked up part {} size {}", dataPart.getPartNo(), dataPart.getPartData().length);
         return uploadPart();
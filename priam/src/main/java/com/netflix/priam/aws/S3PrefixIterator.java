@@ -27,15 +27,18 @@ import com.netflix.priam.config.IConfiguration;
 import com.netflix.priam.identity.config.InstanceInfo;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Class to iterate over prefixes (S3 Common prefixes) upto the token element in the path. The
- * abstract path generated by this class is partial (does not have all data).
+ * abstract path generated by this class is partial (does not have all data). If remote keys are
+ * sharded, the tokens under every shard are listed and each token is returned once.
  */
 public class S3PrefixIterator implements Iterator<AbstractBackupPath> {
     private static final Logger logger = LoggerFactory.getLogger(S3PrefixIterator.class);
@@ -46,6 +49,8 @@ public class S3PrefixIterator implements Iterator<AbstractBackupPath> {
 
     private String bucket = "";
     private String clusterPath = "";
+    private Iterator<String> listingPrefixes;
+    private final Set<String> tokens = new HashSet<>();
     private final SimpleDateFormat datefmt = new SimpleDateFormat("yyyyMMdd");
     private ObjectListing objectListing = null;
     final Date date;
@@ -68,26 +73,33 @@ public class S3PrefixIterator implements Iterator<AbstractBackupPath> {
         String[] paths = path.split(String.valueOf(S3BackupPath.PATH_SEP));
         bucket = paths[0];
         this.clusterPath = remotePrefix(path);
+        this.listingPrefixes = pathProvider.get().shardPrefixes(clusterPath).iterator();
         iterator = createIterator();
     }
 
-    private void initListing() {
+    private void initListing(String prefix) {
         ListObjectsRequest listReq = new ListObjectsRequest();
         // Get list of tokens
         listReq.setBucketName(bucket);
-        listReq.setPrefix(clusterPath);
+        listReq.setPrefix(prefix);
         listReq.setDelimiter(String.valueOf(AbstractBackupPath.PATH_SEP));
-        logger.info("Using cluster prefix for searching tokens: {}", clusterPath);
+        logger.info("Using cluster prefix for searching tokens: {}", prefix);
         objectListing = s3Client.listObjects(listReq);
     }
 
     private Iterator<AbstractBackupPath> createIterator() {
-        if (objectListing == null) initListing();
+        if (objectListing == null) initListing(listingPrefixes.next());
         List<AbstractBackupPath> temp = Lists.newArrayList();
         for (String summary : objectListing.getCommonPrefixes()) {
+            String name = summary.substring(0, summary.length() - 1);
+            name = name.substring(name.lastIndexOf(AbstractBackupPath.PATH_SEP) + 1);
+            // Shards under the cluster prefix are listed on their own.
+            if (AbstractBackupPath.SHARD_PATTERN.matcher(name).matches()) continue;
+            if (tokens.contains(name)) continue;
             if (pathExistsForDate(summary, datefmt.format(date))) {
                 AbstractBackupPath path = pathProvider.get();
                 path.parsePartialPrefix(summary);
+                tokens.add(path.getToken());
                 temp.add(path);
             }
         }
@@ -99,8 +111,11 @@ public class S3PrefixIterator implements Iterator<AbstractBackupPath> {
         if (iterator.hasNext()) {
             return true;
         } else {
-            while (objectListing.isTruncated() && !iterator.hasNext()) {
-                objectListing = s3Client.listNextBatchOfObjects(objectListing);
+            while (!iterator.hasNext()
+                    && (objectListing.isTruncated() || listingPrefixes.hasNext())) {
+                if (objectListing.isTruncated())
+                    objectListing = s3Client.listNextBatchOfObjects(objectListing);
+                else initListing(listingPrefixes.next());
                 iterator = createIterator();
             }
         }
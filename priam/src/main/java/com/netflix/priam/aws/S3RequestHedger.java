@@ -0,0 +1,158 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.aws;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.priam.config.IConfiguration;
+import com.netflix.priam.merics.BackupMetrics;
+import com.netflix.priam.utils.RetryBudget;
+import com.netflix.spectator.api.Counter;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spectator.api.histogram.PercentileTimer;
+import com.netflix.spectator.api.patterns.PolledMeter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hedges requests to S3 to cut the tail latency caused by a slow connection. A request which takes
+ * longer than a percentile of the recent latencies of the same operation is issued again, and the
+ * first to succeed wins. The duplicate requests are capped to a fraction of the requests by a
+ * budget. Latency of the operation is published as a percentile timer.
+ *
+ * <p>Requests must be idempotent e.g. uploading a part or reading a range of a file.
+ */
+public class S3RequestHedger {
+    // Latencies of the recent requests used to compute the percentile.
+    private static final int WINDOW_SIZE = 1000;
+    private static final int MIN_SAMPLES = 20;
+    // Percentile is recomputed after these many new samples.
+    private static final int RECOMPUTE_INTERVAL = 100;
+
+    private final double percentile;
+    private final RetryBudget hedgeBudget;
+    private final ExecutorService executor;
+    private final PercentileTimer latency;
+    private final Counter hedged;
+    private final Counter hedgeWins;
+    private final long[] samples = new long[WINDOW_SIZE];
+    private long sampleCount;
+    private volatile long thresholdNanos;
+
+    /**
+     * @param operation name of the operation hedged e.g. upload.part.
+     * @param config configuration of hedging.
+     * @param backupMetrics metrics of the operation.
+     */
+    public S3RequestHedger(String operation, IConfiguration config, BackupMetrics backupMetrics) {
+        this.percentile = config.getHedgingPercentile();
+        this.hedgeBudget = new RetryBudget(config.getHedgingBudgetRatio(), 0);
+        this.executor =
+                Executors.newCachedThreadPool(
+                        new ThreadFactoryBuilder()
+                                .setDaemon(true)
+                                .setNameFormat("S3Hedger-" + operation + "-%d")
+                                .build());
+        Registry registry = backupMetrics.getRegistry();
+        this.latency =
+                PercentileTimer.get(
+                        registry,
+                        registry.createId(
+                                BackupMetrics.s3RequestLatency, "operation", operation));
+        this.hedged = registry.counter(BackupMetrics.s3RequestHedged, "operation", operation);
+        this.hedgeWins = registry.counter(BackupMetrics.s3RequestHedgeWins, "operation", operation);
+        PolledMeter.using(registry)
+                .withName(BackupMetrics.s3RequestHedgeThreshold)
+                .withTag("operation", operation)
+                .monitorValue(this, hedger -> hedger.thresholdNanos / 1e9);
+    }
+
+    /**
+     * Make the request, hedging it if it is slower than the percentile of the recent requests.
+     *
+     * @param request the request, it may be called twice at the same time.
+     * @return result of the first request to succeed.
+     * @throws Exception failure of the last request to fail, if no request succeeds.
+     */
+    public <T> T call(Callable<T> request) throws Exception {
+        long start = System.nanoTime();
+        CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<T>> futures = new ArrayList<>(2);
+        futures.add(completionService.submit(request));
+        hedgeBudget.deposit();
+        try {
+            Future<T> done = null;
+            long threshold = thresholdNanos;
+            if (threshold > 0) {
+                done = completionService.poll(threshold, TimeUnit.NANOSECONDS);
+                if (done == null && hedgeBudget.tryWithdraw()) {
+                    hedged.increment();
+                    futures.add(completionService.submit(request));
+                }
+            }
+
+            ExecutionException failure = null;
+            for (int pending = futures.size(); pending > 0; pending--) {
+                if (done == null) done = completionService.take();
+                try {
+                    T result = done.get();
+                    if (done != futures.get(0)) hedgeWins.increment();
+                    record(System.nanoTime() - start);
+                    return result;
+                } catch (ExecutionException e) {
+                    failure = e;
+                }
+                done = null;
+            }
+            Throwable cause = failure.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw failure;
+        } finally {
+            // Stop the request which lost.
+            for (Future<T> future : futures) future.cancel(true);
+        }
+    }
+
+    /** @return latency in nanoseconds after which a request is hedged, 0 if not known yet. */
+    long getThresholdNanos() {
+        return thresholdNanos;
+    }
+
+    private void record(long nanos) {
+        latency.record(nanos, TimeUnit.NANOSECONDS);
+        long[] window = null;
+        synchronized (samples) {
+            samples[(int) (sampleCount++ % WINDOW_SIZE)] = nanos;
+            if (sampleCount >= MIN_SAMPLES
+                    && (sampleCount == MIN_SAMPLES || sampleCount % RECOMPUTE_INTERVAL == 0))
+                window = Arrays.copyOf(samples, (int) Math.min(sampleCount, WINDOW_SIZE));
+        }
+        if (window != null) {
+            Arrays.sort(window);
+            int index = (int) Math.ceil(percentile / 100 * window.length) - 1;
+            thresholdNanos = window[Math.max(0, Math.min(index, window.length - 1))];
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.aws;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.RequestHandler2;
+import com.netflix.priam.merics.BackupMetrics;
+import org.apache.commons.lang3.StringUtils;
+
+/** Counts the requests made by an S3 client, by type of request and status. */
+public class S3RequestMetrics extends RequestHandler2 {
+    private final BackupMetrics backupMetrics;
+
+    public S3RequestMetrics(BackupMetrics backupMetrics) {
+        this.backupMetrics = backupMetrics;
+    }
+
+    @Override
+    public void afterResponse(Request<?> request, Response<?> response) {
+        backupMetrics.incrementS3Requests(getOperation(request), "success");
+    }
+
+    @Override
+    public void afterError(Request<?> request, Response<?> response, Exception e) {
+        String status =
+                e instanceof AmazonServiceException
+                        ? String.valueOf(((AmazonServiceException) e).getStatusCode())
+                        : "error";
+        backupMetrics.incrementS3Requests(getOperation(request), status);
+    }
+
+    // e.g. UploadPartRequest is counted as UploadPart.
+    static String getOperation(Request<?> request) {
+        return StringUtils.removeEnd(
+                request.getOriginalRequest().getClass().getSimpleName(), "Request");
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.aws;
+
+import com.amazonaws.AmazonServiceException;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.priam.config.IConfiguration;
+import com.netflix.priam.merics.BackupMetrics;
+import com.netflix.priam.utils.AdaptiveConcurrencyLimiter;
+import com.netflix.priam.utils.RetryBudget;
+import com.netflix.spectator.api.Counter;
+import com.netflix.spectator.api.patterns.PolledMeter;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Controls the requests made to S3 by all the upload threads, so S3 throttling (503 SlowDown) is
+ * not made worse by every thread retrying at full concurrency.
+ *
+ * <ul>
+ *   <li>Requests in flight are limited with additive increase/multiplicative decrease, the limit
+ *       ramps up again once throttling stops.
+ *   <li>A throttled request opens a circuit breaker: no new request starts for a short, jittered
+ *       period, which lets the requests in flight drain.
+ *   <li>Retries back off exponentially with full jitter and draw from a shared {@link
+ *       RetryBudget}. A request fails without retrying once the budget is exhausted.
+ * </ul>
+ */
+@Singleton
+public class S3ThrottleController {
+    private static final Logger logger = LoggerFactory.getLogger(S3ThrottleController.class);
+    private static final long MIN_BACKOFF_MS = 200;
+    private static final long MAX_BACKOFF_MS = 10000;
+    private static final long BREAKER_OPEN_MS = 1000;
+    private static final int RETRY_RESERVE_PER_SECOND = 10;
+    // requests smaller than this are dominated by their overhead, not by the transfer.
+    private static final long MIN_THROUGHPUT_SAMPLE_BYTES = 5 * 1024 * 1024;
+    private static final double THROUGHPUT_SMOOTHING = 0.1;
+
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final RetryBudget retryBudget;
+    private final Counter throttled;
+    private final Counter retryBudgetExhausted;
+    private volatile long breakerOpenUntil = System.nanoTime();
+    private double requestThroughput;
+
+    @Inject
+    public S3ThrottleController(IConfiguration config, BackupMetrics backupMetrics) {
+        this.limiter =
+                new AdaptiveConcurrencyLimiter(
+                        config.getUploadMinConcurrency(), config.getBackupThreads());
+        this.retryBudget =
+                new RetryBudget(config.getUploadRetryBudgetRatio(), RETRY_RESERVE_PER_SECOND);
+        this.throttled = backupMetrics.getRegistry().counter(BackupMetrics.uploadThrottled);
+        this.retryBudgetExhausted =
+                backupMetrics.getRegistry().counter(BackupMetrics.uploadRetryBudgetExhausted);
+        PolledMeter.using(backupMetrics.getRegistry())
+                .withName(BackupMetrics.uploadConcurrencyLimit)
+                .monitorValue(limiter, AdaptiveConcurrencyLimiter::getLimit);
+        PolledMeter.using(backupMetrics.getRegistry())
+                .withName(BackupMetrics.uploadConcurrency)
+                .monitorValue(limiter, AdaptiveConcurrencyLimiter::getInFlight);
+        PolledMeter.using(backupMetrics.getRegistry())
+                .withName(BackupMetrics.uploadRetryBudget)
+                .monitorValue(retryBudget, RetryBudget::getBalance);
+    }
+
+    /**
+     * Make a single request to S3 within the concurrency limit, retrying failures.
+     *
+     * @param request the request.
+     * @param bytes number of bytes sent by the request.
+     * @param maxRetries maximum number of retries.
+     * @return result of the request.
+     * @throws Exception failure of the last attempt.
+     */
+    public <T> T call(Callable<T> request, long bytes, int maxRetries) throws Exception {
+        return call(request, bytes, maxRetries, true);
+    }
+
+    /**
+     * Retry an operation which makes requests through {@link #call(Callable, long, int)} e.g.
+     * uploading all the parts of a file. Retries draw from the same budget, but the operation does
+     * not count against the concurrency limit.
+     *
+     * @param operation the operation.
+     * @param maxRetries maximum number of retries.
+     * @return result of the operation.
+     * @throws Exception failure of the last attempt.
+     */
+    public <T> T retry(Callable<T> operation, int maxRetries) throws Exception {
+        return call(operation, 0, maxRetries, false);
+    }
+
+    private <T> T call(Callable<T> request, long bytes, int maxRetries, boolean limited)
+            throws Exception {
+        int retry = 0;
+        while (true) {
+            if (limited) {
+                awaitBreaker();
+                limiter.acquire();
+            }
+            long start = System.nanoTime();
+            try {
+                T result = request.call();
+                if (limited) {
+                    long latency = System.nanoTime() - start;
+                    limiter.onSuccess(bytes, latency);
+                    recordThroughput(bytes, latency);
+                }
+                retryBudget.deposit();
+                return result;
+            } catch (CancellationException e) {
+                if (limited) limiter.release();
+                throw e;
+            } catch (Exception e) {
+                boolean isThrottled = isThrottled(e);
+                if (isThrottled) {
+                    throttled.increment();
+                    openBreaker();
+                }
+                if (limited) {
+                    if (isThrottled) limiter.onThrottled();
+                    else limiter.release();
+                }
+                if (++retry > maxRetries) throw e;
+                if (!retryBudget.tryWithdraw()) {
+                    retryBudgetExhausted.increment();
+                    logger.error("Retry budget exhausted, not retrying: {}", e.getMessage());
+                    throw e;
+                }
+                long backoff = getBackoffMs(retry);
+                logger.error("Retry #{} in {} ms for: {}", retry, backoff, e.getMessage());
+                Thread.sleep(backoff);
+            }
+        }
+    }
+
+    /** @return current limit of the concurrent requests. */
+    public int getConcurrencyLimit() {
+        return limiter.getLimit();
+    }
+
+    /**
+     * @return moving average of the bytes per second sent by a single request, 0 until a large
+     *     enough request succeeded.
+     */
+    public synchronized double getRequestThroughput() {
+        return requestThroughput;
+    }
+
+    private synchronized void recordThroughput(long bytes, long latencyNanos) {
+        if (bytes < MIN_THROUGHPUT_SAMPLE_BYTES || latencyNanos <= 0) return;
+        double throughput = bytes * (double) TimeUnit.SECONDS.toNanos(1) / latencyNanos;
+        requestThroughput =
+                requestThroughput == 0
+                        ? throughput
+                        : requestThroughput
+                                + THROUGHPUT_SMOOTHING * (throughput - requestThroughput);
+    }
+
+    /** Full jitter: a random backoff up to the exponential bound of the attempt. */
+    static long getBackoffMs(int retry) {
+        long bound = MIN_BACKOFF_MS << Math.min(retry, 16);
+        return ThreadLocalRandom.current().nextLong(Math.min(MAX_BACKOFF_MS, bound) + 1);
+    }
+
+    private void openBreaker() {
+        long openMs = BREAKER_OPEN_MS + ThreadLocalRandom.current().nextLong(BREAKER_OPEN_MS);
+        long openUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(openMs);
+        if (openUntil - breakerOpenUntil > 0) breakerOpenUntil = openUntil;
+        logger.warn("S3 is throttling requests, pausing new requests for {} ms", openMs);
+    }
+
+    private void awaitBreaker() throws InterruptedException {
+        long wait;
+        while ((wait = breakerOpenUntil - System.nanoTime()) > 0)
+            TimeUnit.NANOSECONDS.sleep(wait);
+    }
+
+    /** @return true, if the exception, or its cause, is S3 throttling the request. */
+    public static boolean isThrottled(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof AmazonServiceException) {
+                AmazonServiceException ase = (AmazonServiceException) t;
+                if (ase.getStatusCode() == 503
+                        || ase.getStatusCode() == 429
+                        || "SlowDown".equals(ase.getErrorCode())) return true;
+            }
+            if (t.getCause() == t) break;
+        }
+        return false;
+    }
+}
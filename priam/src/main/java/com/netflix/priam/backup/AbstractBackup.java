@@ -21,12 +21,15 @@ import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
 import com.netflix.priam.config.IConfiguration;
+import com.netflix.priam.merics.BackupMetrics;
+import com.netflix.priam.merics.BackupMetrics.Stage;
 import com.netflix.priam.scheduler.Task;
 import com.netflix.priam.utils.SystemUtils;
 import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.ParseException;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.Future;
 import org.slf4j.Logger;
@@ -39,6 +42,8 @@ public abstract class AbstractBackup extends Task {
     public static final String SNAPSHOT_FOLDER = "snapshots";
 
     final Provider<AbstractBackupPath> pathFactory;
+    private final BackupMetrics backupMetrics;
+    private final TransferProgress transferProgress = new TransferProgress();
 
     private IBackupFileSystem fs;
 
@@ -46,9 +51,11 @@ public abstract class AbstractBackup extends Task {
     public AbstractBackup(
             IConfiguration config,
             IFileSystemContext backupFileSystemCtx,
-            Provider<AbstractBackupPath> pathFactory) {
+            Provider<AbstractBackupPath> pathFactory,
+            BackupMetrics backupMetrics) {
         super(config);
         this.pathFactory = pathFactory;
+        this.backupMetrics = backupMetrics;
         this.fs = backupFileSystemCtx.getFileStrategy(config);
     }
 
@@ -57,6 +64,10 @@ public abstract class AbstractBackup extends Task {
         this.fs = fs;
     }
 
+    protected IBackupFileSystem getFileSystem() {
+        return fs;
+    }
+
     private AbstractBackupPath getAbstractBackupPath(final File file, final BackupFileType type)
             throws ParseException {
         final AbstractBackupPath bp = pathFactory.get();
@@ -71,12 +82,14 @@ public abstract class AbstractBackup extends Task {
      * @param parent Parent dir
      * @param type Type of file (META, SST, SNAP etc)
      * @param async Upload the file(s) in async fashion if enabled.
-     * @return List of files that are successfully uploaded as part of backup
+     * @return List of files that are successfully uploaded as part of backup, or whose copy is
+     *     already uploaded, see {@link #getUploadedCopy(AbstractBackupPath)}
      * @throws Exception when there is failure in uploading files.
      */
     List<AbstractBackupPath> upload(final File parent, final BackupFileType type, boolean async)
             throws Exception {
         final List<AbstractBackupPath> bps = Lists.newArrayList();
+        final List<AbstractBackupPath> asyncBps = Lists.newArrayList();
         final List<Future<Path>> futures = Lists.newArrayList();
 
         File[] files = parent.listFiles();
@@ -85,8 +98,13 @@ public abstract class AbstractBackup extends Task {
         for (File file : files) {
             if (file.isFile() && file.exists()) {
                 AbstractBackupPath bp = getAbstractBackupPath(file, type);
+                AbstractBackupPath copy = getUploadedCopy(bp);
 
-                if (async)
+                if (copy != null) {
+                    transferProgress.reused(bp.getKeyspace(), bp.getSize());
+                    bp = copy;
+                } else if (async) {
+                    asyncBps.add(bp);
                     futures.add(
                             fs.asyncUploadFile(
                                     Paths.get(bp.getBackupFile().getAbsolutePath()),
@@ -94,13 +112,15 @@ public abstract class AbstractBackup extends Task {
                                     bp,
                                     10,
                                     true));
-                else
+                } else {
                     fs.uploadFile(
                             Paths.get(bp.getBackupFile().getAbsolutePath()),
                             Paths.get(bp.getRemotePath()),
                             bp,
                             10,
                             true);
+                    transferProgress.done(bp.getKeyspace(), bp.getSize());
+                }
 
                 bps.add(bp);
                 addToRemotePath(bp.getRemotePath());
@@ -109,8 +129,10 @@ public abstract class AbstractBackup extends Task {
 
         // Wait for all files to be uploaded.
         if (async) {
-            for (Future future : futures)
-                future.get(); // This might throw exception if there is any error
+            for (int i = 0; i < futures.size(); i++) {
+                futures.get(i).get(); // This might throw exception if there is any error
+                transferProgress.done(asyncBps.get(i).getKeyspace(), asyncBps.get(i).getSize());
+            }
         }
 
         return bps;
@@ -127,12 +149,22 @@ public abstract class AbstractBackup extends Task {
         }
         logger.debug("Scanning for backup in: {}", dataDir.getAbsolutePath());
         File[] keyspaceDirectories = dataDir.listFiles();
-        if (keyspaceDirectories == null) return;
+        transferProgress.start();
+        if (keyspaceDirectories == null) {
+            transferProgress.finish();
+            return;
+        }
 
+        // Column families are processed in the order of their priority tier.
+        PriorityTiers priorityTiers = new PriorityTiers(config.getPriorityTiers());
+        List<File> columnFamilyDirs = Lists.newArrayList();
+        BackupFileType type =
+                SNAPSHOT_FOLDER.equals(monitoringFolder) ? BackupFileType.SNAP : BackupFileType.SST;
         for (File keyspaceDir : keyspaceDirectories) {
             if (keyspaceDir.isFile()) continue;
 
             logger.debug("Entering {} keyspace..", keyspaceDir.getName());
+            long start = System.nanoTime();
             File[] columnFamilyDirectories = keyspaceDir.listFiles();
             if (columnFamilyDirectories == null) continue;
 
@@ -143,8 +175,6 @@ public abstract class AbstractBackup extends Task {
                     continue;
                 }
 
-                String columnFamilyName = columnFamilyDir.getName().split("-")[0];
-
                 if (backupRestoreUtil.isFiltered(
                         keyspaceDir.getName(), columnFamilyDir.getName())) {
                     // Clean the backup/snapshot directory else files will keep getting accumulated.
@@ -152,9 +182,77 @@ public abstract class AbstractBackup extends Task {
                     continue;
                 }
 
-                processColumnFamily(keyspaceDir.getName(), columnFamilyName, backupDir);
-            } // end processing all CFs for keyspace
-        } // end processing keyspaces under the C* data dir
+                columnFamilyDirs.add(columnFamilyDir);
+            } // end listing all CFs for keyspace
+            backupMetrics
+                    .getStageRecorder(type, keyspaceDir.getName())
+                    .record(Stage.SCAN, System.nanoTime() - start);
+        } // end listing keyspaces under the C* data dir
+
+        columnFamilyDirs.sort(Comparator.comparingInt(dir -> getTier(priorityTiers, dir)));
+        for (File columnFamilyDir : columnFamilyDirs) {
+            File uploadDir = getUploadDir(new File(columnFamilyDir, monitoringFolder));
+            File[] files = uploadDir == null ? null : uploadDir.listFiles();
+            if (files == null) continue;
+            String keyspace = columnFamilyDir.getParentFile().getName();
+            for (File file : files)
+                if (file.isFile()) transferProgress.plan(keyspace, file.length());
+        }
+        transferProgress.seal();
+        PriorityTiers.Progress progress =
+                priorityTiers.newProgress(
+                        priorityTiers.isEmpty() ? tier -> {} : this::tierCompleted);
+        for (File columnFamilyDir : columnFamilyDirs) {
+            String keyspace = columnFamilyDir.getParentFile().getName();
+            String columnFamilyName = columnFamilyDir.getName().split("-")[0];
+            progress.add(getTier(priorityTiers, columnFamilyDir), columnFamilyDir.getPath());
+            processColumnFamily(
+                    keyspace, columnFamilyName, new File(columnFamilyDir, monitoringFolder));
+            progress.done(columnFamilyDir.getPath());
+        }
+        progress.seal();
+        transferProgress.finish();
+    }
+
+    private static int getTier(PriorityTiers priorityTiers, File columnFamilyDir) {
+        return priorityTiers.getTier(
+                columnFamilyDir.getParentFile().getName(), columnFamilyDir.getName());
+    }
+
+    /**
+     * Called once all the column families of a priority tier are processed.
+     *
+     * @param tier name of the tier.
+     */
+    protected void tierCompleted(String tier) {
+        logger.info("Completed priority tier: {}", tier);
+    }
+
+    /**
+     * Directory of a column family whose files are uploaded by {@link #processColumnFamily}, to
+     * plan the progress of the backup before any file is uploaded.
+     *
+     * @param backupDir Location of the backup/snapshot directory in that columnfamily.
+     * @return directory of the files to upload, or null, if the progress is not tracked.
+     */
+    protected File getUploadDir(File backupDir) {
+        return null;
+    }
+
+    /**
+     * Copy of a local file which is already on the remote file system, so that it is not uploaded
+     * again.
+     *
+     * @param bp local file to upload.
+     * @return the copy, or null, if the file has to be uploaded.
+     */
+    protected AbstractBackupPath getUploadedCopy(AbstractBackupPath bp) {
+        return null;
+    }
+
+    /** @return progress of the files uploaded by the current or last backup. */
+    public TransferProgress getProgress() {
+        return transferProgress;
     }
 
     /**
@@ -16,6 +16,7 @@
  */
 package com.netflix.priam.backup;
 
+import com.google.common.hash.Hashing;
 import com.google.inject.ImplementedBy;
 import com.netflix.priam.aws.S3BackupPath;
 import com.netflix.priam.config.IConfiguration;
@@ -24,8 +25,12 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.regex.Pattern;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
@@ -40,6 +45,9 @@ public abstract class AbstractBackupPath implements Comparable<AbstractBackupPat
     private static final String FMT = "yyyyMMddHHmm";
     private static final DateTimeFormatter DATE_FORMAT = DateTimeFormat.forPattern(FMT);
     public static final char PATH_SEP = File.separatorChar;
+    public static final int MAX_SHARDS = 256;
+    // Shard of the remote key e.g. s0a, see IConfiguration#getBackupShardCount.
+    public static final Pattern SHARD_PATTERN = Pattern.compile("s[0-9a-f]{2}");
 
     public enum BackupFileType {
         SNAP,
@@ -66,6 +74,8 @@ public abstract class AbstractBackupPath implements Comparable<AbstractBackupPat
     protected Date time;
     private long size; // uncompressed file size
     private long compressedFileSize = 0;
+    private String eTag;
+    private String checksum;
     protected final InstanceIdentity instanceIdentity;
     protected final IConfiguration config;
     private File backupFile;
@@ -77,6 +87,24 @@ public abstract class AbstractBackupPath implements Comparable<AbstractBackupPat
         this.config = config;
     }
 
+    /**
+     * Get the shard of a remote key.
+     *
+     * @param shards number of shards, see {@link IConfiguration#getBackupShardCount()}.
+     * @param token token of the node which owns the key.
+     * @param name name which spreads the keys of a node across the shards e.g. file name.
+     * @return shard of the key, or empty string, if keys are not sharded.
+     */
+    public static String getShard(int shards, String token, String name) {
+        shards = Math.min(shards, MAX_SHARDS);
+        if (shards <= 0) return "";
+        int hash =
+                Hashing.murmur3_32()
+                        .hashString(token + PATH_SEP + name, StandardCharsets.UTF_8)
+                        .asInt();
+        return String.format("s%02x", Math.floorMod(hash, shards));
+    }
+
     public static String formatDate(Date d) {
         return new DateTime(d).toString(FMT);
     }
@@ -176,6 +204,9 @@ public abstract class AbstractBackupPath implements Comparable<AbstractBackupPat
     /** Get remote prefix for this path object */
     public abstract String getRemotePath();
 
+    /** Get the location of the copy of this snapshot meta file under the meta index */
+    public abstract String getRemoteMetaIndexPath();
+
     /** Parses a fully constructed remote path */
     public abstract void parseRemote(String remoteFilePath);
 
@@ -187,9 +218,23 @@ public abstract class AbstractBackupPath implements Comparable<AbstractBackupPat
      */
     public abstract String remotePrefix(Date start, Date end, String location);
 
+    /**
+     * Provides a common prefix that matches all snapshot meta index entries that fall between the
+     * start and end time
+     */
+    public abstract String remoteMetaIndexPrefix(Date start, Date end, String location);
+
     /** Provides the cluster prefix */
     public abstract String clusterPrefix(String location);
 
+    /**
+     * Provides the prefixes to list for a prefix built by {@link #remotePrefix(Date, Date,
+     * String)}, one for each shard if remote keys are sharded.
+     */
+    public List<String> shardPrefixes(String prefix) {
+        return Collections.singletonList(prefix);
+    }
+
     public BackupFileType getType() {
         return type;
     }
@@ -249,6 +294,24 @@ public abstract class AbstractBackupPath implements Comparable<AbstractBackupPat
         this.compressedFileSize = val;
     }
 
+    /** @return entity tag of the remote object, or null if not known. */
+    public String getETag() {
+        return eTag;
+    }
+
+    public void setETag(String eTag) {
+        this.eTag = eTag;
+    }
+
+    /** @return CRC32C of the original file, recorded when it was uploaded, or null if not known. */
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
+
     public File getBackupFile() {
         return backupFile;
     }
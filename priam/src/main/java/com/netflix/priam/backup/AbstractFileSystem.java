@@ -17,17 +17,26 @@
 
 package com.netflix.priam.backup;
 
+import com.google.common.util.concurrent.RateLimiter;
 import com.google.inject.Inject;
 import com.netflix.priam.config.IConfiguration;
 import com.netflix.priam.merics.BackupMetrics;
+import com.netflix.priam.merics.BackupMetrics.Stage;
 import com.netflix.priam.notification.BackupEvent;
 import com.netflix.priam.notification.BackupNotificationMgr;
 import com.netflix.priam.notification.EventGenerator;
 import com.netflix.priam.notification.EventObserver;
 import com.netflix.priam.scheduler.BlockingSubmitThreadPoolExecutor;
 import com.netflix.priam.utils.BoundedExponentialRetryCallable;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spectator.api.histogram.PercentileTimer;
 import com.netflix.spectator.api.patterns.PolledMeter;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.Set;
 import java.util.concurrent.*;
@@ -47,15 +56,23 @@ public abstract class AbstractFileSystem implements IBackupFileSystem, EventGene
             new CopyOnWriteArrayList<>();
     protected final BackupMetrics backupMetrics;
     private final Set<Path> tasksQueued;
-    private final ThreadPoolExecutor fileUploadExecutor;
+    private final PriorityTransferScheduler fileUploadScheduler;
     private final ThreadPoolExecutor fileDownloadExecutor;
+    private final TransferTraces transferTraces;
+    // trace of the file being transferred by the current thread, see getCurrentTrace.
+    private final ThreadLocal<TransferTrace> currentTrace = new ThreadLocal<>();
+    // priority class of the file being uploaded by the current thread.
+    private final ThreadLocal<PriorityTransferScheduler.Priority> currentPriority =
+            new ThreadLocal<>();
 
     @Inject
     public AbstractFileSystem(
             IConfiguration configuration,
             BackupMetrics backupMetrics,
-            BackupNotificationMgr backupNotificationMgr) {
+            BackupNotificationMgr backupNotificationMgr,
+            TransferTraces transferTraces) {
         this.backupMetrics = backupMetrics;
+        this.transferTraces = transferTraces;
         // Add notifications.
         this.addObserver(backupNotificationMgr);
         tasksQueued = new ConcurrentHashMap<>().newKeySet();
@@ -64,16 +81,18 @@ public abstract class AbstractFileSystem implements IBackupFileSystem, EventGene
         files for "sync" feature which might compete with backups for scheduling.
         Also, we may want to have different TIMEOUT for each kind of operation (upload/download) based on our file system choices.
         */
-        BlockingQueue<Runnable> uploadQueue =
-                new ArrayBlockingQueue<>(configuration.getBackupQueueSize());
+        this.fileUploadScheduler =
+                new PriorityTransferScheduler(
+                        "upload",
+                        configuration.getBackupThreads(),
+                        configuration.getBackupQueueSize(),
+                        configuration.getUploadTimeout(),
+                        configuration.getUploadPriorityWeights(),
+                        configuration.getUploadPriorityMaxWaitSeconds(),
+                        backupMetrics);
         PolledMeter.using(backupMetrics.getRegistry())
                 .withName(backupMetrics.uploadQueueSize)
-                .monitorSize(uploadQueue);
-        this.fileUploadExecutor =
-                new BlockingSubmitThreadPoolExecutor(
-                        configuration.getBackupThreads(),
-                        uploadQueue,
-                        configuration.getUploadTimeout());
+                .monitorValue(fileUploadScheduler, PriorityTransferScheduler::size);
 
         BlockingQueue<Runnable> downloadQueue =
                 new ArrayBlockingQueue<>(configuration.getDownloadQueueSize());
@@ -81,10 +100,36 @@ public abstract class AbstractFileSystem implements IBackupFileSystem, EventGene
                 .withName(backupMetrics.downloadQueueSize)
                 .monitorSize(downloadQueue);
         this.fileDownloadExecutor =
-                new BlockingSubmitThreadPoolExecutor(
+                newTransferExecutor(
+                        "download",
                         configuration.getRestoreThreads(),
                         downloadQueue,
-                        configuration.getDownloadTimeout());
+                        configuration.getDownloadTimeout(),
+                        configuration);
+    }
+
+    /**
+     * Executor which blocks the submitters while the queue is full. The time tasks wait in the
+     * queue and run are recorded as histograms tagged with the name of the executor.
+     */
+    protected final BlockingSubmitThreadPoolExecutor newTransferExecutor(
+            String name,
+            int threads,
+            BlockingQueue<Runnable> queue,
+            long timeout,
+            IConfiguration configuration) {
+        Registry registry = backupMetrics.getRegistry();
+        return new BlockingSubmitThreadPoolExecutor(
+                threads,
+                queue,
+                timeout,
+                configuration.isTransferQueueFair(),
+                PercentileTimer.get(
+                        registry,
+                        registry.createId(BackupMetrics.executorQueueWait, "executor", name)),
+                PercentileTimer.get(
+                        registry,
+                        registry.createId(BackupMetrics.executorRunTime, "executor", name)));
     }
 
     @Override
@@ -101,34 +146,118 @@ public abstract class AbstractFileSystem implements IBackupFileSystem, EventGene
     @Override
     public void downloadFile(final Path remotePath, final Path localPath, final int retry)
             throws BackupRestoreException {
+        download(remotePath, localPath, retry, false);
+    }
+
+    @Override
+    public void downloadRawFile(final Path remotePath, final Path localPath, final int retry)
+            throws BackupRestoreException {
+        download(remotePath, localPath, retry, true);
+    }
+
+    private void download(
+            final Path remotePath, final Path localPath, final int retry, final boolean raw)
+            throws BackupRestoreException {
         // TODO: Should we download the file if localPath already exists?
         if (remotePath == null) return;
 
         logger.info("Downloading file: {} to location: {}", remotePath, localPath);
+        TransferTrace trace =
+                transferTraces.start(
+                        TransferTrace.Direction.DOWNLOAD, remotePath.toString(), getCodec());
+        currentTrace.set(trace);
+        long fileSize = 0;
         try {
             new BoundedExponentialRetryCallable<Void>(500, 10000, retry) {
                 @Override
                 public Void retriableCall() throws Exception {
-                    downloadFileImpl(remotePath, localPath);
+                    trace.attempt();
+                    long start = System.nanoTime();
+                    if (raw) downloadRawFileImpl(remotePath, localPath);
+                    else downloadFileImpl(remotePath, localPath);
+                    trace.record(Stage.GET, System.nanoTime() - start);
                     return null;
                 }
             }.call();
             // Note we only downloaded the bytes which are represented on file system (they are
             // compressed and maybe encrypted).
             // File size after decompression or decryption might be more/less.
-            backupMetrics.recordDownloadRate(getFileSize(remotePath));
+            fileSize = getFileSize(remotePath);
+            backupMetrics.recordDownloadRate(fileSize);
             backupMetrics.incrementValidDownloads();
+            trace.finish(fileSize, true);
             logger.info("Successfully downloaded file: {} to location: {}", remotePath, localPath);
         } catch (Exception e) {
             backupMetrics.incrementInvalidDownloads();
+            trace.finish(fileSize, false);
             logger.error("Error while downloading file: {} to location: {}", remotePath, localPath);
             throw new BackupRestoreException(e.getMessage());
+        } finally {
+            currentTrace.remove();
+            transferTraces.add(trace);
         }
     }
 
     protected abstract void downloadFileImpl(final Path remotePath, final Path localPath)
             throws BackupRestoreException;
 
+    /**
+     * Download the file as it is stored on the remote file system. File systems which decompress or
+     * decrypt in {@link #downloadFileImpl(Path, Path)} should override this.
+     */
+    protected void downloadRawFileImpl(final Path remotePath, final Path localPath)
+            throws BackupRestoreException {
+        downloadFileImpl(remotePath, localPath);
+    }
+
+    /**
+     * Downloads the file to a temporary file, which is removed once the stream is closed. The bytes
+     * of the file are acquired from the rate limiter before it is downloaded. File systems which
+     * can read the file in ranges should override this to stream it instead.
+     */
+    @Override
+    public InputStream openRawStream(Path remotePath, RateLimiter rateLimiter)
+            throws BackupRestoreException {
+        for (long left = Math.max(1, getFileSize(remotePath)); left > 0; left -= Integer.MAX_VALUE)
+            rateLimiter.acquire((int) Math.min(left, Integer.MAX_VALUE));
+        return openDownloadedStream(remotePath);
+    }
+
+    /**
+     * Downloads the file to a temporary file like {@link #openRawStream(Path, RateLimiter)}, i.e.
+     * outside the data directory where the file is restored.
+     */
+    @Override
+    public RawFileStream openRawStream(Path remotePath) throws BackupRestoreException {
+        String checksum = getChecksum(remotePath);
+        return new RawFileStream(openDownloadedStream(remotePath), checksum);
+    }
+
+    private InputStream openDownloadedStream(Path remotePath) throws BackupRestoreException {
+        File file = null;
+        try {
+            file = File.createTempFile("raw", ".download");
+            downloadRawFileImpl(remotePath, file.toPath());
+            final File downloaded = file;
+            return new FilterInputStream(new FileInputStream(downloaded)) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        FileUtils.deleteQuietly(downloaded);
+                    }
+                }
+            };
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(file);
+            throw new BackupRestoreException("Unable to download " + remotePath, e);
+        } catch (BackupRestoreException | RuntimeException e) {
+            FileUtils.deleteQuietly(file);
+            throw e;
+        }
+    }
+
     @Override
     public Future<Path> asyncUploadFile(
             final Path localPath,
@@ -137,7 +266,8 @@ public abstract class AbstractFileSystem implements IBackupFileSystem, EventGene
             final int retry,
             final boolean deleteAfterSuccessfulUpload)
             throws FileNotFoundException, RejectedExecutionException, BackupRestoreException {
-        return fileUploadExecutor.submit(
+        return fileUploadScheduler.submit(
+                PriorityTransferScheduler.Priority.of(path == null ? null : path.getType()),
                 () -> {
                     uploadFile(localPath, remotePath, path, retry, deleteAfterSuccessfulUpload);
                     return localPath;
@@ -164,18 +294,27 @@ public abstract class AbstractFileSystem implements IBackupFileSystem, EventGene
 
         if (tasksQueued.add(localPath)) {
             logger.info("Uploading file: {} to location: {}", localPath, remotePath);
+            TransferTrace trace =
+                    transferTraces.start(
+                            TransferTrace.Direction.UPLOAD, remotePath.toString(), getCodec());
+            currentTrace.set(trace);
+            currentPriority.set(PriorityTransferScheduler.Priority.of(path.getType()));
+            long uploadedFileSize = 0;
             try {
                 notifyEventStart(new BackupEvent(path));
-                long uploadedFileSize =
-                        new BoundedExponentialRetryCallable<Long>(500, 10000, retry) {
-                            @Override
-                            public Long retriableCall() throws Exception {
-                                return uploadFileImpl(localPath, remotePath);
-                            }
-                        }.call();
+                uploadedFileSize =
+                        retryUpload(
+                                () -> {
+                                    trace.attempt();
+                                    return uploadFileImpl(localPath, remotePath);
+                                },
+                                retry);
                 backupMetrics.recordUploadRate(uploadedFileSize);
                 backupMetrics.incrementValidUploads();
+                trace.finish(uploadedFileSize, true);
                 path.setCompressedFileSize(uploadedFileSize);
+                path.setETag(trace.getETag());
+                path.setChecksum(trace.getChecksum());
                 notifyEventSuccess(new BackupEvent(path));
                 logger.info(
                         "Successfully uploaded file: {} to location: {}", localPath, remotePath);
@@ -188,6 +327,7 @@ public abstract class AbstractFileSystem implements IBackupFileSystem, EventGene
 
             } catch (Exception e) {
                 backupMetrics.incrementInvalidUploads();
+                trace.finish(uploadedFileSize, false);
                 notifyEventFailure(new BackupEvent(path));
                 logger.error(
                         "Error while uploading file: {} to location: {}", localPath, remotePath);
@@ -195,6 +335,9 @@ public abstract class AbstractFileSystem implements IBackupFileSystem, EventGene
             } finally {
                 // Remove the task from the list so if we try to upload file ever again, we can.
                 tasksQueued.remove(localPath);
+                currentTrace.remove();
+                currentPriority.remove();
+                transferTraces.add(trace);
             }
         } else logger.info("Already in queue, no-op.  File: {}", localPath);
     }
@@ -202,6 +345,51 @@ public abstract class AbstractFileSystem implements IBackupFileSystem, EventGene
     protected abstract long uploadFileImpl(final Path localPath, final Path remotePath)
             throws BackupRestoreException;
 
+    @Override
+    public void setSnapshotUploadRate(double bytesPerSecond) {
+        fileUploadScheduler.setRate(PriorityTransferScheduler.Priority.SNAPSHOT, bytesPerSecond);
+    }
+
+    /**
+     * Wait for the rate of the priority class of the file the current thread is uploading, see
+     * {@link #setSnapshotUploadRate(double)}. File systems which throttle uploads call this from
+     * {@link #uploadFileImpl(Path, Path)} along with their own throttle.
+     *
+     * @param bytes number of bytes about to be uploaded.
+     * @return seconds waited.
+     */
+    protected final double acquireUploadClassRate(int bytes) {
+        return fileUploadScheduler.acquire(currentPriority.get(), bytes);
+    }
+
+    /**
+     * Trace of the file the current thread is uploading or downloading, to record the stages of
+     * the file from {@link #uploadFileImpl(Path, Path)} and {@link #downloadFileImpl(Path, Path)}.
+     *
+     * @return trace of the current file, or null, if the thread is not transferring a file.
+     */
+    protected final TransferTrace getCurrentTrace() {
+        return currentTrace.get();
+    }
+
+    /** @return compression and encryption of the files on the remote file system. */
+    protected String getCodec() {
+        return "none";
+    }
+
+    /**
+     * Retry the upload of a file. File systems which control the retries of all the upload
+     * threads together should override this.
+     */
+    protected <T> T retryUpload(final Callable<T> upload, final int retry) throws Exception {
+        return new BoundedExponentialRetryCallable<T>(500, 10000, retry) {
+            @Override
+            public T retriableCall() throws Exception {
+                return upload.call();
+            }
+        }.call();
+    }
+
     @Override
     public final void addObserver(EventObserver<BackupEvent> observer) {
         if (observer == null) throw new NullPointerException("observer must not be null.");
@@ -17,12 +17,16 @@ import com.netflix.priam.utils.DateUtil;
 import com.netflix.priam.utils.GsonJsonSerializer;
 import java.io.Serializable;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /** POJO to encapsulate the metadata for a snapshot Created by aagrawal on 1/31/17. */
 public final class BackupMetadata implements Serializable {
+    // Fixed to the version before the tier completion times, so status saved by it can be read.
+    private static final long serialVersionUID = 927594328988655959L;
     private static final Logger logger = LoggerFactory.getLogger(BackupMetadata.class);
 
     private String snapshotDate;
@@ -30,6 +34,7 @@ public final class BackupMetadata implements Serializable {
     private Date start, completed;
     private Status status;
     private String snapshotLocation;
+    private LinkedHashMap<String, Date> tierCompleted;
 
     public BackupMetadata(String token, Date start) throws Exception {
         if (start == null || token == null || StringUtils.isEmpty(token))
@@ -146,6 +151,26 @@ public final class BackupMetadata implements Serializable {
         this.snapshotLocation = snapshotLocation;
     }
 
+    /**
+     * Get the completion date of each priority tier of the snapshot, in tier order.
+     *
+     * @return completion date by tier, empty if the snapshot has no tier completed.
+     */
+    public synchronized Map<String, Date> getTierCompleted() {
+        return tierCompleted == null ? new LinkedHashMap<>() : new LinkedHashMap<>(tierCompleted);
+    }
+
+    /**
+     * Set the completion date of a priority tier of the snapshot.
+     *
+     * @param tier name of the tier.
+     * @param completed date of completion of the tier.
+     */
+    public synchronized void setTierCompleted(String tier, Date completed) {
+        if (tierCompleted == null) tierCompleted = new LinkedHashMap<>();
+        tierCompleted.put(tier, completed);
+    }
+
     @Override
     public String toString() {
         return GsonJsonSerializer.getGson().toJson(this);
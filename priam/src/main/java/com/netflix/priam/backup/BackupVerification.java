@@ -13,18 +13,23 @@
  */
 package com.netflix.priam.backup;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
+import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
 import com.netflix.priam.config.IConfiguration;
 import com.netflix.priam.utils.DateUtil;
+import java.io.File;
 import java.io.FileReader;
-import java.nio.file.FileSystems;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
-import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.io.FileUtils;
+import org.json.simple.JSONArray;
 import org.json.simple.parser.JSONParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,18 +40,33 @@ import org.slf4j.LoggerFactory;
  * BackupMetadata that needs to be verified. Since one backupmetadata can have multiple start time,
  * provide one startTime if interested in verifying one particular backup. Leave startTime as null
  * to get the latest snapshot for the provided BackupMetadata.
+ *
+ * <p>Files are compared by their remote path, and by the size and entity tag they were uploaded
+ * with, from the snapshot manifest, if there is one. Snapshots found valid are cached for a while,
+ * so verifying them again does not list the backup location.
  */
 @Singleton
 public class BackupVerification {
 
     private static final Logger logger = LoggerFactory.getLogger(BackupVerification.class);
     private final IBackupFileSystem bkpStatusFs;
+    private static final long VERIFIED_CACHE_MINUTES = 60;
     private final IConfiguration config;
+    private final Provider<AbstractBackupPath> pathFactory;
+    private final Cache<String, BackupVerificationResult> verified =
+            CacheBuilder.newBuilder()
+                    .maximumSize(100)
+                    .expireAfterWrite(VERIFIED_CACHE_MINUTES, TimeUnit.MINUTES)
+                    .build();
 
     @Inject
-    BackupVerification(@Named("backup") IBackupFileSystem bkpStatusFs, IConfiguration config) {
+    BackupVerification(
+            @Named("backup") IBackupFileSystem bkpStatusFs,
+            IConfiguration config,
+            Provider<AbstractBackupPath> pathFactory) {
         this.bkpStatusFs = bkpStatusFs;
         this.config = config;
+        this.pathFactory = pathFactory;
     }
 
     public BackupVerificationResult verifyBackup(List<BackupMetadata> metadata, Date startTime) {
@@ -85,6 +105,11 @@ public class BackupVerification {
                 "Latest/Requested snapshot date found: {}, for selected/provided date: {}",
                 result.snapshotTime,
                 result.selectedDate);
+        BackupVerificationResult cached = verified.getIfPresent(result.snapshotTime);
+        if (cached != null) {
+            logger.info("Snapshot {} was verified recently.", result.snapshotTime);
+            return cached;
+        }
 
         // Get Backup File Iterator
         String prefix = config.getBackupPrefix();
@@ -102,16 +127,20 @@ public class BackupVerification {
 
         result.backupFileListAvail = true;
 
-        List<AbstractBackupPath> metas = new LinkedList<>();
-        List<String> s3Listing = new ArrayList<>();
-
+        // Files listed by the remote path, along with the size and entity tag of each object.
+        Map<String, AbstractBackupPath> listing = new HashMap<>();
+        AbstractBackupPath meta = null;
+        AbstractBackupPath manifestPath = null;
         while (backupfiles.hasNext()) {
             AbstractBackupPath path = backupfiles.next();
-            if (path.getFileName().equalsIgnoreCase("meta.json")) metas.add(path);
-            else s3Listing.add(path.getRemotePath());
+            if (path.getFileName().equalsIgnoreCase(MetaData.SNAPSHOT_META_FILE)) meta = path;
+            else if (path.getType() == BackupFileType.META
+                    && path.getFileName().equals(SnapshotManifest.SNAPSHOT_MANIFEST_FILE))
+                manifestPath = path;
+            else listing.put(path.getRemotePath(), path);
         }
 
-        if (metas.size() == 0) {
+        if (meta == null) {
             logger.error(
                     "No meta found for snapshotdate: {}", DateUtil.formatyyyyMMddHHmm(latestDate));
             return result;
@@ -119,45 +148,101 @@ public class BackupVerification {
 
         result.metaFileFound = true;
         // Download meta.json from backup location and uncompress it.
-        List<String> metaFileList = new ArrayList<>();
+        Set<String> metaFileList = new HashSet<>();
         try {
-            Path metaFileLocation =
-                    FileSystems.getDefault().getPath(config.getDataFileLocation(), "tmp_meta.json");
-            bkpStatusFs.downloadFile(Paths.get(metas.get(0).getRemotePath()), metaFileLocation, 5);
-            logger.info(
-                    "Meta file successfully downloaded to localhost: {}",
-                    metaFileLocation.toString());
-
-            JSONParser jsonParser = new JSONParser();
-            org.json.simple.JSONArray fileList =
-                    (org.json.simple.JSONArray)
-                            jsonParser.parse(new FileReader(metaFileLocation.toFile()));
-            for (Object aFileList : fileList) metaFileList.add(aFileList.toString());
-
+            File metaFile = download(meta);
+            try (FileReader reader = new FileReader(metaFile)) {
+                JSONArray fileList = (JSONArray) new JSONParser().parse(reader);
+                for (Object aFileList : fileList) metaFileList.add(aFileList.toString());
+            } finally {
+                FileUtils.deleteQuietly(metaFile);
+            }
         } catch (Exception e) {
-            logger.error("Error while fetching meta.json from path: {}", metas.get(0), e);
+            logger.error("Error while fetching meta.json from path: {}", meta.getRemotePath(), e);
             return result;
         }
 
-        if (metaFileList.isEmpty() && s3Listing.isEmpty()) {
+        if (metaFileList.isEmpty() && listing.isEmpty()) {
             logger.info(
                     "Uncommon Scenario: Both meta file and backup filesystem listing is empty. Considering this as success");
             result.valid = true;
             return result;
         }
 
+        Set<String> snapshotListing = new HashSet<>(listing.keySet());
+        SnapshotManifest manifest = null;
+        if (manifestPath != null) {
+            try {
+                File manifestFile = download(manifestPath);
+                try {
+                    manifest = SnapshotManifest.read(manifestFile);
+                } finally {
+                    FileUtils.deleteQuietly(manifestFile);
+                }
+            } catch (Exception e) {
+                logger.warn(
+                        "Error while fetching manifest from path: {}, verifying names only",
+                        manifestPath.getRemotePath(),
+                        e);
+            }
+        }
+
+        // An incremental snapshot refers to files uploaded by earlier snapshots, which are not in
+        // the listing of this snapshot. Each earlier snapshot is listed once.
+        Set<Date> listedTimes = new HashSet<>();
+        listedTimes.add(strippedMsSnapshotTime);
+        for (String remotePath : metaFileList) {
+            if (listing.containsKey(remotePath)) continue;
+            AbstractBackupPath path = pathFactory.get();
+            path.parseRemote(remotePath);
+            if (!listedTimes.add(path.getTime())) continue;
+            Iterator<AbstractBackupPath> earlier =
+                    bkpStatusFs.list(prefix, path.getTime(), path.getTime());
+            while (earlier.hasNext()) {
+                AbstractBackupPath file = earlier.next();
+                listing.put(file.getRemotePath(), file);
+            }
+        }
+
         // Atleast meta file or s3 listing contains some file.
-        result.filesInS3Only = new ArrayList<>(s3Listing);
-        result.filesInS3Only.removeAll(metaFileList);
-        result.filesInMetaOnly = new ArrayList<>(metaFileList);
-        result.filesInMetaOnly.removeAll(s3Listing);
-        result.filesMatched =
-                (ArrayList<String>) CollectionUtils.intersection(metaFileList, s3Listing);
+        result.filesInMetaOnly = new ArrayList<>();
+        result.filesMismatched = new ArrayList<>();
+        result.filesMatched = new ArrayList<>();
+        for (String remotePath : metaFileList) {
+            AbstractBackupPath listed = listing.remove(remotePath);
+            SnapshotManifest.Entry expected = manifest == null ? null : manifest.get(remotePath);
+            if (listed == null) result.filesInMetaOnly.add(remotePath);
+            else if (expected != null && !expected.matches(listed)) {
+                logger.warn(
+                        "File: {} expected size: {}, etag: {}, found size: {}, etag: {}",
+                        remotePath,
+                        expected.getSize(),
+                        expected.getETag(),
+                        listed.getCompressedFileSize(),
+                        listed.getETag());
+                result.filesMismatched.add(remotePath);
+            } else result.filesMatched.add(remotePath);
+        }
+        // Files of this snapshot which are not in the meta file.
+        result.filesInS3Only = new ArrayList<>();
+        for (String remotePath : snapshotListing)
+            if (!metaFileList.contains(remotePath)) result.filesInS3Only.add(remotePath);
 
         // There could be a scenario that backupfilesystem has more files than meta file. e.g. some
         // leftover objects
-        if (result.filesInMetaOnly.size() == 0) result.valid = true;
+        if (result.filesInMetaOnly.isEmpty() && result.filesMismatched.isEmpty()) {
+            result.valid = true;
+            verified.put(result.snapshotTime, result);
+        }
 
         return result;
     }
+
+    /* Download a file to a temporary file, which is deleted by the caller. */
+    private File download(AbstractBackupPath path) throws Exception {
+        File file = File.createTempFile("verify", "_" + path.getFileName());
+        bkpStatusFs.downloadFile(Paths.get(path.getRemotePath()), file.toPath(), 5);
+        logger.info("{} successfully downloaded to localhost: {}", path.getRemotePath(), file);
+        return file;
+    }
 }
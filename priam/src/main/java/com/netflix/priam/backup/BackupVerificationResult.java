@@ -29,4 +29,6 @@ public class BackupVerificationResult {
     public List<String> filesInMetaOnly = null;
     public List<String> filesInS3Only = null;
     public List<String> filesMatched = null;
+    // Files whose size or entity tag differs from the one they were uploaded with.
+    public List<String> filesMismatched = null;
 }
@@ -18,6 +18,7 @@ import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import com.netflix.priam.backup.IMessageObserver.BACKUP_MESSAGE_TYPE;
 import com.netflix.priam.config.IConfiguration;
+import com.netflix.priam.merics.BackupMetrics;
 import com.netflix.priam.scheduler.SimpleTimer;
 import com.netflix.priam.scheduler.TaskTimer;
 import java.io.File;
@@ -41,8 +42,9 @@ public class CommitLogBackupTask extends AbstractBackup {
             IConfiguration config,
             Provider<AbstractBackupPath> pathFactory,
             CommitLogBackup clBackup,
-            IFileSystemContext backupFileSystemCtx) {
-        super(config, backupFileSystemCtx, pathFactory);
+            IFileSystemContext backupFileSystemCtx,
+            BackupMetrics backupMetrics) {
+        super(config, backupFileSystemCtx, pathFactory, backupMetrics);
         this.clBackup = clBackup;
     }
 
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.backup;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/** Result of the deep verification of a snapshot, see {@link DeepVerifyTask}. */
+public class DeepVerifyResult {
+    public String snapshotTime = null;
+    public Date startTime = null;
+    public Date endTime = null;
+    public boolean manifestFound = false;
+    // Files of the snapshot, and files which have a checksum to verify.
+    public int filesInSnapshot = 0;
+    public int filesWithChecksum = 0;
+    public int filesSampled = 0;
+    public int filesVerified = 0;
+    public long bytesVerified = 0;
+    // Percentage of the files of the snapshot whose content is verified.
+    public double coverage = 0;
+    // Files whose content does not match the checksum recorded when they were uploaded.
+    public List<String> filesCorrupt = new ArrayList<>();
+    // Files which could not be read, decrypted or decompressed.
+    public List<String> filesUnreadable = new ArrayList<>();
+
+    /** @return true if every file sampled matches its checksum. */
+    public boolean isValid() {
+        return manifestFound && filesCorrupt.isEmpty() && filesUnreadable.isEmpty();
+    }
+}
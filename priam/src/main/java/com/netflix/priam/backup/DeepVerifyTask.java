@@ -0,0 +1,290 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.backup;
+
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
+import com.netflix.priam.compress.ICompression;
+import com.netflix.priam.config.IConfiguration;
+import com.netflix.priam.cred.ICredentialGeneric;
+import com.netflix.priam.cryptography.IFileCryptography;
+import com.netflix.priam.merics.BackupMetrics;
+import com.netflix.priam.scheduler.CronTimer;
+import com.netflix.priam.scheduler.NamedThreadPoolExecutor;
+import com.netflix.priam.scheduler.Task;
+import com.netflix.priam.scheduler.TaskTimer;
+import com.netflix.priam.utils.DateUtil;
+import com.netflix.spectator.api.patterns.PolledMeter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Verifies the content of a random sample of the files of the latest snapshot. Each file sampled is
+ * read back from the remote file system, decrypted and decompressed as a restore would, and the
+ * CRC32C of its content is compared to the checksum recorded in the snapshot manifest when the
+ * file was uploaded. Nothing is written to disk, so it can run on a live node.
+ *
+ * <p>Listing the backup, as {@link BackupVerification} does, proves the objects exist; this proves
+ * that they can be restored. Files are read at {@link IConfiguration#getDeepVerifyThrottle()},
+ * not at the download rate of restores.
+ */
+@Singleton
+public class DeepVerifyTask extends Task {
+    public static final String JOBNAME = "DeepVerifyTask";
+    private static final Logger logger = LoggerFactory.getLogger(DeepVerifyTask.class);
+    private final IBackupFileSystem fs;
+    private final IBackupStatusMgr backupStatusMgr;
+    private final ICompression compress;
+    private final IFileCryptography fileCryptography;
+    private final Provider<ICredentialGeneric> pgpCredential;
+    private final BackupMetrics backupMetrics;
+    private final Random random = new Random();
+    private volatile DeepVerifyResult lastResult;
+
+    @Inject
+    public DeepVerifyTask(
+            IConfiguration config,
+            IFileSystemContext backupFileSystemCtx,
+            IBackupStatusMgr backupStatusMgr,
+            ICompression compress,
+            @Named("filecryptoalgorithm") IFileCryptography fileCryptography,
+            @Named("pgpcredential") Provider<ICredentialGeneric> pgpCredential,
+            BackupMetrics backupMetrics) {
+        super(config);
+        this.fs = backupFileSystemCtx.getFileStrategy(config);
+        this.backupStatusMgr = backupStatusMgr;
+        this.compress = compress;
+        this.fileCryptography = fileCryptography;
+        this.pgpCredential = pgpCredential;
+        this.backupMetrics = backupMetrics;
+        PolledMeter.using(backupMetrics.getRegistry())
+                .withName(BackupMetrics.deepVerifyCoverage)
+                .monitorValue(this, task -> task.lastResult == null ? 0 : task.lastResult.coverage);
+    }
+
+    @Override
+    public void execute() throws Exception {
+        BackupMetadata latest = getLatestSnapshot();
+        if (latest == null) {
+            logger.info("No finished snapshot found to verify");
+            return;
+        }
+        lastResult = verify(latest.getStart());
+        logger.info(
+                "Deep verification of snapshot {}: sampled: {}, verified: {}, corrupt: {}, unreadable: {}",
+                lastResult.snapshotTime,
+                lastResult.filesSampled,
+                lastResult.filesVerified,
+                lastResult.filesCorrupt,
+                lastResult.filesUnreadable);
+    }
+
+    /** @return result of the last deep verification, or null if none ran yet. */
+    public DeepVerifyResult getLastResult() {
+        return lastResult;
+    }
+
+    private BackupMetadata getLatestSnapshot() {
+        Instant now = DateUtil.getInstant();
+        List<BackupMetadata> metadata = new ArrayList<>();
+        for (Instant day : new Instant[] {now, now.minus(1, ChronoUnit.DAYS)}) {
+            List<BackupMetadata> found = backupStatusMgr.locate(Date.from(day));
+            if (found != null) metadata.addAll(found);
+        }
+        BackupMetadata latest = null;
+        for (BackupMetadata backupMetadata : metadata)
+            if (backupMetadata.getStatus() == Status.FINISHED
+                    && (latest == null || latest.getStart().before(backupMetadata.getStart())))
+                latest = backupMetadata;
+        return latest;
+    }
+
+    /**
+     * Verify a sample of the files of a snapshot.
+     *
+     * @param snapshotTime start time of the snapshot.
+     * @return the result of the verification.
+     */
+    public DeepVerifyResult verify(Date snapshotTime) throws Exception {
+        DeepVerifyResult result = new DeepVerifyResult();
+        result.startTime = new Date();
+        result.snapshotTime = DateUtil.formatyyyyMMddHHmm(snapshotTime);
+        Date time = DateUtil.getDate(result.snapshotTime);
+        SnapshotManifest found = null;
+        Iterator<AbstractBackupPath> files = fs.list(config.getBackupPrefix(), time, time);
+        while (files.hasNext()) {
+            AbstractBackupPath path = files.next();
+            if (path.getType() == BackupFileType.META
+                    && path.getFileName().equals(SnapshotManifest.SNAPSHOT_MANIFEST_FILE)) {
+                found = download(path);
+                break;
+            }
+        }
+        if (found == null) {
+            logger.warn("No manifest found for snapshot: {}", result.snapshotTime);
+            result.endTime = new Date();
+            return result;
+        }
+        final SnapshotManifest manifest = found;
+        result.manifestFound = true;
+        result.filesInSnapshot = manifest.size();
+
+        List<String> candidates = new ArrayList<>();
+        for (String remotePath : manifest.getRemotePaths())
+            if (manifest.get(remotePath).getChecksum() != null) candidates.add(remotePath);
+        result.filesWithChecksum = candidates.size();
+        Collections.shuffle(candidates, random);
+        List<String> sample =
+                candidates.subList(
+                        0, sampleSize(candidates.size(), config.getDeepVerifySamplePercent()));
+        result.filesSampled = sample.size();
+
+        int throttle = config.getDeepVerifyThrottle();
+        RateLimiter rateLimiter = RateLimiter.create(throttle < 1 ? Double.MAX_VALUE : throttle);
+        ThreadPoolExecutor executor =
+                new NamedThreadPoolExecutor(config.getDeepVerifyThreads(), JOBNAME);
+        try {
+            List<Future<Outcome>> futures = new ArrayList<>();
+            for (String remotePath : sample)
+                futures.add(
+                        executor.submit(
+                                () ->
+                                        verifyFile(
+                                                remotePath,
+                                                manifest.get(remotePath),
+                                                rateLimiter)));
+            for (int i = 0; i < sample.size(); i++) {
+                String remotePath = sample.get(i);
+                switch (futures.get(i).get()) {
+                    case VERIFIED:
+                        result.filesVerified++;
+                        result.bytesVerified += manifest.get(remotePath).getSize();
+                        break;
+                    case CORRUPT:
+                        result.filesCorrupt.add(remotePath);
+                        break;
+                    case UNREADABLE:
+                        result.filesUnreadable.add(remotePath);
+                        break;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        if (result.filesInSnapshot > 0)
+            result.coverage = 100.0 * result.filesVerified / result.filesInSnapshot;
+        result.endTime = new Date();
+        return result;
+    }
+
+    private enum Outcome {
+        VERIFIED,
+        CORRUPT,
+        UNREADABLE
+    }
+
+    private Outcome verifyFile(
+            String remotePath, SnapshotManifest.Entry expected, RateLimiter rateLimiter) {
+        try (InputStream raw = fs.openRawStream(Paths.get(remotePath), rateLimiter)) {
+            InputStream in = raw;
+            if (config.isEncryptBackupEnabled()) {
+                ICredentialGeneric credential = pgpCredential.get();
+                char[] passPhrase =
+                        new String(credential.getValue(ICredentialGeneric.KEY.PGP_PASSWORD))
+                                .toCharArray();
+                in = fileCryptography.decryptStream(raw, passPhrase, remotePath);
+            }
+            String checksum = checksum(compress, in);
+            if (checksum.equals(expected.getChecksum())) {
+                backupMetrics.incrementDeepVerified(expected.getSize());
+                return Outcome.VERIFIED;
+            }
+            logger.error(
+                    "File: {} has checksum: {}, expected: {}",
+                    remotePath,
+                    checksum,
+                    expected.getChecksum());
+            backupMetrics.incrementDeepVerifyFailures();
+            return Outcome.CORRUPT;
+        } catch (Exception e) {
+            logger.error("Unable to read file: {}", remotePath, e);
+            backupMetrics.incrementDeepVerifyFailures();
+            return Outcome.UNREADABLE;
+        }
+    }
+
+    /**
+     * Decompress a stream and compute the CRC32C of its content, as recorded at upload.
+     *
+     * @param compress compression the file was uploaded with.
+     * @param in compressed content, closed on return.
+     * @return the checksum, in the format of {@link AbstractBackupPath#getChecksum()}.
+     */
+    static String checksum(ICompression compress, InputStream in) throws IOException {
+        HashingOutputStream out =
+                new HashingOutputStream(Hashing.crc32c(), ByteStreams.nullOutputStream());
+        compress.decompressAndClose(in, out);
+        return out.hash().toString();
+    }
+
+    /** @return number of files to verify out of the given number, at least one if there is any. */
+    static int sampleSize(int files, int percent) {
+        if (files == 0 || percent <= 0) return 0;
+        return (int) Math.min(files, (files * (long) percent + 99) / 100);
+    }
+
+    private SnapshotManifest download(AbstractBackupPath path) throws Exception {
+        File file = File.createTempFile("deepverify", "_" + path.getFileName());
+        try {
+            fs.downloadFile(Paths.get(path.getRemotePath()), file.toPath(), 5);
+            return SnapshotManifest.read(file);
+        } finally {
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return JOBNAME;
+    }
+
+    public static TaskTimer getTimer(IConfiguration config) {
+        return CronTimer.getCronTimer(JOBNAME, config.getDeepVerifyCronExpression());
+    }
+}
@@ -14,16 +14,31 @@
  * limitations under the License.
  *
  */
-
 package com.netflix.priam.backup;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.*;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
 import com.google.inject.Inject;
 import com.netflix.priam.config.IConfiguration;
 import com.netflix.priam.health.InstanceState;
-import com.netflix.priam.utils.MaxSizeHashMap;
+import com.netflix.priam.utils.DateUtil;
 import java.io.*;
-import java.util.LinkedList;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
 import javax.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,12 +46,39 @@ import org.slf4j.LoggerFactory;
 /**
  * Default implementation for {@link IBackupStatusMgr}. This will save the snapshot status in local
  * file. Created by aagrawal on 7/11/17.
+ *
+ * <p>The file is a journal with a JSON line for every status change of a snapshot, so a change is
+ * a single append. Besides the recent days cached by {@link BackupStatusMgr}, only the offsets of
+ * the lines of each day are kept in memory, and older days are read from the journal when they are
+ * located. The journal is compacted to the last status of each snapshot at startup and after every
+ * {@value #COMPACT_AFTER_RECORDS} changes, which drops the days older than {@link
+ * IConfiguration#getBackupStatusRetentionDays()}. A partial line left by a crash is ignored. A
+ * status file saved as a serialized map by earlier versions is converted at startup.
  */
 @Singleton
 public class FileSnapshotStatusMgr extends BackupStatusMgr {
     private static final Logger logger = LoggerFactory.getLogger(FileSnapshotStatusMgr.class);
     private static final int IN_MEMORY_SNAPSHOT_CAPACITY = 60;
+    private static final int COMPACT_AFTER_RECORDS = 1000;
+    // First bytes of a Java serialization stream, the format of earlier status files.
+    private static final int SERIALIZED_MAGIC = 0xACED;
+    // Dates are kept to the millisecond, as snapshots are told apart by their start.
+    private static final Gson GSON =
+            new GsonBuilder()
+                    .registerTypeAdapter(
+                            Date.class,
+                            (JsonSerializer<Date>)
+                                    (date, type, context) -> new JsonPrimitive(date.getTime()))
+                    .registerTypeAdapter(
+                            Date.class,
+                            (JsonDeserializer<Date>)
+                                    (json, type, context) -> new Date(json.getAsLong()))
+                    .create();
     private final String filename;
+    private final int retentionDays;
+    // Offsets of the journal lines of each snapshot day, in the order they were appended.
+    private final Map<String, List<Long>> offsets = new HashMap<>();
+    private int appended;
 
     /**
      * Constructor to initialize the file based snapshot status manager.
@@ -51,11 +93,11 @@ public class FileSnapshotStatusMgr extends BackupStatusMgr {
                 IN_MEMORY_SNAPSHOT_CAPACITY,
                 instanceState); // Fetch capacity from properties, if required.
         this.filename = config.getBackupStatusFileLoc();
+        this.retentionDays = config.getBackupStatusRetentionDays();
         init();
     }
 
-    private void init() {
-        // Retrieve entire file and re-populate the list.
+    private synchronized void init() {
         File snapshotFile = new File(filename);
         if (!snapshotFile.exists()) {
             logger.info(
@@ -63,44 +105,46 @@ public class FileSnapshotStatusMgr extends BackupStatusMgr {
             return;
         }
 
-        try (final ObjectInputStream inputStream =
-                new ObjectInputStream(new FileInputStream(snapshotFile))) {
-            backupMetadataMap = (Map<String, LinkedList<BackupMetadata>>) inputStream.readObject();
-            logger.info(
-                    "Snapshot status of size {} fetched successfully from {}",
-                    backupMetadataMap.size(),
-                    filename);
-        } catch (IOException e) {
-            logger.error(
-                    "Error while trying to fetch snapshot status from {}. Error: {}. If this is first time after upgrading Priam, ignore this.",
-                    filename,
-                    e.getLocalizedMessage());
-            e.printStackTrace();
+        Map<String, LinkedList<BackupMetadata>> snapshots;
+        try {
+            if (isSerialized(snapshotFile)) snapshots = readSerialized(snapshotFile);
+            else snapshots = replay(snapshotFile);
+            compact(snapshots);
         } catch (Exception e) {
             logger.error(
                     "Error while trying to fetch snapshot status from {}. Error: {}.",
                     filename,
-                    e.getLocalizedMessage());
-            e.printStackTrace();
+                    e.getLocalizedMessage(),
+                    e);
+            return;
         }
 
-        if (backupMetadataMap == null) backupMetadataMap = new MaxSizeHashMap<>(capacity);
+        // Cache the recent days, the latest last so that they are evicted last.
+        List<String> dates = new ArrayList<>(snapshots.keySet());
+        Collections.sort(dates);
+        for (String date : dates) backupMetadataMap.put(date, snapshots.get(date));
+        logger.info(
+                "Snapshot status of {} days fetched successfully from {}",
+                snapshots.size(),
+                filename);
     }
 
     @Override
-    public void save(BackupMetadata backupMetadata) {
-        File snapshotFile = new File(filename);
-        if (!snapshotFile.exists()) snapshotFile.mkdirs();
-
-        // Will save entire list to file.
-        try (final ObjectOutputStream out =
-                new ObjectOutputStream(new FileOutputStream(filename))) {
-            out.writeObject(backupMetadataMap);
-            out.flush();
+    public synchronized void save(BackupMetadata backupMetadata) {
+        Path journal = Paths.get(filename).toAbsolutePath();
+        try {
+            Files.createDirectories(journal.getParent());
+            try (FileChannel channel = FileChannel.open(journal, CREATE, WRITE, APPEND)) {
+                long offset = append(channel, backupMetadata);
+                channel.force(false);
+                offsets.computeIfAbsent(backupMetadata.getSnapshotDate(), date -> new ArrayList<>())
+                        .add(offset);
+            }
             logger.info(
-                    "Snapshot status of size {} is saved to {}",
-                    backupMetadataMap.size(),
+                    "Snapshot status of {} is saved to {}",
+                    backupMetadata.getSnapshotDate(),
                     filename);
+            if (++appended >= COMPACT_AFTER_RECORDS) compact(replay(journal.toFile()));
         } catch (IOException e) {
             logger.error(
                     "Error while trying to persist snapshot status to {}. Error: {}",
@@ -110,9 +154,137 @@ public class FileSnapshotStatusMgr extends BackupStatusMgr {
     }
 
     @Override
-    public LinkedList<BackupMetadata> fetch(String snapshotDate) {
-        // No need to fetch from local machine as it was read once at start. No point reading again
-        // and again.
-        return backupMetadataMap.get(snapshotDate);
+    public synchronized LinkedList<BackupMetadata> fetch(String snapshotDate) {
+        // Recent days are cached as they were read once at start, older days are read from the
+        // lines of the day in the journal.
+        List<Long> dayOffsets = offsets.get(snapshotDate);
+        if (dayOffsets == null) return null;
+
+        Map<String, LinkedList<BackupMetadata>> snapshots = new HashMap<>();
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+            for (long offset : dayOffsets) {
+                file.seek(offset);
+                String line = file.readLine();
+                if (line == null) continue;
+                BackupMetadata backupMetadata =
+                        parse(new String(line.getBytes(ISO_8859_1), UTF_8));
+                if (backupMetadata != null) apply(snapshots, backupMetadata);
+            }
+        } catch (IOException e) {
+            logger.error(
+                    "Error while trying to fetch snapshot status of {} from {}. Error: {}",
+                    snapshotDate,
+                    filename,
+                    e.getLocalizedMessage());
+            return null;
+        }
+        return snapshots.get(snapshotDate);
+    }
+
+    private static boolean isSerialized(File file) throws IOException {
+        if (file.length() < 2) return false;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readUnsignedShort() == SERIALIZED_MAGIC;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, LinkedList<BackupMetadata>> readSerialized(File file)
+            throws IOException, ClassNotFoundException {
+        logger.info("Converting snapshot status file {} to a journal", filename);
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
+            return new HashMap<>((Map<String, LinkedList<BackupMetadata>>) in.readObject());
+        }
+    }
+
+    /* Read the last status of every snapshot in the journal. */
+    private static Map<String, LinkedList<BackupMetadata>> replay(File file) throws IOException {
+        Map<String, LinkedList<BackupMetadata>> snapshots = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                BackupMetadata backupMetadata = parse(line);
+                if (backupMetadata != null) apply(snapshots, backupMetadata);
+            }
+        }
+        return snapshots;
+    }
+
+    /*
+     * Rewrite the journal with the last status of each snapshot within the retention. The new
+     * journal is written aside and moved over the old one, so a crash leaves either of them.
+     */
+    private void compact(Map<String, LinkedList<BackupMetadata>> snapshots) throws IOException {
+        String oldest =
+                DateUtil.formatyyyyMMdd(
+                        Date.from(DateUtil.getInstant().minus(retentionDays, ChronoUnit.DAYS)));
+        // Days located without any snapshot are cached as null by earlier versions.
+        snapshots
+                .entrySet()
+                .removeIf(
+                        day ->
+                                day.getValue() == null
+                                        || day.getValue().isEmpty()
+                                        || day.getKey().compareTo(oldest) < 0);
+
+        Path journal = Paths.get(filename);
+        Path tmp = Paths.get(filename + ".tmp");
+        Map<String, List<Long>> compacted = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(tmp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            for (LinkedList<BackupMetadata> day : snapshots.values()) {
+                // Earliest start first, in the order of their status changes.
+                Iterator<BackupMetadata> iterator = day.descendingIterator();
+                while (iterator.hasNext()) {
+                    BackupMetadata backupMetadata = iterator.next();
+                    long offset = append(channel, backupMetadata);
+                    compacted
+                            .computeIfAbsent(
+                                    backupMetadata.getSnapshotDate(), date -> new ArrayList<>())
+                            .add(offset);
+                }
+            }
+            channel.force(true);
+        }
+        Files.move(
+                tmp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        offsets.clear();
+        offsets.putAll(compacted);
+        appended = 0;
+        logger.info("Snapshot status of {} days compacted to {}", snapshots.size(), filename);
+    }
+
+    /* Append the status as a line of the journal. @return offset of the line. */
+    private static long append(FileChannel channel, BackupMetadata backupMetadata)
+            throws IOException {
+        long offset = channel.size();
+        ByteBuffer line = ByteBuffer.wrap((GSON.toJson(backupMetadata) + "\n").getBytes(UTF_8));
+        while (line.hasRemaining()) channel.write(line);
+        return offset;
+    }
+
+    /* @return the status in a line of the journal, or null if it is partial or unreadable. */
+    private static BackupMetadata parse(String line) {
+        try {
+            BackupMetadata backupMetadata = GSON.fromJson(line, BackupMetadata.class);
+            if (backupMetadata != null
+                    && backupMetadata.getSnapshotDate() != null
+                    && backupMetadata.getStart() != null) return backupMetadata;
+        } catch (JsonParseException e) {
+            logger.warn("Ignoring unreadable snapshot status: {}", line);
+        }
+        return null;
+    }
+
+    /* Keep the last status of each snapshot, the snapshots of a day from the latest start. */
+    private static void apply(
+            Map<String, LinkedList<BackupMetadata>> snapshots, BackupMetadata backupMetadata) {
+        LinkedList<BackupMetadata> day =
+                snapshots.computeIfAbsent(
+                        backupMetadata.getSnapshotDate(), date -> new LinkedList<>());
+        day.remove(backupMetadata);
+        int index = 0;
+        while (index < day.size() && day.get(index).getStart().after(backupMetadata.getStart()))
+            index++;
+        day.add(index, backupMetadata);
     }
 }
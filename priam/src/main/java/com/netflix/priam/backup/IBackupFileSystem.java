@@ -16,7 +16,11 @@
  */
 package com.netflix.priam.backup;
 
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.RateLimiter;
+import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
 import java.io.FileNotFoundException;
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.Date;
 import java.util.Iterator;
@@ -37,6 +41,46 @@ public interface IBackupFileSystem {
      */
     void downloadFile(Path remotePath, Path localPath, int retry) throws BackupRestoreException;
 
+    /**
+     * Download the file denoted by remotePath as it is stored on the remote file system i.e.
+     * without decompressing or decrypting it. This allows restore to decompress and decrypt the
+     * file in separate stages.
+     *
+     * @param remotePath fully qualified location of the file on remote file system.
+     * @param localPath location on the local file sytem where remote file should be downloaded.
+     * @param retry No. of times to retry to download a file from remote file system. If &lt;1, it
+     *     will try to download file exactly once.
+     * @throws BackupRestoreException if file is not available, downloadable or any other error from
+     *     remote file system.
+     */
+    void downloadRawFile(Path remotePath, Path localPath, int retry) throws BackupRestoreException;
+
+    /**
+     * Read the file denoted by remotePath as it is stored on the remote file system, e.g. to verify
+     * its content. The file is read at the rate given, and also within the download rate of the
+     * file system at a lower priority than restores.
+     *
+     * @param remotePath fully qualified location of the file on remote file system.
+     * @param rateLimiter limits the bytes read per second of this class of reads.
+     * @return stream of the stored bytes of the file, to be closed by the caller.
+     * @throws BackupRestoreException if file is not available or any other error from remote file
+     *     system.
+     */
+    InputStream openRawStream(Path remotePath, RateLimiter rateLimiter)
+            throws BackupRestoreException;
+
+    /**
+     * Read the file denoted by remotePath as it is stored on the remote file system to restore it,
+     * within the download rate of the file system. The metadata of the remote object is read once
+     * for both the size of the file and the checksum it was uploaded with.
+     *
+     * @param remotePath fully qualified location of the file on remote file system.
+     * @return stream of the stored bytes of the file, to be closed by the caller.
+     * @throws BackupRestoreException if file is not available or any other error from remote file
+     *     system.
+     */
+    RawFileStream openRawStream(Path remotePath) throws BackupRestoreException;
+
     /**
      * Download the file denoted by remotePath in an async fashion to the local file system denoted
      * by local path.
@@ -125,6 +169,25 @@ public interface IBackupFileSystem {
      */
     Iterator<AbstractBackupPath> list(String path, Date start, Date till);
 
+    /**
+     * List the snapshot meta files (meta.json) in the backup location for the specified time range.
+     * File systems which keep an index of the snapshot meta files should override this to avoid
+     * listing all the files in the time range.
+     *
+     * @param path This is used as the `prefix` for listing files in the filesystem.
+     * @param start Start date of the snapshot.
+     * @param till End date of the snapshot.
+     * @return Iterator of the snapshot meta files matching the criteria.
+     */
+    default Iterator<AbstractBackupPath> listSnapshotMetas(String path, Date start, Date till) {
+        return Iterators.filter(
+                list(path, start, till),
+                abstractBackupPath ->
+                        abstractBackupPath.getType() == BackupFileType.META
+                                && MetaData.SNAPSHOT_META_FILE.equalsIgnoreCase(
+                                        abstractBackupPath.getFileName()));
+    }
+
     /** Get a list of prefixes for the cluster available in backup for the specified date */
     Iterator<AbstractBackupPath> listPrefixes(Date date);
 
@@ -144,6 +207,30 @@ public interface IBackupFileSystem {
      */
     long getFileSize(Path remotePath) throws BackupRestoreException;
 
+    /**
+     * Get the checksum recorded with the remote object when it was uploaded.
+     *
+     * @param remotePath Location of the object on the remote file system.
+     * @return CRC32C of the content of the file when it was uploaded, or null, if the object does
+     *     not carry one.
+     * @throws BackupRestoreException in case of failure to read object denoted by remotePath or any
+     *     other error.
+     */
+    default String getChecksum(Path remotePath) throws BackupRestoreException {
+        return null;
+    }
+
+    /**
+     * Limit the rate of the uploads of snapshot files, e.g. to finish a snapshot by its deadline
+     * with the lowest impact on the node. The other uploads keep the configured throttle, which
+     * still applies to the snapshot files too. File systems which do not throttle uploads ignore
+     * this.
+     *
+     * @param bytesPerSecond bytes of snapshot files uploaded per second, or 0, to upload them at
+     *     the configured throttle.
+     */
+    default void setSnapshotUploadRate(double bytesPerSecond) {}
+
     /**
      * Get the number of tasks en-queue in the filesystem for upload.
      *
@@ -22,6 +22,7 @@ import com.google.inject.Singleton;
 import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
 import com.netflix.priam.backup.IMessageObserver.BACKUP_MESSAGE_TYPE;
 import com.netflix.priam.config.IConfiguration;
+import com.netflix.priam.merics.BackupMetrics;
 import com.netflix.priam.scheduler.SimpleTimer;
 import com.netflix.priam.scheduler.TaskTimer;
 import java.io.File;
@@ -47,8 +48,9 @@ public class IncrementalBackup extends AbstractBackup {
             IConfiguration config,
             Provider<AbstractBackupPath> pathFactory,
             IFileSystemContext backupFileSystemCtx,
-            IncrementalMetaData metaData) {
-        super(config, backupFileSystemCtx, pathFactory);
+            IncrementalMetaData metaData,
+            BackupMetrics backupMetrics) {
+        super(config, backupFileSystemCtx, pathFactory, backupMetrics);
         // a means to upload audit trail (via meta_cf_yyyymmddhhmm.json) of files successfully
         // uploaded)
         this.metaData = metaData;
@@ -94,6 +96,11 @@ public class IncrementalBackup extends AbstractBackup {
         }
     }
 
+    @Override
+    protected File getUploadDir(File backupDir) {
+        return backupDir;
+    }
+
     @Override
     protected void processColumnFamily(String keyspace, String columnFamily, File backupDir)
             throws Exception {
@@ -41,6 +41,7 @@ import org.slf4j.LoggerFactory;
  * data file.
  */
 public class MetaData {
+    public static final String SNAPSHOT_META_FILE = "meta.json";
     private static final Logger logger = LoggerFactory.getLogger(MetaData.class);
     private final Provider<AbstractBackupPath> pathFactory;
     private static final List<IMessageObserver> observers = new ArrayList<>();
@@ -66,6 +67,7 @@ public class MetaData {
             fr.write(jsonObj.toJSONString());
         }
         AbstractBackupPath backupfile = decorateMetaJson(metafile, snapshotName);
+        if (SNAPSHOT_META_FILE.equals(backupfile.getFileName())) uploadToMetaIndex(backupfile);
         fs.uploadFile(
                 Paths.get(backupfile.getBackupFile().getAbsolutePath()),
                 Paths.get(backupfile.getRemotePath()),
@@ -80,6 +82,52 @@ public class MetaData {
         return backupfile;
     }
 
+    /**
+     * Upload the manifest of the files of a snapshot, see {@link SnapshotManifest}. This is best
+     * effort as verification falls back to the names of the files in the meta file.
+     *
+     * @param bps files of the snapshot, as uploaded.
+     * @param snapshotName name of the snapshot.
+     */
+    public void setManifest(List<AbstractBackupPath> bps, String snapshotName) {
+        try {
+            File manifestFile = createTmpFile(SnapshotManifest.SNAPSHOT_MANIFEST_FILE);
+            new SnapshotManifest(bps).write(manifestFile);
+            AbstractBackupPath backupfile = decorateMetaJson(manifestFile, snapshotName);
+            fs.uploadFile(
+                    Paths.get(backupfile.getBackupFile().getAbsolutePath()),
+                    Paths.get(backupfile.getRemotePath()),
+                    backupfile,
+                    10,
+                    true);
+        } catch (Exception e) {
+            logger.warn("Failed to upload snapshot manifest for {}", snapshotName, e);
+        }
+    }
+
+    /*
+     * Copy the snapshot meta file to the meta index so restore can find it without listing all the
+     * files of the snapshot. Restore only lists all the files if the meta index is empty, so the
+     * copy is uploaded before the meta file, and a failure fails the snapshot instead of leaving a
+     * meta file which restore would not find.
+     */
+    private void uploadToMetaIndex(AbstractBackupPath backupfile) throws Exception {
+        try {
+            fs.uploadFile(
+                    Paths.get(backupfile.getBackupFile().getAbsolutePath()),
+                    Paths.get(backupfile.getRemoteMetaIndexPath()),
+                    backupfile,
+                    10,
+                    false);
+        } catch (Exception e) {
+            logger.error(
+                    "Failed to upload snapshot meta file to meta index: {}",
+                    backupfile.getRemoteMetaIndexPath());
+            FileUtils.deleteQuietly(backupfile.getBackupFile());
+            throw e;
+        }
+    }
+
     /*
     From the meta.json to be created, populate its meta data for the backup file.
      */
@@ -112,8 +160,12 @@ public class MetaData {
     }
 
     public File createTmpMetaFile() throws IOException {
+        return createTmpFile(SNAPSHOT_META_FILE);
+    }
+
+    private File createTmpFile(String fileName) throws IOException {
         File metafile = File.createTempFile("meta", ".json");
-        File destFile = new File(metafile.getParent(), "meta.json");
+        File destFile = new File(metafile.getParent(), fileName);
         if (destFile.exists()) destFile.delete();
         FileUtils.moveFile(metafile, destFile);
         return destFile;
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.backup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Priority tiers of the keyspaces and column families, backed up and restored in tier order.
+ * Tiers are separated by ";", each tier is a filter in the format parsed by {@link
+ * BackupRestoreUtil#getFilter(String)} e.g. "system_auth.*,config.settings;analytics.events". A
+ * column family belongs to the first tier matching it, column families not matching any tier are
+ * in the last, default tier.
+ */
+public class PriorityTiers {
+    private static final Logger logger = LoggerFactory.getLogger(PriorityTiers.class);
+    public static final String DEFAULT_TIER = "*";
+    private final List<String> names = new ArrayList<>();
+    private final List<Map<String, List<String>>> filters = new ArrayList<>();
+
+    public PriorityTiers(String configTiers) {
+        for (String tier : StringUtils.split(StringUtils.defaultString(configTiers), ';')) {
+            if (StringUtils.isBlank(tier)) continue;
+            names.add(tier.trim());
+            filters.add(BackupRestoreUtil.getFilter(tier.trim()));
+        }
+        names.add(DEFAULT_TIER);
+        if (!isEmpty()) logger.info("Priority tiers set: {}", names);
+    }
+
+    /** @return true, if no tier is configured i.e. everything is in the default tier. */
+    public boolean isEmpty() {
+        return filters.isEmpty();
+    }
+
+    /** @return number of tiers, including the default tier. */
+    public int getTierCount() {
+        return names.size();
+    }
+
+    /** @return name of the tier, which is its filter. */
+    public String getName(int tier) {
+        return names.get(tier);
+    }
+
+    /**
+     * @param keyspace name of the keyspace.
+     * @param columnFamily name or directory of the column family.
+     * @return tier of the column family, 0 being the first.
+     */
+    public int getTier(String keyspace, String columnFamily) {
+        if (keyspace == null || columnFamily == null) return filters.size();
+        String columnFamilyName = columnFamily.split("-")[0];
+        for (int tier = 0; tier < filters.size(); tier++) {
+            List<String> columnFamilies = filters.get(tier).get(keyspace);
+            if (columnFamilies != null
+                    && (columnFamilies.isEmpty() || columnFamilies.contains(columnFamilyName)))
+                return tier;
+        }
+        return filters.size();
+    }
+
+    /** @return tier of the file. */
+    public int getTier(AbstractBackupPath path) {
+        return getTier(path.getKeyspace(), path.getColumnFamily());
+    }
+
+    /**
+     * @param listener notified with the name of each tier completed.
+     * @return progress of a backup or restore through the tiers.
+     */
+    public Progress newProgress(Consumer<String> listener) {
+        return new Progress(listener);
+    }
+
+    /**
+     * Tracks the files of each tier which are in flight. Files are added in tier order, so a tier
+     * is complete once a file of a later tier is added, or the progress is sealed, and all its
+     * files are done. Each tier is reported once, when it is complete.
+     */
+    public class Progress {
+        private final Consumer<String> listener;
+        private final int[] pending = new int[getTierCount()];
+        private final boolean[] completed = new boolean[getTierCount()];
+        private final Map<String, Integer> inFlight = new HashMap<>();
+        private int addedTier;
+
+        private Progress(Consumer<String> listener) {
+            this.listener = listener;
+        }
+
+        /**
+         * @param tier tier of the file, no later than the tier of any file added after it.
+         * @param file unique name of the file.
+         */
+        public synchronized void add(int tier, String file) {
+            complete(tier);
+            addedTier = Math.max(addedTier, tier);
+            if (inFlight.putIfAbsent(file, tier) == null) pending[tier]++;
+        }
+
+        /** @param file unique name of the file, ignored if it was not added. */
+        public synchronized void done(String file) {
+            Integer tier = inFlight.remove(file);
+            if (tier == null) return;
+            pending[tier]--;
+            complete(addedTier);
+        }
+
+        /** No more files will be added. */
+        public synchronized void seal() {
+            complete(getTierCount());
+        }
+
+        // Report the tiers before the given tier with no file in flight.
+        private void complete(int tier) {
+            for (int t = 0; t < tier; t++) {
+                if (completed[t]) continue;
+                if (pending[t] > 0) continue;
+                completed[t] = true;
+                listener.accept(getName(t));
+            }
+        }
+    }
+}
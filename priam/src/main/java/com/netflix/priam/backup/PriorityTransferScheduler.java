@@ -0,0 +1,317 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.backup;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
+import com.netflix.priam.merics.BackupMetrics;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spectator.api.Timer;
+import com.netflix.spectator.api.histogram.PercentileTimer;
+import com.netflix.spectator.api.patterns.PolledMeter;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs transfers on a fixed number of threads, picking the next transfer by its priority class
+ * instead of first come first served. Each class has a weight, and the threads are handed to the
+ * classes with queued transfers in proportion to their weights (smooth weighted round robin), so a
+ * large snapshot cannot hold back the incremental and commit log uploads queued after it. A
+ * transfer which waited longer than the maximum wait is picked first, whatever its class.
+ *
+ * <p>The bytes of a class can also be limited to a rate of its own, e.g. to pace a snapshot, so
+ * that the other classes still transfer at the rate shared by all the transfers.
+ *
+ * <p>Submitters block while the queue is full, up to the timeout.
+ */
+public class PriorityTransferScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(PriorityTransferScheduler.class);
+
+    /** Priority classes of the transfers, with their default weights. */
+    public enum Priority {
+        COMMIT_LOG(8),
+        INCREMENTAL(4),
+        META(2),
+        SNAPSHOT(1);
+
+        private final int defaultWeight;
+
+        Priority(int defaultWeight) {
+            this.defaultWeight = defaultWeight;
+        }
+
+        public static Priority of(BackupFileType type) {
+            if (type == null) return SNAPSHOT;
+            switch (type) {
+                case CL:
+                    return COMMIT_LOG;
+                case SST:
+                    return INCREMENTAL;
+                case META:
+                case META_V2:
+                    return META;
+                default:
+                    return SNAPSHOT;
+            }
+        }
+    }
+
+    private final int capacity;
+    private final long timeoutMs;
+    private final long maxWaitNanos;
+    private final ExecutorService workers;
+    private final Map<Priority, Integer> weights;
+    private final Map<Priority, ArrayDeque<QueuedTask>> queues = new EnumMap<>(Priority.class);
+    private final Map<Priority, Long> credits = new EnumMap<>(Priority.class);
+    private final Map<Priority, Timer> waitTimes = new EnumMap<>(Priority.class);
+    private final Map<Priority, Timer> runTimes = new EnumMap<>(Priority.class);
+    private final Map<Priority, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private int size;
+
+    /**
+     * @param name name of the threads and the tag of the metrics.
+     * @param threads number of threads running the transfers.
+     * @param capacity maximum number of queued transfers.
+     * @param timeoutMs milliseconds to wait for a free slot in the queue.
+     * @param weights weights of the priority classes e.g. "COMMIT_LOG:8,SNAPSHOT:1", classes which
+     *     are not listed keep their default weight.
+     * @param maxWaitSeconds seconds after which a queued transfer is picked first.
+     * @param backupMetrics metrics of the queue depth, wait and run time of each class.
+     */
+    public PriorityTransferScheduler(
+            String name,
+            int threads,
+            int capacity,
+            long timeoutMs,
+            String weights,
+            long maxWaitSeconds,
+            BackupMetrics backupMetrics) {
+        this.capacity = capacity;
+        this.timeoutMs = timeoutMs;
+        this.maxWaitNanos = TimeUnit.SECONDS.toNanos(maxWaitSeconds);
+        this.weights = parseWeights(weights);
+        this.workers =
+                Executors.newFixedThreadPool(
+                        threads,
+                        new ThreadFactoryBuilder()
+                                .setDaemon(true)
+                                .setNameFormat("PriorityTransfer-" + name + "-%d")
+                                .build());
+        for (int i = 0; i < threads; i++) workers.submit(this::runTasks);
+
+        Registry registry = backupMetrics.getRegistry();
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+            credits.put(priority, 0L);
+            waitTimes.put(
+                    priority,
+                    PercentileTimer.get(
+                            registry,
+                            registry.createId(BackupMetrics.executorQueueWait)
+                                    .withTag("executor", name)
+                                    .withTag("priority", priority.name())));
+            runTimes.put(
+                    priority,
+                    PercentileTimer.get(
+                            registry,
+                            registry.createId(BackupMetrics.executorRunTime)
+                                    .withTag("executor", name)
+                                    .withTag("priority", priority.name())));
+            PolledMeter.using(registry)
+                    .withName(BackupMetrics.priorityQueueSize)
+                    .withTag("executor", name)
+                    .withTag("priority", priority.name())
+                    .monitorValue(this, scheduler -> scheduler.size(priority));
+        }
+    }
+
+    static Map<Priority, Integer> parseWeights(String weights) {
+        Map<Priority, Integer> parsed = new EnumMap<>(Priority.class);
+        for (Priority priority : Priority.values()) parsed.put(priority, priority.defaultWeight);
+        for (String entry : StringUtils.split(StringUtils.defaultString(weights), ',')) {
+            String[] pair = StringUtils.split(entry, ':');
+            try {
+                parsed.put(
+                        Priority.valueOf(pair[0].trim().toUpperCase()),
+                        Math.max(1, Integer.parseInt(pair[1].trim())));
+            } catch (RuntimeException e) {
+                logger.warn("Ignoring invalid priority weight: {}", entry);
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Queue a transfer, blocking while the queue is full.
+     *
+     * @param priority priority class of the transfer.
+     * @param task the transfer.
+     * @return future of the transfer.
+     * @throws RejectedExecutionException if the queue stays full for the timeout.
+     */
+    public <T> Future<T> submit(Priority priority, Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            while (size >= capacity) {
+                if (remaining <= 0)
+                    throw new RejectedExecutionException("Timed out because TPE is too busy...");
+                remaining = notFull.awaitNanos(remaining);
+            }
+            queues.get(priority).add(new QueuedTask(priority, future));
+            size++;
+            notEmpty.signal();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(e);
+        } finally {
+            lock.unlock();
+        }
+        return future;
+    }
+
+    /**
+     * Limit the bytes transferred per second by a priority class, on top of the rate shared by all
+     * the transfers.
+     *
+     * @param priority priority class to limit.
+     * @param bytesPerSecond bytes transferred per second, or 0, to remove the limit of the class.
+     */
+    public void setRate(Priority priority, double bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            rateLimiters.remove(priority);
+            return;
+        }
+        rateLimiters
+                .computeIfAbsent(priority, p -> RateLimiter.create(bytesPerSecond))
+                .setRate(bytesPerSecond);
+    }
+
+    /**
+     * Wait for the rate of a priority class to transfer the bytes.
+     *
+     * @param priority priority class of the transfer, or null, if not known.
+     * @param bytes number of bytes to transfer.
+     * @return seconds waited.
+     */
+    public double acquire(Priority priority, int bytes) {
+        RateLimiter rateLimiter = priority == null ? null : rateLimiters.get(priority);
+        return rateLimiter == null ? 0 : rateLimiter.acquire(Math.max(1, bytes));
+    }
+
+    /** @return number of queued transfers. */
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return number of queued transfers of the priority class. */
+    public int size(Priority priority) {
+        lock.lock();
+        try {
+            return queues.get(priority).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runTasks() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                QueuedTask task = take();
+                long start = System.nanoTime();
+                waitTimes.get(task.priority).record(start - task.queued, TimeUnit.NANOSECONDS);
+                task.future.run();
+                runTimes.get(task.priority)
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private QueuedTask take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (size == 0) notEmpty.await();
+            QueuedTask task = queues.get(pick(System.nanoTime())).poll();
+            size--;
+            notFull.signal();
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Priority class of the next transfer, must be called with the lock held and a queued task. */
+    Priority pick(long now) {
+        Priority picked = null;
+        Priority oldest = null;
+        int totalWeight = 0;
+        for (Priority priority : Priority.values()) {
+            QueuedTask head = queues.get(priority).peek();
+            if (head == null) {
+                // Idle classes do not bank credits.
+                credits.put(priority, 0L);
+                continue;
+            }
+            int weight = weights.get(priority);
+            totalWeight += weight;
+            credits.put(priority, credits.get(priority) + weight);
+            if (picked == null || credits.get(priority) > credits.get(picked)) picked = priority;
+            if (oldest == null || head.queued - queues.get(oldest).peek().queued < 0)
+                oldest = priority;
+        }
+        if (now - queues.get(oldest).peek().queued > maxWaitNanos) picked = oldest;
+        credits.put(picked, credits.get(picked) - totalWeight);
+        return picked;
+    }
+
+    private static class QueuedTask {
+        private final Priority priority;
+        private final FutureTask<?> future;
+        private final long queued = System.nanoTime();
+
+        QueuedTask(Priority priority, FutureTask<?> future) {
+            this.priority = priority;
+            this.future = future;
+        }
+    }
+}
@@ -19,9 +19,15 @@ package com.netflix.priam.backup;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.google.common.util.concurrent.RateLimiter;
+import com.netflix.priam.aws.S3RequestHedger;
+import com.netflix.priam.aws.S3ThrottleController;
+import com.netflix.priam.utils.AdaptiveConcurrencyLimiter;
 import com.netflix.priam.utils.RetryableCallable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,19 +38,49 @@ import org.slf4j.LoggerFactory;
  */
 public class RangeReadInputStream extends InputStream {
     private static final Logger logger = LoggerFactory.getLogger(RangeReadInputStream.class);
+    // A low priority read polls the shared rate this often till it is free.
+    private static final long LOW_PRIORITY_POLL_MILLIS = 100;
 
     private final AmazonS3 s3Client;
     private final String bucketName;
     private final long fileSize;
     private final String remotePath;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final RateLimiter rateLimiter;
+    private final RateLimiter classRateLimiter;
+    private final S3RequestHedger hedger;
     private long offset;
 
     public RangeReadInputStream(
             AmazonS3 s3Client, String bucketName, long fileSize, String remotePath) {
+        this(s3Client, bucketName, fileSize, remotePath, null, null, null, null);
+    }
+
+    /**
+     * @param concurrencyLimiter limits the range requests in flight across all the files, or null.
+     * @param rateLimiter limits the bytes requested per second across all the files, or null.
+     * @param classRateLimiter limits the bytes requested per second of a low priority class of
+     *     reads e.g. verification, or null. Such reads then only take the shared rate when it is
+     *     free, after the other reads.
+     * @param hedger hedges the slow range requests, or null.
+     */
+    public RangeReadInputStream(
+            AmazonS3 s3Client,
+            String bucketName,
+            long fileSize,
+            String remotePath,
+            AdaptiveConcurrencyLimiter concurrencyLimiter,
+            RateLimiter rateLimiter,
+            RateLimiter classRateLimiter,
+            S3RequestHedger hedger) {
         this.s3Client = s3Client;
         this.bucketName = bucketName;
         this.fileSize = fileSize;
         this.remotePath = remotePath;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.rateLimiter = rateLimiter;
+        this.classRateLimiter = classRateLimiter;
+        this.hedger = hedger;
     }
 
     public int read(final byte b[], final int off, final int len) throws IOException {
@@ -58,22 +94,36 @@ public class RangeReadInputStream extends InputStream {
         final long endByte = curEndByte - 1;
         try {
             return new RetryableCallable<Integer>() {
-                public Integer retriableCall() throws IOException {
+                public Integer retriableCall() throws Exception {
+                    acquireRate((int) Math.max(1, endByte - firstByte + 1));
+                    if (concurrencyLimiter == null) return readRange();
+                    concurrencyLimiter.acquire();
+                    long start = System.nanoTime();
+                    try {
+                        int read = readRange();
+                        concurrencyLimiter.onSuccess(Math.max(read, 0), System.nanoTime() - start);
+                        return read;
+                    } catch (Exception e) {
+                        if (S3ThrottleController.isThrottled(e)) concurrencyLimiter.onThrottled();
+                        else concurrencyLimiter.release();
+                        throw e;
+                    }
+                }
+
+                private int readRange() throws Exception {
+                    // A slow range is requested again if hedging, the first response is used.
+                    byte[] range = hedger != null ? hedger.call(this::getRange) : getRange();
+                    if (range.length == 0) return -1;
+                    System.arraycopy(range, 0, b, off, range.length);
+                    offset += range.length;
+                    return range.length;
+                }
+
+                private byte[] getRange() throws IOException {
                     GetObjectRequest req = new GetObjectRequest(bucketName, remotePath);
                     req.setRange(firstByte, endByte);
                     try (S3ObjectInputStream is = s3Client.getObject(req).getObjectContent()) {
-                        byte[] readBuf = new byte[4092];
-                        int rCnt;
-                        int readTotal = 0;
-                        int incomingOffet = off;
-                        while ((rCnt = is.read(readBuf, 0, readBuf.length)) >= 0) {
-                            System.arraycopy(readBuf, 0, b, incomingOffet, rCnt);
-                            readTotal += rCnt;
-                            incomingOffet += rCnt;
-                        }
-                        if (readTotal == 0 && rCnt == -1) return -1;
-                        offset += readTotal;
-                        return readTotal;
+                        return IOUtils.toByteArray(is);
                     }
                 }
             }.call();
@@ -86,6 +136,15 @@ public class RangeReadInputStream extends InputStream {
         }
     }
 
+    private void acquireRate(int bytes) throws InterruptedException {
+        if (classRateLimiter != null) {
+            classRateLimiter.acquire(bytes);
+            if (rateLimiter != null)
+                while (!rateLimiter.tryAcquire(bytes, 0, TimeUnit.MILLISECONDS))
+                    Thread.sleep(LOW_PRIORITY_POLL_MILLIS);
+        } else if (rateLimiter != null) rateLimiter.acquire(bytes);
+    }
+
     public int read() throws IOException {
         logger.warn("read() called RangeReadInputStream");
         return -1;
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.backup;
+
+import java.io.FilterInputStream;
+import java.io.InputStream;
+
+/**
+ * Stream of the bytes of a remote file as they are stored on the remote file system, with the
+ * checksum the file was uploaded with. Both are read from the same metadata of the remote object.
+ */
+public class RawFileStream extends FilterInputStream {
+    private final String checksum;
+
+    public RawFileStream(InputStream in, String checksum) {
+        super(in);
+        this.checksum = checksum;
+    }
+
+    /**
+     * @return CRC32C of the content of the file when it was uploaded, or null, if the remote object
+     *     does not carry one.
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+}
@@ -63,8 +63,12 @@ public class SnapshotBackup extends AbstractBackup {
     private String snapshotName = null;
     private Instant snapshotInstant = DateUtil.getInstant();
     private List<AbstractBackupPath> abstractBackupPaths = null;
+    private BackupMetadata backupMetadata;
     private final CassandraOperations cassandraOperations;
     private BackupMetrics backupMetrics;
+    private final SnapshotDeadlineController deadlineController;
+    private final SnapshotInventory inventory;
+    private long reuseUploadedAfter;
     private static final Lock lock = new ReentrantLock();
 
     private final String TMP_EXT = ".tmp";
@@ -81,12 +85,14 @@ public class SnapshotBackup extends AbstractBackup {
             InstanceIdentity instanceIdentity,
             CassandraOperations cassandraOperations,
             BackupMetrics backupMetrics) {
-        super(config, backupFileSystemCtx, pathFactory);
+        super(config, backupFileSystemCtx, pathFactory, backupMetrics);
         this.metaData = metaData;
         this.backupMetrics = backupMetrics;
         this.snapshotStatusMgr = snapshotStatusMgr;
         this.instanceIdentity = instanceIdentity;
         this.cassandraOperations = cassandraOperations;
+        this.deadlineController = new SnapshotDeadlineController(config, backupMetrics);
+        this.inventory = new SnapshotInventory(new File(config.getSnapshotInventoryFileLoc()));
         backupRestoreUtil =
                 new BackupRestoreUtil(
                         config.getSnapshotIncludeCFList(), config.getSnapshotExcludeCFList());
@@ -124,13 +130,35 @@ public class SnapshotBackup extends AbstractBackup {
         String token = instanceIdentity.getInstance().getToken();
 
         // Save start snapshot status
-        BackupMetadata backupMetadata = new BackupMetadata(token, startTime);
+        backupMetadata = new BackupMetadata(token, startTime);
         snapshotStatusMgr.start(backupMetadata);
+        int deadlineMinutes = config.getSnapshotDeadlineMinutes();
+        if (deadlineMinutes > 0)
+            deadlineController.start(
+                    getFileSystem(),
+                    getProgress(),
+                    startTime.toInstant().plus(deadlineMinutes, ChronoUnit.MINUTES));
 
         try {
             logger.info("Starting snapshot {}", snapshotName);
             // Clearing remotePath List
             snapshotRemotePaths.clear();
+            if (config.isIncrementalSnapshotEnabled()) {
+                inventory.load();
+                int maxAgeDays =
+                        getReuseMaxAgeDays(
+                                config.getIncrementalSnapshotMaxAgeDays(),
+                                config.getBackupRetentionDays());
+                if (maxAgeDays < config.getIncrementalSnapshotMaxAgeDays())
+                    logger.warn(
+                            "Incremental snapshots reuse files for {} days instead of {}, "
+                                    + "half of the backup retention of {} days",
+                            maxAgeDays,
+                            config.getIncrementalSnapshotMaxAgeDays(),
+                            config.getBackupRetentionDays());
+                reuseUploadedAfter =
+                        snapshotInstant.minus(maxAgeDays, ChronoUnit.DAYS).toEpochMilli();
+            }
             cassandraOperations.takeSnapshot(snapshotName);
 
             // Collect all snapshot dir's under keyspace dir's
@@ -145,8 +173,12 @@ public class SnapshotBackup extends AbstractBackup {
             // Note: no need to remove this temp as it is done within createTmpMetaFile()
             AbstractBackupPath metaJsonAbp = metaData.decorateMetaJson(tmpMetaFile, snapshotName);
 
+            // Upload the manifest ahead of the meta file, which marks the snapshot complete.
+            metaData.setManifest(abstractBackupPaths, snapshotName);
+
             // Upload meta file
             AbstractBackupPath metaJson = metaData.set(abstractBackupPaths, snapshotName);
+            if (config.isIncrementalSnapshotEnabled()) saveInventory();
 
             logger.info("Snapshot upload complete for {}", snapshotName);
             backupMetadata.setSnapshotLocation(
@@ -166,6 +198,7 @@ public class SnapshotBackup extends AbstractBackup {
             snapshotStatusMgr.failed(backupMetadata);
             throw e;
         } finally {
+            deadlineController.stop();
             try {
                 cassandraOperations.clearSnapshot(snapshotName);
             } catch (Exception e) {
@@ -174,6 +207,32 @@ public class SnapshotBackup extends AbstractBackup {
         }
     }
 
+    /*
+     * The snapshot is complete even if its inventory cannot be saved. The next snapshot then
+     * refers to the files of the snapshot before, or uploads them again.
+     */
+    private void saveInventory() {
+        try {
+            inventory.save();
+            logger.info(
+                    "Saved inventory of {} files of snapshot {}", inventory.size(), snapshotName);
+        } catch (IOException e) {
+            logger.error("Unable to save the inventory of snapshot {}", snapshotName, e);
+        }
+    }
+
+    /**
+     * A reused copy expires from the backup location the given age before the meta file which
+     * refers to it. Capping the age at half of the retention keeps each snapshot restorable for at
+     * least half of its retention. Without a retention nothing expires.
+     *
+     * @return days for which files uploaded by an earlier snapshot are reused.
+     */
+    static int getReuseMaxAgeDays(int maxAgeDays, int retentionDays) {
+        if (retentionDays <= 0) return maxAgeDays;
+        return Math.max(0, Math.min(maxAgeDays, retentionDays / 2));
+    }
+
     private File getValidSnapshot(File snpDir, String snapshotName) {
         for (File snapshotDir : snpDir.listFiles())
             if (snapshotDir.getName().matches(snapshotName)) return snapshotDir;
@@ -185,6 +244,11 @@ public class SnapshotBackup extends AbstractBackup {
         return JOBNAME;
     }
 
+    /** @return controller of the upload rate of snapshots with a deadline. */
+    public SnapshotDeadlineController getDeadlineController() {
+        return deadlineController;
+    }
+
     public static boolean isBackupEnabled(IConfiguration config) throws Exception {
         return (getTimer(config) != null);
     }
@@ -229,6 +293,11 @@ public class SnapshotBackup extends AbstractBackup {
         }
     }
 
+    @Override
+    protected File getUploadDir(File backupDir) {
+        return getValidSnapshot(backupDir, snapshotName);
+    }
+
     @Override
     protected void processColumnFamily(String keyspace, String columnFamily, File backupDir)
             throws Exception {
@@ -242,8 +311,47 @@ public class SnapshotBackup extends AbstractBackup {
 
         findAndMoveForgottenFiles(snapshotDir);
         // Add files to this dir
-        abstractBackupPaths.addAll(
-                upload(snapshotDir, BackupFileType.SNAP, config.enableAsyncSnapshot()));
+        List<AbstractBackupPath> bps =
+                upload(snapshotDir, BackupFileType.SNAP, config.enableAsyncSnapshot());
+        abstractBackupPaths.addAll(bps);
+        if (config.isIncrementalSnapshotEnabled()) {
+            long uploaded = System.currentTimeMillis();
+            // Copies uploaded by an earlier snapshot have no local file and are already kept.
+            for (AbstractBackupPath bp : bps)
+                if (bp.getBackupFile() != null) inventory.add(bp, uploaded);
+        }
+    }
+
+    /**
+     * A file of an incremental snapshot which is in the inventory of the last snapshot refers to
+     * the copy uploaded then, as long as it is at the same backup location.
+     */
+    @Override
+    protected AbstractBackupPath getUploadedCopy(AbstractBackupPath bp) {
+        if (!config.isIncrementalSnapshotEnabled()) return null;
+        SnapshotInventory.Entry entry = inventory.find(bp, reuseUploadedAfter);
+        if (entry == null) return null;
+
+        AbstractBackupPath copy = pathFactory.get();
+        copy.parseRemote(entry.getRemotePath());
+        if (!copy.getBaseDir().equals(bp.getBaseDir())
+                || !copy.getRegion().equals(bp.getRegion())
+                || !copy.getClusterName().equals(bp.getClusterName())
+                || !copy.getToken().equals(bp.getToken())) return null;
+
+        copy.setSize(bp.getSize());
+        copy.setCompressedFileSize(entry.getCompressedSize());
+        copy.setETag(entry.getETag());
+        copy.setChecksum(entry.getChecksum());
+        backupMetrics.incrementSnapshotFilesReused(bp.getSize());
+        return copy;
+    }
+
+    @Override
+    protected void tierCompleted(String tier) {
+        super.tierCompleted(tier);
+        backupMetadata.setTierCompleted(
+                tier, Calendar.getInstance(TimeZone.getTimeZone("GMT")).getTime());
     }
 
     private void findAndMoveForgottenFiles(File snapshotDir) {
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.backup;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.priam.config.IConfiguration;
+import com.netflix.priam.merics.BackupMetrics;
+import com.netflix.spectator.api.patterns.PolledMeter;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Uploads a snapshot at the lowest rate which finishes it by its deadline. Every interval the rate
+ * required for the bytes remaining in the time left is computed from the progress of the
+ * snapshot, and the upload rate of the snapshot files is set a little above it. The other uploads
+ * are not slowed down, and the configured throttle still applies to all the uploads. The deadline
+ * is at risk when the required rate is above the throttle, or the throughput stays below the
+ * required rate for a few intervals while the rate allowed is not what holds it back.
+ */
+public class SnapshotDeadlineController {
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotDeadlineController.class);
+    private static final long INTERVAL_SECONDS = 15;
+    // Upload a little faster than required to absorb the variance of the throughput.
+    private static final double HEADROOM = 1.1;
+    private static final double MIN_RATE = 1024 * 1024;
+    private static final int SHORTFALL_INTERVALS = 3;
+
+    private final IConfiguration config;
+    private final ScheduledExecutorService executor;
+    private IBackupFileSystem fs;
+    private TransferProgress progress;
+    private ScheduledFuture<?> task;
+    private volatile Instant deadline;
+    private volatile double requiredRate;
+    private volatile double uploadRate;
+    private volatile boolean atRisk;
+    private int shortfalls;
+
+    public SnapshotDeadlineController(IConfiguration config, BackupMetrics backupMetrics) {
+        this.config = config;
+        this.executor =
+                Executors.newSingleThreadScheduledExecutor(
+                        new ThreadFactoryBuilder()
+                                .setDaemon(true)
+                                .setNameFormat("SnapshotDeadline-%d")
+                                .build());
+        PolledMeter.using(backupMetrics.getRegistry())
+                .withName(BackupMetrics.snapshotDeadlineRequiredRate)
+                .monitorValue(this, SnapshotDeadlineController::getRequiredRate);
+        PolledMeter.using(backupMetrics.getRegistry())
+                .withName(BackupMetrics.snapshotDeadlineUploadRate)
+                .monitorValue(this, SnapshotDeadlineController::getUploadRate);
+        PolledMeter.using(backupMetrics.getRegistry())
+                .withName(BackupMetrics.snapshotDeadlineAtRisk)
+                .monitorValue(this, controller -> controller.isAtRisk() ? 1 : 0);
+    }
+
+    /**
+     * Start adjusting the upload rate of a snapshot.
+     *
+     * @param fs file system the snapshot is uploaded to.
+     * @param progress progress of the snapshot.
+     * @param deadline time the snapshot should be uploaded by.
+     */
+    public synchronized void start(
+            IBackupFileSystem fs, TransferProgress progress, Instant deadline) {
+        stop();
+        reset(fs, progress, deadline);
+        logger.info("Snapshot should be uploaded by {}", deadline);
+        task =
+                executor.scheduleAtFixedRate(
+                        () -> adjust(Instant.now()), 0, INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /** Stop adjusting the upload rate, and upload snapshot files at the configured throttle. */
+    public synchronized void stop() {
+        if (task == null) return;
+        task.cancel(false);
+        task = null;
+        fs.setSnapshotUploadRate(0);
+    }
+
+    synchronized void reset(IBackupFileSystem fs, TransferProgress progress, Instant deadline) {
+        this.fs = fs;
+        this.progress = progress;
+        this.deadline = deadline;
+        requiredRate = uploadRate = 0;
+        atRisk = false;
+        shortfalls = 0;
+    }
+
+    synchronized void adjust(Instant now) {
+        if (fs == null) return;
+        TransferProgress.Summary summary = progress.getSummary();
+        // Until the scan of the snapshot is done, the bytes remaining are not known.
+        if (!Boolean.TRUE.equals(summary.sealed)) return;
+        long remaining = summary.getRemainingBytes();
+        double throttle = config.getUploadThrottle();
+        double maxRate = throttle < 1 ? Double.MAX_VALUE : throttle;
+        double secondsLeft = Duration.between(now, deadline).toMillis() / 1000.0;
+        if (remaining == 0) {
+            requiredRate = 0;
+            setAtRisk(false, remaining, secondsLeft);
+            return;
+        }
+        if (secondsLeft <= 0) {
+            // Past the deadline, all the bytes remaining are needed at once.
+            requiredRate = remaining;
+            uploadRate = 0;
+            fs.setSnapshotUploadRate(0);
+            setAtRisk(true, remaining, secondsLeft);
+            return;
+        }
+
+        // The throughput falls short of the required rate with more allowed than it achieves,
+        // so the snapshot cannot go any faster. Once uploads started, a stall is a shortfall too.
+        double throughput = summary.getBytesPerSecond();
+        requiredRate = remaining / secondsLeft;
+        if (summary.getTransferredBytes() > 0
+                && throughput < requiredRate
+                && (uploadRate == 0 || throughput * HEADROOM < uploadRate)) shortfalls++;
+        else shortfalls = 0;
+
+        double rate = Math.max(MIN_RATE, requiredRate * HEADROOM);
+        uploadRate = rate >= maxRate ? 0 : rate;
+        fs.setSnapshotUploadRate(uploadRate);
+        setAtRisk(
+                requiredRate > maxRate || shortfalls >= SHORTFALL_INTERVALS,
+                remaining,
+                secondsLeft);
+    }
+
+    private void setAtRisk(boolean atRisk, long remaining, double secondsLeft) {
+        if (atRisk && !this.atRisk)
+            logger.warn(
+                    "Snapshot deadline {} is at risk: {} bytes left in {} seconds need {} bytes/s",
+                    deadline,
+                    remaining,
+                    (long) secondsLeft,
+                    (long) requiredRate);
+        this.atRisk = atRisk;
+    }
+
+    /** @return time the current or last snapshot should be uploaded by, or null, if none. */
+    public Instant getDeadline() {
+        return deadline;
+    }
+
+    /** @return bytes per second needed to upload the snapshot by its deadline. */
+    public double getRequiredRate() {
+        return requiredRate;
+    }
+
+    /** @return bytes per second the snapshot is allowed to upload at, 0 if not limited. */
+    public double getUploadRate() {
+        return uploadRate;
+    }
+
+    /** @return true, if the snapshot can no longer be uploaded by its deadline. */
+    public boolean isAtRisk() {
+        return atRisk;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.backup;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Inventory of the files uploaded by the last successful snapshot. SSTables never change once
+ * written, so a file of a new snapshot with the same name, size and modification time as one in
+ * the inventory is already on the remote file system, and the new snapshot can refer to the copy
+ * uploaded earlier instead of uploading it again.
+ *
+ * <p>A snapshot starts from the inventory on disk with {@link #load()}. Every file of the snapshot
+ * is either found in the inventory or added to it once uploaded, and the inventory is saved only
+ * after the snapshot meta file is uploaded, so it never refers to a file which is not part of a
+ * complete snapshot.
+ *
+ * <p>Format of the inventory: one line per file, of tab separated fields:
+ * KEYSPACE/COLUMNFAMILY/FILE, SIZE, LAST_MODIFIED, UPLOADED, COMPRESSED_SIZE, ETAG, CHECKSUM,
+ * REMOTE_PATH. ETAG and CHECKSUM are empty if not known.
+ */
+public class SnapshotInventory {
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotInventory.class);
+    private static final String SEPARATOR = "\t";
+    private final File inventoryFile;
+    private final Map<String, Entry> previous = new HashMap<>();
+    private final Map<String, Entry> current = new HashMap<>();
+
+    public SnapshotInventory(File inventoryFile) {
+        this.inventoryFile = inventoryFile;
+    }
+
+    /** Load the inventory of the last successful snapshot, and start the inventory of a new one. */
+    public synchronized void load() {
+        previous.clear();
+        current.clear();
+        if (!inventoryFile.exists()) return;
+
+        try {
+            List<String> lines = Files.readAllLines(inventoryFile.toPath(), StandardCharsets.UTF_8);
+            for (String line : lines) {
+                String[] pieces = line.split(SEPARATOR);
+                if (pieces.length != 8) continue;
+                try {
+                    previous.put(
+                            pieces[0],
+                            new Entry(
+                                    Long.parseLong(pieces[1]),
+                                    Long.parseLong(pieces[2]),
+                                    Long.parseLong(pieces[3]),
+                                    Long.parseLong(pieces[4]),
+                                    pieces[5].isEmpty() ? null : pieces[5],
+                                    pieces[6].isEmpty() ? null : pieces[6],
+                                    pieces[7]));
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring malformed snapshot inventory entry: {}", line);
+                }
+            }
+        } catch (IOException e) {
+            // Every file is uploaded again, as if there were no earlier snapshot.
+            logger.error("Unable to read snapshot inventory {}", inventoryFile, e);
+            previous.clear();
+        }
+        logger.info("Loaded {} files from snapshot inventory {}", previous.size(), inventoryFile);
+    }
+
+    /**
+     * Find the copy of a local file uploaded by an earlier snapshot. The copy is kept in the
+     * inventory of the new snapshot.
+     *
+     * @param bp local file of the new snapshot.
+     * @param uploadedAfter copies uploaded before this time, in milliseconds since the epoch, are
+     *     not used, so that they can expire from the remote file system.
+     * @return the copy, or null if the file has to be uploaded.
+     */
+    public synchronized Entry find(AbstractBackupPath bp, long uploadedAfter) {
+        String key = getKey(bp);
+        Entry entry = previous.get(key);
+        if (entry == null
+                || entry.size != bp.getBackupFile().length()
+                || entry.lastModified != bp.getBackupFile().lastModified()
+                || entry.uploaded < uploadedAfter) return null;
+
+        current.put(key, entry);
+        return entry;
+    }
+
+    /**
+     * Add a file uploaded by the new snapshot.
+     *
+     * @param bp file uploaded to its remote path.
+     * @param uploaded time of the upload, in milliseconds since the epoch.
+     */
+    public synchronized void add(AbstractBackupPath bp, long uploaded) {
+        File file = bp.getBackupFile();
+        current.put(
+                getKey(bp),
+                new Entry(
+                        file.length(),
+                        file.lastModified(),
+                        uploaded,
+                        bp.getCompressedFileSize(),
+                        bp.getETag(),
+                        bp.getChecksum(),
+                        bp.getRemotePath()));
+    }
+
+    /**
+     * Save the inventory of the new snapshot, once it is complete. It replaces the inventory on
+     * disk atomically.
+     *
+     * @throws IOException if the inventory could not be written.
+     */
+    public synchronized void save() throws IOException {
+        File parent = inventoryFile.getParentFile();
+        if (parent != null) FileUtils.forceMkdir(parent);
+        File tmpFile = new File(inventoryFile.getPath() + ".tmp");
+        try (Writer writer =
+                new BufferedWriter(
+                        new OutputStreamWriter(
+                                new FileOutputStream(tmpFile), StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, Entry> e : current.entrySet()) {
+                Entry entry = e.getValue();
+                writer.write(
+                        e.getKey()
+                                + SEPARATOR
+                                + entry.size
+                                + SEPARATOR
+                                + entry.lastModified
+                                + SEPARATOR
+                                + entry.uploaded
+                                + SEPARATOR
+                                + entry.compressedSize
+                                + SEPARATOR
+                                + (entry.eTag == null ? "" : entry.eTag)
+                                + SEPARATOR
+                                + (entry.checksum == null ? "" : entry.checksum)
+                                + SEPARATOR
+                                + entry.remotePath
+                                + "\n");
+            }
+        }
+        Files.move(
+                tmpFile.toPath(),
+                inventoryFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        previous.clear();
+        previous.putAll(current);
+    }
+
+    /** @return number of files in the inventory of the new snapshot. */
+    public synchronized int size() {
+        return current.size();
+    }
+
+    private static String getKey(AbstractBackupPath bp) {
+        return bp.getKeyspace() + "/" + bp.getColumnFamily() + "/" + bp.getFileName();
+    }
+
+    /** Copy of a file uploaded by a snapshot. */
+    public static final class Entry {
+        private final long size;
+        private final long lastModified;
+        private final long uploaded;
+        private final long compressedSize;
+        private final String eTag;
+        private final String checksum;
+        private final String remotePath;
+
+        Entry(
+                long size,
+                long lastModified,
+                long uploaded,
+                long compressedSize,
+                String eTag,
+                String checksum,
+                String remotePath) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.uploaded = uploaded;
+            this.compressedSize = compressedSize;
+            this.eTag = eTag;
+            this.checksum = checksum;
+            this.remotePath = remotePath;
+        }
+
+        /** @return size of the copy on the remote file system. */
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        /** @return entity tag of the copy, or null if not known. */
+        public String getETag() {
+            return eTag;
+        }
+
+        /** @return CRC32C of the original file, or null if not known. */
+        public String getChecksum() {
+            return checksum;
+        }
+
+        public String getRemotePath() {
+            return remotePath;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.backup;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Size and entity tag of every file of a snapshot, as uploaded to the remote file system. It is
+ * uploaded next to the snapshot meta file, so that a backup can be verified from the metadata of
+ * the listing of the remote file system without downloading the files. The meta file stays a
+ * plain list of the files for restore.
+ *
+ * <p>The checksum of the original file, when it is known, allows the content of the files to be
+ * verified as well, see {@link DeepVerifyTask}.
+ *
+ * <p>Format: a JSON object from the remote path of each file to {"size": SIZE, "etag": ETAG,
+ * "crc32c": CHECKSUM}.
+ */
+public class SnapshotManifest {
+    public static final String SNAPSHOT_MANIFEST_FILE = "manifest.json";
+    private static final String SIZE = "size";
+    private static final String ETAG = "etag";
+    private static final String CHECKSUM = "crc32c";
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    public SnapshotManifest() {}
+
+    public SnapshotManifest(List<AbstractBackupPath> bps) {
+        for (AbstractBackupPath bp : bps)
+            entries.put(
+                    bp.getRemotePath(),
+                    new Entry(bp.getCompressedFileSize(), bp.getETag(), bp.getChecksum()));
+    }
+
+    /**
+     * @param remotePath location of the file on the remote file system.
+     * @return size and entity tag the file was uploaded with, or null if it is not in the
+     *     manifest.
+     */
+    public Entry get(String remotePath) {
+        return entries.get(remotePath);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /** @return remote path of every file in the manifest. */
+    public Set<String> getRemotePaths() {
+        return entries.keySet();
+    }
+
+    @SuppressWarnings("unchecked")
+    public void write(File file) throws IOException {
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            JSONObject entry = new JSONObject();
+            entry.put(SIZE, e.getValue().size);
+            if (e.getValue().eTag != null) entry.put(ETAG, e.getValue().eTag);
+            if (e.getValue().checksum != null) entry.put(CHECKSUM, e.getValue().checksum);
+            json.put(e.getKey(), entry);
+        }
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(json.toJSONString());
+        }
+    }
+
+    public static SnapshotManifest read(File file) throws IOException, ParseException {
+        SnapshotManifest manifest = new SnapshotManifest();
+        try (Reader reader = new FileReader(file)) {
+            JSONObject json = (JSONObject) new JSONParser().parse(reader);
+            for (Object key : json.keySet()) {
+                JSONObject entry = (JSONObject) json.get(key);
+                long size = ((Number) entry.get(SIZE)).longValue();
+                manifest.entries.put(
+                        (String) key,
+                        new Entry(size, (String) entry.get(ETAG), (String) entry.get(CHECKSUM)));
+            }
+        }
+        return manifest;
+    }
+
+    public static final class Entry {
+        private final long size;
+        private final String eTag;
+        private final String checksum;
+
+        Entry(long size, String eTag, String checksum) {
+            this.size = size;
+            this.eTag = eTag;
+            this.checksum = checksum;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        /** @return CRC32C of the original file, or null if not known. */
+        public String getChecksum() {
+            return checksum;
+        }
+
+        /**
+         * @param listed file from the listing of the remote file system.
+         * @return true if the listed file has the size, and the entity tag if it is known, the
+         *     file was uploaded with.
+         */
+        public boolean matches(AbstractBackupPath listed) {
+            return size == listed.getCompressedFileSize()
+                    && (eTag == null || listed.getETag() == null || eTag.equals(listed.getETag()));
+        }
+    }
+}
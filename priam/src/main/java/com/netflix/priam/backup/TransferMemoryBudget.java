@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.backup;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.priam.config.IConfiguration;
+import com.netflix.priam.merics.BackupMetrics;
+import com.netflix.spectator.api.Timer;
+import com.netflix.spectator.api.patterns.PolledMeter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A budget of the heap used by the buffers of uploads and downloads e.g. compressed or encrypted
+ * chunks, small files uploaded in one request and range read buffers. Every buffer acquires its
+ * bytes before it is filled and releases them once the data is sent or consumed, so the heap of
+ * Priam stays bounded regardless of the number and size of the files in flight. A buffer larger
+ * than the whole budget waits till nothing else is buffered.
+ */
+@Singleton
+public class TransferMemoryBudget {
+    private final long limit;
+    private final Timer waitTime;
+    private long used;
+
+    @Inject
+    public TransferMemoryBudget(IConfiguration config, BackupMetrics backupMetrics) {
+        this.limit = Math.max(1, config.getTransferMemoryBudgetMB()) * 1024L * 1024L;
+        this.waitTime = backupMetrics.getRegistry().timer(BackupMetrics.transferMemoryWait);
+        PolledMeter.using(backupMetrics.getRegistry())
+                .withName(BackupMetrics.transferMemoryUsed)
+                .monitorValue(this, TransferMemoryBudget::getUsed);
+        PolledMeter.using(backupMetrics.getRegistry())
+                .withName(BackupMetrics.transferMemoryLimit)
+                .monitorValue(this, TransferMemoryBudget::getLimit);
+    }
+
+    /**
+     * Wait till the bytes are available in the budget and acquire them.
+     *
+     * @param bytes size of the buffer.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void acquire(long bytes) throws InterruptedException {
+        long start = System.nanoTime();
+        synchronized (this) {
+            while (used > 0 && used + bytes > limit) wait();
+            used += bytes;
+        }
+        waitTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Change the size of a buffer after it is filled e.g. an estimate of a compressed chunk to its
+     * actual size. This never waits, a buffer which grew is allowed over the budget.
+     *
+     * @param acquired bytes acquired for the buffer.
+     * @param bytes actual size of the buffer.
+     */
+    public synchronized void resize(long acquired, long bytes) {
+        used += bytes - acquired;
+        if (bytes < acquired) notifyAll();
+    }
+
+    /** @param bytes bytes acquired for a buffer which is no longer used. */
+    public synchronized void release(long bytes) {
+        used -= bytes;
+        notifyAll();
+    }
+
+    /** @return bytes acquired by the buffers in use. */
+    public synchronized long getUsed() {
+        return used;
+    }
+
+    /** @return bytes available to the buffers. */
+    public long getLimit() {
+        return limit;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.backup;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Progress of a backup or restore: the files and bytes planned and done, the current throughput
+ * and the estimated time to complete, overall and per keyspace. Files are planned as they are found
+ * by the directory scan or the restore plan, and done as they are transferred. The estimate is
+ * only final once the plan is sealed, before that more files may still be planned. The throughput
+ * is measured over the last window of time up to now, so it drops while transfers stall, and only
+ * counts the bytes actually transferred.
+ */
+public class TransferProgress {
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private Counter total = new Counter(System.nanoTime());
+    private final Map<String, Counter> keyspaces = new TreeMap<>();
+    private boolean sealed;
+    private boolean finished;
+
+    /** Start tracking a new backup or restore, forgetting the earlier one. */
+    public synchronized void start() {
+        total = new Counter(System.nanoTime());
+        keyspaces.clear();
+        sealed = false;
+        finished = false;
+    }
+
+    /**
+     * @param keyspace keyspace of the file, or null, if not applicable e.g. commit logs.
+     * @param bytes size of the file.
+     */
+    public synchronized void plan(String keyspace, long bytes) {
+        total.plan(bytes);
+        if (keyspace != null) getCounter(keyspace, System.nanoTime()).plan(bytes);
+    }
+
+    /**
+     * @param keyspace keyspace of the file, or null, if not applicable e.g. commit logs.
+     * @param bytes size of the file.
+     */
+    public synchronized void done(String keyspace, long bytes) {
+        done(keyspace, bytes, true);
+    }
+
+    /**
+     * A file which is done without a transfer e.g. as its copy is already uploaded. It does not
+     * count towards the throughput.
+     *
+     * @param keyspace keyspace of the file, or null, if not applicable e.g. commit logs.
+     * @param bytes size of the file.
+     */
+    public synchronized void reused(String keyspace, long bytes) {
+        done(keyspace, bytes, false);
+    }
+
+    private void done(String keyspace, long bytes, boolean transferred) {
+        long now = System.nanoTime();
+        total.done(bytes, transferred, now);
+        if (keyspace != null) getCounter(keyspace, now).done(bytes, transferred, now);
+    }
+
+    private Counter getCounter(String keyspace, long now) {
+        return keyspaces.computeIfAbsent(keyspace, k -> new Counter(now));
+    }
+
+    /** All the files are planned. */
+    public synchronized void seal() {
+        sealed = true;
+    }
+
+    /** All the files are done. */
+    public synchronized void finish() {
+        sealed = true;
+        finished = true;
+    }
+
+    /** @return summary of the progress so far, overall and per keyspace. */
+    public synchronized Summary getSummary() {
+        return getSummary(System.nanoTime());
+    }
+
+    synchronized Summary getSummary(long now) {
+        Summary summary = total.summarize(now, finished);
+        summary.sealed = sealed;
+        summary.finished = finished;
+        summary.keyspaces = new TreeMap<>();
+        for (Map.Entry<String, Counter> keyspace : keyspaces.entrySet())
+            summary.keyspaces.put(keyspace.getKey(), keyspace.getValue().summarize(now, finished));
+        return summary;
+    }
+
+    /** Progress at a point of time, serialized as is to the status endpoints. */
+    public static class Summary {
+        long plannedFiles;
+        long plannedBytes;
+        long doneFiles;
+        long doneBytes;
+        long transferredBytes;
+        long remainingBytes;
+        long bytesPerSecond;
+        // -1 if nothing was transferred over the last window.
+        long etaSeconds;
+        Boolean sealed;
+        Boolean finished;
+        Map<String, Summary> keyspaces;
+
+        public long getPlannedFiles() {
+            return plannedFiles;
+        }
+
+        public long getPlannedBytes() {
+            return plannedBytes;
+        }
+
+        public long getDoneFiles() {
+            return doneFiles;
+        }
+
+        public long getDoneBytes() {
+            return doneBytes;
+        }
+
+        /** @return bytes done by a transfer, not counting the files reused. */
+        public long getTransferredBytes() {
+            return transferredBytes;
+        }
+
+        public long getRemainingBytes() {
+            return remainingBytes;
+        }
+
+        public long getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        public long getEtaSeconds() {
+            return etaSeconds;
+        }
+
+        public Map<String, Summary> getKeyspaces() {
+            return keyspaces;
+        }
+    }
+
+    private static class Counter {
+        private long plannedFiles;
+        private long plannedBytes;
+        private long doneFiles;
+        private long doneBytes;
+        private long transferredBytes;
+        // Time and bytes transferred of the start and of each transfer done since, oldest first.
+        // Only the last sample before the window is kept, as the bytes at the start of the window.
+        private final ArrayDeque<long[]> samples = new ArrayDeque<>();
+
+        Counter(long now) {
+            samples.add(new long[] {now, 0});
+        }
+
+        void plan(long bytes) {
+            plannedFiles++;
+            plannedBytes += bytes;
+        }
+
+        void done(long bytes, boolean transferred, long now) {
+            doneFiles++;
+            doneBytes += bytes;
+            if (!transferred) return;
+            transferredBytes += bytes;
+            samples.add(new long[] {now, transferredBytes});
+            expire(now);
+        }
+
+        private void expire(long now) {
+            while (samples.size() > 1) {
+                long[] first = samples.removeFirst();
+                if (samples.getFirst()[0] > now - WINDOW_NANOS) {
+                    samples.addFirst(first);
+                    return;
+                }
+            }
+        }
+
+        // Bytes per second transferred over the window up to now, or since the start if shorter.
+        private double getRate(long now) {
+            expire(now);
+            long[] first = samples.getFirst();
+            long windowStart = Math.max(first[0], now - WINDOW_NANOS);
+            if (now <= windowStart) return 0;
+            return (transferredBytes - first[1]) * 1e9 / (now - windowStart);
+        }
+
+        Summary summarize(long now, boolean finished) {
+            Summary summary = new Summary();
+            summary.plannedFiles = plannedFiles;
+            summary.plannedBytes = plannedBytes;
+            summary.doneFiles = doneFiles;
+            summary.doneBytes = doneBytes;
+            summary.transferredBytes = transferredBytes;
+            summary.remainingBytes = finished ? 0 : Math.max(0, plannedBytes - doneBytes);
+            summary.bytesPerSecond = (long) getRate(now);
+            if (summary.remainingBytes == 0) summary.etaSeconds = 0;
+            else
+                summary.etaSeconds =
+                        summary.bytesPerSecond > 0
+                                ? summary.remainingBytes / summary.bytesPerSecond
+                                : -1;
+            return summary;
+        }
+    }
+}
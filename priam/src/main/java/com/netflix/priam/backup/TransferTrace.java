@@ -0,0 +1,152 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.backup;
+
+import com.netflix.priam.merics.BackupMetrics.Stage;
+import com.netflix.priam.merics.BackupMetrics.StageListener;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Trace of the upload or download of a file: its size, the time spent in each stage, the number of
+ * attempts and parts. Stages may be recorded by several threads, e.g. the parts of a multipart
+ * upload, the rest is set by the thread transferring the file.
+ */
+public final class TransferTrace implements StageListener {
+    public enum Direction {
+        UPLOAD,
+        DOWNLOAD
+    }
+
+    private final Direction direction;
+    private final String remotePath;
+    private final String codec;
+    private final long startTime = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final AtomicLongArray stageNanos = new AtomicLongArray(Stage.values().length);
+    private final AtomicInteger parts = new AtomicInteger();
+    private final AtomicInteger attempts = new AtomicInteger();
+    private volatile long size;
+    private volatile long durationNanos;
+    private volatile boolean success;
+    private volatile String eTag;
+    private volatile String checksum;
+
+    TransferTrace(Direction direction, String remotePath, String codec) {
+        this.direction = direction;
+        this.remotePath = remotePath;
+        this.codec = codec;
+    }
+
+    @Override
+    public void record(Stage stage, long nanos) {
+        stageNanos.addAndGet(stage.ordinal(), nanos);
+        if (stage == Stage.PART_PUT) parts.incrementAndGet();
+    }
+
+    void attempt() {
+        attempts.incrementAndGet();
+    }
+
+    /*
+     * @param size bytes transferred, e.g. after compression and encryption.
+     * @param success true, if the file was transferred.
+     */
+    void finish(long size, boolean success) {
+        this.size = size;
+        this.success = success;
+        this.durationNanos = System.nanoTime() - startNanos;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public String getRemotePath() {
+        return remotePath;
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    /** @return time the transfer started in milliseconds since epoch. */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /** @return bytes transferred. */
+    public long getSize() {
+        return size;
+    }
+
+    public long getDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+    }
+
+    /** @return time spent in each stage recorded, in milliseconds. */
+    public Map<Stage, Long> getStageMillis() {
+        Map<Stage, Long> stageMillis = new EnumMap<>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            long nanos = stageNanos.get(stage.ordinal());
+            if (nanos > 0) stageMillis.put(stage, TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+        return stageMillis;
+    }
+
+    /** @return number of parts the file was uploaded in. */
+    public int getParts() {
+        return parts.get();
+    }
+
+    /** @return number of attempts after the first. */
+    public int getRetries() {
+        return Math.max(0, attempts.get() - 1);
+    }
+
+    /** @return bytes transferred per second over the whole transfer. */
+    public long getThroughput() {
+        long nanos = durationNanos;
+        return nanos <= 0 ? 0 : (long) (size * 1e9 / nanos);
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    /** @return entity tag of the uploaded object, or null if not known. */
+    public String getETag() {
+        return eTag;
+    }
+
+    /** @param eTag entity tag of the uploaded object returned by the remote file system. */
+    public void setETag(String eTag) {
+        this.eTag = eTag;
+    }
+
+    /** @return CRC32C of the original file, computed as it was read for the upload, or null. */
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.backup;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.priam.config.IConfiguration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the traces of the most recent file transfers in a ring buffer, to find which files were
+ * slow in a backup or restore and why. Adding a trace is a single atomic increment and write, so
+ * the transfer threads never wait on each other. A reader may see a slot being overwritten, which
+ * only means a trace is newer than expected.
+ */
+@Singleton
+public class TransferTraces {
+    private final AtomicReferenceArray<TransferTrace> traces;
+    private final AtomicLong next = new AtomicLong();
+
+    @Inject
+    public TransferTraces(IConfiguration config) {
+        this(config.getTransferTraceCapacity());
+    }
+
+    TransferTraces(int capacity) {
+        this.traces = new AtomicReferenceArray<>(Math.max(0, capacity));
+    }
+
+    /**
+     * Start the trace of a file transfer. It is kept once it is finished.
+     *
+     * @param direction upload or download.
+     * @param remotePath location of the file on the remote file system.
+     * @param codec compression and encryption of the file on the remote file system.
+     * @return trace of the transfer.
+     */
+    TransferTrace start(TransferTrace.Direction direction, String remotePath, String codec) {
+        return new TransferTrace(direction, remotePath, codec);
+    }
+
+    /**
+     * Keep a finished trace, overwriting the oldest trace when the buffer is full.
+     *
+     * @param trace finished trace.
+     */
+    void add(TransferTrace trace) {
+        int capacity = traces.length();
+        if (capacity == 0) return;
+        traces.set((int) (next.getAndIncrement() % capacity), trace);
+    }
+
+    /**
+     * @param minDurationMillis traces of transfers which took less than this are skipped.
+     * @param slowestFirst true, to sort the traces by duration, else the newest comes first.
+     * @param limit maximum number of traces returned.
+     * @return traces kept.
+     */
+    public List<TransferTrace> get(long minDurationMillis, boolean slowestFirst, int limit) {
+        List<TransferTrace> result = new ArrayList<>();
+        int capacity = traces.length();
+        long last = next.get();
+        for (long i = last - 1; i >= Math.max(0, last - capacity); i--) {
+            TransferTrace trace = traces.get((int) (i % capacity));
+            if (trace != null && trace.getDurationMillis() >= minDurationMillis) result.add(trace);
+        }
+        if (slowestFirst)
+            result.sort(Comparator.comparingLong(TransferTrace::getDurationMillis).reversed());
+        return result.size() > limit ? result.subList(0, Math.max(0, limit)) : result;
+    }
+}
@@ -39,6 +39,8 @@ public class FileUploadResult {
     private ICompression.CompressionAlgorithm compression =
             ICompression.CompressionAlgorithm.SNAPPY;
     private Path backupPath;
+    // CRC32C of the content of the file when it is added to the meta file. null if not known.
+    private String checksum;
 
     public FileUploadResult(
             Path fileName,
@@ -120,6 +122,14 @@ public class FileUploadResult {
         this.backupPath = backupPath;
     }
 
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
+
     public void setLastModifiedTime(Instant lastModifiedTime) {
         this.lastModifiedTime = lastModifiedTime;
     }
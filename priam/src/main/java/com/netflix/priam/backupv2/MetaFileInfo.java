@@ -99,4 +99,20 @@ public class MetaFileInfo {
                 + DateUtil.formatInstant(DateUtil.yyyyMMddHHmm, instant)
                 + MetaFileInfo.META_FILE_SUFFIX;
     }
+
+    /**
+     * Parse the snapshot instant from the name of the meta file.
+     *
+     * @param fileName name of the meta file e.g. meta_v2_201807011200.json
+     * @return the instant of the snapshot, or null, if it is not a meta file name.
+     */
+    public static Instant getMetaFileInstant(String fileName) {
+        if (fileName == null
+                || !fileName.startsWith(META_FILE_PREFIX)
+                || !fileName.endsWith(META_FILE_SUFFIX)) return null;
+
+        return DateUtil.parseInstant(
+                fileName.substring(
+                        META_FILE_PREFIX.length(), fileName.length() - META_FILE_SUFFIX.length()));
+    }
 }
@@ -16,6 +16,7 @@
  */
 package com.netflix.priam.backupv2;
 
+import com.netflix.priam.backup.AbstractBackupPath;
 import com.netflix.priam.config.IConfiguration;
 import com.netflix.priam.identity.InstanceIdentity;
 import com.netflix.priam.utils.DateUtil;
@@ -31,6 +32,7 @@ import javax.inject.Inject;
  */
 public class PrefixGenerator {
 
+    private static final String META_DIR = "META";
     private final IConfiguration configuration;
     private final InstanceIdentity instanceIdentity;
 
@@ -41,13 +43,29 @@ public class PrefixGenerator {
     }
 
     public Path getPrefix() {
+        return getPrefix("");
+    }
+
+    /*
+     * Prefix of the keys in a shard, see IConfiguration#getBackupShardCount. The shard is left out
+     * if empty.
+     */
+    private Path getPrefix(String shard) {
         return Paths.get(
                 configuration.getBackupLocation(),
                 configuration.getBackupPrefix(),
                 getAppNameReverse(),
+                shard,
                 instanceIdentity.getInstance().getToken());
     }
 
+    private String getShard(String name) {
+        return AbstractBackupPath.getShard(
+                configuration.getBackupShardCount(),
+                instanceIdentity.getInstance().getToken(),
+                name);
+    }
+
     public Path getSSTPrefix() {
         return getPrefix();
     }
@@ -58,8 +76,9 @@ public class PrefixGenerator {
             String columnfamilyName,
             String prefix,
             String fileName) {
+        // All the components of a SSTable are in the same shard.
         return Paths.get(
-                getPrefix().toString(),
+                getPrefix(getShard(prefix)).toString(),
                 DateUtil.formatInstant(DateUtil.ddMMyyyyHHmm, instant),
                 keyspaceName,
                 columnfamilyName,
@@ -68,12 +87,13 @@ public class PrefixGenerator {
     }
 
     public Path getMetaPrefix() {
-        return Paths.get(getPrefix().toString(), "META");
+        return Paths.get(getPrefix().toString(), META_DIR);
     }
 
     public Path getMetaLocation(Instant instant, String metaFileName) {
         return Paths.get(
-                getMetaPrefix().toString(),
+                getPrefix(getShard(metaFileName)).toString(),
+                META_DIR,
                 DateUtil.formatInstant(DateUtil.ddMMyyyyHHmm, instant),
                 metaFileName);
     }
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.backupv2;
+
+import com.netflix.priam.backup.AbstractBackupPath;
+import com.netflix.priam.backup.BackupRestoreUtil;
+import com.netflix.priam.config.IConfiguration;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import javax.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Plans the restore from backup version 2.0 meta files. Each meta file records the SSTables which
+ * were live when the snapshot was taken, so SSTables which were compacted away before that time are
+ * never downloaded. Only the meta file nearest to (and not after) the restore time is used.
+ */
+public class RestoreV2Planner {
+    private static final Logger logger = LoggerFactory.getLogger(RestoreV2Planner.class);
+    // Name of the manifest Cassandra writes in the snapshot directory. It is not needed on restore.
+    private static final String MANIFEST_PREFIX = "manifest";
+    private final IConfiguration configuration;
+    private final PrefixGenerator prefixGenerator;
+
+    @Inject
+    RestoreV2Planner(IConfiguration configuration, PrefixGenerator prefixGenerator) {
+        this.configuration = configuration;
+        this.prefixGenerator = prefixGenerator;
+    }
+
+    /**
+     * Find the meta file nearest to the restore time i.e. the latest meta file which was generated
+     * at or before the restore time.
+     *
+     * @param backupFiles the remote backup files to choose the meta file from.
+     * @param restoreTime the time to restore to.
+     * @return the meta file to restore from, or null, if there is none.
+     */
+    public static AbstractBackupPath findMetaFile(
+            Iterator<AbstractBackupPath> backupFiles, Instant restoreTime) {
+        AbstractBackupPath metaFile = null;
+        Instant metaFileInstant = null;
+        while (backupFiles.hasNext()) {
+            AbstractBackupPath path = backupFiles.next();
+            if (path.getType() != AbstractBackupPath.BackupFileType.META_V2) continue;
+
+            Instant instant = MetaFileInfo.getMetaFileInstant(path.getFileName());
+            if (instant == null || instant.isAfter(restoreTime)) continue;
+
+            if (metaFileInstant == null || instant.isAfter(metaFileInstant)) {
+                metaFile = path;
+                metaFileInstant = instant;
+            }
+        }
+        return metaFile;
+    }
+
+    /**
+     * Compute the SSTable components to download for a column family read from the meta file.
+     * Nothing is returned if the column family is filtered.
+     *
+     * @param columnfamilyResult the column family read from the meta file.
+     * @param backupRestoreUtil the keyspace/column family filters to apply.
+     * @return list of the SSTable components to download.
+     */
+    public List<RestoreFile> getRestoreFiles(
+            ColumnfamilyResult columnfamilyResult, BackupRestoreUtil backupRestoreUtil) {
+        List<RestoreFile> restoreFiles = new ArrayList<>();
+        if (backupRestoreUtil.isFiltered(
+                columnfamilyResult.getKeyspaceName(), columnfamilyResult.getColumnfamilyName())) {
+            logger.info(
+                    "Bypassing restoring of {}:{} as it is part of the keyspace.columnfamily filter list.",
+                    columnfamilyResult.getKeyspaceName(),
+                    columnfamilyResult.getColumnfamilyName());
+            return restoreFiles;
+        }
+
+        for (ColumnfamilyResult.SSTableResult ssTableResult : columnfamilyResult.getSstables()) {
+            if (MANIFEST_PREFIX.equals(ssTableResult.getPrefix())) continue;
+
+            for (FileUploadResult component : ssTableResult.getSstableComponents())
+                restoreFiles.add(getRestoreFile(columnfamilyResult, ssTableResult, component));
+        }
+        return restoreFiles;
+    }
+
+    private RestoreFile getRestoreFile(
+            ColumnfamilyResult columnfamilyResult,
+            ColumnfamilyResult.SSTableResult ssTableResult,
+            FileUploadResult component) {
+        String fileName = component.getFileName().toFile().getName();
+        Path remotePath =
+                prefixGenerator.getSSTLocation(
+                        component.getLastModifiedTime(),
+                        columnfamilyResult.getKeyspaceName(),
+                        columnfamilyResult.getColumnfamilyName(),
+                        ssTableResult.getPrefix(),
+                        fileName);
+        Path localPath =
+                Paths.get(
+                        configuration.getDataFileLocation(),
+                        columnfamilyResult.getKeyspaceName(),
+                        columnfamilyResult.getColumnfamilyName(),
+                        fileName);
+        return new RestoreFile(
+                remotePath, localPath, component.getFileSizeOnDisk(), component.getChecksum());
+    }
+
+    /** A SSTable component to download and the location to restore it to. */
+    public static class RestoreFile {
+        private final Path remotePath;
+        private final Path localPath;
+        private final long size;
+        private final String checksum;
+
+        public RestoreFile(Path remotePath, Path localPath, long size) {
+            this(remotePath, localPath, size, null);
+        }
+
+        public RestoreFile(Path remotePath, Path localPath, long size, String checksum) {
+            this.remotePath = remotePath;
+            this.localPath = localPath;
+            this.size = size;
+            this.checksum = checksum;
+        }
+
+        public Path getRemotePath() {
+            return remotePath;
+        }
+
+        public Path getLocalPath() {
+            return localPath;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /** @return CRC32C of the content of the file when it was uploaded, or null if not known. */
+        public String getChecksum() {
+            return checksum;
+        }
+
+        @Override
+        public String toString() {
+            return "From: " + remotePath + " To: " + localPath;
+        }
+    }
+}
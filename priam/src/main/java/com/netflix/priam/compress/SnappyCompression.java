@@ -23,7 +23,7 @@ import org.xerial.snappy.SnappyInputStream;
 
 /** Class to generate compressed chunks of data from an input stream using SnappyCompression */
 public class SnappyCompression implements ICompression {
-    private static final int BUFFER = 2 * 1024;
+    private static final int BUFFER = 64 * 1024;
 
     @Override
     public Iterator<byte[]> compress(InputStream is, long chunkSize) throws IOException {
@@ -29,4 +29,8 @@ public class BackupRestoreConfig implements IBackupRestoreConfig {
     public String getSnapshotMetaServiceCronExpression() {
         return config.get("priam.snapshot.meta.cron", "-1");
     }
+
+    public boolean enableV2Restore() {
+        return config.get("priam.enableV2Restore", false);
+    }
 }
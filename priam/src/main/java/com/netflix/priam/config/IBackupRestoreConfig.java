@@ -33,4 +33,14 @@ public interface IBackupRestoreConfig {
     default String getSnapshotMetaServiceCronExpression() {
         return "-1";
     }
+
+    /**
+     * Restore from the backup version 2.0 meta files instead of the snapshot meta.json. Only the
+     * SSTables which were live at the meta file nearest to the restore end time are restored.
+     *
+     * @return true if restore should use backup version 2.0 meta files.
+     */
+    default boolean enableV2Restore() {
+        return false;
+    }
 }
@@ -85,6 +85,19 @@ public interface IConfiguration {
         return "backup";
     }
 
+    /**
+     * Remote keys of a cluster share a common prefix, which concentrates the requests of all the
+     * nodes on a few key ranges of the object store. When set, a hash shard of the token and file
+     * name is inserted after the cluster name e.g. BASE/REGION/CLUSTER/s0a/TOKEN/... and listings
+     * fan out across the shards. Backups taken without shards can still be restored. Listing the
+     * shards is only supported by the S3 file systems.
+     *
+     * @return Number of hash shards of the remote keys, up to 256. 0 disables sharding.
+     */
+    default int getBackupShardCount() {
+        return 0;
+    }
+
     /** @return Get Backup retention in days */
     default int getBackupRetentionDays() {
         return 0;
@@ -386,6 +399,20 @@ public interface IConfiguration {
         return null;
     }
 
+    /**
+     * Priority tiers of the column families, backed up and restored in tier order e.g. critical
+     * keyspaces first. Tiers are separated by ";", each tier is a comma delimited list of
+     * keyspace.cfname in the format of {@link #getRestoreIncludeCFList()}. Column families not in
+     * any tier are backed up and restored last. The completion time of each tier is reported in
+     * the snapshot and restore status.
+     *
+     * @return Priority tiers e.g. "system_auth.*,config.settings;analytics.*". If no tier is
+     *     configured, returns null.
+     */
+    default String getPriorityTiers() {
+        return null;
+    }
+
     /**
      * Specifies the start and end time used for restoring data (yyyyMMddHHmm format) Eg:
      * 201201132030,201201142030
@@ -421,6 +448,48 @@ public interface IConfiguration {
         return false;
     }
 
+    /**
+     * @return true if a restore of the same snapshot and time window which was interrupted should
+     *     skip the files it already downloaded and verified, instead of starting over.
+     */
+    default boolean isRestoreResumable() {
+        return true;
+    }
+
+    /**
+     * @return the absolute path to store the journal of files downloaded by restore. It is kept
+     *     out of the Cassandra data directory which is cleaned by a restore which is not resumed.
+     */
+    default String getRestoreJournalFileLoc() {
+        return "/var/lib/priam/restore.journal";
+    }
+
+    /** @return Number of threads decrypting the downloaded files during restore */
+    default int getRestoreDecryptThreads() {
+        return 2;
+    }
+
+    /** @return Number of threads decompressing the downloaded files during restore */
+    default int getRestoreDecompressThreads() {
+        return 4;
+    }
+
+    /** @return Number of threads writing the restored files to disk during restore */
+    default int getRestoreWriteThreads() {
+        return 2;
+    }
+
+    /**
+     * Files move between the fetch, decrypt, decompress and write stages of restore through
+     * bounded queues, while their bytes stream from stage to stage. Once the queue of a stage is
+     * full, the previous stage waits for it.
+     *
+     * @return size of the queue in front of each restore stage.
+     */
+    default int getRestoreStageQueueSize() {
+        return 100;
+    }
+
     /**
      * Amazon specific setting to query Additional/ Sibling ASG Memberships in csv format to
      * consider while calculating RAC membership
@@ -444,6 +513,84 @@ public interface IConfiguration {
         return -1;
     }
 
+    /**
+     * Concurrent requests to upload files and parts start at this number and grow up to {@link
+     * #getBackupThreads()} as long as the upload throughput keeps rising. They are reduced when S3
+     * throttles the requests.
+     *
+     * @return Minimum number of concurrent upload requests.
+     */
+    default int getUploadMinConcurrency() {
+        return 2;
+    }
+
+    /**
+     * @return Retries of uploads allowed per successful upload request, shared by all the upload
+     *     threads. e.g. 0.1 allows 10% of the requests to be retried.
+     */
+    default double getUploadRetryBudgetRatio() {
+        return 0.1;
+    }
+
+    /**
+     * Hedge part uploads and range reads of S3: a request slower than {@link
+     * #getHedgingPercentile()} of the recent requests is issued again and the first to succeed
+     * wins.
+     *
+     * @return true, if requests to S3 should be hedged.
+     */
+    default boolean isHedgingEnabled() {
+        return false;
+    }
+
+    /** @return Percentile of the recent request latencies after which a request is hedged. */
+    default double getHedgingPercentile() {
+        return 95;
+    }
+
+    /** @return Hedged requests allowed per request. e.g. 0.05 allows 5% extra requests. */
+    default double getHedgingBudgetRatio() {
+        return 0.05;
+    }
+
+    /**
+     * Buffers of uploads and downloads e.g. compressed or encrypted chunks and range read buffers
+     * acquire their size from this budget before they are filled, and wait if it is used up.
+     *
+     * @return Heap in MB available to the buffers of all the uploads and downloads together.
+     */
+    default int getTransferMemoryBudgetMB() {
+        return 256;
+    }
+
+    /** @return Bytes per second to throttle for restores */
+    default int getDownloadThrottle() {
+        return -1;
+    }
+
+    /**
+     * Concurrent range requests of a restore start at this number and grow up to {@link
+     * #getRestoreMaxConcurrency()} as long as the download throughput keeps rising. They are
+     * reduced when the remote file system throttles the requests or the latency spikes. Set it to
+     * the maximum to disable the adaptive concurrency.
+     *
+     * @return Minimum number of concurrent range requests while downloading files.
+     */
+    default int getRestoreMinConcurrency() {
+        return 2;
+    }
+
+    /**
+     * Files of a restore are fetched by this many threads, each with one range request in flight,
+     * so the concurrent range requests can grow up to this number. The buffers of the requests are
+     * also bounded by {@link #getTransferMemoryBudgetMB()}.
+     *
+     * @return Maximum number of concurrent range requests while downloading files.
+     */
+    default int getRestoreMaxConcurrency() {
+        return 32;
+    }
+
     /** @return true if Priam should local config file for tokens and seeds */
     default boolean isLocalBootstrapEnabled() {
         return false;
@@ -527,6 +674,19 @@ public interface IConfiguration {
         return "CassandraDaemon";
     }
 
+    /**
+     * @return file the pid of the Cassandra process is written to when it starts, which is used to
+     *     find the process without listing all the processes of the host.
+     */
+    default String getCassPidFile() {
+        return "/var/run/cassandra/cassandra.pid";
+    }
+
+    /** @return seconds the gossip, thrift and native transport status of Cassandra is cached. */
+    default int getCassTransportStatusRefreshSeconds() {
+        return 30;
+    }
+
     /** Defaults to 'allow all'. */
     default String getAuthenticator() {
         return "org.apache.cassandra.auth.AllowAllAuthenticator";
@@ -836,6 +996,122 @@ public interface IConfiguration {
         return (10 * 60 * 60 * 1000L); // 10 minutes.
     }
 
+    /**
+     * Tasks submitted to the upload and download queues while they are full wait for a free slot.
+     * With fairness, the slots are handed to the waiting tasks in the order they were submitted,
+     * otherwise a newly submitted task may take a slot ahead of them.
+     *
+     * @return true, if the upload and download queues hand out free slots in order.
+     */
+    default boolean isTransferQueueFair() {
+        return true;
+    }
+
+    /**
+     * Weights of the priority classes of the queued uploads: COMMIT_LOG, INCREMENTAL, META and
+     * SNAPSHOT. Upload threads are handed to the classes with queued uploads in proportion to
+     * their weights, classes which are not listed keep their default weight.
+     *
+     * @return comma separated class:weight pairs.
+     */
+    default String getUploadPriorityWeights() {
+        return "COMMIT_LOG:8,INCREMENTAL:4,META:2,SNAPSHOT:1";
+    }
+
+    /**
+     * An upload which is queued for longer than this is picked first, whatever its priority
+     * class, so low priority uploads are never starved.
+     *
+     * @return maximum time in seconds an upload waits before it is picked first.
+     */
+    default long getUploadPriorityMaxWaitSeconds() {
+        return 600;
+    }
+
+    /**
+     * Number of the most recent file uploads and downloads whose traces are kept in memory to find
+     * the slow files of a backup or restore. 0 disables the traces.
+     *
+     * @return number of transfer traces kept.
+     */
+    default int getTransferTraceCapacity() {
+        return 1000;
+    }
+
+    /**
+     * Snapshots upload at the lowest rate which finishes them this many minutes after they start,
+     * instead of the static {@link #getUploadThrottle()}, which stays the highest rate used. The
+     * rate is adjusted as the snapshot goes, and the deadline is reported at risk once it can no
+     * longer be met. 0 disables the deadline.
+     *
+     * @return minutes after the start of a snapshot it should be uploaded by.
+     */
+    default int getSnapshotDeadlineMinutes() {
+        return 0;
+    }
+
+    /**
+     * Snapshots upload only the files which are not already uploaded by an earlier snapshot, and
+     * their meta file refers to the copies uploaded earlier for the rest. This only applies to the
+     * snapshots of backup version 1.0.
+     *
+     * @return true if snapshots are incremental.
+     */
+    default boolean isIncrementalSnapshotEnabled() {
+        return false;
+    }
+
+    /**
+     * An incremental snapshot uploads a file again once its copy is this old. A reused copy expires
+     * from the backup location up to this many days before the meta file that refers to it, so a
+     * snapshot older than {@link #getBackupRetentionDays()} minus this age may no longer be
+     * restorable, even though it is still listed. With a retention, the age is therefore capped at
+     * half of the retention.
+     *
+     * @return days after which an incremental snapshot uploads the file again.
+     */
+    default int getIncrementalSnapshotMaxAgeDays() {
+        return 7;
+    }
+
+    /**
+     * Cron expression of the deep verification of the latest snapshot, which reads a sample of
+     * its files and compares their content with the checksums recorded when they were uploaded.
+     * Use "-1" to disable it. Default: -1
+     *
+     * @return Cron expression for the deep verification of the snapshots.
+     * @see <a
+     *     href="http://www.quartz-scheduler.org/documentation/quartz-2.x/tutorials/crontrigger.html">quartz-scheduler</a>
+     */
+    default String getDeepVerifyCronExpression() {
+        return "-1";
+    }
+
+    /** @return percentage of the files of a snapshot read by each deep verification. */
+    default int getDeepVerifySamplePercent() {
+        return 1;
+    }
+
+    /** @return number of files read at the same time by the deep verification. */
+    default int getDeepVerifyThreads() {
+        return 2;
+    }
+
+    /**
+     * The deep verification reads at a rate of its own, lower than restores, as it runs on a live
+     * node.
+     *
+     * @return Bytes per second to throttle for the deep verification, -1 to not throttle it.
+     */
+    default int getDeepVerifyThrottle() {
+        return 8 * 1024 * 1024;
+    }
+
+    /** @return the absolute path to store the inventory of the files of the last snapshot */
+    default String getSnapshotInventoryFileLoc() {
+        return getDataFileLocation() + File.separator + "snapshot.inventory";
+    }
+
     /** @return tombstone_warn_threshold in C* yaml */
     default int getTombstoneWarnThreshold() {
         return 1000;
@@ -902,6 +1178,14 @@ public interface IConfiguration {
         return getDataFileLocation() + File.separator + "backup.status";
     }
 
+    /**
+     * @return days of snapshot status kept in the backup status file, older snapshots are dropped
+     *     when the file is compacted.
+     */
+    default int getBackupStatusRetentionDays() {
+        return 365;
+    }
+
     /** @return Decides whether to use sudo to start C* or not */
     default boolean useSudo() {
         return true;
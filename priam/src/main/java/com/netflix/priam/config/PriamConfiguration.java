@@ -82,6 +82,11 @@ public class PriamConfiguration implements IConfiguration {
         return config.get(PRIAM_PRE + ".s3.base_dir", "backup");
     }
 
+    @Override
+    public int getBackupShardCount() {
+        return config.get(PRIAM_PRE + ".backup.shard.count", 0);
+    }
+
     @Override
     public String getBackupPrefix() {
         return config.get(PRIAM_PRE + ".s3.bucket", "cassandra-archive");
@@ -283,6 +288,11 @@ public class PriamConfiguration implements IConfiguration {
         return config.get(PRIAM_PRE + ".restore.cf.exclude");
     }
 
+    @Override
+    public String getPriorityTiers() {
+        return config.get(PRIAM_PRE + ".priority.tiers");
+    }
+
     @Override
     public String getRestoreSnapshot() {
         return config.get(PRIAM_PRE + ".restore.snapshot", "");
@@ -338,6 +348,51 @@ public class PriamConfiguration implements IConfiguration {
         return config.get(PRIAM_PRE + ".upload.throttle", -1);
     }
 
+    @Override
+    public int getUploadMinConcurrency() {
+        return config.get(PRIAM_PRE + ".upload.min.concurrency", 2);
+    }
+
+    @Override
+    public double getUploadRetryBudgetRatio() {
+        return config.get(PRIAM_PRE + ".upload.retry.budget.ratio", 0.1);
+    }
+
+    @Override
+    public boolean isHedgingEnabled() {
+        return config.get(PRIAM_PRE + ".hedging.enabled", false);
+    }
+
+    @Override
+    public double getHedgingPercentile() {
+        return config.get(PRIAM_PRE + ".hedging.percentile", 95.0);
+    }
+
+    @Override
+    public double getHedgingBudgetRatio() {
+        return config.get(PRIAM_PRE + ".hedging.budget.ratio", 0.05);
+    }
+
+    @Override
+    public int getTransferMemoryBudgetMB() {
+        return config.get(PRIAM_PRE + ".transfer.memory.budget.mb", 256);
+    }
+
+    @Override
+    public int getDownloadThrottle() {
+        return config.get(PRIAM_PRE + ".download.throttle", -1);
+    }
+
+    @Override
+    public int getRestoreMinConcurrency() {
+        return config.get(PRIAM_PRE + ".restore.min.concurrency", 2);
+    }
+
+    @Override
+    public int getRestoreMaxConcurrency() {
+        return config.get(PRIAM_PRE + ".restore.max.concurrency", 32);
+    }
+
     @Override
     public boolean isLocalBootstrapEnabled() {
         return config.get(PRIAM_PRE + ".localbootstrap.enable", false);
@@ -403,6 +458,16 @@ public class PriamConfiguration implements IConfiguration {
         return config.get(PRIAM_PRE + ".cass.process", "CassandraDaemon");
     }
 
+    @Override
+    public String getCassPidFile() {
+        return config.get(PRIAM_PRE + ".cass.pidfile", "/var/run/cassandra/cassandra.pid");
+    }
+
+    @Override
+    public int getCassTransportStatusRefreshSeconds() {
+        return config.get(PRIAM_PRE + ".cass.transport.status.refresh.seconds", 30);
+    }
+
     public String getYamlLocation() {
         return config.get(PRIAM_PRE + ".yamlLocation", getCassHome() + "/conf/cassandra.yaml");
     }
@@ -647,6 +712,70 @@ public class PriamConfiguration implements IConfiguration {
         return config.get(PRIAM_PRE + ".download.timeout", (10 * 60 * 60 * 1000L));
     }
 
+    @Override
+    public boolean isTransferQueueFair() {
+        return config.get(PRIAM_PRE + ".transfer.queue.fair", true);
+    }
+
+    @Override
+    public String getUploadPriorityWeights() {
+        return config.get(
+                PRIAM_PRE + ".upload.priority.weights",
+                "COMMIT_LOG:8,INCREMENTAL:4,META:2,SNAPSHOT:1");
+    }
+
+    @Override
+    public long getUploadPriorityMaxWaitSeconds() {
+        return config.get(PRIAM_PRE + ".upload.priority.max.wait.seconds", 600L);
+    }
+
+    @Override
+    public int getTransferTraceCapacity() {
+        return config.get(PRIAM_PRE + ".transfer.trace.capacity", 1000);
+    }
+
+    @Override
+    public int getSnapshotDeadlineMinutes() {
+        return config.get(PRIAM_PRE + ".snapshot.deadline.minutes", 0);
+    }
+
+    @Override
+    public boolean isIncrementalSnapshotEnabled() {
+        return config.get(PRIAM_PRE + ".snapshot.incremental.enable", false);
+    }
+
+    @Override
+    public int getIncrementalSnapshotMaxAgeDays() {
+        return config.get(PRIAM_PRE + ".snapshot.incremental.maxage.days", 7);
+    }
+
+    @Override
+    public String getDeepVerifyCronExpression() {
+        return config.get(PRIAM_PRE + ".deep.verify.cron", "-1");
+    }
+
+    @Override
+    public int getDeepVerifySamplePercent() {
+        return config.get(PRIAM_PRE + ".deep.verify.sample.percent", 1);
+    }
+
+    @Override
+    public int getDeepVerifyThreads() {
+        return config.get(PRIAM_PRE + ".deep.verify.threads", 2);
+    }
+
+    @Override
+    public int getDeepVerifyThrottle() {
+        return config.get(PRIAM_PRE + ".deep.verify.throttle", 8 * 1024 * 1024);
+    }
+
+    @Override
+    public String getSnapshotInventoryFileLoc() {
+        return config.get(
+                PRIAM_PRE + ".snapshot.inventory.location",
+                getDataFileLocation() + File.separator + "snapshot.inventory");
+    }
+
     @Override
     public int getTombstoneWarnThreshold() {
         return config.get(PRIAM_PRE + ".tombstone.warning.threshold", 1000);
@@ -672,6 +801,37 @@ public class PriamConfiguration implements IConfiguration {
         return config.get(PRIAM_PRE + ".flush.interval");
     }
 
+    @Override
+    public boolean isRestoreResumable() {
+        return config.get(PRIAM_PRE + ".restore.resumable", true);
+    }
+
+    @Override
+    public String getRestoreJournalFileLoc() {
+        return config.get(
+                PRIAM_PRE + ".restore.journal.location", "/var/lib/priam/restore.journal");
+    }
+
+    @Override
+    public int getRestoreDecryptThreads() {
+        return config.get(PRIAM_PRE + ".restore.decrypt.threads", 2);
+    }
+
+    @Override
+    public int getRestoreDecompressThreads() {
+        return config.get(PRIAM_PRE + ".restore.decompress.threads", 4);
+    }
+
+    @Override
+    public int getRestoreWriteThreads() {
+        return config.get(PRIAM_PRE + ".restore.write.threads", 2);
+    }
+
+    @Override
+    public int getRestoreStageQueueSize() {
+        return config.get(PRIAM_PRE + ".restore.stage.queue.size", 100);
+    }
+
     @Override
     public String getBackupStatusFileLoc() {
         return config.get(
@@ -679,6 +839,11 @@ public class PriamConfiguration implements IConfiguration {
                 getDataFileLocation() + File.separator + "backup.status");
     }
 
+    @Override
+    public int getBackupStatusRetentionDays() {
+        return config.get(PRIAM_PRE + ".backup.status.retention.days", 365);
+    }
+
     @Override
     public boolean useSudo() {
         return config.get(PRIAM_PRE + ".cass.usesudo", true);
@@ -28,6 +28,7 @@ import com.netflix.priam.aws.S3BackupPath;
 import com.netflix.priam.backup.AbstractBackupPath;
 import com.netflix.priam.backup.AbstractFileSystem;
 import com.netflix.priam.backup.BackupRestoreException;
+import com.netflix.priam.backup.TransferTraces;
 import com.netflix.priam.config.IConfiguration;
 import com.netflix.priam.cred.ICredentialGeneric;
 import com.netflix.priam.cred.ICredentialGeneric.KEY;
@@ -70,8 +71,9 @@ public class GoogleEncryptedFileSystem extends AbstractFileSystem {
             final IConfiguration config,
             @Named("gcscredential") ICredentialGeneric credential,
             BackupMetrics backupMetrics,
-            BackupNotificationMgr backupNotificationManager) {
-        super(config, backupMetrics, backupNotificationManager);
+            BackupNotificationMgr backupNotificationManager,
+            TransferTraces transferTraces) {
+        super(config, backupMetrics, backupNotificationManager, transferTraces);
         this.backupMetrics = backupMetrics;
         this.pathProvider = pathProvider;
         this.config = config;
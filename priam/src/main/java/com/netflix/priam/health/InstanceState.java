@@ -16,12 +16,18 @@
  */
 package com.netflix.priam.health;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.netflix.priam.backup.BackupMetadata;
 import com.netflix.priam.backup.Status;
+import com.netflix.priam.backup.TransferProgress;
 import com.netflix.priam.utils.GsonJsonSerializer;
 import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
@@ -228,19 +234,37 @@ public class InstanceState {
         private LocalDateTime executionStartTime,
                 executionEndTime; // Start-end time of the actual restore execution
         private String snapshotMetaFile; // Location of the snapshot meta file selected for restore.
+        // Files shared by the snapshot and incrementals which were downloaded only once.
+        private int duplicateFilesSkipped;
+        private long bytesAvoided;
+        // Completion time of each priority tier restored, in tier order.
+        private final Map<String, LocalDateTime> tierCompleted =
+                Collections.synchronizedMap(new LinkedHashMap<>());
         // the state of a restore.  Note: this is different than the "status" of a Task.
         private Status status;
+        // Files and bytes restored, serialized as its summary.
+        @GsonJsonSerializer.PriamAnnotation.GsonIgnore
+        private final TransferProgress progress = new TransferProgress();
 
         public void resetStatus() {
             this.snapshotMetaFile = null;
             this.status = null;
             this.startDateRange = endDateRange = null;
             this.executionStartTime = this.executionEndTime = null;
+            this.duplicateFilesSkipped = 0;
+            this.bytesAvoided = 0;
+            this.tierCompleted.clear();
         }
 
         @Override
         public String toString() {
-            return GsonJsonSerializer.getGson().toJson(this);
+            Gson gson = GsonJsonSerializer.getGson();
+            JsonObject json;
+            synchronized (tierCompleted) {
+                json = gson.toJsonTree(this).getAsJsonObject();
+            }
+            json.add("progress", gson.toJsonTree(progress.getSummary()));
+            return gson.toJson(json);
         }
 
         public Status getStatus() {
@@ -286,5 +310,36 @@ public class InstanceState {
         public void setSnapshotMetaFile(String snapshotMetaFile) {
             this.snapshotMetaFile = snapshotMetaFile;
         }
+
+        public int getDuplicateFilesSkipped() {
+            return duplicateFilesSkipped;
+        }
+
+        public void setDuplicateFilesSkipped(int duplicateFilesSkipped) {
+            this.duplicateFilesSkipped = duplicateFilesSkipped;
+        }
+
+        public long getBytesAvoided() {
+            return bytesAvoided;
+        }
+
+        public void setBytesAvoided(long bytesAvoided) {
+            this.bytesAvoided = bytesAvoided;
+        }
+
+        public Map<String, LocalDateTime> getTierCompleted() {
+            synchronized (tierCompleted) {
+                return new LinkedHashMap<>(tierCompleted);
+            }
+        }
+
+        public void setTierCompleted(String tier, LocalDateTime completed) {
+            tierCompleted.put(tier, completed);
+        }
+
+        /** @return progress of the files restored by the current or last restore. */
+        public TransferProgress getProgress() {
+            return progress;
+        }
     }
 }
@@ -15,9 +15,12 @@ package com.netflix.priam.merics;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
 import com.netflix.spectator.api.Counter;
 import com.netflix.spectator.api.DistributionSummary;
 import com.netflix.spectator.api.Registry;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.StringUtils;
 
 /** Created by vinhn on 2/13/17. */
 @Singleton
@@ -35,9 +38,80 @@ public class BackupMetrics {
             invalidDownloads,
             snsNotificationSuccess,
             snsNotificationFailure,
-            forgottenFiles;
+            forgottenFiles,
+            snapshotFilesReused,
+            snapshotBytesReused,
+            deepVerifyFiles,
+            deepVerifyBytes,
+            deepVerifyFailures,
+            restoreChecksumMismatches;
     public static final String uploadQueueSize = Metrics.METRIC_PREFIX + "upload.queue.size";
     public static final String downloadQueueSize = Metrics.METRIC_PREFIX + "download.queue.size";
+    public static final String restoreStageQueueSize =
+            Metrics.METRIC_PREFIX + "restore.stage.queue.size";
+    public static final String restoreStageUtilization =
+            Metrics.METRIC_PREFIX + "restore.stage.utilization";
+    public static final String restoreStageBusyTime =
+            Metrics.METRIC_PREFIX + "restore.stage.busy.time";
+    public static final String downloadConcurrencyLimit =
+            Metrics.METRIC_PREFIX + "download.concurrency.limit";
+    public static final String downloadConcurrency =
+            Metrics.METRIC_PREFIX + "download.concurrency";
+    public static final String downloadThroughput = Metrics.METRIC_PREFIX + "download.throughput";
+    public static final String transferMemoryUsed =
+            Metrics.METRIC_PREFIX + "transfer.memory.used";
+    public static final String transferMemoryLimit =
+            Metrics.METRIC_PREFIX + "transfer.memory.limit";
+    public static final String transferMemoryWait =
+            Metrics.METRIC_PREFIX + "transfer.memory.wait";
+    public static final String s3RequestLatency = Metrics.METRIC_PREFIX + "s3.request.latency";
+    public static final String s3RequestHedged = Metrics.METRIC_PREFIX + "s3.request.hedged";
+    public static final String s3RequestHedgeWins =
+            Metrics.METRIC_PREFIX + "s3.request.hedge.wins";
+    public static final String s3RequestHedgeThreshold =
+            Metrics.METRIC_PREFIX + "s3.request.hedge.threshold";
+    public static final String uploadConcurrencyLimit =
+            Metrics.METRIC_PREFIX + "upload.concurrency.limit";
+    public static final String uploadConcurrency = Metrics.METRIC_PREFIX + "upload.concurrency";
+    public static final String uploadThrottled = Metrics.METRIC_PREFIX + "upload.throttled";
+    public static final String uploadRetryBudget = Metrics.METRIC_PREFIX + "upload.retry.budget";
+    public static final String uploadRetryBudgetExhausted =
+            Metrics.METRIC_PREFIX + "upload.retry.budget.exhausted";
+    public static final String uploadPartSize = Metrics.METRIC_PREFIX + "upload.part.size";
+    public static final String executorQueueWait = Metrics.METRIC_PREFIX + "executor.queue.wait";
+    public static final String executorRunTime = Metrics.METRIC_PREFIX + "executor.run.time";
+    public static final String priorityQueueSize =
+            Metrics.METRIC_PREFIX + "priority.queue.size";
+    public static final String stageTime = Metrics.METRIC_PREFIX + "stage.time";
+    public static final String stageBytes = Metrics.METRIC_PREFIX + "stage.bytes";
+    public static final String s3Requests = Metrics.METRIC_PREFIX + "s3.requests";
+    public static final String snapshotDeadlineRequiredRate =
+            Metrics.METRIC_PREFIX + "snapshot.deadline.required.rate";
+    public static final String snapshotDeadlineUploadRate =
+            Metrics.METRIC_PREFIX + "snapshot.deadline.upload.rate";
+    public static final String snapshotDeadlineAtRisk =
+            Metrics.METRIC_PREFIX + "snapshot.deadline.at.risk";
+    public static final String deepVerifyCoverage =
+            Metrics.METRIC_PREFIX + "deep.verify.coverage";
+
+    /** Stages of the backup and restore data path. */
+    public enum Stage {
+        SCAN,
+        COMPRESS,
+        ENCRYPT,
+        RATE_LIMIT_WAIT,
+        PART_PUT,
+        COMPLETE,
+        LIST,
+        GET,
+        DECRYPT,
+        DECOMPRESS
+    }
+
+    /** Notified of the time spent in each stage of a file, e.g. to trace the file. */
+    public interface StageListener {
+        void record(Stage stage, long nanos);
+    }
 
     @Inject
     public BackupMetrics(Registry registry) {
@@ -53,6 +127,13 @@ public class BackupMetrics {
         snsNotificationFailure =
                 registry.counter(Metrics.METRIC_PREFIX + "sns.notification.failure");
         forgottenFiles = registry.counter(Metrics.METRIC_PREFIX + "forgotten.files");
+        snapshotFilesReused = registry.counter(Metrics.METRIC_PREFIX + "snapshot.files.reused");
+        snapshotBytesReused = registry.counter(Metrics.METRIC_PREFIX + "snapshot.bytes.reused");
+        deepVerifyFiles = registry.counter(Metrics.METRIC_PREFIX + "deep.verify.files");
+        deepVerifyBytes = registry.counter(Metrics.METRIC_PREFIX + "deep.verify.bytes");
+        deepVerifyFailures = registry.counter(Metrics.METRIC_PREFIX + "deep.verify.failures");
+        restoreChecksumMismatches =
+                registry.counter(Metrics.METRIC_PREFIX + "restore.checksum.mismatch");
     }
 
     public DistributionSummary getUploadRate() {
@@ -99,6 +180,28 @@ public class BackupMetrics {
         forgottenFiles.increment(forgottenFilesVal);
     }
 
+    /** A file of a snapshot which was not uploaded as it was uploaded by an earlier snapshot. */
+    public void incrementSnapshotFilesReused(long sizeInBytes) {
+        snapshotFilesReused.increment();
+        snapshotBytesReused.increment(sizeInBytes);
+    }
+
+    /** A file of a snapshot whose content matches the checksum recorded when it was uploaded. */
+    public void incrementDeepVerified(long sizeInBytes) {
+        deepVerifyFiles.increment();
+        deepVerifyBytes.increment(sizeInBytes);
+    }
+
+    /** A file of a snapshot which is corrupt or could not be read. */
+    public void incrementDeepVerifyFailures() {
+        deepVerifyFailures.increment();
+    }
+
+    /** A restored file whose content does not match the checksum recorded when it was uploaded. */
+    public void incrementRestoreChecksumMismatches() {
+        restoreChecksumMismatches.increment();
+    }
+
     public void recordDownloadRate(long sizeInBytes) {
         downloadRate.record(sizeInBytes);
     }
@@ -126,4 +229,72 @@ public class BackupMetrics {
     public Registry getRegistry() {
         return registry;
     }
+
+    /**
+     * Count a request made to S3.
+     *
+     * @param operation type of the request e.g. PutObject.
+     * @param status "success", or the HTTP status code of the failure.
+     */
+    public void incrementS3Requests(String operation, String status) {
+        registry.counter(s3Requests, "operation", operation, "status", status).increment();
+    }
+
+    /**
+     * @param type type of the files going through the stages, or null, if not known.
+     * @param keyspace keyspace of the files, or null, if not known or not applicable.
+     * @return recorder of the stages for the files.
+     */
+    public StageRecorder getStageRecorder(BackupFileType type, String keyspace) {
+        return getStageRecorder(type, keyspace, null);
+    }
+
+    /**
+     * @param type type of the files going through the stages, or null, if not known.
+     * @param keyspace keyspace of the files, or null, if not known or not applicable.
+     * @param listener also notified of the stages, may be null.
+     * @return recorder of the stages for the files.
+     */
+    public StageRecorder getStageRecorder(
+            BackupFileType type, String keyspace, StageListener listener) {
+        return new StageRecorder(
+                type == null ? "unknown" : type.name(),
+                StringUtils.defaultIfEmpty(keyspace, "none"),
+                listener);
+    }
+
+    /** Records the time spent and bytes processed in each stage, tagged by type and keyspace. */
+    public final class StageRecorder {
+        private final String type;
+        private final String keyspace;
+        private final StageListener listener;
+
+        private StageRecorder(String type, String keyspace, StageListener listener) {
+            this.type = type;
+            this.keyspace = keyspace;
+            this.listener = listener;
+        }
+
+        /**
+         * @param stage the stage.
+         * @param nanos time spent in the stage.
+         */
+        public void record(Stage stage, long nanos) {
+            registry.timer(stageTime, "stage", stage.name(), "type", type, "keyspace", keyspace)
+                    .record(nanos, TimeUnit.NANOSECONDS);
+            if (listener != null) listener.record(stage, nanos);
+        }
+
+        /**
+         * @param stage the stage.
+         * @param nanos time spent in the stage.
+         * @param bytes bytes processed by the stage.
+         */
+        public void record(Stage stage, long nanos, long bytes) {
+            record(stage, nanos);
+            registry.distributionSummary(
+                            stageBytes, "stage", stage.name(), "type", type, "keyspace", keyspace)
+                    .record(bytes);
+        }
+    }
 }
@@ -21,13 +21,16 @@ import com.google.inject.name.Named;
 import com.netflix.priam.backup.*;
 import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
 import com.netflix.priam.config.IConfiguration;
+import com.netflix.priam.merics.BackupMetrics;
 import com.netflix.priam.scheduler.PriamScheduler;
 import com.netflix.priam.utils.DateUtil;
+import com.netflix.priam.utils.GsonJsonSerializer;
 import com.netflix.priam.utils.SystemUtils;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.stream.Collectors;
 import javax.ws.rs.*;
@@ -56,6 +59,8 @@ public class BackupServlet {
     @Inject private PriamScheduler scheduler;
     private final IBackupStatusMgr completedBkups;
     @Inject private MetaData metaData;
+    @Inject private TransferTraces transferTraces;
+    @Inject private DeepVerifyTask deepVerifyTask;
 
     @Inject
     public BackupServlet(
@@ -130,6 +135,21 @@ public class BackupServlet {
     public Response status() throws Exception {
         JSONObject object = new JSONObject();
         object.put("SnapshotStatus", snapshotBackup.state().toString());
+        // Files and bytes of the current or last snapshot, with its throughput and ETA.
+        object.put(
+                "SnapshotProgress",
+                new JSONObject(
+                        GsonJsonSerializer.getGson()
+                                .toJson(snapshotBackup.getProgress().getSummary())));
+        SnapshotDeadlineController deadlineController = snapshotBackup.getDeadlineController();
+        if (deadlineController.getDeadline() != null) {
+            JSONObject deadline = new JSONObject();
+            deadline.put("deadline", deadlineController.getDeadline().toString());
+            deadline.put("requiredBytesPerSecond", (long) deadlineController.getRequiredRate());
+            deadline.put("uploadBytesPerSecond", (long) deadlineController.getUploadRate());
+            deadline.put("atRisk", deadlineController.isAtRisk());
+            object.put("SnapshotDeadline", deadline);
+        }
         return Response.ok(object.toString(), MediaType.APPLICATION_JSON).build();
     }
 
@@ -171,6 +191,13 @@ public class BackupServlet {
                 object.put("completetime", "not_available");
             }
 
+            if (!bkupMetadata.getTierCompleted().isEmpty()) {
+                JSONObject tiers = new JSONObject();
+                for (Map.Entry<String, Date> tier : bkupMetadata.getTierCompleted().entrySet())
+                    tiers.put(tier.getKey(), DateUtil.formatyyyyMMddHHmm(tier.getValue()));
+                object.put("tiercompletetime", tiers);
+            }
+
         } else { // Backup do not exist for that date.
             object.put("Snapshotstatus", false);
             String token =
@@ -279,9 +306,69 @@ public class BackupServlet {
         jsonReply.put("filesInMetaOnly", result.filesInMetaOnly);
         jsonReply.put("filesInS3Only", result.filesInS3Only);
         jsonReply.put("filesMatched", result.filesMatched);
+        jsonReply.put("filesMismatched", result.filesMismatched);
+        DeepVerifyResult deepResult = deepVerifyTask.getLastResult();
+        if (deepResult != null && deepResult.snapshotTime.equals(result.snapshotTime))
+            jsonReply.put(
+                    "deepVerify",
+                    new JSONObject(GsonJsonSerializer.getGson().toJson(deepResult)));
         return Response.ok(jsonReply.toString()).build();
     }
 
+    /*
+     * Result of the last deep verification, which checks the content of a sample of the files of
+     * the latest snapshot against the checksum they were uploaded with.
+     */
+    @GET
+    @Path("/validate/deep")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response validateDeep() throws Exception {
+        DeepVerifyResult result = deepVerifyTask.getLastResult();
+        if (result == null) return Response.status(404).entity("No deep verification yet").build();
+        return Response.ok(GsonJsonSerializer.getGson().toJson(result)).build();
+    }
+
+    /*
+     * Traces of the most recent file uploads and downloads, to find the files which made a backup
+     * or restore slow.
+     *
+     * @param minms only the transfers which took at least this many milliseconds.
+     * @param sort "slowest" to sort by duration, else the most recent transfers come first.
+     * @param limit maximum number of transfers returned.
+     */
+    @GET
+    @Path("/transfers")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response transfers(
+            @QueryParam("minms") @DefaultValue("0") long minDurationMillis,
+            @QueryParam("sort") @DefaultValue("recent") String sort,
+            @QueryParam("limit") @DefaultValue("100") int limit)
+            throws Exception {
+        JSONArray jArray = new JSONArray();
+        for (TransferTrace trace :
+                transferTraces.get(minDurationMillis, "slowest".equalsIgnoreCase(sort), limit)) {
+            JSONObject traceJSON = new JSONObject();
+            traceJSON.put("direction", trace.getDirection().name());
+            traceJSON.put("filename", trace.getRemotePath());
+            traceJSON.put("start_time", new DateTime(trace.getStartTime()).toString());
+            traceJSON.put("success", trace.isSuccess());
+            traceJSON.put("size", trace.getSize());
+            traceJSON.put("codec", trace.getCodec());
+            traceJSON.put("duration_ms", trace.getDurationMillis());
+            traceJSON.put("throughput_bytes_per_sec", trace.getThroughput());
+            traceJSON.put("retries", trace.getRetries());
+            traceJSON.put("parts", trace.getParts());
+            JSONObject stagesJSON = new JSONObject();
+            for (Map.Entry<BackupMetrics.Stage, Long> stage : trace.getStageMillis().entrySet())
+                stagesJSON.put(stage.getKey().name().toLowerCase(), stage.getValue());
+            traceJSON.put("stages_ms", stagesJSON);
+            jArray.put(traceJSON);
+        }
+        JSONObject object = new JSONObject();
+        object.put("transfers", jArray);
+        return Response.ok(object.toString(2), MediaType.APPLICATION_JSON).build();
+    }
+
     /*
      * A list of files for requested filter.  Currently, the only supported filter is META, all others will be ignore.
      * For filter of META, ONLY the daily snapshot meta file (meta.json)  are accounted for, not the incremental meta file.
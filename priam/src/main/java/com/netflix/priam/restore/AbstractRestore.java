@@ -21,6 +21,8 @@ import com.google.common.collect.Lists;
 import com.google.inject.Provider;
 import com.netflix.priam.backup.*;
 import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
+import com.netflix.priam.backupv2.RestoreV2Planner;
+import com.netflix.priam.config.IBackupRestoreConfig;
 import com.netflix.priam.config.IConfiguration;
 import com.netflix.priam.defaultimpl.ICassandraProcess;
 import com.netflix.priam.health.InstanceState;
@@ -32,9 +34,10 @@ import java.io.File;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.Future;
+import java.util.function.Supplier;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -65,6 +68,13 @@ public abstract class AbstractRestore extends Task implements IRestoreStrategy {
     private final InstanceState instanceState;
     private final MetaData metaData;
     private final IPostRestoreHook postRestoreHook;
+    private final RestoreJournal restoreJournal;
+    private RestorePlanner restorePlanner = new RestorePlanner();
+    private PriorityTiers priorityTiers = new PriorityTiers(null);
+    private PriorityTiers.Progress tierProgress = priorityTiers.newProgress(tier -> {});
+    private final IBackupRestoreConfig backupRestoreConfig;
+    private final RestoreV2Planner restoreV2Planner;
+    private final RestorePipeline restorePipeline;
 
     public AbstractRestore(
             IConfiguration config,
@@ -77,7 +87,10 @@ public abstract class AbstractRestore extends Task implements IRestoreStrategy {
             ICassandraProcess cassProcess,
             MetaData metaData,
             InstanceState instanceState,
-            IPostRestoreHook postRestoreHook) {
+            IPostRestoreHook postRestoreHook,
+            IBackupRestoreConfig backupRestoreConfig,
+            RestoreV2Planner restoreV2Planner,
+            RestorePipeline restorePipeline) {
         super(config);
         this.fs = fs;
         this.sleeper = sleeper;
@@ -91,6 +104,10 @@ public abstract class AbstractRestore extends Task implements IRestoreStrategy {
                 new BackupRestoreUtil(
                         config.getRestoreIncludeCFList(), config.getRestoreExcludeCFList());
         this.postRestoreHook = postRestoreHook;
+        this.restoreJournal = new RestoreJournal(new File(config.getRestoreJournalFileLoc()));
+        this.backupRestoreConfig = backupRestoreConfig;
+        this.restoreV2Planner = restoreV2Planner;
+        this.restorePipeline = restorePipeline;
     }
 
     public static final boolean isRestoreEnabled(IConfiguration conf, InstanceInfo instanceInfo) {
@@ -105,73 +122,170 @@ public abstract class AbstractRestore extends Task implements IRestoreStrategy {
         backupRestoreUtil.setFilters(restoreIncludeCFList, restoreExcludeCFList);
     }
 
-    private List<Future<Path>> download(
+    private void download(
             Iterator<AbstractBackupPath> fsIterator,
             BackupFileType bkupFileType,
             boolean waitForCompletion)
             throws Exception {
-        List<Future<Path>> futureList = new ArrayList<>();
         while (fsIterator.hasNext()) {
             AbstractBackupPath temp = fsIterator.next();
-            if (temp.getType() == BackupFileType.SST && tracker.contains(temp)) continue;
+            if (temp.getType() == bkupFileType) download(temp);
+        }
 
-            if (backupRestoreUtil.isFiltered(
-                    temp.getKeyspace(), temp.getColumnFamily())) { // is filtered?
-                logger.info(
-                        "Bypassing restoring file \"{}\" as it is part of the keyspace.columnfamily filter list.  Its keyspace:cf is: {}:{}",
-                        temp.newRestoreFile(),
-                        temp.getKeyspace(),
-                        temp.getColumnFamily());
-                continue;
-            }
+        // Wait for all download to finish, including the ones started earlier.
+        if (waitForCompletion) restorePipeline.awaitCompletion();
+    }
 
-            if (temp.getType() == bkupFileType) {
-                File localFileHandler = temp.newRestoreFile();
-                if (logger.isDebugEnabled())
-                    logger.debug(
-                            "Created local file name: "
-                                    + localFileHandler.getAbsolutePath()
-                                    + File.pathSeparator
-                                    + localFileHandler.getName());
-                futureList.add(downloadFile(temp, localFileHandler));
-            }
+    /*
+     * Queue the file in the restore pipeline unless it was restored recently or is part of the
+     * keyspace.columnfamily filter list.
+     */
+    private void download(AbstractBackupPath temp) throws Exception {
+        if (temp.getType() == BackupFileType.SST && tracker.contains(temp)) return;
+
+        if (backupRestoreUtil.isFiltered(
+                temp.getKeyspace(), temp.getColumnFamily())) { // is filtered?
+            logger.info(
+                    "Bypassing restoring file \"{}\" as it is part of the keyspace.columnfamily filter list.  Its keyspace:cf is: {}:{}",
+                    temp.newRestoreFile(),
+                    temp.getKeyspace(),
+                    temp.getColumnFamily());
+            return;
         }
 
-        // Wait for all download to finish that were started from this method.
-        if (waitForCompletion) waitForCompletion(futureList);
+        if (!restorePlanner.add(temp)) {
+            logger.debug("Skipping file {} as the SSTable is already restored.", temp);
+            return;
+        }
 
-        return futureList;
+        File localFileHandler = temp.newRestoreFile();
+        if (config.isRestoreResumable()
+                && restoreJournal.isRestored(temp.getRemotePath(), localFileHandler)) {
+            logger.debug("Skipping file {} as it was restored earlier.", temp.getRemotePath());
+            return;
+        }
+        if (logger.isDebugEnabled())
+            logger.debug(
+                    "Created local file name: "
+                            + localFileHandler.getAbsolutePath()
+                            + File.pathSeparator
+                            + localFileHandler.getName());
+        tracker.adjustAndAdd(temp);
+        Path remotePath = Paths.get(temp.getRemotePath());
+        if (temp.getType() == BackupFileType.SNAP || temp.getType() == BackupFileType.SST)
+            tierProgress.add(priorityTiers.getTier(temp), remotePath.toString());
+        restorePipeline.submit(
+                remotePath,
+                localFileHandler,
+                temp.getType(),
+                temp.getKeyspace(),
+                temp.getSize(),
+                temp.getChecksum());
     }
 
-    private void waitForCompletion(List<Future<Path>> futureList) throws Exception {
-        for (Future<Path> future : futureList) future.get();
+    /*
+     * Called by the restore pipeline once a file is written to its final location.
+     */
+    private void restored(Path remotePath, File localFile, String checksum) {
+        if (config.isRestoreResumable())
+            restoreJournal.record(remotePath.toString(), localFile, checksum);
+        tierProgress.done(remotePath.toString());
     }
 
-    private List<Future<Path>> downloadCommitLogs(
-            Iterator<AbstractBackupPath> fsIterator,
-            BackupFileType filter,
+    /*
+     * Downloads the incrementals (SST) and the last N commit logs (CL) uploaded after the snapshot.
+     * Incrementals are queued for download as they are listed. With priority tiers, the listing is
+     * read once per tier, and each pass queues the snapshot files and then the incrementals of its
+     * tier, so nothing is held across the passes.
+     */
+    private void downloadIncrementalsAndCommitLogs(
+            Supplier<Iterator<AbstractBackupPath>> listing,
+            boolean restoreCommitLogs,
             int lastN,
-            boolean waitForCompletion)
+            List<AbstractBackupPath> snapshots)
             throws Exception {
-        if (fsIterator == null) return null;
-
-        BoundedList<AbstractBackupPath> bl = new BoundedList(lastN);
-        while (fsIterator.hasNext()) {
-            AbstractBackupPath temp = fsIterator.next();
-            if (temp.getType() == BackupFileType.SST && tracker.contains(temp)) continue;
-
-            if (temp.getType() == filter) {
-                bl.add(temp);
+        BoundedList<AbstractBackupPath> commitLogs = new BoundedList<>(lastN);
+        int passes = priorityTiers.isEmpty() ? 1 : priorityTiers.getTierCount();
+        for (int tier = 0; tier < passes; tier++) {
+            if (!priorityTiers.isEmpty())
+                for (AbstractBackupPath snapshot : snapshots)
+                    if (snapshot.getType() == BackupFileType.SNAP
+                            && priorityTiers.getTier(snapshot) == tier) download(snapshot);
+            Iterator<AbstractBackupPath> fsIterator = listing.get();
+            while (fsIterator.hasNext()) {
+                AbstractBackupPath temp = fsIterator.next();
+                if (temp.getType() == BackupFileType.SST) {
+                    if (priorityTiers.isEmpty() || priorityTiers.getTier(temp) == tier)
+                        download(temp);
+                } else if (tier == 0 && restoreCommitLogs && temp.getType() == BackupFileType.CL)
+                    commitLogs.add(temp);
             }
         }
+        tierProgress.seal();
+        download(commitLogs.iterator(), BackupFileType.CL, false);
+    }
 
-        return download(bl.iterator(), filter, waitForCompletion);
+    /*
+     * Set the checksum each snapshot file was uploaded with, from the snapshot manifest uploaded
+     * next to the meta file, so that its content is verified as it is restored. Files are restored
+     * without verification if there is no manifest.
+     */
+    private void setChecksums(AbstractBackupPath meta, List<AbstractBackupPath> snapshots) {
+        AbstractBackupPath manifestPath = pathProvider.get();
+        manifestPath.parseRemote(meta.getRemotePath());
+        manifestPath.setFileName(SnapshotManifest.SNAPSHOT_MANIFEST_FILE);
+        File manifestFile = manifestPath.newRestoreFile();
+        try {
+            fs.downloadFile(Paths.get(manifestPath.getRemotePath()), manifestFile.toPath(), 5);
+            SnapshotManifest manifest = SnapshotManifest.read(manifestFile);
+            for (AbstractBackupPath snapshot : snapshots) {
+                SnapshotManifest.Entry entry = manifest.get(snapshot.getRemotePath());
+                if (entry != null) snapshot.setChecksum(entry.getChecksum());
+            }
+        } catch (Exception e) {
+            logger.info(
+                    "Snapshot manifest not available at {}, restoring without checksums",
+                    manifestPath.getRemotePath());
+        } finally {
+            FileUtils.deleteQuietly(manifestFile);
+        }
     }
 
     private void stopCassProcess() throws IOException {
         cassProcess.stop(true);
     }
 
+    private void cleanupDataDir() throws IOException {
+        File dataDir = new File(config.getDataFileLocation());
+        if (dataDir.exists() && dataDir.isDirectory()) FileUtils.cleanDirectory(dataDir);
+    }
+
+    /*
+     * Identifies the snapshot and time window being restored, so that an interrupted restore is
+     * only resumed by a restore of the same snapshot and time window.
+     */
+    private String getRestoreId(AbstractBackupPath meta, Date startTime, Date endTime) {
+        return AbstractBackupPath.formatDate(startTime)
+                + ","
+                + AbstractBackupPath.formatDate(endTime)
+                + ","
+                + meta.getRemotePath();
+    }
+
+    /*
+     * Cleanup local data unless an interrupted restore of the same snapshot is resumed, in which
+     * case only the files it left partially written are removed.
+     */
+    private void prepareRestore(AbstractBackupPath meta, Date startTime, Date endTime)
+            throws IOException {
+        boolean resume =
+                config.isRestoreResumable()
+                        && restoreJournal.load(getRestoreId(meta, startTime, endTime));
+        if (!resume) cleanupDataDir();
+        else RestorePipeline.deletePartialFiles(new File(config.getDataFileLocation()));
+        if (config.isRestoreResumable()) restoreJournal.open();
+    }
+
     private String getRestorePrefix() {
         String prefix;
         if (StringUtils.isNotBlank(config.getRestorePrefix())) prefix = config.getRestorePrefix();
@@ -181,13 +295,24 @@ public abstract class AbstractRestore extends Task implements IRestoreStrategy {
     }
 
     /*
-     * Fetches meta.json used to store snapshots metadata.
+     * Fetches meta.json used to store snapshots metadata. The meta index is listed first and the
+     * full listing of the restore window is only used if no snapshot in the window is indexed,
+     * i.e. they were all taken before the meta index. A snapshot whose meta file is uploaded is
+     * always indexed, see MetaData.
      */
     private void fetchSnapshotMetaFile(
             String restorePrefix, List<AbstractBackupPath> out, Date startTime, Date endTime)
             throws IllegalStateException {
         logger.debug("Looking for snapshot meta file within restore prefix: {}", restorePrefix);
 
+        Iterator<AbstractBackupPath> metaFiles =
+                fs.listSnapshotMetas(restorePrefix, startTime, endTime);
+        if (metaFiles.hasNext()) {
+            Iterators.addAll(out, metaFiles);
+            return;
+        }
+
+        logger.info("No snapshot meta file found in meta index, listing all the backup files.");
         Iterator<AbstractBackupPath> backupfiles = fs.list(restorePrefix, startTime, endTime);
         if (!backupfiles.hasNext()) {
             throw new IllegalStateException(
@@ -199,7 +324,7 @@ public abstract class AbstractRestore extends Task implements IRestoreStrategy {
             if (path.getType() == BackupFileType.META)
                 // Since there are now meta file for incrementals as well as snapshot, we need to
                 // find the correct one (i.e. the snapshot meta file (meta.json))
-                if (path.getFileName().equalsIgnoreCase("meta.json")) {
+                if (path.getFileName().equalsIgnoreCase(MetaData.SNAPSHOT_META_FILE)) {
                     out.add(path);
                 }
         }
@@ -239,6 +364,21 @@ public abstract class AbstractRestore extends Task implements IRestoreStrategy {
         instanceState.getRestoreStatus().setExecutionStartTime(LocalDateTime.now());
         instanceState.setRestoreStatus(Status.STARTED);
         String origToken = instanceIdentity.getInstance().getToken();
+        restorePlanner = new RestorePlanner();
+        priorityTiers = new PriorityTiers(config.getPriorityTiers());
+        tierProgress =
+                priorityTiers.newProgress(
+                        priorityTiers.isEmpty()
+                                ? tier -> {}
+                                : tier ->
+                                        instanceState
+                                                .getRestoreStatus()
+                                                .setTierCompleted(tier, LocalDateTime.now()));
+        restorePipeline.open(
+                fs,
+                getDecryptor(),
+                this::restored,
+                instanceState.getRestoreStatus().getProgress());
 
         try {
             if (config.isRestoreClosestToken()) {
@@ -249,73 +389,27 @@ public abstract class AbstractRestore extends Task implements IRestoreStrategy {
             // Stop cassandra if its running
             stopCassProcess();
 
-            // Cleanup local data
-            File dataDir = new File(config.getDataFileLocation());
-            if (dataDir.exists() && dataDir.isDirectory()) FileUtils.cleanDirectory(dataDir);
-
-            // Try and read the Meta file.
-            List<AbstractBackupPath> metas = Lists.newArrayList();
             String prefix = getRestorePrefix();
-            fetchSnapshotMetaFile(prefix, metas, startTime, endTime);
-
-            if (metas.size() == 0) {
+            boolean restored =
+                    backupRestoreConfig.enableV2Restore()
+                            ? restoreV2(prefix, startTime, endTime)
+                            : restoreV1(prefix, startTime, endTime);
+            if (!restored) {
                 logger.info("[cass_backup] No snapshot meta file found, Restore Failed.");
+                cleanupDataDir();
                 instanceState.getRestoreStatus().setExecutionEndTime(LocalDateTime.now());
                 instanceState.setRestoreStatus(Status.FINISHED);
                 return;
             }
 
-            Collections.sort(metas);
-            AbstractBackupPath meta = Iterators.getLast(metas.iterator());
-            logger.info("Snapshot Meta file for restore {}", meta.getRemotePath());
-            instanceState.getRestoreStatus().setSnapshotMetaFile(meta.getRemotePath());
-
-            // Download the meta.json file.
-            ArrayList<AbstractBackupPath> metaFile = new ArrayList<>();
-            metaFile.add(meta);
-            download(metaFile.iterator(), BackupFileType.META, true);
-
-            List<Future<Path>> futureList = new ArrayList<>();
-            // Parse meta.json file to find the files required to download from this snapshot.
-            List<AbstractBackupPath> snapshots = metaData.toJson(meta.newRestoreFile());
-
-            // Download snapshot which is listed in the meta file.
-            futureList.addAll(download(snapshots.iterator(), BackupFileType.SNAP, false));
-
-            logger.info("Downloading incrementals");
-            // Download incrementals (SST) after the snapshot meta file.
-            Iterator<AbstractBackupPath> incrementals = fs.list(prefix, meta.getTime(), endTime);
-            futureList.addAll(download(incrementals, BackupFileType.SST, false));
-
-            // Downloading CommitLogs
-            if (config.isBackingUpCommitLogs()) {
-                logger.info(
-                        "Delete all backuped commitlog files in {}",
-                        config.getBackupCommitLogLocation());
-                SystemUtils.cleanupDir(config.getBackupCommitLogLocation(), null);
-
-                logger.info("Delete all commitlog files in {}", config.getCommitLogLocation());
-                SystemUtils.cleanupDir(config.getCommitLogLocation(), null);
-
-                Iterator<AbstractBackupPath> commitLogPathIterator =
-                        fs.list(prefix, meta.getTime(), endTime);
-                futureList.addAll(
-                        downloadCommitLogs(
-                                commitLogPathIterator,
-                                BackupFileType.CL,
-                                config.maxCommitLogsRestore(),
-                                false));
-            }
-
-            // Wait for all the futures to finish.
-            waitForCompletion(futureList);
-
             // Given that files are restored now, kick off post restore hook
             logger.info("Starting post restore hook");
             postRestoreHook.execute();
             logger.info("Completed executing post restore hook");
+            restoreJournal.complete();
 
             // Declare restore as finished.
+            instanceState.getRestoreStatus().getProgress().finish();
             instanceState.getRestoreStatus().setExecutionEndTime(LocalDateTime.now());
             instanceState.setRestoreStatus(Status.FINISHED);
 
@@ -330,22 +424,116 @@ public abstract class AbstractRestore extends Task implements IRestoreStrategy {
             logger.error("Error while trying to restore: {}", e.getMessage(), e);
             throw e;
         } finally {
+            restoreJournal.close();
             instanceIdentity.getInstance().setToken(origToken);
         }
     }
 
+    /*
+     * Restores the snapshot listed in the snapshot meta file (meta.json) and the incrementals and
+     * commit logs uploaded after it.
+     * @return false if no snapshot meta file is found.
+     */
+    private boolean restoreV1(String prefix, Date startTime, Date endTime) throws Exception {
+        // Try and read the Meta file.
+        List<AbstractBackupPath> metas = Lists.newArrayList();
+        fetchSnapshotMetaFile(prefix, metas, startTime, endTime);
+        if (metas.size() == 0) return false;
+
+        Collections.sort(metas);
+        AbstractBackupPath meta = Iterators.getLast(metas.iterator());
+        logger.info("Snapshot Meta file for restore {}", meta.getRemotePath());
+        instanceState.getRestoreStatus().setSnapshotMetaFile(meta.getRemotePath());
+
+        prepareRestore(meta, startTime, endTime);
+
+        // Download the meta.json file.
+        ArrayList<AbstractBackupPath> metaFile = new ArrayList<>();
+        metaFile.add(meta);
+        download(metaFile.iterator(), BackupFileType.META, true);
+
+        // Parse meta.json file to find the files required to download from this snapshot.
+        List<AbstractBackupPath> snapshots = metaData.toJson(meta.newRestoreFile());
+        setChecksums(meta, snapshots);
+
+        // Download snapshot which is listed in the meta file, unless it is restored by tier along
+        // with the incrementals.
+        if (priorityTiers.isEmpty())
+            download(snapshots.iterator(), BackupFileType.SNAP, false);
+
+        // Downloading CommitLogs
+        if (config.isBackingUpCommitLogs()) {
+            logger.info(
+                    "Delete all backuped commitlog files in {}",
+                    config.getBackupCommitLogLocation());
+            SystemUtils.cleanupDir(config.getBackupCommitLogLocation(), null);
+
+            logger.info("Delete all commitlog files in {}", config.getCommitLogLocation());
+            SystemUtils.cleanupDir(config.getCommitLogLocation(), null);
+        }
+
+        logger.info("Downloading incrementals");
+        // Download incrementals (SST) and commit logs (CL) after the snapshot meta file.
+        downloadIncrementalsAndCommitLogs(
+                () -> fs.list(prefix, meta.getTime(), endTime),
+                config.isBackingUpCommitLogs(),
+                config.maxCommitLogsRestore(),
+                snapshots);
+
+        logger.info(
+                "Skipped {} files already restored from the snapshot, avoided {} bytes.",
+                restorePlanner.getDuplicateFiles(),
+                restorePlanner.getBytesAvoided());
+        instanceState
+                .getRestoreStatus()
+                .setDuplicateFilesSkipped(restorePlanner.getDuplicateFiles());
+        instanceState.getRestoreStatus().setBytesAvoided(restorePlanner.getBytesAvoided());
+
+        // Wait for all the files to be restored.
+        restorePipeline.allSubmitted();
+        restorePipeline.awaitCompletion();
+        return true;
+    }
+
+    /*
+     * Restores the SSTables which were live at the backup version 2.0 meta file nearest to the
+     * restore end time. SSTables compacted away before that time are not downloaded.
+     * @return false if no meta file is found.
+     */
+    private boolean restoreV2(String prefix, Date startTime, Date endTime) throws Exception {
+        AbstractBackupPath meta =
+                RestoreV2Planner.findMetaFile(
+                        fs.list(prefix, startTime, endTime), endTime.toInstant());
+        if (meta == null) return false;
+
+        logger.info("Backup V2 meta file for restore {}", meta.getRemotePath());
+        instanceState.getRestoreStatus().setSnapshotMetaFile(meta.getRemotePath());
+        prepareRestore(meta, startTime, endTime);
+
+        // Download the meta file.
+        download(Collections.singletonList(meta).iterator(), BackupFileType.META_V2, true);
+
+        // Download the SSTables which were live at the time of the meta file, as it is read.
+        new MetaV2RestoreReader(
+                        restorePipeline,
+                        restoreV2Planner,
+                        backupRestoreUtil,
+                        config.isRestoreResumable() ? restoreJournal : null,
+                        priorityTiers,
+                        tierProgress)
+                .restore(meta.newRestoreFile().toPath());
+        return true;
+    }
+
     /**
-     * Download file to the location specified. After downloading the file will be
-     * decrypted(optionally) and decompressed before saving to final location.
+     * Decryptor for the files downloaded by this restore. Files are fetched, decrypted (optionally)
+     * and decompressed before saving to final location.
      *
-     * @param path - path of object to download from source S3/GCS.
-     * @param restoreLocation - path to the final location of the decompressed and/or decrypted
-     *     file.
-     * @return Future of the job to track the progress of the job.
-     * @throws Exception If there is any error in downloading file from the remote file system.
+     * @return decryptor of the downloaded files, or null, if files are not encrypted.
      */
-    protected abstract Future<Path> downloadFile(
-            final AbstractBackupPath path, final File restoreLocation) throws Exception;
+    protected RestorePipeline.Decryptor getDecryptor() {
+        return null;
+    }
 
     public final class BoundedList<E> extends LinkedList<E> {
 
@@ -366,6 +554,6 @@ public abstract class AbstractRestore extends Task implements IRestoreStrategy {
     }
 
     public final int getDownloadTasksQueued() {
-        return fs.getDownloadTasksQueued();
+        return restorePipeline.getPending();
     }
 }
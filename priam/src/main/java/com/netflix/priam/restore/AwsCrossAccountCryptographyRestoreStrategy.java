@@ -20,7 +20,9 @@ import com.google.inject.name.Named;
 import com.netflix.priam.aws.S3CrossAccountFileSystem;
 import com.netflix.priam.backup.AbstractBackupPath;
 import com.netflix.priam.backup.MetaData;
+import com.netflix.priam.backupv2.RestoreV2Planner;
 import com.netflix.priam.compress.ICompression;
+import com.netflix.priam.config.IBackupRestoreConfig;
 import com.netflix.priam.config.IConfiguration;
 import com.netflix.priam.cred.ICredentialGeneric;
 import com.netflix.priam.cryptography.IFileCryptography;
@@ -60,7 +62,10 @@ public class AwsCrossAccountCryptographyRestoreStrategy extends EncryptedRestore
             RestoreTokenSelector tokenSelector,
             MetaData metaData,
             InstanceState instanceState,
-            IPostRestoreHook postRestoreHook) {
+            IPostRestoreHook postRestoreHook,
+            IBackupRestoreConfig backupRestoreConfig,
+            RestoreV2Planner restoreV2Planner,
+            RestorePipeline restorePipeline) {
 
         super(
                 config,
@@ -76,7 +81,10 @@ public class AwsCrossAccountCryptographyRestoreStrategy extends EncryptedRestore
                 compress,
                 metaData,
                 instanceState,
-                postRestoreHook);
+                postRestoreHook,
+                backupRestoreConfig,
+                restoreV2Planner,
+                restorePipeline);
     }
 
     /** @return a timer used by the scheduler to determine when "this" should be run. */
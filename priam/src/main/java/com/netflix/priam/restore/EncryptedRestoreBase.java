@@ -17,22 +17,16 @@ import com.google.inject.Provider;
 import com.netflix.priam.backup.AbstractBackupPath;
 import com.netflix.priam.backup.IBackupFileSystem;
 import com.netflix.priam.backup.MetaData;
+import com.netflix.priam.backupv2.RestoreV2Planner;
 import com.netflix.priam.compress.ICompression;
+import com.netflix.priam.config.IBackupRestoreConfig;
 import com.netflix.priam.config.IConfiguration;
 import com.netflix.priam.cred.ICredentialGeneric;
 import com.netflix.priam.cryptography.IFileCryptography;
 import com.netflix.priam.defaultimpl.ICassandraProcess;
 import com.netflix.priam.health.InstanceState;
 import com.netflix.priam.identity.InstanceIdentity;
-import com.netflix.priam.scheduler.NamedThreadPoolExecutor;
-import com.netflix.priam.utils.RetryableCallable;
 import com.netflix.priam.utils.Sleeper;
-import java.io.*;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.concurrent.Future;
-import java.util.concurrent.ThreadPoolExecutor;
-import org.bouncycastle.util.io.Streams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,7 +38,6 @@ public abstract class EncryptedRestoreBase extends AbstractRestore {
     private final ICredentialGeneric pgpCredential;
     private final IFileCryptography fileCryptography;
     private final ICompression compress;
-    private final ThreadPoolExecutor executor;
 
     protected EncryptedRestoreBase(
             IConfiguration config,
@@ -60,7 +53,10 @@ public abstract class EncryptedRestoreBase extends AbstractRestore {
             ICompression compress,
             MetaData metaData,
             InstanceState instanceState,
-            IPostRestoreHook postRestoreHook) {
+            IPostRestoreHook postRestoreHook,
+            IBackupRestoreConfig backupRestoreConfig,
+            RestoreV2Planner restoreV2Planner,
+            RestorePipeline restorePipeline) {
         super(
                 config,
                 fs,
@@ -72,14 +68,15 @@ public abstract class EncryptedRestoreBase extends AbstractRestore {
                 cassProcess,
                 metaData,
                 instanceState,
-                postRestoreHook);
+                postRestoreHook,
+                backupRestoreConfig,
+                restoreV2Planner,
+                restorePipeline);
 
         this.jobName = jobName;
         this.pgpCredential = pgpCredential;
         this.fileCryptography = fileCryptography;
         this.compress = compress;
-        executor = new NamedThreadPoolExecutor(config.getRestoreThreads(), jobName);
-        executor.allowCoreThreadTimeOut(true);
         logger.info(
                 "Trying to restore cassandra cluster with filesystem: {}, RestoreStrategy: {}, Encryption: ON, Compression: {}",
                 fs.getClass(),
@@ -88,114 +85,11 @@ public abstract class EncryptedRestoreBase extends AbstractRestore {
     }
 
     @Override
-    protected final Future<Path> downloadFile(
-            final AbstractBackupPath path, final File restoreLocation) throws Exception {
+    protected final RestorePipeline.Decryptor getDecryptor() {
         final char[] passPhrase =
                 new String(this.pgpCredential.getValue(ICredentialGeneric.KEY.PGP_PASSWORD))
                         .toCharArray();
-        File tempFile = new File(restoreLocation.getAbsolutePath() + ".tmp");
-
-        return executor.submit(
-                new RetryableCallable<Path>() {
-
-                    @Override
-                    public Path retriableCall() throws Exception {
-
-                        // == download object from source bucket
-                        try {
-                            // Not retrying to download file here as it is already in RetryCallable.
-                            fs.downloadFile(
-                                    Paths.get(path.getRemotePath()),
-                                    Paths.get(tempFile.getAbsolutePath()),
-                                    0);
-                            tracker.adjustAndAdd(path);
-                        } catch (Exception ex) {
-                            // This behavior is retryable; therefore, lets get to a clean state
-                            // before each retry.
-                            if (tempFile.exists()) {
-                                tempFile.createNewFile();
-                            }
-
-                            throw new Exception(
-                                    "Exception downloading file from: "
-                                            + path.getRemotePath()
-                                            + " to: "
-                                            + tempFile.getAbsolutePath(),
-                                    ex);
-                        }
-
-                        // == object downloaded successfully from source, decrypt it.
-                        File decryptedFile = new File(tempFile.getAbsolutePath() + ".decrypted");
-                        try (OutputStream fOut =
-                                        new BufferedOutputStream(
-                                                new FileOutputStream(
-                                                        decryptedFile)); // destination file after
-                                // decryption)
-                                InputStream in =
-                                        new BufferedInputStream(
-                                                new FileInputStream(tempFile.getAbsolutePath()))) {
-                            InputStream encryptedDataInputStream =
-                                    fileCryptography.decryptStream(
-                                            in, passPhrase, tempFile.getAbsolutePath());
-                            Streams.pipeAll(encryptedDataInputStream, fOut);
-                            logger.info(
-                                    "Completed decrypting file: {} to final file dest: {}",
-                                    tempFile.getAbsolutePath(),
-                                    decryptedFile.getAbsolutePath());
-
-                        } catch (Exception ex) {
-                            // This behavior is retryable; therefore, lets get to a clean state
-                            // before each retry.
-                            if (tempFile.exists()) {
-                                tempFile.createNewFile();
-                            }
-
-                            if (decryptedFile.exists()) {
-                                decryptedFile.createNewFile();
-                            }
-
-                            throw new Exception(
-                                    "Exception during decryption file:  "
-                                            + decryptedFile.getAbsolutePath(),
-                                    ex);
-                        }
-
-                        // == object downloaded and decrypted successfully, now uncompress it
-                        logger.info(
-                                "Start uncompressing file: {} to the FINAL destination stream",
-                                decryptedFile.getAbsolutePath());
-
-                        try (InputStream is =
-                                        new BufferedInputStream(
-                                                new FileInputStream(decryptedFile));
-                                BufferedOutputStream finalDestination =
-                                        new BufferedOutputStream(
-                                                new FileOutputStream(restoreLocation))) {
-                            compress.decompressAndClose(is, finalDestination);
-                        } catch (Exception ex) {
-                            throw new Exception(
-                                    "Exception uncompressing file: "
-                                            + decryptedFile.getAbsolutePath()
-                                            + " to the FINAL destination stream",
-                                    ex);
-                        }
-
-                        logger.info(
-                                "Completed uncompressing file: {} to the FINAL destination stream "
-                                        + " current worker: {}",
-                                decryptedFile.getAbsolutePath(),
-                                Thread.currentThread().getName());
-                        // if here, everything was successful for this object, lets remove unneeded
-                        // file(s)
-                        if (tempFile.exists()) tempFile.delete();
-
-                        if (decryptedFile.exists()) {
-                            decryptedFile.delete();
-                        }
-
-                        return Paths.get(path.getRemotePath());
-                    }
-                });
+        return (in, fileName) -> fileCryptography.decryptStream(in, passPhrase, fileName);
     }
 
     @Override
@@ -20,7 +20,9 @@ import com.google.inject.name.Named;
 import com.netflix.priam.backup.AbstractBackupPath;
 import com.netflix.priam.backup.IBackupFileSystem;
 import com.netflix.priam.backup.MetaData;
+import com.netflix.priam.backupv2.RestoreV2Planner;
 import com.netflix.priam.compress.ICompression;
+import com.netflix.priam.config.IBackupRestoreConfig;
 import com.netflix.priam.config.IConfiguration;
 import com.netflix.priam.cred.ICredentialGeneric;
 import com.netflix.priam.cryptography.IFileCryptography;
@@ -55,7 +57,10 @@ public class EncryptedRestoreStrategy extends EncryptedRestoreBase {
             RestoreTokenSelector tokenSelector,
             MetaData metaData,
             InstanceState instanceState,
-            IPostRestoreHook postRestoreHook) {
+            IPostRestoreHook postRestoreHook,
+            IBackupRestoreConfig backupRestoreConfig,
+            RestoreV2Planner restoreV2Planner,
+            RestorePipeline restorePipeline) {
 
         super(
                 config,
@@ -71,7 +76,10 @@ public class EncryptedRestoreStrategy extends EncryptedRestoreBase {
                 compress,
                 metaData,
                 instanceState,
-                postRestoreHook);
+                postRestoreHook,
+                backupRestoreConfig,
+                restoreV2Planner,
+                restorePipeline);
     }
 
     /*
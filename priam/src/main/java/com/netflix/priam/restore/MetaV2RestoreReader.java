@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.restore;
+
+import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
+import com.netflix.priam.backup.BackupRestoreUtil;
+import com.netflix.priam.backup.PriorityTiers;
+import com.netflix.priam.backupv2.ColumnfamilyResult;
+import com.netflix.priam.backupv2.MetaFileReader;
+import com.netflix.priam.backupv2.RestoreV2Planner;
+import java.nio.file.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Restores the SSTables of a backup version 2.0 meta file while it is being read. The SSTable
+ * components of each column family are queued in the {@link RestorePipeline} as soon as the column
+ * family is parsed, so downloads overlap the reading of the meta file. The bounded queues of the
+ * pipeline make reading wait for downloads, thus memory does not grow with the number of SSTables
+ * on the node.
+ *
+ * <p>With priority tiers, the meta file is read once per tier, and each pass only queues the
+ * column families of its tier. Nothing is kept across the passes.
+ */
+public class MetaV2RestoreReader extends MetaFileReader {
+    private static final Logger logger = LoggerFactory.getLogger(MetaV2RestoreReader.class);
+    private final RestorePipeline restorePipeline;
+    private final RestoreV2Planner restoreV2Planner;
+    private final BackupRestoreUtil backupRestoreUtil;
+    private final RestoreJournal restoreJournal;
+    private final PriorityTiers priorityTiers;
+    private final PriorityTiers.Progress tierProgress;
+    private int tier;
+    private int files;
+    private long bytes;
+
+    /**
+     * @param restorePipeline pipeline to restore the SSTables, opened for this restore.
+     * @param restoreV2Planner planner which computes the SSTable components to download.
+     * @param backupRestoreUtil the keyspace/column family filters to apply.
+     * @param restoreJournal journal of the restored files, or null, if restore is not resumable.
+     */
+    public MetaV2RestoreReader(
+            RestorePipeline restorePipeline,
+            RestoreV2Planner restoreV2Planner,
+            BackupRestoreUtil backupRestoreUtil,
+            RestoreJournal restoreJournal) {
+        this(
+                restorePipeline,
+                restoreV2Planner,
+                backupRestoreUtil,
+                restoreJournal,
+                new PriorityTiers(null),
+                null);
+    }
+
+    /**
+     * @param restorePipeline pipeline to restore the SSTables, opened for this restore.
+     * @param restoreV2Planner planner which computes the SSTable components to download.
+     * @param backupRestoreUtil the keyspace/column family filters to apply.
+     * @param restoreJournal journal of the restored files, or null, if restore is not resumable.
+     * @param priorityTiers tiers in which order the column families are restored.
+     * @param tierProgress progress of the restore through the tiers, or null.
+     */
+    public MetaV2RestoreReader(
+            RestorePipeline restorePipeline,
+            RestoreV2Planner restoreV2Planner,
+            BackupRestoreUtil backupRestoreUtil,
+            RestoreJournal restoreJournal,
+            PriorityTiers priorityTiers,
+            PriorityTiers.Progress tierProgress) {
+        this.restorePipeline = restorePipeline;
+        this.restoreV2Planner = restoreV2Planner;
+        this.backupRestoreUtil = backupRestoreUtil;
+        this.restoreJournal = restoreJournal;
+        this.priorityTiers = priorityTiers;
+        this.tierProgress = tierProgress;
+    }
+
+    /**
+     * Read the meta file and restore all the SSTable components listed in it.
+     *
+     * @param metaFilePath local path of the meta file.
+     * @throws Exception if unable to read the meta file or restore any of the SSTables.
+     */
+    public void restore(Path metaFilePath) throws Exception {
+        for (tier = 0; tier < priorityTiers.getTierCount(); tier++) readMeta(metaFilePath);
+        if (tierProgress != null) tierProgress.seal();
+        restorePipeline.allSubmitted();
+        restorePipeline.awaitCompletion();
+        logger.info("Restored {} files, {} bytes from meta file: {}", files, bytes, metaFilePath);
+    }
+
+    @Override
+    public void process(ColumnfamilyResult columnfamilyResult) {
+        // Column families of the other tiers are queued by their own pass.
+        int columnfamilyTier =
+                priorityTiers.getTier(
+                        columnfamilyResult.getKeyspaceName(),
+                        columnfamilyResult.getColumnfamilyName());
+        if (columnfamilyTier == tier) restore(columnfamilyResult);
+    }
+
+    private void restore(ColumnfamilyResult columnfamilyResult) {
+        for (RestoreV2Planner.RestoreFile restoreFile :
+                restoreV2Planner.getRestoreFiles(columnfamilyResult, backupRestoreUtil)) {
+            if (restoreJournal != null
+                    && restoreJournal.isRestored(
+                            restoreFile.getRemotePath().toString(),
+                            restoreFile.getLocalPath().toFile())) {
+                logger.debug("Skipping file {} as it was restored earlier.", restoreFile);
+                continue;
+            }
+
+            if (tierProgress != null)
+                tierProgress.add(tier, restoreFile.getRemotePath().toString());
+            restorePipeline.submit(
+                    restoreFile.getRemotePath(),
+                    restoreFile.getLocalPath().toFile(),
+                    BackupFileType.SST,
+                    columnfamilyResult.getKeyspaceName(),
+                    restoreFile.getSize(),
+                    restoreFile.getChecksum());
+            files++;
+            bytes += restoreFile.getSize();
+        }
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+}
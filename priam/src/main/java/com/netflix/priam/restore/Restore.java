@@ -23,6 +23,8 @@ import com.google.inject.name.Named;
 import com.netflix.priam.backup.AbstractBackupPath;
 import com.netflix.priam.backup.IBackupFileSystem;
 import com.netflix.priam.backup.MetaData;
+import com.netflix.priam.backupv2.RestoreV2Planner;
+import com.netflix.priam.config.IBackupRestoreConfig;
 import com.netflix.priam.config.IConfiguration;
 import com.netflix.priam.defaultimpl.ICassandraProcess;
 import com.netflix.priam.health.InstanceState;
@@ -30,10 +32,6 @@ import com.netflix.priam.identity.InstanceIdentity;
 import com.netflix.priam.scheduler.SimpleTimer;
 import com.netflix.priam.scheduler.TaskTimer;
 import com.netflix.priam.utils.Sleeper;
-import java.io.File;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.concurrent.Future;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,7 +52,10 @@ public class Restore extends AbstractRestore {
             RestoreTokenSelector tokenSelector,
             MetaData metaData,
             InstanceState instanceState,
-            IPostRestoreHook postRestoreHook) {
+            IPostRestoreHook postRestoreHook,
+            IBackupRestoreConfig backupRestoreConfig,
+            RestoreV2Planner restoreV2Planner,
+            RestorePipeline restorePipeline) {
         super(
                 config,
                 fs,
@@ -66,15 +67,10 @@ public class Restore extends AbstractRestore {
                 cassProcess,
                 metaData,
                 instanceState,
-                postRestoreHook);
-    }
-
-    @Override
-    protected final Future<Path> downloadFile(
-            final AbstractBackupPath path, final File restoreLocation) throws Exception {
-        tracker.adjustAndAdd(path);
-        return fs.asyncDownloadFile(
-                Paths.get(path.getRemotePath()), Paths.get(restoreLocation.getAbsolutePath()), 5);
+                postRestoreHook,
+                backupRestoreConfig,
+                restoreV2Planner,
+                restorePipeline);
     }
 
     public static TaskTimer getTimer() {
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.restore;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Journal of the files downloaded by a restore. Every file which is downloaded and verified is
+ * appended to the journal with its size, modification time and the checksum computed while it was
+ * restored. If a restore is interrupted, a restore of the same snapshot and time window can resume
+ * from the journal and skip the files which are still on disk as they were restored, without
+ * reading them again.
+ *
+ * <p>Format of the journal: a header line identifying the restore, followed by one line per file:
+ * REMOTE_PATH\tSIZE\tLAST_MODIFIED\tCRC32C
+ */
+public class RestoreJournal {
+    private static final Logger logger = LoggerFactory.getLogger(RestoreJournal.class);
+    private static final String HEADER_PREFIX = "#restore\t";
+    private static final String SEPARATOR = "\t";
+    private final File journalFile;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private String restoreId;
+    private Writer writer;
+
+    public RestoreJournal(File journalFile) {
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * Load the journal left behind by a previous run of the restore identified by restoreId.
+     *
+     * @param restoreId identifies the snapshot and time window being restored.
+     * @return true if the journal belongs to the same restore and it can be resumed.
+     */
+    public synchronized boolean load(String restoreId) {
+        this.restoreId = restoreId;
+        entries.clear();
+        if (!journalFile.exists()) return false;
+
+        try {
+            List<String> lines = Files.readAllLines(journalFile.toPath(), StandardCharsets.UTF_8);
+            if (lines.isEmpty() || !lines.get(0).equals(HEADER_PREFIX + restoreId)) {
+                logger.info("Restore journal {} is for a different restore.", journalFile);
+                return false;
+            }
+
+            for (String line : lines.subList(1, lines.size())) {
+                String[] pieces = line.split(SEPARATOR);
+                // A partially written line is ignored as its file will be downloaded again.
+                if (pieces.length != 4) continue;
+                try {
+                    entries.put(
+                            pieces[0],
+                            new Entry(
+                                    Long.parseLong(pieces[1]),
+                                    Long.parseLong(pieces[2]),
+                                    pieces[3]));
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring malformed restore journal entry: {}", line);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Unable to read restore journal {}, restore starts over.", journalFile);
+            entries.clear();
+            return false;
+        }
+
+        logger.info("Resuming restore with {} files from journal {}", entries.size(), journalFile);
+        return true;
+    }
+
+    /**
+     * Open the journal for writing. A journal which was loaded for the same restore is appended to,
+     * otherwise a new journal is started.
+     *
+     * @throws IOException if journal could not be opened for writing.
+     */
+    public synchronized void open() throws IOException {
+        close();
+        boolean resume = journalFile.exists() && !entries.isEmpty();
+        if (journalFile.getParentFile() != null) FileUtils.forceMkdir(journalFile.getParentFile());
+        writer =
+                new BufferedWriter(
+                        new OutputStreamWriter(
+                                new FileOutputStream(journalFile, resume),
+                                StandardCharsets.UTF_8));
+        if (!resume) {
+            writer.write(HEADER_PREFIX + restoreId + "\n");
+            writer.flush();
+        }
+    }
+
+    /**
+     * @param remotePath location of the file on the remote file system.
+     * @param localFile location where the file is restored.
+     * @return true if the file was restored earlier and the local copy still has the size and
+     *     modification time in the journal. The content of the file was verified when it was
+     *     restored, so it is not read again.
+     */
+    public boolean isRestored(String remotePath, File localFile) {
+        Entry entry = entries.get(remotePath);
+        return entry != null
+                && localFile.exists()
+                && localFile.length() == entry.size
+                && localFile.lastModified() == entry.lastModified;
+    }
+
+    /**
+     * Record a file which is downloaded to its final location.
+     *
+     * @param remotePath location of the file on the remote file system.
+     * @param localFile location where the file is restored.
+     * @param checksum CRC32C of the content of the file computed while it was restored.
+     */
+    public void record(String remotePath, File localFile, String checksum) {
+        if (!localFile.exists()) {
+            logger.warn("Not adding missing file {} to restore journal", localFile);
+            return;
+        }
+
+        Entry entry = new Entry(localFile.length(), localFile.lastModified(), checksum);
+        entries.put(remotePath, entry);
+        synchronized (this) {
+            if (writer == null) return;
+            try {
+                writer.write(
+                        remotePath
+                                + SEPARATOR
+                                + entry.size
+                                + SEPARATOR
+                                + entry.lastModified
+                                + SEPARATOR
+                                + entry.checksum
+                                + "\n");
+                writer.flush();
+            } catch (IOException e) {
+                // Journal is only an optimization, the file will be downloaded again on resume.
+                logger.warn("Unable to write to restore journal {}", journalFile, e);
+            }
+        }
+    }
+
+    /** Close the journal. It is kept on disk so that restore can be resumed later. */
+    public synchronized void close() {
+        if (writer == null) return;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.warn("Unable to close restore journal {}", journalFile, e);
+        }
+        writer = null;
+    }
+
+    /** Close and remove the journal once the restore is finished. */
+    public synchronized void complete() {
+        close();
+        entries.clear();
+        FileUtils.deleteQuietly(journalFile);
+    }
+
+    private static final class Entry {
+        private final long size;
+        private final long lastModified;
+        private final String checksum;
+
+        Entry(long size, long lastModified, String checksum) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+        }
+    }
+}
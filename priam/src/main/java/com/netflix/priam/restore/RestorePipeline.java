@@ -0,0 +1,576 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.restore;
+
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
+import com.google.common.io.CountingOutputStream;
+import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
+import com.netflix.priam.backup.BackupRestoreException;
+import com.netflix.priam.backup.IBackupFileSystem;
+import com.netflix.priam.backup.RawFileStream;
+import com.netflix.priam.backup.TransferMemoryBudget;
+import com.netflix.priam.backup.TransferProgress;
+import com.netflix.priam.compress.ICompression;
+import com.netflix.priam.config.IConfiguration;
+import com.netflix.priam.merics.BackupMetrics;
+import com.netflix.priam.merics.BackupMetrics.StageRecorder;
+import com.netflix.priam.scheduler.NamedThreadPoolExecutor;
+import com.netflix.spectator.api.Timer;
+import com.netflix.spectator.api.patterns.PolledMeter;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import javax.inject.Inject;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.filefilter.FileFilterUtils;
+import org.apache.commons.io.filefilter.TrueFileFilter;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Restores files through a pipeline of stages: fetch the bytes from the remote file system,
+ * decrypt (optionally), decompress and write the file to its final location. Each stage has its
+ * own thread pool and a bounded queue in front of it, so a thread waiting on the network never
+ * holds up decompression and vice versa. A stage hands a file to the next stage as soon as it
+ * starts on it, and streams the bytes of the file to it through a bounded {@link StagePipe}, so the
+ * file is only written once, next to its final location, and its buffers are charged to the
+ * transfer memory budget. When the queue of a stage is full, the previous stage waits, which bounds
+ * the number of files in flight. Completion is tracked with a counter instead of a future per
+ * file. The utilization of each stage, without the time it waits on the other stages of a file, is
+ * published as a metric to find the bottleneck of the restore. The time and bytes of the fetch,
+ * decrypt and decompress of each file are also recorded as stages of the data path, tagged by the
+ * type and keyspace of the file.
+ *
+ * <p>If the checksum a file was uploaded with is known, either from the snapshot or from the remote
+ * object itself, the CRC32C of its content is computed as it is decompressed, and a file which
+ * does not match is fetched again and fails the restore, instead of being found corrupt by
+ * Cassandra later.
+ */
+public class RestorePipeline {
+    private static final Logger logger = LoggerFactory.getLogger(RestorePipeline.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Chunks of BUFFER_SIZE queued between two stages of a file.
+    private static final int PIPE_CHUNKS = 16;
+    // Attempts for a file which failed e.g. partial or corrupt download.
+    private static final int MAX_ATTEMPTS = 3;
+    // Suffix of a file being written, it is moved to its final location once it is complete.
+    private static final String PARTIAL_SUFFIX = ".restoring";
+
+    public enum Stage {
+        FETCH,
+        DECRYPT,
+        DECOMPRESS,
+        WRITE
+    }
+
+    /** Decrypts the files fetched from the remote file system. */
+    public interface Decryptor {
+        InputStream decrypt(InputStream in, String fileName) throws Exception;
+    }
+
+    /** Notified when a file is written to its final location. */
+    public interface Listener {
+        /**
+         * @param remotePath location of the file on the remote file system.
+         * @param localFile location where the file is restored.
+         * @param checksum CRC32C of the restored content, computed while it was decompressed.
+         */
+        void restored(Path remotePath, File localFile, String checksum);
+    }
+
+    private final ICompression compress;
+    private final BackupMetrics backupMetrics;
+    private final TransferMemoryBudget memoryBudget;
+    private final Map<Stage, StageExecutor> stages = new EnumMap<>(Stage.class);
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Object completion = new Object();
+    private IBackupFileSystem fs;
+    private Decryptor decryptor;
+    private Listener listener;
+    private TransferProgress progress = new TransferProgress();
+    private volatile Exception failure;
+
+    @Inject
+    public RestorePipeline(
+            IConfiguration config,
+            BackupMetrics backupMetrics,
+            ICompression compress,
+            TransferMemoryBudget memoryBudget) {
+        this.compress = compress;
+        this.backupMetrics = backupMetrics;
+        this.memoryBudget = memoryBudget;
+        int queueSize = config.getRestoreStageQueueSize();
+        addStage(Stage.FETCH, config.getRestoreMaxConcurrency(), queueSize, backupMetrics);
+        addStage(Stage.DECRYPT, config.getRestoreDecryptThreads(), queueSize, backupMetrics);
+        addStage(Stage.DECOMPRESS, config.getRestoreDecompressThreads(), queueSize, backupMetrics);
+        addStage(Stage.WRITE, config.getRestoreWriteThreads(), queueSize, backupMetrics);
+    }
+
+    private void addStage(Stage stage, int threads, int queueSize, BackupMetrics backupMetrics) {
+        stages.put(stage, new StageExecutor(stage, threads, queueSize, backupMetrics));
+    }
+
+    /**
+     * Delete the files left partially written by an interrupted restore, before it is resumed.
+     *
+     * @param dataDir directory the files are restored to.
+     */
+    public static void deletePartialFiles(File dataDir) {
+        if (!dataDir.isDirectory()) return;
+        for (File file :
+                FileUtils.listFiles(
+                        dataDir,
+                        FileFilterUtils.suffixFileFilter(PARTIAL_SUFFIX),
+                        TrueFileFilter.INSTANCE)) {
+            logger.info("Deleting partially restored file: {}", file);
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
+    /**
+     * Prepare the pipeline for a new restore. Files of an earlier restore which failed are drained
+     * from the pipeline first.
+     *
+     * @param fs file system to fetch the files from.
+     * @param decryptor decrypts the fetched files, or null, if files are not encrypted.
+     * @param listener notified for every file restored.
+     * @throws InterruptedException if interrupted while waiting for an earlier restore.
+     */
+    public void open(IBackupFileSystem fs, Decryptor decryptor, Listener listener)
+            throws InterruptedException {
+        open(fs, decryptor, listener, new TransferProgress());
+    }
+
+    /**
+     * Prepare the pipeline for a new restore, see {@link #open(IBackupFileSystem, Decryptor,
+     * Listener)}.
+     *
+     * @param fs file system to fetch the files from.
+     * @param decryptor decrypts the fetched files, or null, if files are not encrypted.
+     * @param listener notified for every file restored.
+     * @param progress started, and tracks the files queued and restored.
+     * @throws InterruptedException if interrupted while waiting for an earlier restore.
+     */
+    public void open(
+            IBackupFileSystem fs, Decryptor decryptor, Listener listener, TransferProgress progress)
+            throws InterruptedException {
+        synchronized (completion) {
+            while (pending.get() > 0) completion.wait(1000);
+        }
+        this.fs = fs;
+        this.decryptor = decryptor;
+        this.listener = listener;
+        this.progress = progress;
+        progress.start();
+        failure = null;
+    }
+
+    /**
+     * Queue a file to restore. This waits if the fetch stage is full. Nothing is queued once a file
+     * has failed, the failure is reported by {@link #awaitCompletion()}.
+     *
+     * @param remotePath location of the file on the remote file system.
+     * @param localFile final location of the restored file.
+     */
+    public void submit(Path remotePath, File localFile) {
+        submit(remotePath, localFile, null, null, 0, null);
+    }
+
+    /**
+     * Queue a file to restore, see {@link #submit(Path, File)}.
+     *
+     * @param remotePath location of the file on the remote file system.
+     * @param localFile final location of the restored file.
+     * @param type type of the file, or null, if not known.
+     * @param keyspace keyspace of the file, or null, if not known or not applicable.
+     * @param size size of the file on the remote file system, to track the progress.
+     */
+    public void submit(
+            Path remotePath, File localFile, BackupFileType type, String keyspace, long size) {
+        submit(remotePath, localFile, type, keyspace, size, null);
+    }
+
+    /**
+     * Queue a file to restore, see {@link #submit(Path, File)}.
+     *
+     * @param remotePath location of the file on the remote file system.
+     * @param localFile final location of the restored file.
+     * @param type type of the file, or null, if not known.
+     * @param keyspace keyspace of the file, or null, if not known or not applicable.
+     * @param size size of the file on the remote file system, to track the progress.
+     * @param checksum CRC32C of the content of the file when it was uploaded, or null, to use the
+     *     checksum recorded with the remote object, if any.
+     */
+    public void submit(
+            Path remotePath,
+            File localFile,
+            BackupFileType type,
+            String keyspace,
+            long size,
+            String checksum) {
+        if (failure != null) {
+            logger.debug("Not restoring {} as restore has failed", remotePath);
+            return;
+        }
+        pending.incrementAndGet();
+        progress.plan(keyspace, size);
+        execute(
+                Stage.FETCH,
+                new Job(
+                        remotePath,
+                        localFile,
+                        keyspace,
+                        size,
+                        checksum,
+                        backupMetrics.getStageRecorder(type, keyspace)),
+                null);
+    }
+
+    /** All the files of the restore are queued, so its progress knows the files left. */
+    public void allSubmitted() {
+        progress.seal();
+    }
+
+    /**
+     * Wait for all the files queued to be restored.
+     *
+     * @throws Exception the first failure of a file, if any.
+     */
+    public void awaitCompletion() throws Exception {
+        synchronized (completion) {
+            while (pending.get() > 0) completion.wait(1000);
+        }
+
+        for (StageExecutor stage : stages.values())
+            logger.info(
+                    "Restore stage {} with {} threads was busy for {} ms",
+                    stage.stage,
+                    stage.threads,
+                    TimeUnit.NANOSECONDS.toMillis(stage.busyNanos.get()));
+
+        Exception e = failure;
+        failure = null;
+        if (e != null) throw e;
+    }
+
+    /** @return number of files queued which are not restored yet. */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /*
+     * Hand the job to a stage, which reads the file from the given pipe of the previous stage.
+     * @return false if the stage did not accept the job, which failed it.
+     */
+    private boolean execute(Stage stage, Job job, StagePipe in) {
+        StageExecutor stageExecutor = stages.get(stage);
+        try {
+            stageExecutor.execute(() -> stageExecutor.time(() -> run(stage, job, in)));
+            return true;
+        } catch (Exception e) {
+            fail(job, e);
+            return false;
+        }
+    }
+
+    /*
+     * Run a stage of the job. The next stage is started first, so it consumes the output of this
+     * stage while it is produced.
+     * @return nanos the stage waited on the other stages of the job, which are not busy time.
+     */
+    private long run(Stage stage, Job job, StagePipe in) {
+        if (stage == Stage.WRITE) return write(job, in);
+        long start = System.nanoTime();
+        StagePipe out = new StagePipe(memoryBudget, BUFFER_SIZE, PIPE_CHUNKS);
+        Stage next =
+                stage == Stage.FETCH && decryptor != null
+                        ? Stage.DECRYPT
+                        : stage == Stage.DECOMPRESS ? Stage.WRITE : Stage.DECOMPRESS;
+        if (!execute(next, job, out)) {
+            if (in != null) in.abort();
+            return 0;
+        }
+        long submitted = System.nanoTime();
+        try {
+            // The output is only closed, i.e. the end of the file passed on, if the stage succeeds.
+            OutputStream os = out.getOutputStream();
+            long bytes;
+            if (stage == Stage.FETCH) bytes = fetch(job, os);
+            else if (stage == Stage.DECRYPT) bytes = decrypt(job, in, os);
+            else bytes = decompress(job, in, os);
+            os.close();
+            job.record(stage, submitted, bytes, in, out);
+            // Unblocks the previous stage, if this stage did not read all of its output.
+            if (in != null) in.abort();
+        } catch (Exception e) {
+            // The stages of the job stop, and the write stage fetches the file again.
+            if (in != null) in.abort();
+            out.fail(e);
+        }
+        return submitted - start + getWaitNanos(in, out);
+    }
+
+    private static long getWaitNanos(StagePipe in, StagePipe out) {
+        return (in != null ? in.getConsumerWaitNanos() : 0) + out.getProducerWaitNanos();
+    }
+
+    private long fetch(Job job, OutputStream out) throws Exception {
+        try (RawFileStream raw = fs.openRawStream(job.remotePath)) {
+            if (job.checksum == null) job.checksum = raw.getChecksum();
+            long bytes = IOUtils.copyLarge(raw, out, new byte[BUFFER_SIZE]);
+            backupMetrics.recordDownloadRate(bytes);
+            backupMetrics.incrementValidDownloads();
+            return bytes;
+        }
+    }
+
+    private long decrypt(Job job, StagePipe in, OutputStream out) throws Exception {
+        try (InputStream decrypted =
+                decryptor.decrypt(in.getInputStream(), job.localFile.getAbsolutePath())) {
+            return IOUtils.copyLarge(decrypted, out, new byte[BUFFER_SIZE]);
+        }
+    }
+
+    /*
+     * The end of the file is only passed to the write stage once its checksum is verified, so a
+     * corrupt file is never moved to its final location.
+     */
+    private long decompress(Job job, StagePipe in, OutputStream out)
+            throws IOException, BackupRestoreException {
+        CountingOutputStream counting = new CountingOutputStream(new CloseShieldOutputStream(out));
+        HashingOutputStream hashing = new HashingOutputStream(Hashing.crc32c(), counting);
+        compress.decompressAndClose(in.getInputStream(), hashing);
+        verify(job, hashing.hash().toString());
+        return counting.getCount();
+    }
+
+    private long write(Job job, StagePipe in) {
+        try {
+            FileUtils.forceMkdir(job.localFile.getParentFile());
+            try (OutputStream out = new FileOutputStream(job.partial())) {
+                IOUtils.copyLarge(in.getInputStream(), out, new byte[BUFFER_SIZE]);
+            }
+            restored(job);
+        } catch (Exception e) {
+            in.abort();
+            job.cleanup();
+            retry(job, e);
+        }
+        return in.getConsumerWaitNanos();
+    }
+
+    /*
+     * The file is fetched again and restored on this thread. Handing it back to the fetch stage
+     * could wait on the queue of the fetch stage, while the fetch threads wait on the queue of
+     * the next stages.
+     */
+    private void retry(Job job, Exception error) {
+        while (++job.attempts < MAX_ATTEMPTS) {
+            logger.warn("Error while restoring {}, fetching it again", job.remotePath, error);
+            try {
+                restore(job);
+                return;
+            } catch (Exception e) {
+                job.cleanup();
+                error = e;
+            }
+        }
+        fail(job, error);
+    }
+
+    // Run all the stages of the job on the current thread.
+    private void restore(Job job) throws Exception {
+        FileUtils.forceMkdir(job.localFile.getParentFile());
+        try (RawFileStream raw = fs.openRawStream(job.remotePath)) {
+            if (job.checksum == null) job.checksum = raw.getChecksum();
+            InputStream compressed =
+                    decryptor != null
+                            ? decryptor.decrypt(raw, job.localFile.getAbsolutePath())
+                            : raw;
+            HashingOutputStream out =
+                    new HashingOutputStream(
+                            Hashing.crc32c(),
+                            new BufferedOutputStream(
+                                    new FileOutputStream(job.partial()), BUFFER_SIZE));
+            compress.decompressAndClose(compressed, out);
+            verify(job, out.hash().toString());
+        }
+        restored(job);
+    }
+
+    private void verify(Job job, String checksum) throws BackupRestoreException {
+        job.restoredChecksum = checksum;
+        if (job.checksum != null && !job.checksum.equals(checksum)) {
+            backupMetrics.incrementRestoreChecksumMismatches();
+            throw new BackupRestoreException(
+                    "Checksum mismatch of restored file: "
+                            + job.remotePath
+                            + " expected: "
+                            + job.checksum
+                            + " found: "
+                            + checksum);
+        }
+    }
+
+    private void restored(Job job) throws IOException {
+        Files.move(
+                job.partial().toPath(),
+                job.localFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        listener.restored(job.remotePath, job.localFile, job.restoredChecksum);
+        progress.done(job.keyspace, job.size);
+        complete();
+    }
+
+    private void fail(Job job, Exception e) {
+        logger.error("Error while restoring file: {} to {}", job.remotePath, job.localFile, e);
+        backupMetrics.incrementInvalidDownloads();
+        if (failure == null) failure = e;
+        complete();
+    }
+
+    private void complete() {
+        if (pending.decrementAndGet() == 0)
+            synchronized (completion) {
+                completion.notifyAll();
+            }
+    }
+
+    private static final class Job {
+        private final Path remotePath;
+        private final File localFile;
+        private final String keyspace;
+        private final long size;
+        private String checksum;
+        private final StageRecorder recorder;
+        private int attempts;
+        private String restoredChecksum;
+
+        Job(
+                Path remotePath,
+                File localFile,
+                String keyspace,
+                long size,
+                String checksum,
+                StageRecorder recorder) {
+            this.remotePath = remotePath;
+            this.localFile = localFile;
+            this.keyspace = keyspace;
+            this.size = size;
+            this.checksum = checksum;
+            this.recorder = recorder;
+        }
+
+        // Record a stage started at the given time, without the time it waited on its pipes.
+        void record(Stage stage, long start, long bytes, StagePipe in, StagePipe out) {
+            recorder.record(
+                    stage == Stage.FETCH
+                            ? BackupMetrics.Stage.GET
+                            : stage == Stage.DECRYPT
+                                    ? BackupMetrics.Stage.DECRYPT
+                                    : BackupMetrics.Stage.DECOMPRESS,
+                    System.nanoTime() - start - getWaitNanos(in, out),
+                    bytes);
+        }
+
+        File partial() {
+            return new File(localFile.getAbsolutePath() + PARTIAL_SUFFIX);
+        }
+
+        void cleanup() {
+            FileUtils.deleteQuietly(partial());
+        }
+    }
+
+    private static final class StageExecutor {
+        private final Stage stage;
+        private final int threads;
+        private final NamedThreadPoolExecutor executor;
+        private final Timer busyTime;
+        private final AtomicLong busyNanos = new AtomicLong();
+        private long lastPollNanos = System.nanoTime();
+        private long lastBusyNanos;
+
+        StageExecutor(Stage stage, int threads, int queueSize, BackupMetrics backupMetrics) {
+            this.stage = stage;
+            this.threads = Math.max(1, threads);
+            BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+            executor =
+                    new NamedThreadPoolExecutor(
+                            this.threads, "RestoreStage-" + stage.name().toLowerCase(), queue);
+            executor.allowCoreThreadTimeOut(true);
+            busyTime =
+                    backupMetrics
+                            .getRegistry()
+                            .timer(BackupMetrics.restoreStageBusyTime, "stage", stage.name());
+            PolledMeter.using(backupMetrics.getRegistry())
+                    .withName(BackupMetrics.restoreStageQueueSize)
+                    .withTag("stage", stage.name())
+                    .monitorSize(queue);
+            PolledMeter.using(backupMetrics.getRegistry())
+                    .withName(BackupMetrics.restoreStageUtilization)
+                    .withTag("stage", stage.name())
+                    .monitorValue(this, StageExecutor::pollUtilization);
+        }
+
+        void execute(Runnable task) {
+            executor.execute(task);
+        }
+
+        // Run the work, which returns the nanos it waited on other stages.
+        void time(LongSupplier work) {
+            long start = System.nanoTime();
+            long waited = 0;
+            try {
+                waited = work.getAsLong();
+            } finally {
+                long busy = Math.max(0, System.nanoTime() - start - waited);
+                busyNanos.addAndGet(busy);
+                busyTime.record(busy, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /*
+         * Fraction of the stage threads which were busy since the last poll. A stage close to 1
+         * is the bottleneck of the restore.
+         */
+        synchronized double pollUtilization() {
+            long now = System.nanoTime();
+            long busy = busyNanos.get();
+            double utilization =
+                    now == lastPollNanos
+                            ? 0
+                            : (double) (busy - lastBusyNanos) / ((now - lastPollNanos) * threads);
+            lastPollNanos = now;
+            lastBusyNanos = busy;
+            return utilization;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.restore;
+
+import com.netflix.priam.backup.AbstractBackupPath;
+import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Plans the files to be downloaded for a restore. The snapshot files and the incremental files are
+ * merged by SSTable identity (keyspace, column family, generation and component) so that a SSTable
+ * which was both captured by the snapshot and uploaded as an incremental is downloaded only once.
+ * Note that this class is not thread-safe.
+ */
+public class RestorePlanner {
+    private static final String SEPARATOR = "/";
+    private final Set<String> plannedSSTables = new HashSet<>();
+    private int duplicateFiles;
+    private long bytesAvoided;
+
+    /**
+     * Add the file to the restore plan.
+     *
+     * @param path file to be restored.
+     * @return true if the file should be downloaded, false if the same SSTable component is already
+     *     part of the plan.
+     */
+    public boolean add(AbstractBackupPath path) {
+        if (!BackupFileType.isDataFile(path.getType())) return true;
+
+        if (plannedSSTables.add(getSSTableIdentity(path))) return true;
+
+        duplicateFiles++;
+        bytesAvoided += path.getCompressedFileSize();
+        return false;
+    }
+
+    /** @return the number of files which were not downloaded as they were already planned. */
+    public int getDuplicateFiles() {
+        return duplicateFiles;
+    }
+
+    /**
+     * @return the number of bytes which were not downloaded as the files were already planned. Only
+     *     files whose size is known from the listing of the backup file system are accounted.
+     */
+    public long getBytesAvoided() {
+        return bytesAvoided;
+    }
+
+    /*
+     * SSTable component files are named
+     * [KEYSPACE-COLUMNFAMILY-]VERSION-GENERATION[-FORMAT]-COMPONENT e.g. ks-cf-ka-7213-Data.db or
+     * mc-3-big-Data.db. Files which do not follow this format are
+     * identified by their name.
+     */
+    static String getSSTableIdentity(AbstractBackupPath path) {
+        String fileName = path.getFileName();
+        String[] pieces = fileName.split("-");
+        String component = pieces[pieces.length - 1];
+        String generation = null;
+        for (int i = pieces.length - 2; i >= 0 && generation == null; i--)
+            if (StringUtils.isNumeric(pieces[i])) generation = pieces[i];
+
+        return path.getKeyspace()
+                + SEPARATOR
+                + path.getColumnFamily()
+                + SEPARATOR
+                + (generation == null ? fileName : generation + "-" + component);
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.restore;
+
+import com.netflix.priam.backup.TransferMemoryBudget;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Bounded buffer which passes the bytes of a file from one stage of the restore pipeline to the
+ * next, so a file is never staged on disk between stages. The producer waits while the pipe is
+ * full and the consumer while it is empty. A failure at either end is seen by the other end as an
+ * IOException, so the stages of a file stop together.
+ *
+ * <p>The chunks queued in the pipe are charged to the transfer memory budget. They never wait for
+ * the budget: the pipe is bounded already, and waiting for memory held by the files of other stages
+ * could stall the stages which would release it. The time each end waits on the other is tracked,
+ * so it is not counted as busy time of the stage.
+ */
+final class StagePipe {
+    private final TransferMemoryBudget memoryBudget;
+    private final int chunkSize;
+    private final int maxChunks;
+    private final ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+    private final Output output = new Output();
+    private final Input input = new Input();
+    private boolean closed;
+    private boolean aborted;
+    private Throwable failure;
+    private long producerWaitNanos;
+    private long consumerWaitNanos;
+
+    StagePipe(TransferMemoryBudget memoryBudget, int chunkSize, int maxChunks) {
+        this.memoryBudget = memoryBudget;
+        this.chunkSize = chunkSize;
+        this.maxChunks = Math.max(1, maxChunks);
+    }
+
+    /** @return stream written by the producer, closing it marks the end of the file. */
+    OutputStream getOutputStream() {
+        return output;
+    }
+
+    /** @return stream read by the consumer. */
+    InputStream getInputStream() {
+        return input;
+    }
+
+    /**
+     * Producer failed, the consumer gets an IOException once it reaches the failure.
+     *
+     * @param e cause of the failure.
+     */
+    synchronized void fail(Throwable e) {
+        if (failure == null) failure = e;
+        discard();
+    }
+
+    /** Consumer failed, the producer gets an IOException on its next write. */
+    synchronized void abort() {
+        aborted = true;
+        discard();
+    }
+
+    /** @return nanos the producer waited for the consumer. */
+    synchronized long getProducerWaitNanos() {
+        return producerWaitNanos;
+    }
+
+    /** @return nanos the consumer waited for the producer. */
+    synchronized long getConsumerWaitNanos() {
+        return consumerWaitNanos;
+    }
+
+    private synchronized void discard() {
+        while (!chunks.isEmpty()) memoryBudget.release(chunks.poll().length);
+        notifyAll();
+    }
+
+    private synchronized void put(byte[] chunk) throws IOException {
+        long start = System.nanoTime();
+        try {
+            while (chunks.size() >= maxChunks && !aborted) wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the next stage");
+        } finally {
+            producerWaitNanos += System.nanoTime() - start;
+        }
+        if (aborted) throw new IOException("Restore of the file failed in the next stage");
+        memoryBudget.resize(0, chunk.length);
+        chunks.add(chunk);
+        notifyAll();
+    }
+
+    private synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    /*
+     * @return the next chunk, or null, at the end of the file.
+     */
+    private synchronized byte[] take() throws IOException {
+        long start = System.nanoTime();
+        try {
+            while (chunks.isEmpty() && !closed && failure == null) wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the previous stage");
+        } finally {
+            consumerWaitNanos += System.nanoTime() - start;
+        }
+        if (failure != null)
+            throw new IOException("Restore of the file failed in the previous stage", failure);
+        byte[] chunk = chunks.poll();
+        if (chunk != null) {
+            memoryBudget.release(chunk.length);
+            notifyAll();
+        }
+        return chunk;
+    }
+
+    private final class Output extends OutputStream {
+        private byte[] chunk;
+        private int length;
+        private boolean eof;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (chunk == null) {
+                    chunk = new byte[chunkSize];
+                    length = 0;
+                }
+                int n = Math.min(len, chunk.length - length);
+                System.arraycopy(b, off, chunk, length, n);
+                length += n;
+                off += n;
+                len -= n;
+                if (length == chunk.length) send();
+            }
+        }
+
+        // Only full chunks are sent before the end of the file, a flush is not passed on.
+        private void send() throws IOException {
+            if (chunk == null || length == 0) return;
+            byte[] full = length == chunk.length ? chunk : Arrays.copyOf(chunk, length);
+            chunk = null;
+            put(full);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (eof) return;
+            send();
+            eof = true;
+            StagePipe.this.close();
+        }
+    }
+
+    private final class Input extends InputStream {
+        private byte[] chunk;
+        private int position;
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (chunk == null || position == chunk.length) {
+                chunk = take();
+                position = 0;
+                if (chunk == null) return -1;
+            }
+            int n = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return chunk == null ? 0 : chunk.length - position;
+        }
+    }
+}
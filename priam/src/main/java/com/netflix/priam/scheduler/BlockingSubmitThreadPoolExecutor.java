@@ -16,79 +16,174 @@
  */
 package com.netflix.priam.scheduler;
 
+import com.netflix.spectator.api.NoopRegistry;
+import com.netflix.spectator.api.Timer;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * {@link ThreadPoolExecutor} that will block in the {@code submit()} method until the task can be
  * successfully added to the queue.
+ *
+ * <p>A task takes a permit of a semaphore sized to the threads and the capacity of the queue
+ * before it is queued, and returns it once it has run. Submitters block on the semaphore, and are
+ * woken up as soon as a task completes. The time a task waits in the queue and the time it runs
+ * are recorded in the given timers.
  */
 public class BlockingSubmitThreadPoolExecutor extends ThreadPoolExecutor {
-    private static final long DEFAULT_SLEEP = 100;
     private static final long DEFAULT_KEEP_ALIVE = 100;
     private static final Logger logger =
             LoggerFactory.getLogger(BlockingSubmitThreadPoolExecutor.class);
-    private final BlockingQueue<Runnable> queue;
     private final long giveupTime;
-    private final AtomicInteger active;
+    private final Semaphore permits;
+    private final Timer queueWait;
+    private final Timer runTime;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition empty = lock.newCondition();
+    private int active;
 
     public BlockingSubmitThreadPoolExecutor(
             int maximumPoolSize, BlockingQueue<Runnable> workQueue, long timeoutAdding) {
-        super(maximumPoolSize, maximumPoolSize, DEFAULT_KEEP_ALIVE, TimeUnit.SECONDS, workQueue);
-        this.queue = workQueue;
+        this(maximumPoolSize, workQueue, timeoutAdding, false, null, null);
+    }
+
+    /**
+     * @param maximumPoolSize number of threads.
+     * @param workQueue bounded queue of the tasks waiting for a thread.
+     * @param timeoutAdding milliseconds to wait for a free slot to submit a task, and for all the
+     *     tasks to complete.
+     * @param fair true, if free slots are handed to the blocked submitters in order.
+     * @param queueWait timer of the time tasks wait in the queue, may be null.
+     * @param runTime timer of the time tasks run, may be null.
+     */
+    public BlockingSubmitThreadPoolExecutor(
+            int maximumPoolSize,
+            BlockingQueue<Runnable> workQueue,
+            long timeoutAdding,
+            boolean fair,
+            Timer queueWait,
+            Timer runTime) {
+        super(
+                maximumPoolSize,
+                maximumPoolSize,
+                DEFAULT_KEEP_ALIVE,
+                TimeUnit.SECONDS,
+                workQueue,
+                new BlockingRejectionPolicy());
         this.giveupTime = timeoutAdding;
-        this.active = new AtomicInteger(0);
+        // An unbounded queue reports Integer.MAX_VALUE as its remaining capacity.
+        long slots = (long) maximumPoolSize + workQueue.remainingCapacity();
+        this.permits = new Semaphore((int) Math.min(Integer.MAX_VALUE, slots), fair);
+        NoopRegistry noopRegistry = new NoopRegistry();
+        this.queueWait = queueWait == null ? noopRegistry.timer("queueWait") : queueWait;
+        this.runTime = runTime == null ? noopRegistry.timer("runTime") : runTime;
     }
 
     /**
-     * This is a thread safe way to avoid rejection exception... this is implemented because we
-     * might want to hold the incoming requests till there is a free thread.
+     * Blocks till there is a free slot for the task, up to the timeout. This is the entry point of
+     * all the {@code submit()} methods.
+     *
+     * @throws RejectedExecutionException if there is no free slot within the timeout.
      */
     @Override
-    public <T> Future<T> submit(Callable<T> task) {
-        synchronized (this) {
-            active.incrementAndGet();
-            long timeout = 0;
-            while (queue.remainingCapacity() == 0) {
-                try {
-                    if (timeout <= giveupTime) {
-                        Thread.sleep(DEFAULT_SLEEP);
-                        timeout += DEFAULT_SLEEP;
-                    } else {
-                        throw new RuntimeException("Timed out because TPE is too busy...");
-                    }
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
-            }
-            return super.submit(task);
+    public void execute(Runnable command) {
+        try {
+            if (!permits.tryAcquire(giveupTime, TimeUnit.MILLISECONDS))
+                throw new RejectedExecutionException("Timed out because TPE is too busy...");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(e);
+        }
+        lock.lock();
+        try {
+            active++;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            super.execute(new TimedTask(command));
+        } catch (RuntimeException e) {
+            complete();
+            throw e;
         }
     }
 
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        TimedTask task = (TimedTask) r;
+        task.started = System.nanoTime();
+        queueWait.record(task.started - task.queued, TimeUnit.NANOSECONDS);
+    }
+
     @Override
     protected void afterExecute(Runnable r, Throwable t) {
         super.afterExecute(r, t);
-        active.decrementAndGet();
+        runTime.record(System.nanoTime() - ((TimedTask) r).started, TimeUnit.NANOSECONDS);
+        complete();
+    }
+
+    private void complete() {
+        permits.release();
+        lock.lock();
+        try {
+            if (--active == 0) empty.signalAll();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /** blocking call to test if the threads are done or not. */
     public void sleepTillEmpty() {
-        long timeout = 0;
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(giveupTime);
+            while (active > 0) {
+                if (remaining <= 0)
+                    throw new RuntimeException("Timed out because TPE is too busy...");
+                logger.debug("Waiting for empty: {}, Count: {}", getQueue().size(), active);
+                remaining = empty.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class TimedTask implements Runnable {
+        private final Runnable task;
+        private final long queued = System.nanoTime();
+        private long started;
+
+        TimedTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
 
-        while (!queue.isEmpty() || (active.get() > 0)) {
+    /**
+     * A task holding a permit always fits, but a thread may return its permit just before it
+     * takes the next task from the queue. Wait for the queue in that case.
+     */
+    private static class BlockingRejectionPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown())
+                throw new RejectedExecutionException("Executor is shut down");
             try {
-                if (timeout <= giveupTime) {
-                    Thread.sleep(DEFAULT_SLEEP);
-                    timeout += DEFAULT_SLEEP;
-                    logger.debug(
-                            "After Sleeping for empty: {}, Count: {}", +queue.size(), active.get());
-                } else {
-                    throw new RuntimeException("Timed out because TPE is too busy...");
-                }
+                executor.getQueue().put(r);
             } catch (InterruptedException e) {
-                throw new RuntimeException(e);
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(e);
             }
         }
     }
@@ -13,6 +13,8 @@
  */
 package com.netflix.priam.services;
 
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
 import com.google.inject.Provider;
 import com.netflix.priam.backup.AbstractBackup;
 import com.netflix.priam.backup.AbstractBackupPath;
@@ -22,6 +24,7 @@ import com.netflix.priam.backupv2.*;
 import com.netflix.priam.config.IBackupRestoreConfig;
 import com.netflix.priam.config.IConfiguration;
 import com.netflix.priam.defaultimpl.CassandraOperations;
+import com.netflix.priam.merics.BackupMetrics;
 import com.netflix.priam.scheduler.CronTimer;
 import com.netflix.priam.scheduler.TaskTimer;
 import com.netflix.priam.utils.CassandraMonitor;
@@ -74,8 +77,9 @@ public class SnapshotMetaService extends AbstractBackup {
             Provider<AbstractBackupPath> pathFactory,
             MetaFileWriterBuilder metaFileWriter,
             MetaFileManager metaFileManager,
-            CassandraOperations cassandraOperations) {
-        super(config, backupFileSystemCtx, pathFactory);
+            CassandraOperations cassandraOperations,
+            BackupMetrics backupMetrics) {
+        super(config, backupFileSystemCtx, pathFactory, backupMetrics);
         this.cassandraOperations = cassandraOperations;
         backupRestoreUtil =
                 new BackupRestoreUtil(
@@ -223,6 +227,9 @@ public class SnapshotMetaService extends AbstractBackup {
 
                 FileUploadResult fileUploadResult =
                         FileUploadResult.getFileUploadResult(keyspace, columnFamily, file);
+                // Same CRC32C as recorded with the uploaded copy, to verify it on restore.
+                fileUploadResult.setChecksum(
+                        Files.asByteSource(file).hash(Hashing.crc32c()).toString());
                 filePrefixToFileMap.putIfAbsent(prefix, new ArrayList<>());
                 filePrefixToFileMap.get(prefix).add(fileUploadResult);
             } catch (Exception e) {
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.utils;
+
+import com.google.common.base.Ticker;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of concurrent requests using additive increase/multiplicative decrease (AIMD).
+ * Every window the throughput of the completed requests is measured. The limit grows by one while
+ * the requests were using the whole limit and the throughput kept rising. The limit is halved when
+ * a request is throttled by the remote end and reduced by a quarter on a latency spike, at most
+ * once per window, so a burst of slow requests does not collapse the limit. The limit always stays
+ * between the minimum and the maximum given.
+ */
+public class AdaptiveConcurrencyLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // Throughput must rise by 5% over the last window to grow the limit.
+    private static final double RISE_THRESHOLD = 1.05;
+    private static final double THROTTLE_BACKOFF = 0.5;
+    private static final double LATENCY_BACKOFF = 0.75;
+    // A request is a latency spike if it is this much slower than the average request.
+    private static final double LATENCY_SPIKE_FACTOR = 3;
+    private static final int LATENCY_MIN_SAMPLES = 10;
+    private static final double LATENCY_SMOOTHING = 0.1;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final Ticker ticker;
+    private double limit;
+    private int inFlight;
+    private long windowStart;
+    private long windowBytes;
+    private int windowMaxInFlight;
+    private boolean windowDecreased;
+    private double lastThroughput;
+    private double throughput;
+    private double avgLatencyNanos;
+    private long latencySamples;
+
+    /**
+     * @param minLimit minimum number of concurrent requests, the limit starts here.
+     * @param maxLimit maximum number of concurrent requests.
+     */
+    public AdaptiveConcurrencyLimiter(int minLimit, int maxLimit) {
+        this(minLimit, maxLimit, Ticker.systemTicker());
+    }
+
+    AdaptiveConcurrencyLimiter(int minLimit, int maxLimit, Ticker ticker) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.minLimit = Math.max(1, Math.min(minLimit, this.maxLimit));
+        this.ticker = ticker;
+        this.limit = this.minLimit;
+        this.windowStart = ticker.read();
+    }
+
+    /**
+     * Wait till a request is allowed under the current limit. Every call must be followed by one
+     * of {@link #onSuccess(long, long)}, {@link #onThrottled()} or {@link #release()}.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (inFlight >= getLimit()) wait();
+        inFlight++;
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlight);
+    }
+
+    /**
+     * Release a request which completed successfully.
+     *
+     * @param bytes number of bytes transferred by the request.
+     * @param latencyNanos time taken by the request.
+     */
+    public synchronized void onSuccess(long bytes, long latencyNanos) {
+        windowBytes += bytes;
+        if (latencySamples >= LATENCY_MIN_SAMPLES
+                && latencyNanos > avgLatencyNanos * LATENCY_SPIKE_FACTOR) {
+            decrease(LATENCY_BACKOFF, "latency spike");
+        } else {
+            avgLatencyNanos =
+                    latencySamples == 0
+                            ? latencyNanos
+                            : avgLatencyNanos
+                                    + LATENCY_SMOOTHING * (latencyNanos - avgLatencyNanos);
+            latencySamples++;
+        }
+        releaseAndUpdate();
+    }
+
+    /** Release a request which was throttled by the remote end. */
+    public synchronized void onThrottled() {
+        decrease(THROTTLE_BACKOFF, "throttling");
+        releaseAndUpdate();
+    }
+
+    /** Release a request which failed for a reason other than throttling. */
+    public synchronized void release() {
+        releaseAndUpdate();
+    }
+
+    /** @return current number of concurrent requests allowed. */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /** @return number of requests in flight. */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /** @return bytes per second transferred in the last complete window. */
+    public synchronized double getThroughput() {
+        return throughput;
+    }
+
+    private void decrease(double factor, String reason) {
+        if (windowDecreased) return;
+        windowDecreased = true;
+        limit = Math.max(minLimit, limit * factor);
+        logger.info("Reduced concurrency limit to {} due to {}", getLimit(), reason);
+    }
+
+    private void releaseAndUpdate() {
+        inFlight--;
+        long now = ticker.read();
+        long elapsed = now - windowStart;
+        if (elapsed >= WINDOW_NANOS) {
+            throughput = windowBytes * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+            if (!windowDecreased
+                    && windowMaxInFlight >= getLimit()
+                    && throughput > lastThroughput * RISE_THRESHOLD
+                    && limit < maxLimit) {
+                limit = Math.min(maxLimit, limit + 1);
+                logger.debug("Increased concurrency limit to {}", getLimit());
+            }
+            lastThroughput = throughput;
+            windowStart = now;
+            windowBytes = 0;
+            windowMaxInFlight = inFlight;
+            windowDecreased = false;
+        }
+        notifyAll();
+    }
+}
@@ -25,18 +25,18 @@ import com.netflix.priam.merics.CassMonitorMetrics;
 import com.netflix.priam.scheduler.SimpleTimer;
 import com.netflix.priam.scheduler.Task;
 import com.netflix.priam.scheduler.TaskTimer;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.cassandra.tools.NodeProbe;
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /*
- * This task checks if the Cassandra process is running.
+ * This task checks if the Cassandra process is running. The process is found by its pid, see
+ * CassandraProcessDetector, and the status of its transports is read over JMX when the process
+ * changes and then at most every IConfiguration#getCassTransportStatusRefreshSeconds.
  */
 @Singleton
 public class CassandraMonitor extends Task {
@@ -47,17 +47,23 @@ public class CassandraMonitor extends Task {
     private final InstanceState instanceState;
     private final ICassandraProcess cassProcess;
     private final CassMonitorMetrics cassMonitorMetrics;
+    private final CassandraProcessDetector processDetector;
+    // Process and time of the last JMX read of the transport status.
+    private long transportStatusPid = -1;
+    private long transportStatusNanos;
 
     @Inject
     protected CassandraMonitor(
             IConfiguration config,
             InstanceState instanceState,
             ICassandraProcess cassProcess,
-            CassMonitorMetrics cassMonitorMetrics) {
+            CassMonitorMetrics cassMonitorMetrics,
+            CassandraProcessDetector processDetector) {
         super(config);
         this.instanceState = instanceState;
         this.cassProcess = cassProcess;
         this.cassMonitorMetrics = cassMonitorMetrics;
+        this.processDetector = processDetector;
     }
 
     @Override
@@ -69,47 +75,24 @@ public class CassandraMonitor extends Task {
             instanceState.setIsRequiredDirectoriesExist(false);
         }
 
-        Process process = null;
-        BufferedReader input = null;
         try {
-            // This returns pid for the Cassandra process
-            // This needs to be sent as command list as "pipe" of results is not allowed. Also, do
-            // not try to change
-            // with pgrep as it has limitation of 4K command list (cassandra command can go upto 5-6
-            // KB as cassandra lists all the libraries in command.
-            final String[] cmd = {
-                "/bin/sh",
-                "-c",
-                "ps -ef |grep -v -P \"\\sgrep\\s\" | grep " + config.getCassProcessName()
-            };
-            process = Runtime.getRuntime().exec(cmd);
-            input = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            String line = input.readLine();
-            if (line != null) {
+            long pid = processDetector.getPid();
+            if (pid >= 0) {
                 // Setting cassandra flag to true
                 instanceState.setCassandraProcessAlive(true);
                 isCassandraStarted.set(true);
-                NodeProbe bean = JMXNodeTool.instance(this.config);
-                instanceState.setIsGossipActive(bean.isGossipRunning());
-                instanceState.setIsNativeTransportActive(bean.isNativeTransportRunning());
-                instanceState.setIsThriftActive(bean.isThriftServerRunning());
+                refreshTransportStatus(pid);
             } else {
                 // Setting cassandra flag to false
                 instanceState.setCassandraProcessAlive(false);
                 isCassandraStarted.set(false);
+                transportStatusPid = -1;
             }
         } catch (Exception e) {
             logger.warn("Exception thrown while checking if Cassandra is running or not ", e);
             instanceState.setCassandraProcessAlive(false);
             isCassandraStarted.set(false);
-        } finally {
-            if (process != null) {
-                IOUtils.closeQuietly(process.getInputStream());
-                IOUtils.closeQuietly(process.getOutputStream());
-                IOUtils.closeQuietly(process.getErrorStream());
-            }
-
-            if (input != null) IOUtils.closeQuietly(input);
+            transportStatusPid = -1;
         }
 
         try {
@@ -132,6 +115,19 @@ public class CassandraMonitor extends Task {
         }
     }
 
+    private void refreshTransportStatus(long pid) throws Exception {
+        long now = System.nanoTime();
+        long refreshNanos = TimeUnit.SECONDS.toNanos(config.getCassTransportStatusRefreshSeconds());
+        if (pid == transportStatusPid && now - transportStatusNanos < refreshNanos) return;
+
+        NodeProbe bean = JMXNodeTool.instance(this.config);
+        instanceState.setIsGossipActive(bean.isGossipRunning());
+        instanceState.setIsNativeTransportActive(bean.isNativeTransportRunning());
+        instanceState.setIsThriftActive(bean.isThriftServerRunning());
+        transportStatusPid = pid;
+        transportStatusNanos = now;
+    }
+
     private void checkRequiredDirectories() {
         checkDirectory(config.getDataFileLocation());
         checkDirectory(config.getBackupCommitLogLocation());
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.utils;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.priam.config.IConfiguration;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the Cassandra process without forking a process. The pid of the process is cached and
+ * checked at each call by reading its command line in /proc, so a check is a single small read and
+ * a dead process is found by the next check. If the cached pid is not Cassandra, the pid file
+ * written by Cassandra is read, and only if it is stale are the processes in /proc scanned. Hosts
+ * without /proc fall back to listing the processes with ps.
+ */
+@Singleton
+public class CassandraProcessDetector {
+    private static final Logger logger = LoggerFactory.getLogger(CassandraProcessDetector.class);
+    private final IConfiguration config;
+    private final File procDir;
+    private long pid = -1;
+
+    @Inject
+    public CassandraProcessDetector(IConfiguration config) {
+        this(config, new File("/proc"));
+    }
+
+    /**
+     * @param config to find the name of the Cassandra process and its pid file.
+     * @param procDir process file system of the host.
+     */
+    public CassandraProcessDetector(IConfiguration config, File procDir) {
+        this.config = config;
+        this.procDir = procDir;
+    }
+
+    /**
+     * @return pid of the running Cassandra process, 0 if it is running but its pid is not known, or
+     *     -1 if it is not running.
+     * @throws IOException if the processes cannot be listed.
+     */
+    public synchronized long getPid() throws IOException {
+        if (!procDir.isDirectory()) return isListedByPs() ? 0 : -1;
+        if (pid > 0 && isCassandra(pid)) return pid;
+        pid = findPid();
+        if (pid > 0) logger.info("Cassandra process found with pid: {}", pid);
+        return pid;
+    }
+
+    private long findPid() {
+        long filePid = readPidFile();
+        if (filePid > 0 && isCassandra(filePid)) return filePid;
+
+        File[] processes = procDir.listFiles((dir, name) -> StringUtils.isNumeric(name));
+        if (processes != null)
+            for (File process : processes) {
+                long candidate = Long.parseLong(process.getName());
+                if (isCassandra(candidate)) return candidate;
+            }
+        return -1;
+    }
+
+    /* @return pid in the pid file, or -1 if there is no pid file. */
+    private long readPidFile() {
+        String pidFile = config.getCassPidFile();
+        if (StringUtils.isBlank(pidFile) || !new File(pidFile).isFile()) return -1;
+        try {
+            byte[] content = Files.readAllBytes(new File(pidFile).toPath());
+            return Long.parseLong(new String(content, StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Unable to read pid of Cassandra from {}", pidFile, e);
+            return -1;
+        }
+    }
+
+    /* The arguments of the command line of a process are separated by NUL characters. */
+    private boolean isCassandra(long candidate) {
+        File cmdline = new File(new File(procDir, Long.toString(candidate)), "cmdline");
+        try {
+            String command =
+                    new String(Files.readAllBytes(cmdline.toPath()), StandardCharsets.UTF_8);
+            return command.replace('\0', ' ').contains(config.getCassProcessName());
+        } catch (IOException e) {
+            // The process exited.
+            return false;
+        }
+    }
+
+    private boolean isListedByPs() throws IOException {
+        Process process = null;
+        BufferedReader input = null;
+        try {
+            // This needs to be sent as command list as "pipe" of results is not allowed. Also, do
+            // not try to change with pgrep as it has limitation of 4K command list (cassandra
+            // command can go upto 5-6 KB as cassandra lists all the libraries in command.
+            final String[] cmd = {
+                "/bin/sh",
+                "-c",
+                "ps -ef |grep -v -P \"\\sgrep\\s\" | grep " + config.getCassProcessName()
+            };
+            process = Runtime.getRuntime().exec(cmd);
+            input = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            return input.readLine() != null;
+        } finally {
+            if (process != null) {
+                IOUtils.closeQuietly(process.getInputStream());
+                IOUtils.closeQuietly(process.getOutputStream());
+                IOUtils.closeQuietly(process.getErrorStream());
+            }
+
+            if (input != null) IOUtils.closeQuietly(input);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.utils;
+
+import com.google.common.base.Ticker;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A budget of retries shared by all the callers. Every successful request deposits a fraction of a
+ * retry and every retry withdraws a whole one, so the retries stay a bounded fraction of the
+ * requests, however many threads fail at the same time. A small reserve per second allows retries
+ * when there have been no successful requests yet.
+ */
+public class RetryBudget {
+    private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private final double depositPerRequest;
+    private final int reservePerSecond;
+    private final double maxBalance;
+    private final Ticker ticker;
+    private double balance;
+    private int reserve;
+    private long reserveStart;
+
+    /**
+     * @param retryRatio retries allowed per successful request e.g. 0.1 allows 10% of the requests
+     *     to be retried.
+     * @param reservePerSecond retries allowed every second regardless of the successful requests.
+     */
+    public RetryBudget(double retryRatio, int reservePerSecond) {
+        this(retryRatio, reservePerSecond, Ticker.systemTicker());
+    }
+
+    RetryBudget(double retryRatio, int reservePerSecond, Ticker ticker) {
+        this.depositPerRequest = retryRatio;
+        this.reservePerSecond = reservePerSecond;
+        // Do not let a long run of successful requests build an unbounded burst of retries.
+        this.maxBalance = Math.max(1, retryRatio * 1000);
+        this.ticker = ticker;
+        this.reserve = reservePerSecond;
+        this.reserveStart = ticker.read();
+    }
+
+    /** Record a successful request. */
+    public synchronized void deposit() {
+        balance = Math.min(maxBalance, balance + depositPerRequest);
+    }
+
+    /** @return true, if a retry is allowed. The retry is withdrawn from the budget. */
+    public synchronized boolean tryWithdraw() {
+        long now = ticker.read();
+        if (now - reserveStart >= SECOND_NANOS) {
+            reserve = reservePerSecond;
+            reserveStart = now;
+        }
+        if (reserve > 0) {
+            reserve--;
+            return true;
+        }
+        if (balance >= 1) {
+            balance--;
+            return true;
+        }
+        return false;
+    }
+
+    /** @return number of retries left in the budget, excluding the reserve. */
+    public synchronized double getBalance() {
+        return balance;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.aws;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit test for the part size of multipart uploads. */
+public class TestPartSizePlanner {
+    private static final long MB = 1024 * 1024L;
+    private static final long GB = 1024 * MB;
+
+    @Test
+    public void testPreferredSize() {
+        Assert.assertEquals(10 * MB, PartSizePlanner.plan(100 * MB, 10 * MB, 2, 2, 256 * MB, 0));
+    }
+
+    @Test
+    public void testSpreadAcrossConcurrentRequests() {
+        Assert.assertEquals(6 * MB, PartSizePlanner.plan(24 * MB, 10 * MB, 4, 4, 256 * MB, 0));
+        // Never below the minimum part size of S3.
+        Assert.assertEquals(
+                PartSizePlanner.MIN_PART_SIZE,
+                PartSizePlanner.plan(12 * MB, 10 * MB, 8, 8, 256 * MB, 0));
+    }
+
+    @Test
+    public void testObservedThroughput() {
+        // A part takes 2 seconds at 100 MB/s.
+        Assert.assertEquals(
+                200 * MB, PartSizePlanner.plan(10 * GB, 10 * MB, 2, 2, 1024 * MB, 100 * MB));
+        // Parts buffered by 2 threads fit in the memory budget, rounded up to a MB.
+        Assert.assertEquals(
+                52 * MB, PartSizePlanner.plan(10 * GB, 10 * MB, 2, 2, 256 * MB, 100 * MB));
+    }
+
+    @Test
+    public void testMaxParts() {
+        long fileSize = 200 * GB;
+        long size = PartSizePlanner.plan(fileSize, 10 * MB, 2, 2, 256 * MB, 0);
+        Assert.assertEquals(21 * MB, size);
+        Assert.assertTrue((fileSize + size - 1) / size <= PartSizePlanner.MAX_PARTS);
+    }
+}
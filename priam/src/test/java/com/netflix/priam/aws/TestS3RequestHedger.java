@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.aws;
+
+import com.netflix.priam.config.FakeConfiguration;
+import com.netflix.priam.merics.BackupMetrics;
+import com.netflix.spectator.api.DefaultRegistry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit test for hedging slow requests to S3. */
+public class TestS3RequestHedger {
+    private S3RequestHedger hedger;
+
+    @Before
+    public void setup() {
+        hedger =
+                new S3RequestHedger(
+                        "test", new FakeConfiguration(), new BackupMetrics(new DefaultRegistry()));
+    }
+
+    private void warmUp() throws Exception {
+        for (int i = 0; i < 40; i++) hedger.call(() -> 0);
+        Assert.assertTrue(hedger.getThresholdNanos() > 0);
+    }
+
+    @Test
+    public void testNoHedgeWithoutLatencies() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Assert.assertEquals(1, (int) hedger.call(calls::incrementAndGet));
+        Assert.assertEquals(0, hedger.getThresholdNanos());
+        Assert.assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testHedgeWins() throws Exception {
+        warmUp();
+        AtomicInteger calls = new AtomicInteger();
+        long start = System.nanoTime();
+        String result =
+                hedger.call(
+                        () -> {
+                            if (calls.incrementAndGet() == 1) {
+                                // Straggler, interrupted once the hedge wins.
+                                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                                return "slow";
+                            }
+                            return "hedge";
+                        });
+        Assert.assertEquals("hedge", result);
+        Assert.assertEquals(2, calls.get());
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+    }
+
+    @Test
+    public void testHedgeBudget() throws Exception {
+        warmUp();
+        // Budget of 5% of the 40 warm up requests allows 2 hedges.
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 3; i++)
+            hedger.call(
+                    () -> {
+                        calls.incrementAndGet();
+                        Thread.sleep(50);
+                        return null;
+                    });
+        Assert.assertEquals(5, calls.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFailure() throws Exception {
+        warmUp();
+        hedger.call(
+                () -> {
+                    Thread.sleep(50);
+                    throw new IllegalStateException("Test exception");
+                });
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.aws;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
+import com.netflix.priam.merics.BackupMetrics;
+import com.netflix.spectator.api.DefaultRegistry;
+import com.netflix.spectator.api.Registry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit test for the metrics of the requests to S3 and of the stages of the data path. */
+public class TestS3RequestMetrics {
+    private Registry registry;
+    private BackupMetrics backupMetrics;
+
+    @Before
+    public void setup() {
+        registry = new DefaultRegistry();
+        backupMetrics = new BackupMetrics(registry);
+    }
+
+    private long getRequests(String operation, String status) {
+        return registry.counter(BackupMetrics.s3Requests, "operation", operation, "status", status)
+                .count();
+    }
+
+    @Test
+    public void testRequests() {
+        S3RequestMetrics requestMetrics = new S3RequestMetrics(backupMetrics);
+        Request<?> upload = new DefaultRequest<>(new UploadPartRequest(), "Amazon S3");
+        Request<?> get = new DefaultRequest<>(new GetObjectRequest("bucket", "key"), "Amazon S3");
+        Assert.assertEquals("UploadPart", S3RequestMetrics.getOperation(upload));
+
+        requestMetrics.afterResponse(upload, null);
+        requestMetrics.afterResponse(upload, null);
+        AmazonServiceException slowDown = new AmazonServiceException("Slow Down");
+        slowDown.setStatusCode(503);
+        requestMetrics.afterError(upload, null, slowDown);
+        requestMetrics.afterError(get, null, new RuntimeException("connection reset"));
+
+        Assert.assertEquals(2, getRequests("UploadPart", "success"));
+        Assert.assertEquals(1, getRequests("UploadPart", "503"));
+        Assert.assertEquals(1, getRequests("GetObject", "error"));
+        Assert.assertEquals(0, getRequests("GetObject", "success"));
+    }
+
+    @Test
+    public void testStageRecorder() {
+        backupMetrics
+                .getStageRecorder(BackupFileType.SST, "ks")
+                .record(BackupMetrics.Stage.COMPRESS, 1000, 10);
+        backupMetrics
+                .getStageRecorder(BackupFileType.SST, "ks")
+                .record(BackupMetrics.Stage.COMPRESS, 3000, 30);
+        backupMetrics.getStageRecorder(null, "").record(BackupMetrics.Stage.LIST, 5000);
+
+        Assert.assertEquals(
+                2,
+                registry.timer(
+                                BackupMetrics.stageTime,
+                                "stage", "COMPRESS", "type", "SST", "keyspace", "ks")
+                        .count());
+        Assert.assertEquals(
+                40,
+                registry.distributionSummary(
+                                BackupMetrics.stageBytes,
+                                "stage", "COMPRESS", "type", "SST", "keyspace", "ks")
+                        .totalAmount());
+        Assert.assertEquals(
+                5000,
+                registry.timer(
+                                BackupMetrics.stageTime,
+                                "stage", "LIST", "type", "unknown", "keyspace", "none")
+                        .totalTime());
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.netflix.priam.aws;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.netflix.priam.backup.AbstractBackupPath;
+import com.netflix.priam.backup.BRTestModule;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit test for the merge of the listings of sharded remote keys. */
+public class TestShardedListing {
+    private static final String CLUSTER = "casstestbackup/us-east-1/fake-app/";
+    private final Injector injector = Guice.createInjector(new BRTestModule());
+
+    private Iterator<AbstractBackupPath> listing(String shard, String... times) {
+        List<AbstractBackupPath> paths = Lists.newArrayList();
+        for (String time : times) {
+            AbstractBackupPath path = injector.getInstance(S3BackupPath.class);
+            path.parseRemote(CLUSTER + shard + "1234567/" + time + "/SST/ks/cf/ks-cf-ka-1-Data.db");
+            paths.add(path);
+        }
+        return paths.iterator();
+    }
+
+    @Test
+    public void testUnshardedPath() {
+        AbstractBackupPath path = listing("s0a/", "201808010000").next();
+        Assert.assertEquals(
+                CLUSTER + "1234567/201808010000/SST/ks/cf/ks-cf-ka-1-Data.db",
+                S3FileSystemBase.unshardedPath(path));
+
+        AbstractBackupPath unsharded = listing("", "201808010000").next();
+        Assert.assertEquals(unsharded.getRemotePath(), S3FileSystemBase.unshardedPath(unsharded));
+    }
+
+    @Test
+    public void testMergeShards() {
+        Iterator<AbstractBackupPath> merged =
+                S3FileSystemBase.mergeShards(
+                        Arrays.asList(
+                                listing("", "201808010030"),
+                                listing("s00/", "201808010100", "201808010300"),
+                                listing("s01/", "201808010000", "201808010200")));
+        List<String> times =
+                Lists.newArrayList(merged)
+                        .stream()
+                        .map(path -> AbstractBackupPath.formatDate(path.getTime()))
+                        .collect(Collectors.toList());
+        Assert.assertEquals(
+                Arrays.asList(
+                        "201808010000",
+                        "201808010030",
+                        "201808010100",
+                        "201808010200",
+                        "201808010300"),
+                times);
+    }
+}
@@ -25,17 +25,23 @@ import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
 import com.netflix.priam.config.IConfiguration;
 import com.netflix.priam.merics.BackupMetrics;
 import com.netflix.priam.notification.BackupNotificationMgr;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.*;
 import org.json.simple.JSONArray;
+import org.xerial.snappy.SnappyOutputStream;
 
 @Singleton
 public class FakeBackupFileSystem extends AbstractFileSystem {
     private List<AbstractBackupPath> flist;
     public Set<String> downloadedFiles;
     public Set<String> uploadedFiles;
+    // checksums recorded with the remote files, by remote path.
+    public final Map<String, String> checksums = Collections.synchronizedMap(new HashMap<>());
     private String baseDir;
     private String region;
     private String clusterName;
@@ -46,8 +52,9 @@ public class FakeBackupFileSystem extends AbstractFileSystem {
     public FakeBackupFileSystem(
             IConfiguration configuration,
             BackupMetrics backupMetrics,
-            BackupNotificationMgr backupNotificationMgr) {
-        super(configuration, backupMetrics, backupNotificationMgr);
+            BackupNotificationMgr backupNotificationMgr,
+            TransferTraces transferTraces) {
+        super(configuration, backupMetrics, backupNotificationMgr, transferTraces);
     }
 
     public void setupTest(List<String> files) {
@@ -58,20 +65,21 @@ public class FakeBackupFileSystem extends AbstractFileSystem {
             path.parseRemote(file);
             flist.add(path);
         }
-        downloadedFiles = new HashSet<>();
+        downloadedFiles = Collections.synchronizedSet(new HashSet<>());
         uploadedFiles = new HashSet<>();
     }
 
     public void setupTest() {
         clearTest();
         flist = new ArrayList<>();
-        downloadedFiles = new HashSet<>();
+        downloadedFiles = Collections.synchronizedSet(new HashSet<>());
         uploadedFiles = new HashSet<>();
     }
 
     private void clearTest() {
         if (flist != null) flist.clear();
         if (downloadedFiles != null) downloadedFiles.clear();
+        checksums.clear();
     }
 
     public void addFile(String file) {
@@ -113,6 +121,11 @@ public class FakeBackupFileSystem extends AbstractFileSystem {
         return 0;
     }
 
+    @Override
+    public String getChecksum(Path remotePath) throws BackupRestoreException {
+        return checksums.get(remotePath.toString());
+    }
+
     @Override
     public Iterator<AbstractBackupPath> listPrefixes(Date date) {
         // TODO Auto-generated method stub
@@ -130,13 +143,7 @@ public class FakeBackupFileSystem extends AbstractFileSystem {
         {
             // List all files and generate the file
             try (FileWriter fr = new FileWriter(localPath.toFile())) {
-                JSONArray jsonObj = new JSONArray();
-                for (AbstractBackupPath filePath : flist) {
-                    if (filePath.type == BackupFileType.SNAP) {
-                        jsonObj.add(filePath.getRemotePath());
-                    }
-                }
-                fr.write(jsonObj.toJSONString());
+                fr.write(getSnapshotList());
                 fr.flush();
             } catch (IOException io) {
                 throw new BackupRestoreException(io.getMessage(), io);
@@ -146,6 +153,29 @@ public class FakeBackupFileSystem extends AbstractFileSystem {
         System.out.println("Downloading " + remotePath.toString());
     }
 
+    @Override
+    protected void downloadRawFileImpl(Path remotePath, Path localPath)
+            throws BackupRestoreException {
+        // Files are stored compressed on the remote file system.
+        try (OutputStream os = new SnappyOutputStream(new FileOutputStream(localPath.toFile()))) {
+            os.write(getSnapshotList().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException io) {
+            throw new BackupRestoreException(io.getMessage(), io);
+        }
+        downloadedFiles.add(remotePath.toString());
+        System.out.println("Downloading " + remotePath.toString());
+    }
+
+    private String getSnapshotList() {
+        JSONArray jsonObj = new JSONArray();
+        for (AbstractBackupPath filePath : flist) {
+            if (filePath.type == BackupFileType.SNAP) {
+                jsonObj.add(filePath.getRemotePath());
+            }
+        }
+        return jsonObj.toJSONString();
+    }
+
     @Override
     protected long uploadFileImpl(Path localPath, Path remotePath) throws BackupRestoreException {
         uploadedFiles.add(localPath.toFile().getAbsolutePath());
@@ -31,8 +31,9 @@ public class NullBackupFileSystem extends AbstractFileSystem {
     public NullBackupFileSystem(
             IConfiguration configuration,
             BackupMetrics backupMetrics,
-            BackupNotificationMgr backupNotificationMgr) {
-        super(configuration, backupMetrics, backupNotificationMgr);
+            BackupNotificationMgr backupNotificationMgr,
+            TransferTraces transferTraces) {
+        super(configuration, backupMetrics, backupNotificationMgr, transferTraces);
     }
 
     @Override
@@ -48,6 +48,7 @@ public class TestAbstractFileSystem {
     private IConfiguration configuration;
     private BackupMetrics backupMetrics;
     private BackupNotificationMgr backupNotificationMgr;
+    private TransferTraces transferTraces;
     private AbstractFileSystem failureFileSystem;
     private MyFileSystem myFileSystem;
 
@@ -61,13 +62,17 @@ public class TestAbstractFileSystem {
             backupNotificationMgr = injector.getInstance(BackupNotificationMgr.class);
 
         backupMetrics = injector.getInstance(BackupMetrics.class);
+        transferTraces = injector.getInstance(TransferTraces.class);
 
         if (failureFileSystem == null)
             failureFileSystem =
-                    new FailureFileSystem(configuration, backupMetrics, backupNotificationMgr);
+                    new FailureFileSystem(
+                            configuration, backupMetrics, backupNotificationMgr, transferTraces);
 
         if (myFileSystem == null)
-            myFileSystem = new MyFileSystem(configuration, backupMetrics, backupNotificationMgr);
+            myFileSystem =
+                    new MyFileSystem(
+                            configuration, backupMetrics, backupNotificationMgr, transferTraces);
 
         BackupFileUtils.cleanupDir(Paths.get(configuration.getDataFileLocation()));
     }
@@ -127,6 +132,37 @@ public class TestAbstractFileSystem {
         }
     }
 
+    @Test
+    public void testTransferTraces() throws Exception {
+        Collection<File> files = generateFiles(1, 1, 1);
+        File file = files.iterator().next();
+        myFileSystem.uploadFile(file.toPath(), file.toPath(), getDummyPath(file.toPath()), 2, true);
+        try {
+            failureFileSystem.downloadFile(Paths.get("remote"), null, 2);
+            Assert.fail("Download should have failed");
+        } catch (BackupRestoreException e) {
+            // expected.
+        }
+
+        List<TransferTrace> traces = transferTraces.get(0, false, 10);
+        Assert.assertEquals(2, traces.size());
+        TransferTrace download = traces.get(0);
+        Assert.assertEquals(TransferTrace.Direction.DOWNLOAD, download.getDirection());
+        Assert.assertEquals("remote", download.getRemotePath());
+        Assert.assertFalse(download.isSuccess());
+        Assert.assertTrue(download.getRetries() > 0);
+        TransferTrace upload = traces.get(1);
+        Assert.assertEquals(TransferTrace.Direction.UPLOAD, upload.getDirection());
+        Assert.assertTrue(upload.isSuccess());
+        Assert.assertEquals(0, upload.getRetries());
+        Assert.assertEquals("none", upload.getCodec());
+
+        // The failed download waited between its retries.
+        traces = transferTraces.get(download.getDurationMillis(), true, 10);
+        Assert.assertEquals(download, traces.get(0));
+        Assert.assertEquals(1, transferTraces.get(0, true, 1).size());
+    }
+
     @Test
     public void testDownload() throws Exception {
         // Dummy download
@@ -283,8 +319,9 @@ public class TestAbstractFileSystem {
         public FailureFileSystem(
                 IConfiguration configuration,
                 BackupMetrics backupMetrics,
-                BackupNotificationMgr backupNotificationMgr) {
-            super(configuration, backupMetrics, backupNotificationMgr);
+                BackupNotificationMgr backupNotificationMgr,
+                TransferTraces transferTraces) {
+            super(configuration, backupMetrics, backupNotificationMgr, transferTraces);
         }
 
         @Override
@@ -312,8 +349,9 @@ public class TestAbstractFileSystem {
         public MyFileSystem(
                 IConfiguration configuration,
                 BackupMetrics backupMetrics,
-                BackupNotificationMgr backupNotificationMgr) {
-            super(configuration, backupMetrics, backupNotificationMgr);
+                BackupNotificationMgr backupNotificationMgr,
+                TransferTraces transferTraces) {
+            super(configuration, backupMetrics, backupNotificationMgr, transferTraces);
         }
 
         @Override
@@ -28,6 +28,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.sql.Date;
 import java.text.ParseException;
+import java.util.Collections;
 import org.apache.commons.io.FileUtils;
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -128,4 +129,69 @@ public class TestBackupFile {
                 "casstestbackup/" + region + "/fake-app/1234567/201108082320/META/1234567.meta",
                 backupfile.getRemotePath());
     }
+
+    @Test
+    public void testMetaIndexPath() throws ParseException {
+        S3BackupPath backupfile = injector.getInstance(S3BackupPath.class);
+        backupfile.time = backupfile.parseDate("201108082320");
+        backupfile.parseLocal(new File("cass/data/meta.json"), BackupFileType.META);
+        String indexPath =
+                "casstestbackup/" + region + "/fake-app/1234567/META/201108082320/meta.json";
+        Assert.assertEquals(indexPath, backupfile.getRemoteMetaIndexPath());
+
+        // Meta index entry resolves to the snapshot meta file.
+        S3BackupPath indexEntry = injector.getInstance(S3BackupPath.class);
+        indexEntry.parseRemote(indexPath);
+        Assert.assertEquals(BackupFileType.META, indexEntry.type);
+        Assert.assertEquals(backupfile.time, indexEntry.time);
+        Assert.assertEquals("meta.json", indexEntry.getFileName());
+        Assert.assertEquals(
+                "casstestbackup/" + region + "/fake-app/1234567/201108082320/META/meta.json",
+                indexEntry.getRemotePath());
+    }
+
+    @Test
+    public void testShardedPath() throws ParseException {
+        String remotePath =
+                "casstestbackup/"
+                        + region
+                        + "/fake-app/s0a/1234567/201108082320/SST/Keyspace1/Standard1/Keyspace1-Standard1-ia-5-Data.db";
+        S3BackupPath backupfile = injector.getInstance(S3BackupPath.class);
+        backupfile.parseRemote(remotePath);
+        Assert.assertEquals(BackupFileType.SST, backupfile.type);
+        Assert.assertEquals("fake-app", backupfile.clusterName);
+        Assert.assertEquals("1234567", backupfile.token);
+        Assert.assertEquals("Keyspace1", backupfile.keyspace);
+        Assert.assertEquals("Standard1", backupfile.columnFamily);
+        Assert.assertEquals(backupfile.parseDate("201108082320"), backupfile.time);
+        // Shard of the remote key is kept.
+        Assert.assertEquals(remotePath, backupfile.getRemotePath());
+
+        S3BackupPath prefix = injector.getInstance(S3BackupPath.class);
+        prefix.parsePartialPrefix("casstestbackup/" + region + "/fake-app/s0a/1234567/");
+        Assert.assertEquals("1234567", prefix.token);
+
+        // Meta index entry resolves to the snapshot meta file in the same shard.
+        S3BackupPath indexEntry = injector.getInstance(S3BackupPath.class);
+        indexEntry.parseRemote(
+                "casstestbackup/" + region + "/fake-app/s01/1234567/META/201108082320/meta.json");
+        Assert.assertEquals(
+                "casstestbackup/" + region + "/fake-app/s01/1234567/201108082320/META/meta.json",
+                indexEntry.getRemotePath());
+    }
+
+    @Test
+    public void testShard() {
+        Assert.assertEquals("", AbstractBackupPath.getShard(0, "1234567", "meta.json"));
+        String shard = AbstractBackupPath.getShard(16, "1234567", "meta.json");
+        Assert.assertTrue(AbstractBackupPath.SHARD_PATTERN.matcher(shard).matches());
+        Assert.assertTrue(shard.compareTo("s10") < 0);
+        Assert.assertEquals(shard, AbstractBackupPath.getShard(16, "1234567", "meta.json"));
+
+        // Keys are not sharded in the default configuration.
+        S3BackupPath backupfile = injector.getInstance(S3BackupPath.class);
+        Assert.assertEquals(
+                Collections.singletonList("casstestbackup/"),
+                backupfile.shardPrefixes("casstestbackup/"));
+    }
 }
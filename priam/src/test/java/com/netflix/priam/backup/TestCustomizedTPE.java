@@ -18,8 +18,12 @@
 package com.netflix.priam.backup;
 
 import com.netflix.priam.scheduler.BlockingSubmitThreadPoolExecutor;
+import com.netflix.spectator.api.DefaultRegistry;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spectator.api.Timer;
 import java.util.concurrent.Callable;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Assert;
 import org.junit.Test;
@@ -51,6 +55,43 @@ public class TestCustomizedTPE {
         Assert.assertEquals(100, count.get());
     }
 
+    @Test
+    public void testTimers() {
+        Registry registry = new DefaultRegistry();
+        Timer queueWait = registry.timer("queueWait");
+        Timer runTime = registry.timer("runTime");
+        BlockingSubmitThreadPoolExecutor executor =
+                new BlockingSubmitThreadPoolExecutor(
+                        2, new LinkedBlockingDeque<>(2), TIME_OUT, true, queueWait, runTime);
+        final AtomicInteger count = new AtomicInteger();
+        for (int i = 0; i < 20; i++) {
+            executor.submit(
+                    (Callable<Void>)
+                            () -> {
+                                Thread.sleep(10);
+                                count.incrementAndGet();
+                                return null;
+                            });
+        }
+        executor.sleepTillEmpty();
+        Assert.assertEquals(20, count.get());
+        Assert.assertEquals(20, queueWait.count());
+        Assert.assertEquals(20, runTime.count());
+        Assert.assertTrue(runTime.totalTime() >= TimeUnit.MILLISECONDS.toNanos(20 * 10));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testUnboundedQueue() {
+        BlockingSubmitThreadPoolExecutor executor =
+                new BlockingSubmitThreadPoolExecutor(2, new LinkedBlockingDeque<>(), TIME_OUT);
+        final AtomicInteger count = new AtomicInteger();
+        for (int i = 0; i < 20; i++) executor.submit(count::incrementAndGet);
+        executor.sleepTillEmpty();
+        Assert.assertEquals(20, count.get());
+        executor.shutdown();
+    }
+
     @Test
     public void testException() {
         boolean success = false;
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.backup;
+
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.inject.Guice;
+import com.google.inject.Key;
+import com.google.inject.name.Names;
+import com.netflix.priam.compress.SnappyCompression;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Tests the checksum of the content of a file and the size of the sample of deep verification. */
+public class TestDeepVerifyTask {
+
+    @Test
+    public void checksumOfDecompressedContent() throws Exception {
+        byte[] content = new byte[1024 * 1024];
+        new Random(42).nextBytes(content);
+        SnappyCompression compress = new SnappyCompression();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        Iterator<byte[]> chunks = compress.compress(new ByteArrayInputStream(content), 64 * 1024);
+        while (chunks.hasNext()) compressed.write(chunks.next());
+
+        String expected = Hashing.crc32c().hashBytes(content).toString();
+        Assert.assertEquals(
+                expected,
+                DeepVerifyTask.checksum(
+                        compress, new ByteArrayInputStream(compressed.toByteArray())));
+    }
+
+    @Test
+    public void rawStreamOfDownloadedFile() throws Exception {
+        FakeBackupFileSystem fs =
+                (FakeBackupFileSystem)
+                        Guice.createInjector(new BRTestModule())
+                                .getInstance(
+                                        Key.get(IBackupFileSystem.class, Names.named("backup")));
+        fs.setupTest();
+        Path remotePath = Paths.get("remote", "1-Data.db");
+        String checksum =
+                DeepVerifyTask.checksum(
+                        new SnappyCompression(),
+                        fs.openRawStream(remotePath, RateLimiter.create(1024 * 1024)));
+        Assert.assertTrue(fs.downloadedFiles.contains(remotePath.toString()));
+        Assert.assertEquals(
+                Hashing.crc32c().hashString("[]", StandardCharsets.UTF_8).toString(), checksum);
+    }
+
+    @Test
+    public void sampleSize() {
+        Assert.assertEquals(0, DeepVerifyTask.sampleSize(0, 1));
+        Assert.assertEquals(0, DeepVerifyTask.sampleSize(100, 0));
+        Assert.assertEquals(1, DeepVerifyTask.sampleSize(10, 1));
+        Assert.assertEquals(10, DeepVerifyTask.sampleSize(1000, 1));
+        Assert.assertEquals(11, DeepVerifyTask.sampleSize(1001, 1));
+        Assert.assertEquals(10, DeepVerifyTask.sampleSize(10, 100));
+        Assert.assertEquals(10, DeepVerifyTask.sampleSize(10, 200));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.backup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit test for the priority tiers of the column families. */
+public class TestPriorityTiers {
+    private final PriorityTiers priorityTiers =
+            new PriorityTiers("system_auth.*,config.settings;analytics.*");
+    private final List<String> completed = new ArrayList<>();
+
+    @Test
+    public void testTier() {
+        Assert.assertEquals(3, priorityTiers.getTierCount());
+        Assert.assertEquals(0, priorityTiers.getTier("system_auth", "roles-1234"));
+        Assert.assertEquals(0, priorityTiers.getTier("config", "settings"));
+        Assert.assertEquals(2, priorityTiers.getTier("config", "other"));
+        Assert.assertEquals(1, priorityTiers.getTier("analytics", "events-abcd"));
+        Assert.assertEquals(2, priorityTiers.getTier("ks", "cf"));
+        Assert.assertEquals(PriorityTiers.DEFAULT_TIER, priorityTiers.getName(2));
+        Assert.assertEquals("analytics.*", priorityTiers.getName(1));
+    }
+
+    @Test
+    public void testNoTiers() {
+        PriorityTiers noTiers = new PriorityTiers(null);
+        Assert.assertTrue(noTiers.isEmpty());
+        Assert.assertEquals(1, noTiers.getTierCount());
+        Assert.assertEquals(0, noTiers.getTier("system_auth", "roles"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTier() {
+        new PriorityTiers("system_auth");
+    }
+
+    @Test
+    public void testProgress() {
+        PriorityTiers.Progress progress = priorityTiers.newProgress(completed::add);
+        progress.add(0, "a");
+        progress.add(0, "b");
+        progress.done("a");
+        progress.add(1, "c");
+        // Tier 0 is fully added, but b is in flight.
+        Assert.assertTrue(completed.isEmpty());
+        progress.done("c");
+        progress.add(2, "d");
+        Assert.assertEquals(Arrays.asList("analytics.*"), completed);
+        progress.done("b");
+        Assert.assertEquals(
+                Arrays.asList("analytics.*", "system_auth.*,config.settings"), completed);
+        progress.done("d");
+        progress.seal();
+        Assert.assertEquals(3, completed.size());
+        Assert.assertEquals(PriorityTiers.DEFAULT_TIER, completed.get(2));
+    }
+}
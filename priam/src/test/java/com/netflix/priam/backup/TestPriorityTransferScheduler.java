@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.backup;
+
+import com.netflix.priam.backup.PriorityTransferScheduler.Priority;
+import com.netflix.priam.merics.BackupMetrics;
+import com.netflix.spectator.api.DefaultRegistry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit test for the priority classes of the queued transfers. */
+public class TestPriorityTransferScheduler {
+    private final List<Priority> completed = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private PriorityTransferScheduler getScheduler(int capacity, long maxWaitSeconds) {
+        return new PriorityTransferScheduler(
+                "test",
+                1,
+                capacity,
+                100,
+                "COMMIT_LOG:8,SNAPSHOT:1",
+                maxWaitSeconds,
+                new BackupMetrics(new DefaultRegistry()));
+    }
+
+    // Occupy the only thread till released.
+    private void block(PriorityTransferScheduler scheduler) throws Exception {
+        scheduler.submit(
+                Priority.SNAPSHOT,
+                () -> {
+                    started.countDown();
+                    release.await();
+                    return null;
+                });
+        started.await();
+    }
+
+    private Future<Void> submit(PriorityTransferScheduler scheduler, Priority priority) {
+        return scheduler.submit(
+                priority,
+                () -> {
+                    completed.add(priority);
+                    return null;
+                });
+    }
+
+    private List<Priority> run(PriorityTransferScheduler scheduler) throws Exception {
+        block(scheduler);
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) futures.add(submit(scheduler, Priority.SNAPSHOT));
+        for (int i = 0; i < 3; i++) futures.add(submit(scheduler, Priority.COMMIT_LOG));
+        Assert.assertEquals(3, scheduler.size(Priority.SNAPSHOT));
+        Assert.assertEquals(6, scheduler.size());
+        release.countDown();
+        for (Future<Void> future : futures) future.get();
+        return completed;
+    }
+
+    @Test
+    public void testWeightedPriority() throws Exception {
+        Assert.assertEquals(
+                Arrays.asList(
+                        Priority.COMMIT_LOG,
+                        Priority.COMMIT_LOG,
+                        Priority.COMMIT_LOG,
+                        Priority.SNAPSHOT,
+                        Priority.SNAPSHOT,
+                        Priority.SNAPSHOT),
+                run(getScheduler(100, 600)));
+    }
+
+    @Test
+    public void testMaxWait() throws Exception {
+        // Every queued transfer is over the maximum wait, the oldest is picked first.
+        Assert.assertEquals(
+                Arrays.asList(
+                        Priority.SNAPSHOT,
+                        Priority.SNAPSHOT,
+                        Priority.SNAPSHOT,
+                        Priority.COMMIT_LOG,
+                        Priority.COMMIT_LOG,
+                        Priority.COMMIT_LOG),
+                run(getScheduler(100, 0)));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testQueueFull() throws Exception {
+        PriorityTransferScheduler scheduler = getScheduler(1, 600);
+        try {
+            block(scheduler);
+            submit(scheduler, Priority.COMMIT_LOG);
+            submit(scheduler, Priority.COMMIT_LOG);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testParseWeights() {
+        Assert.assertEquals(
+                3,
+                PriorityTransferScheduler.parseWeights("snapshot:3,bogus,META:x")
+                        .get(Priority.SNAPSHOT)
+                        .intValue());
+        Assert.assertEquals(
+                2, PriorityTransferScheduler.parseWeights("").get(Priority.META).intValue());
+    }
+
+    @Test
+    public void testClassRate() {
+        PriorityTransferScheduler scheduler = getScheduler(10, 60);
+        Assert.assertEquals(0, scheduler.acquire(Priority.SNAPSHOT, 1000), 0);
+
+        // Only the snapshot files wait for the rate of their class.
+        scheduler.setRate(Priority.SNAPSHOT, 1000);
+        Assert.assertEquals(0, scheduler.acquire(Priority.SNAPSHOT, 1000), 0);
+        Assert.assertEquals(0, scheduler.acquire(Priority.INCREMENTAL, 1000000), 0);
+        Assert.assertTrue(scheduler.acquire(Priority.SNAPSHOT, 1) > 0.5);
+
+        scheduler.setRate(Priority.SNAPSHOT, 0);
+        Assert.assertEquals(0, scheduler.acquire(Priority.SNAPSHOT, 1000000), 0);
+    }
+}
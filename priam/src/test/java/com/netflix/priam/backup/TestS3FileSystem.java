@@ -37,6 +37,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
 import mockit.Mock;
 import mockit.MockUp;
@@ -168,6 +169,27 @@ public class TestS3FileSystem {
         Assert.assertEquals(5, rule.getExpirationInDays());
     }
 
+    @Test
+    public void testChecksum() throws Exception {
+        S3FileSystem fs = injector.getInstance(S3FileSystem.class);
+        // A single PUT has the checksum in its metadata.
+        MockAmazonS3Client.eTag = "etag";
+        MockAmazonS3Client.checksumMetadata = "abcd";
+        Assert.assertEquals("abcd", fs.getChecksum(Paths.get("file")));
+        // Other objects have none, unless they are multipart uploads with a checksum tag.
+        MockAmazonS3Client.checksumMetadata = null;
+        Assert.assertNull(fs.getChecksum(Paths.get("file")));
+        MockAmazonS3Client.eTag = "etag-2";
+        Assert.assertEquals("efgh", fs.getChecksum(Paths.get("file")));
+
+        // A restore reads the metadata of the object once, for its size and its checksum.
+        MockAmazonS3Client.metadataRequests = 0;
+        try (RawFileStream raw = fs.openRawStream(Paths.get("file"))) {
+            Assert.assertEquals("efgh", raw.getChecksum());
+        }
+        Assert.assertEquals(1, MockAmazonS3Client.metadataRequests);
+    }
+
     // Mock Nodeprobe class
     static class MockS3PartUploader extends MockUp<S3PartUploader> {
         static int compattempts = 0;
@@ -214,6 +236,25 @@ public class TestS3FileSystem {
     static class MockAmazonS3Client extends MockUp<AmazonS3Client> {
         static boolean ruleAvailable = false;
         static BucketLifecycleConfiguration bconf = new BucketLifecycleConfiguration();
+        static String eTag;
+        static String checksumMetadata;
+        static int metadataRequests;
+
+        @Mock
+        public ObjectMetadata getObjectMetadata(String bucketName, String key) {
+            metadataRequests++;
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setHeader("ETag", eTag);
+            if (checksumMetadata != null)
+                metadata.addUserMetadata("local-crc32c", checksumMetadata);
+            return metadata;
+        }
+
+        @Mock
+        public GetObjectTaggingResult getObjectTagging(GetObjectTaggingRequest request) {
+            return new GetObjectTaggingResult(
+                    Collections.singletonList(new Tag("local-crc32c", "efgh")));
+        }
 
         @Mock
         public InitiateMultipartUploadResult initiateMultipartUpload(
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.backup;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.netflix.priam.config.FakeConfiguration;
+import com.netflix.priam.config.IConfiguration;
+import com.netflix.priam.merics.BackupMetrics;
+import com.netflix.priam.notification.BackupNotificationMgr;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit test for the upload rate of a snapshot with a deadline. */
+public class TestSnapshotDeadlineController {
+    private static final long MB = 1024L * 1024L;
+    private final List<Double> uploadRates = new ArrayList<>();
+    private BackupMetrics backupMetrics;
+    private IBackupFileSystem fs;
+    private TransferProgress progress;
+
+    @Before
+    public void setup() {
+        Injector injector = Guice.createInjector(new BRTestModule());
+        IConfiguration configuration = injector.getInstance(IConfiguration.class);
+        backupMetrics = injector.getInstance(BackupMetrics.class);
+        fs =
+                new NullBackupFileSystem(
+                        configuration,
+                        backupMetrics,
+                        injector.getInstance(BackupNotificationMgr.class),
+                        injector.getInstance(TransferTraces.class)) {
+                    @Override
+                    public void setSnapshotUploadRate(double bytesPerSecond) {
+                        uploadRates.add(bytesPerSecond);
+                    }
+                };
+        progress = new TransferProgress();
+        progress.start();
+        progress.plan("ks", 600 * MB);
+        progress.plan("ks", 400 * MB);
+    }
+
+    private SnapshotDeadlineController getController(int uploadThrottle, Instant deadline) {
+        SnapshotDeadlineController controller =
+                new SnapshotDeadlineController(
+                        new FakeConfiguration() {
+                            @Override
+                            public int getUploadThrottle() {
+                                return uploadThrottle;
+                            }
+                        },
+                        backupMetrics);
+        controller.reset(fs, progress, deadline);
+        return controller;
+    }
+
+    @Test
+    public void testRequiredRate() {
+        Instant now = Instant.now();
+        SnapshotDeadlineController controller = getController(-1, now.plusSeconds(100));
+
+        // Nothing is adjusted till all the files of the snapshot are planned.
+        controller.adjust(now);
+        Assert.assertTrue(uploadRates.isEmpty());
+
+        progress.seal();
+        controller.adjust(now);
+        Assert.assertEquals(10 * MB, controller.getRequiredRate(), 1);
+        Assert.assertEquals(11 * MB, controller.getUploadRate(), 1);
+        Assert.assertEquals(11 * MB, uploadRates.get(0), 1);
+        Assert.assertFalse(controller.isAtRisk());
+
+        // Half of the snapshot is uploaded in half of the time.
+        progress.done("ks", 600 * MB);
+        controller.adjust(now.plusSeconds(60));
+        Assert.assertEquals(10 * MB, controller.getRequiredRate(), 1);
+        Assert.assertFalse(controller.isAtRisk());
+
+        progress.done("ks", 400 * MB);
+        controller.adjust(now.plusSeconds(90));
+        Assert.assertEquals(0, controller.getRequiredRate(), 0);
+        Assert.assertFalse(controller.isAtRisk());
+    }
+
+    @Test
+    public void testRateAboveThrottle() {
+        Instant now = Instant.now();
+        SnapshotDeadlineController controller =
+                getController((int) (5 * MB), now.plusSeconds(100));
+        progress.seal();
+        controller.adjust(now);
+        // Uploads go at the configured throttle, which is not enough.
+        Assert.assertEquals(0, uploadRates.get(0), 0);
+        Assert.assertTrue(controller.isAtRisk());
+    }
+
+    @Test
+    public void testPastDeadline() {
+        Instant now = Instant.now();
+        SnapshotDeadlineController controller = getController(-1, now.plusSeconds(100));
+        progress.seal();
+        controller.adjust(now);
+        Assert.assertFalse(controller.isAtRisk());
+
+        controller.adjust(now.plusSeconds(101));
+        Assert.assertTrue(controller.isAtRisk());
+        Assert.assertEquals(0, controller.getUploadRate(), 0);
+        Assert.assertEquals(0, uploadRates.get(1), 0);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.backup;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.netflix.priam.aws.S3BackupPath;
+import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Unit test for the inventory of the files uploaded by incremental snapshots. */
+public class TestSnapshotInventory {
+    private static final String SNAPSHOT_DIR = "target/data/Keyspace1/Standard1/snapshots/";
+    private static final long LAST_MODIFIED = 1533081600000L;
+    private static Injector injector;
+    private final File inventoryFile = new File("target/snapshot_inventory/snapshot.inventory");
+
+    @BeforeClass
+    public static void setup() {
+        injector = Guice.createInjector(new BRTestModule());
+    }
+
+    @Before
+    @After
+    public void cleanup() {
+        FileUtils.deleteQuietly(inventoryFile.getParentFile());
+        FileUtils.deleteQuietly(new File(SNAPSHOT_DIR));
+    }
+
+    @Test
+    public void testUnchangedFileIsReused() throws Exception {
+        AbstractBackupPath first = snapshotFile("201808010000", "Standard1-ia-1-Data.db", "data");
+        SnapshotInventory inventory = new SnapshotInventory(inventoryFile);
+        inventory.load();
+        Assert.assertNull(inventory.find(first, 0));
+        first.setCompressedFileSize(3);
+        first.setETag("etag");
+        inventory.add(first, 1000);
+        inventory.save();
+
+        AbstractBackupPath second = snapshotFile("201808020000", "Standard1-ia-1-Data.db", "data");
+        SnapshotInventory next = new SnapshotInventory(inventoryFile);
+        next.load();
+        SnapshotInventory.Entry copy = next.find(second, 0);
+        Assert.assertEquals(first.getRemotePath(), copy.getRemotePath());
+        Assert.assertEquals(3, copy.getCompressedSize());
+        Assert.assertEquals("etag", copy.getETag());
+        // Copies uploaded before the maximum age are uploaded again.
+        Assert.assertNull(next.find(second, 1001));
+    }
+
+    @Test
+    public void testChangedFileIsUploaded() throws Exception {
+        AbstractBackupPath first = snapshotFile("201808010000", "Standard1-ia-1-Data.db", "data");
+        SnapshotInventory inventory = new SnapshotInventory(inventoryFile);
+        inventory.load();
+        inventory.add(first, 1000);
+        inventory.save();
+
+        AbstractBackupPath second =
+                snapshotFile("201808020000", "Standard1-ia-1-Data.db", "compacted");
+        inventory.load();
+        Assert.assertNull(inventory.find(second, 0));
+    }
+
+    @Test
+    public void testRemovedFileIsDropped() throws Exception {
+        AbstractBackupPath first = snapshotFile("201808010000", "Standard1-ia-1-Data.db", "data");
+        AbstractBackupPath other = snapshotFile("201808010000", "Standard1-ia-2-Data.db", "data");
+        SnapshotInventory inventory = new SnapshotInventory(inventoryFile);
+        inventory.load();
+        inventory.add(first, 1000);
+        inventory.add(other, 1000);
+        inventory.save();
+
+        // The second snapshot only has the first file.
+        AbstractBackupPath second = snapshotFile("201808020000", "Standard1-ia-1-Data.db", "data");
+        inventory.load();
+        Assert.assertEquals(first.getRemotePath(), inventory.find(second, 0).getRemotePath());
+        inventory.save();
+        Assert.assertEquals(1, inventory.size());
+
+        inventory.load();
+        Assert.assertNull(inventory.find(other, 0));
+        Assert.assertEquals(first.getRemotePath(), inventory.find(second, 0).getRemotePath());
+    }
+
+    @Test
+    public void testReuseAgeIsCappedByRetention() {
+        Assert.assertEquals(7, SnapshotBackup.getReuseMaxAgeDays(7, 0));
+        Assert.assertEquals(7, SnapshotBackup.getReuseMaxAgeDays(7, 30));
+        Assert.assertEquals(5, SnapshotBackup.getReuseMaxAgeDays(7, 10));
+        Assert.assertEquals(3, SnapshotBackup.getReuseMaxAgeDays(7, 7));
+        Assert.assertEquals(0, SnapshotBackup.getReuseMaxAgeDays(7, 1));
+    }
+
+    private AbstractBackupPath snapshotFile(String snapshotName, String fileName, String content)
+            throws IOException, ParseException {
+        File file = new File(SNAPSHOT_DIR + snapshotName, fileName);
+        FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+        Assert.assertTrue(file.setLastModified(LAST_MODIFIED));
+        AbstractBackupPath bp = injector.getInstance(S3BackupPath.class);
+        bp.parseLocal(file, BackupFileType.SNAP);
+        return bp;
+    }
+}
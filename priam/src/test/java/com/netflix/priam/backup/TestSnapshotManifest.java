@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.backup;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.netflix.priam.aws.S3BackupPath;
+import java.io.File;
+import java.util.Arrays;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Unit test for the manifest used to verify a snapshot from the listing of the backup location. */
+public class TestSnapshotManifest {
+    private static final String DATA_PATH =
+            "casstestbackup/region/fake-app/1234/201808010000/SNAP/ks/cf/ks-cf-ka-1-Data.db";
+    private static final String INDEX_PATH =
+            "casstestbackup/region/fake-app/1234/201808010000/SNAP/ks/cf/ks-cf-ka-1-Index.db";
+    private static Injector injector;
+    private final File manifestFile = new File("target/manifest.json");
+
+    @BeforeClass
+    public static void setup() {
+        injector = Guice.createInjector(new BRTestModule());
+    }
+
+    @After
+    public void cleanup() {
+        FileUtils.deleteQuietly(manifestFile);
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        SnapshotManifest manifest =
+                new SnapshotManifest(
+                        Arrays.asList(
+                                remoteFile(DATA_PATH, 1024, "abc-2"),
+                                remoteFile(INDEX_PATH, 10, null)));
+        manifest.write(manifestFile);
+
+        SnapshotManifest read = SnapshotManifest.read(manifestFile);
+        Assert.assertEquals(2, read.size());
+        Assert.assertEquals(1024, read.get(DATA_PATH).getSize());
+        Assert.assertEquals("abc-2", read.get(DATA_PATH).getETag());
+        Assert.assertNull(read.get(INDEX_PATH).getETag());
+        Assert.assertNull(read.get("unknown"));
+    }
+
+    @Test
+    public void testMatches() {
+        SnapshotManifest manifest =
+                new SnapshotManifest(Arrays.asList(remoteFile(DATA_PATH, 1024, "abc-2")));
+        SnapshotManifest.Entry entry = manifest.get(DATA_PATH);
+        Assert.assertTrue(entry.matches(remoteFile(DATA_PATH, 1024, "abc-2")));
+        // Listings without entity tags are compared by size only.
+        Assert.assertTrue(entry.matches(remoteFile(DATA_PATH, 1024, null)));
+        Assert.assertFalse(entry.matches(remoteFile(DATA_PATH, 1000, "abc-2")));
+        Assert.assertFalse(entry.matches(remoteFile(DATA_PATH, 1024, "def-2")));
+    }
+
+    private AbstractBackupPath remoteFile(String remotePath, long size, String eTag) {
+        AbstractBackupPath path = injector.getInstance(S3BackupPath.class);
+        path.parseRemote(remotePath);
+        path.setCompressedFileSize(size);
+        path.setETag(eTag);
+        return path;
+    }
+}
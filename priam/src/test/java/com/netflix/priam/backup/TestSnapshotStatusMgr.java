@@ -19,11 +19,20 @@ package com.netflix.priam.backup;
 
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import com.netflix.priam.config.FakeConfiguration;
 import com.netflix.priam.config.IConfiguration;
+import com.netflix.priam.health.InstanceState;
 import com.netflix.priam.utils.DateUtil;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.ObjectOutputStream;
+import java.time.temporal.ChronoUnit;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import org.apache.commons.io.FileUtils;
 import org.joda.time.DateTime;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -36,12 +45,15 @@ public class TestSnapshotStatusMgr {
     private static final Logger logger = LoggerFactory.getLogger(TestSnapshotStatusMgr.class);
 
     private static IBackupStatusMgr backupStatusMgr;
+    private static IConfiguration configuration;
+    private static InstanceState instanceState;
 
     @BeforeClass
     public static void setup() {
         Injector injector = Guice.createInjector(new BRTestModule());
         // cleanup old saved file, if any
-        IConfiguration configuration = injector.getInstance(IConfiguration.class);
+        configuration = injector.getInstance(IConfiguration.class);
+        instanceState = injector.getInstance(InstanceState.class);
         File f = new File(configuration.getBackupStatusFileLoc());
         if (f.exists()) f.delete();
 
@@ -139,4 +151,75 @@ public class TestSnapshotStatusMgr {
         Assert.assertEquals(
                 backupStatusMgr.getCapacity(), backupStatusMgr.getAllSnapshotStatus().size());
     }
+
+    @Test
+    public void testSnapshotStatusRecovery() throws Exception {
+        File journal = new File(configuration.getBackupStatusFileLoc() + ".recovery");
+        FileUtils.deleteQuietly(journal);
+        IConfiguration journalConfig = getConfiguration(journal);
+        FileSnapshotStatusMgr statusMgr = new FileSnapshotStatusMgr(journalConfig, instanceState);
+
+        // More days than are cached, within the retention.
+        Date today = new Date();
+        final int noOfDays = statusMgr.getCapacity() * 2;
+        for (int i = 0; i < noOfDays; i++) {
+            Date time = Date.from(today.toInstant().minus(i, ChronoUnit.DAYS));
+            BackupMetadata backupMetadata = new BackupMetadata("123", time);
+            statusMgr.start(backupMetadata);
+            if (i % 2 == 0) statusMgr.finish(backupMetadata);
+        }
+        // A line partially written by a crash.
+        try (FileWriter writer = new FileWriter(journal, true)) {
+            writer.write("{\"snapshotDate\":\"2018");
+        }
+
+        statusMgr = new FileSnapshotStatusMgr(journalConfig, instanceState);
+        Assert.assertEquals(statusMgr.getCapacity(), statusMgr.getAllSnapshotStatus().size());
+        for (int i = 0; i < noOfDays; i++) {
+            Date time = Date.from(today.toInstant().minus(i, ChronoUnit.DAYS));
+            List<BackupMetadata> metadataList = statusMgr.locate(time);
+            Assert.assertEquals(1, metadataList.size());
+            Assert.assertEquals(time, metadataList.get(0).getStart());
+            Assert.assertEquals(
+                    i % 2 == 0 ? Status.FINISHED : Status.STARTED,
+                    metadataList.get(0).getStatus());
+        }
+        // Compacted to a line per snapshot.
+        Assert.assertEquals(noOfDays, FileUtils.readLines(journal, "UTF-8").size());
+        FileUtils.deleteQuietly(journal);
+    }
+
+    @Test
+    public void testSnapshotStatusConversion() throws Exception {
+        File statusFile = new File(configuration.getBackupStatusFileLoc() + ".serialized");
+        Date time = new Date();
+        BackupMetadata backupMetadata = new BackupMetadata("123", time);
+        backupMetadata.setStatus(Status.FINISHED);
+        LinkedList<BackupMetadata> day = new LinkedList<>();
+        day.add(backupMetadata);
+        HashMap<String, LinkedList<BackupMetadata>> status = new HashMap<>();
+        status.put(backupMetadata.getSnapshotDate(), day);
+        statusFile.getParentFile().mkdirs();
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(statusFile))) {
+            out.writeObject(status);
+        }
+
+        IConfiguration journalConfig = getConfiguration(statusFile);
+        FileSnapshotStatusMgr statusMgr = new FileSnapshotStatusMgr(journalConfig, instanceState);
+        Assert.assertEquals(Status.FINISHED, statusMgr.locate(time).get(0).getStatus());
+        // Saved as a journal, which is read back.
+        statusMgr = new FileSnapshotStatusMgr(journalConfig, instanceState);
+        Assert.assertEquals(Status.FINISHED, statusMgr.locate(time).get(0).getStatus());
+        Assert.assertTrue(FileUtils.readFileToString(statusFile, "UTF-8").startsWith("{"));
+        FileUtils.deleteQuietly(statusFile);
+    }
+
+    private static IConfiguration getConfiguration(File statusFile) {
+        return new FakeConfiguration() {
+            @Override
+            public String getBackupStatusFileLoc() {
+                return statusFile.getAbsolutePath();
+            }
+        };
+    }
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.backup;
+
+import com.netflix.priam.config.FakeConfiguration;
+import com.netflix.priam.merics.BackupMetrics;
+import com.netflix.spectator.api.DefaultRegistry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit test for the memory budget of the transfer buffers. */
+public class TestTransferMemoryBudget {
+    private static final long MB = 1024L * 1024L;
+    private TransferMemoryBudget memoryBudget;
+
+    @Before
+    public void setup() {
+        memoryBudget =
+                new TransferMemoryBudget(
+                        new FakeConfiguration(), new BackupMetrics(new DefaultRegistry()));
+    }
+
+    @Test
+    public void testAcquire() throws Exception {
+        Assert.assertEquals(256 * MB, memoryBudget.getLimit());
+        memoryBudget.acquire(200 * MB);
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread =
+                new Thread(
+                        () -> {
+                            try {
+                                memoryBudget.acquire(100 * MB);
+                                acquired.countDown();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        });
+        thread.start();
+        Assert.assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        memoryBudget.release(200 * MB);
+        Assert.assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(100 * MB, memoryBudget.getUsed());
+        thread.join();
+    }
+
+    @Test
+    public void testResize() throws Exception {
+        memoryBudget.acquire(100 * MB);
+        memoryBudget.resize(100 * MB, 10 * MB);
+        Assert.assertEquals(10 * MB, memoryBudget.getUsed());
+        // A buffer which grew is allowed over the budget.
+        memoryBudget.resize(10 * MB, 300 * MB);
+        Assert.assertEquals(300 * MB, memoryBudget.getUsed());
+        memoryBudget.release(300 * MB);
+        Assert.assertEquals(0, memoryBudget.getUsed());
+    }
+
+    @Test
+    public void testOversizedBuffer() throws Exception {
+        // A buffer larger than the budget does not wait when nothing else is buffered.
+        memoryBudget.acquire(512 * MB);
+        Assert.assertEquals(512 * MB, memoryBudget.getUsed());
+        memoryBudget.release(512 * MB);
+        Assert.assertEquals(0, memoryBudget.getUsed());
+    }
+}
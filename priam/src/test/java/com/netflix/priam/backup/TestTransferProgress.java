@@ -0,0 +1,118 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.backup;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit test for the progress of a backup or restore. */
+public class TestTransferProgress {
+    private TransferProgress progress;
+
+    @Before
+    public void setup() {
+        progress = new TransferProgress();
+        progress.start();
+    }
+
+    @Test
+    public void testProgress() throws Exception {
+        progress.plan("ks1", 100);
+        progress.plan("ks1", 300);
+        progress.plan("ks2", 600);
+        progress.plan(null, 1000);
+        progress.seal();
+
+        TransferProgress.Summary summary = progress.getSummary();
+        Assert.assertEquals(4, summary.getPlannedFiles());
+        Assert.assertEquals(2000, summary.getPlannedBytes());
+        Assert.assertEquals(2000, summary.getRemainingBytes());
+        // Nothing is done, so the throughput is not known.
+        Assert.assertEquals(-1, summary.getEtaSeconds());
+        Assert.assertTrue(summary.sealed);
+
+        progress.done("ks1", 100);
+        Thread.sleep(10);
+        progress.done("ks1", 300);
+        summary = progress.getSummary();
+        Assert.assertEquals(2, summary.getDoneFiles());
+        Assert.assertEquals(400, summary.getDoneBytes());
+        Assert.assertEquals(1600, summary.getRemainingBytes());
+        Assert.assertTrue(summary.getBytesPerSecond() > 0);
+        Assert.assertTrue(summary.getEtaSeconds() >= 0);
+
+        TransferProgress.Summary ks1 = summary.getKeyspaces().get("ks1");
+        Assert.assertEquals(2, ks1.getDoneFiles());
+        Assert.assertEquals(0, ks1.getRemainingBytes());
+        Assert.assertEquals(0, ks1.getEtaSeconds());
+        Assert.assertNull(ks1.sealed);
+        TransferProgress.Summary ks2 = summary.getKeyspaces().get("ks2");
+        Assert.assertEquals(600, ks2.getRemainingBytes());
+        Assert.assertEquals(-1, ks2.getEtaSeconds());
+        Assert.assertEquals(2, summary.getKeyspaces().size());
+
+        progress.finish();
+        summary = progress.getSummary();
+        Assert.assertEquals(0, summary.getRemainingBytes());
+        Assert.assertEquals(0, summary.getEtaSeconds());
+        Assert.assertTrue(summary.finished);
+    }
+
+    @Test
+    public void testStall() {
+        progress.plan("ks1", 100);
+        progress.plan("ks1", 300);
+        progress.done("ks1", 100);
+        Assert.assertTrue(progress.getSummary().getBytesPerSecond() > 0);
+
+        // Nothing more is done for longer than the window of the throughput.
+        TransferProgress.Summary summary =
+                progress.getSummary(System.nanoTime() + TimeUnit.MINUTES.toNanos(2));
+        Assert.assertEquals(0, summary.getBytesPerSecond());
+        Assert.assertEquals(-1, summary.getEtaSeconds());
+        Assert.assertEquals(300, summary.getRemainingBytes());
+    }
+
+    @Test
+    public void testReused() {
+        progress.plan("ks1", 100);
+        progress.plan("ks1", 300);
+        progress.reused("ks1", 300);
+        TransferProgress.Summary summary = progress.getSummary();
+        Assert.assertEquals(1, summary.getDoneFiles());
+        Assert.assertEquals(300, summary.getDoneBytes());
+        Assert.assertEquals(0, summary.getTransferredBytes());
+        Assert.assertEquals(100, summary.getRemainingBytes());
+        Assert.assertEquals(0, summary.getBytesPerSecond());
+    }
+
+    @Test
+    public void testStart() {
+        progress.plan("ks1", 100);
+        progress.done("ks1", 100);
+        progress.finish();
+
+        progress.start();
+        TransferProgress.Summary summary = progress.getSummary();
+        Assert.assertEquals(0, summary.getPlannedFiles());
+        Assert.assertEquals(0, summary.getDoneFiles());
+        Assert.assertFalse(summary.finished);
+        Assert.assertTrue(summary.getKeyspaces().isEmpty());
+    }
+}
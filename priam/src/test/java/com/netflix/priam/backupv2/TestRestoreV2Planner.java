@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.backupv2;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.netflix.priam.backup.AbstractBackupPath;
+import com.netflix.priam.backup.BRTestModule;
+import com.netflix.priam.backup.BackupRestoreUtil;
+import com.netflix.priam.config.IConfiguration;
+import com.netflix.priam.utils.DateUtil;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Unit test for planning the restore from backup version 2.0 meta files. */
+public class TestRestoreV2Planner {
+    private static Injector injector;
+    private static IConfiguration configuration;
+
+    @BeforeClass
+    public static void setup() {
+        injector = Guice.createInjector(new BRTestModule());
+        configuration = injector.getInstance(IConfiguration.class);
+    }
+
+    private AbstractBackupPath getPath(String remotePath) {
+        AbstractBackupPath path = injector.getInstance(AbstractBackupPath.class);
+        path.parseRemote(remotePath);
+        return path;
+    }
+
+    private AbstractBackupPath getMetaPath(String time) {
+        return getPath("base/region/app/1234/" + time + "/META_V2/meta_v2_" + time + ".json");
+    }
+
+    @Test
+    public void testFindMetaFile() {
+        List<AbstractBackupPath> backupFiles =
+                Arrays.asList(
+                        getMetaPath("201808010000"),
+                        getMetaPath("201808020000"),
+                        getMetaPath("201808030000"),
+                        getPath("base/region/app/1234/201808020000/SST/ks/cf/mc-1-big-Data.db"));
+
+        AbstractBackupPath metaFile =
+                RestoreV2Planner.findMetaFile(
+                        backupFiles.iterator(), DateUtil.parseInstant("201808021200"));
+        Assert.assertEquals("meta_v2_201808020000.json", metaFile.getFileName());
+
+        Assert.assertNull(
+                RestoreV2Planner.findMetaFile(
+                        backupFiles.iterator(), DateUtil.parseInstant("201807310000")));
+    }
+
+    private ColumnfamilyResult getColumnfamilyResult(String keyspace, String columnfamily) {
+        ColumnfamilyResult columnfamilyResult = new ColumnfamilyResult(keyspace, columnfamily);
+        for (String prefix : Arrays.asList("mc-1-big", "manifest")) {
+            List<FileUploadResult> components = new ArrayList<>();
+            String suffix = prefix.equals("manifest") ? ".json" : "-Data.db";
+            components.add(
+                    new FileUploadResult(
+                            Paths.get(prefix + suffix),
+                            keyspace,
+                            columnfamily,
+                            Instant.now(),
+                            Instant.now(),
+                            1024));
+            ColumnfamilyResult.SSTableResult ssTableResult = new ColumnfamilyResult.SSTableResult();
+            ssTableResult.setPrefix(prefix);
+            ssTableResult.setSstableComponents(components);
+            columnfamilyResult.addSstable(ssTableResult);
+        }
+        return columnfamilyResult;
+    }
+
+    @Test
+    public void testGetRestoreFiles() {
+        RestoreV2Planner planner = injector.getInstance(RestoreV2Planner.class);
+        BackupRestoreUtil backupRestoreUtil = new BackupRestoreUtil(null, "ks2.*");
+
+        // Only the SSTable is restored, without the manifest.
+        List<RestoreV2Planner.RestoreFile> restoreFiles =
+                planner.getRestoreFiles(getColumnfamilyResult("ks", "cf"), backupRestoreUtil);
+        Assert.assertEquals(1, restoreFiles.size());
+        RestoreV2Planner.RestoreFile restoreFile = restoreFiles.get(0);
+        Assert.assertEquals(1024, restoreFile.getSize());
+        Assert.assertEquals(
+                Paths.get(configuration.getDataFileLocation(), "ks", "cf", "mc-1-big-Data.db"),
+                restoreFile.getLocalPath());
+        Assert.assertTrue(
+                restoreFile
+                        .getRemotePath()
+                        .endsWith(Paths.get("ks", "cf", "mc-1-big", "mc-1-big-Data.db")));
+
+        // Filtered column family.
+        Assert.assertTrue(
+                planner.getRestoreFiles(getColumnfamilyResult("ks2", "cf"), backupRestoreUtil)
+                        .isEmpty());
+    }
+}
@@ -72,6 +72,11 @@ public class FakeConfiguration implements IConfiguration {
         return "target/data";
     }
 
+    @Override
+    public String getRestoreJournalFileLoc() {
+        return "target/restore.journal";
+    }
+
     @Override
     public String getLogDirLocation() {
         return null;
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.restore;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.name.Names;
+import com.netflix.priam.backup.BRTestModule;
+import com.netflix.priam.backup.BackupRestoreUtil;
+import com.netflix.priam.backup.FakeBackupFileSystem;
+import com.netflix.priam.backup.IBackupFileSystem;
+import com.netflix.priam.backup.PriorityTiers;
+import com.netflix.priam.backupv2.ColumnfamilyResult;
+import com.netflix.priam.backupv2.FileUploadResult;
+import com.netflix.priam.backupv2.MetaFileWriterBuilder;
+import com.netflix.priam.backupv2.RestoreV2Planner;
+import com.netflix.priam.config.IConfiguration;
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit test for restoring the SSTables of a backup version 2.0 meta file while it is read. */
+public class TestMetaV2RestoreReader {
+    private Injector injector;
+    private IConfiguration configuration;
+    private FakeBackupFileSystem fs;
+    private Path metaFilePath;
+
+    @Before
+    public void setup() throws Exception {
+        injector = Guice.createInjector(new BRTestModule());
+        configuration = injector.getInstance(IConfiguration.class);
+        fs =
+                (FakeBackupFileSystem)
+                        injector.getInstance(
+                                Key.get(IBackupFileSystem.class, Names.named("backup")));
+        fs.setupTest();
+
+        new File(configuration.getDataFileLocation()).mkdirs();
+        MetaFileWriterBuilder.DataStep dataStep =
+                injector.getInstance(MetaFileWriterBuilder.class)
+                        .newBuilder()
+                        .startMetaFileGeneration(Instant.now());
+        for (int i = 1; i <= 10; i++)
+            dataStep.addColumnfamilyResult(getColumnfamilyResult("ks", "cf" + i));
+        dataStep.addColumnfamilyResult(getColumnfamilyResult("ks2", "cf"));
+        metaFilePath = dataStep.endMetaFileGeneration().getMetaFilePath();
+    }
+
+    @After
+    public void cleanup() {
+        FileUtils.deleteQuietly(new File(configuration.getDataFileLocation()));
+    }
+
+    private ColumnfamilyResult getColumnfamilyResult(String keyspace, String columnfamily) {
+        ColumnfamilyResult columnfamilyResult = new ColumnfamilyResult(keyspace, columnfamily);
+        ColumnfamilyResult.SSTableResult ssTableResult = new ColumnfamilyResult.SSTableResult();
+        ssTableResult.setPrefix("mc-1-big");
+        ssTableResult.setSstableComponents(
+                Collections.singletonList(
+                        new FileUploadResult(
+                                Paths.get("mc-1-big-Data.db"),
+                                keyspace,
+                                columnfamily,
+                                Instant.now(),
+                                Instant.now(),
+                                1024)));
+        columnfamilyResult.addSstable(ssTableResult);
+        return columnfamilyResult;
+    }
+
+    private MetaV2RestoreReader getReader(RestoreJournal restoreJournal) throws Exception {
+        return new MetaV2RestoreReader(
+                openPipeline(restoreJournal),
+                injector.getInstance(RestoreV2Planner.class),
+                new BackupRestoreUtil(null, "ks2.*"),
+                restoreJournal);
+    }
+
+    private RestorePipeline openPipeline(RestoreJournal restoreJournal) throws Exception {
+        RestorePipeline restorePipeline = injector.getInstance(RestorePipeline.class);
+        restorePipeline.open(
+                fs,
+                null,
+                (remotePath, localFile, checksum) -> {
+                    if (restoreJournal != null)
+                        restoreJournal.record(remotePath.toString(), localFile, checksum);
+                });
+        return restorePipeline;
+    }
+
+    @Test
+    public void testRestore() throws Exception {
+        MetaV2RestoreReader reader = getReader(null);
+        reader.restore(metaFilePath);
+
+        // All the column families not filtered are downloaded and decompressed.
+        Assert.assertEquals(10, reader.getFiles());
+        Assert.assertEquals(10 * 1024, reader.getBytes());
+        Assert.assertEquals(10, fs.downloadedFiles.size());
+        Assert.assertTrue(
+                Paths.get(configuration.getDataFileLocation(), "ks", "cf1", "mc-1-big-Data.db")
+                        .toFile()
+                        .exists());
+        Assert.assertFalse(Paths.get(configuration.getDataFileLocation(), "ks2").toFile().exists());
+    }
+
+    @Test
+    public void testTiers() throws Exception {
+        PriorityTiers priorityTiers = new PriorityTiers("ks.cf7;ks.cf3");
+        List<String> completed = Collections.synchronizedList(new ArrayList<>());
+        MetaV2RestoreReader reader =
+                new MetaV2RestoreReader(
+                        openPipeline(null),
+                        injector.getInstance(RestoreV2Planner.class),
+                        new BackupRestoreUtil(null, "ks2.*"),
+                        null,
+                        priorityTiers,
+                        priorityTiers.newProgress(completed::add));
+        reader.restore(metaFilePath);
+
+        // Each file is queued once, in the pass of its tier.
+        Assert.assertEquals(10, reader.getFiles());
+        Assert.assertEquals(10, fs.downloadedFiles.size());
+        Assert.assertEquals(Arrays.asList("ks.cf7", "ks.cf3", "*"), completed);
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        RestoreJournal restoreJournal =
+                new RestoreJournal(new File(configuration.getRestoreJournalFileLoc()));
+        restoreJournal.load("restore");
+        restoreJournal.open();
+        getReader(restoreJournal).restore(metaFilePath);
+        restoreJournal.close();
+
+        // Everything was restored earlier, nothing is downloaded again.
+        fs.setupTest();
+        Assert.assertTrue(restoreJournal.load("restore"));
+        restoreJournal.open();
+        MetaV2RestoreReader reader = getReader(restoreJournal);
+        reader.restore(metaFilePath);
+        restoreJournal.close();
+        Assert.assertEquals(0, reader.getFiles());
+        Assert.assertTrue(fs.downloadedFiles.isEmpty());
+    }
+}
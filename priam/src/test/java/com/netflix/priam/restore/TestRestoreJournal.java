@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.restore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit test for the restore journal used to resume an interrupted restore. */
+public class TestRestoreJournal {
+    private static final String REMOTE_PATH =
+            "bucket/region/app/1234/201808010000/SNAP/ks/cf/f1.db";
+    private static final String CHECKSUM = "6e0b2e2f";
+    private final File dir = new File("target/restore_journal");
+    private final File journalFile = new File(dir, "restore.journal");
+    private final File localFile = new File(dir, "f1.db");
+
+    @Before
+    @After
+    public void cleanup() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    @Test
+    public void testResumeSameRestore() throws IOException {
+        FileUtils.writeStringToFile(localFile, "sstable", StandardCharsets.UTF_8);
+        RestoreJournal journal = new RestoreJournal(journalFile);
+        Assert.assertFalse(journal.load("restore1"));
+        journal.open();
+        journal.record(REMOTE_PATH, localFile, CHECKSUM);
+        journal.close();
+
+        RestoreJournal resumed = new RestoreJournal(journalFile);
+        Assert.assertTrue(resumed.load("restore1"));
+        Assert.assertTrue(resumed.isRestored(REMOTE_PATH, localFile));
+
+        // A different snapshot or time window starts over.
+        RestoreJournal other = new RestoreJournal(journalFile);
+        Assert.assertFalse(other.load("restore2"));
+        Assert.assertFalse(other.isRestored(REMOTE_PATH, localFile));
+    }
+
+    @Test
+    public void testModifiedFileIsNotRestored() throws IOException {
+        FileUtils.writeStringToFile(localFile, "sstable", StandardCharsets.UTF_8);
+        RestoreJournal journal = new RestoreJournal(journalFile);
+        journal.load("restore1");
+        journal.open();
+        journal.record(REMOTE_PATH, localFile, CHECKSUM);
+        journal.close();
+
+        // Same size, but written after it was restored.
+        long restored = localFile.lastModified();
+        FileUtils.writeStringToFile(localFile, "SSTABLE", StandardCharsets.UTF_8);
+        Assert.assertTrue(localFile.setLastModified(restored + 1000));
+        RestoreJournal resumed = new RestoreJournal(journalFile);
+        Assert.assertTrue(resumed.load("restore1"));
+        Assert.assertFalse(resumed.isRestored(REMOTE_PATH, localFile));
+    }
+
+    @Test
+    public void testCompleteRemovesJournal() throws IOException {
+        RestoreJournal journal = new RestoreJournal(journalFile);
+        journal.load("restore1");
+        journal.open();
+        Assert.assertTrue(journalFile.exists());
+        journal.complete();
+        Assert.assertFalse(journalFile.exists());
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.restore;
+
+import com.google.common.hash.Hashing;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.name.Names;
+import com.netflix.priam.backup.BRTestModule;
+import com.netflix.priam.backup.BackupRestoreException;
+import com.netflix.priam.backup.FakeBackupFileSystem;
+import com.netflix.priam.backup.IBackupFileSystem;
+import com.netflix.priam.backup.TransferMemoryBudget;
+import com.netflix.priam.config.IConfiguration;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit test for the stages of restoring a file. */
+public class TestRestorePipeline {
+    private IConfiguration configuration;
+    private FakeBackupFileSystem fs;
+    private TransferMemoryBudget memoryBudget;
+    private RestorePipeline restorePipeline;
+    private final Map<Path, File> restored = new ConcurrentHashMap<>();
+    private final RestorePipeline.Listener listener =
+            (remotePath, localFile, checksum) -> restored.put(remotePath, localFile);
+
+    @Before
+    public void setup() {
+        Injector injector = Guice.createInjector(new BRTestModule());
+        configuration = injector.getInstance(IConfiguration.class);
+        fs =
+                (FakeBackupFileSystem)
+                        injector.getInstance(
+                                Key.get(IBackupFileSystem.class, Names.named("backup")));
+        fs.setupTest();
+        restorePipeline = injector.getInstance(RestorePipeline.class);
+        memoryBudget = injector.getInstance(TransferMemoryBudget.class);
+    }
+
+    @After
+    public void cleanup() {
+        FileUtils.deleteQuietly(new File(configuration.getDataFileLocation()));
+    }
+
+    private File getLocalFile(int i) {
+        return Paths.get(configuration.getDataFileLocation(), "ks", "cf", i + "-Data.db").toFile();
+    }
+
+    @Test
+    public void testRestore() throws Exception {
+        AtomicInteger decrypted = new AtomicInteger();
+        restorePipeline.open(
+                fs,
+                (in, fileName) -> {
+                    decrypted.incrementAndGet();
+                    return in;
+                },
+                listener);
+        for (int i = 0; i < 20; i++)
+            restorePipeline.submit(Paths.get("remote", i + "-Data.db"), getLocalFile(i));
+        restorePipeline.awaitCompletion();
+
+        Assert.assertEquals(0, restorePipeline.getPending());
+        Assert.assertEquals(20, decrypted.get());
+        Assert.assertEquals(20, restored.size());
+        for (int i = 0; i < 20; i++) {
+            File localFile = getLocalFile(i);
+            Assert.assertEquals(localFile, restored.get(Paths.get("remote", i + "-Data.db")));
+            // The decompressed content of the file, no intermediate files are left behind.
+            Assert.assertEquals("[]", FileUtils.readFileToString(localFile, "UTF-8"));
+        }
+        Assert.assertEquals(20, localFileCount());
+        // The buffers between the stages are released.
+        Assert.assertEquals(0, memoryBudget.getUsed());
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        restorePipeline.open(
+                fs,
+                (in, fileName) -> {
+                    attempts.incrementAndGet();
+                    throw new IllegalStateException("Unable to decrypt " + fileName);
+                },
+                listener);
+        restorePipeline.submit(Paths.get("remote", "1-Data.db"), getLocalFile(1));
+        try {
+            restorePipeline.awaitCompletion();
+            Assert.fail("Restore should have failed");
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+
+        // File is fetched again after a decryption failure, up to 3 attempts.
+        Assert.assertEquals(3, attempts.get());
+        Assert.assertTrue(restored.isEmpty());
+        Assert.assertEquals(0, localFileCount());
+        Assert.assertEquals(0, memoryBudget.getUsed());
+
+        // Failure is reported once, the pipeline can be used for the next restore.
+        restorePipeline.open(fs, null, listener);
+        restorePipeline.submit(Paths.get("remote", "1-Data.db"), getLocalFile(1));
+        restorePipeline.awaitCompletion();
+        Assert.assertEquals(1, restored.size());
+    }
+
+    @Test
+    public void testChecksum() throws Exception {
+        String checksum = Hashing.crc32c().hashString("[]", StandardCharsets.UTF_8).toString();
+        restorePipeline.open(fs, null, listener);
+        restorePipeline.submit(
+                Paths.get("remote", "1-Data.db"), getLocalFile(1), null, null, 0, checksum);
+        restorePipeline.awaitCompletion();
+        Assert.assertEquals(1, restored.size());
+
+        // Content which does not match the checksum fails the restore, no file is left behind.
+        restored.clear();
+        restorePipeline.open(fs, null, listener);
+        restorePipeline.submit(
+                Paths.get("remote", "2-Data.db"), getLocalFile(2), null, null, 0, "00000000");
+        try {
+            restorePipeline.awaitCompletion();
+            Assert.fail("Restore should have failed");
+        } catch (BackupRestoreException e) {
+            // Expected.
+        }
+        Assert.assertTrue(restored.isEmpty());
+        Assert.assertFalse(getLocalFile(2).exists());
+
+        // Without a checksum in the snapshot, the checksum of the remote object is verified.
+        restored.clear();
+        fs.checksums.put(Paths.get("remote", "3-Data.db").toString(), "00000000");
+        restorePipeline.open(fs, null, listener);
+        restorePipeline.submit(Paths.get("remote", "3-Data.db"), getLocalFile(3));
+        try {
+            restorePipeline.awaitCompletion();
+            Assert.fail("Restore should have failed");
+        } catch (BackupRestoreException e) {
+            // Expected.
+        }
+        Assert.assertTrue(restored.isEmpty());
+        Assert.assertFalse(getLocalFile(3).exists());
+    }
+
+    @Test
+    public void testDeletePartialFiles() throws Exception {
+        File partial = new File(getLocalFile(1).getAbsolutePath() + ".restoring");
+        FileUtils.write(partial, "[", "UTF-8");
+        FileUtils.write(getLocalFile(2), "[]", "UTF-8");
+
+        // Only the files left partially written by an interrupted restore are deleted.
+        RestorePipeline.deletePartialFiles(new File(configuration.getDataFileLocation()));
+        Assert.assertFalse(partial.exists());
+        Assert.assertTrue(getLocalFile(2).exists());
+    }
+
+    private int localFileCount() {
+        File dir = getLocalFile(0).getParentFile();
+        return dir.exists() ? FileUtils.listFiles(dir, null, false).size() : 0;
+    }
+}
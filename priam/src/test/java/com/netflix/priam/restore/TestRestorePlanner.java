@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.restore;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.netflix.priam.backup.AbstractBackupPath;
+import com.netflix.priam.backup.BRTestModule;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Unit test for deduplication of snapshot and incremental files during restore. */
+public class TestRestorePlanner {
+    private static Injector injector;
+
+    @BeforeClass
+    public static void setup() {
+        injector = Guice.createInjector(new BRTestModule());
+    }
+
+    private AbstractBackupPath getPath(String type, String cf, String fileName, long size) {
+        AbstractBackupPath path = injector.getInstance(AbstractBackupPath.class);
+        path.parseRemote(
+                "base/region/app/1234/201808010000/" + type + "/ks/" + cf + "/" + fileName);
+        path.setCompressedFileSize(size);
+        return path;
+    }
+
+    @Test
+    public void testDuplicateSSTable() {
+        RestorePlanner planner = new RestorePlanner();
+        AbstractBackupPath meta = injector.getInstance(AbstractBackupPath.class);
+        meta.parseRemote("base/region/app/1234/201808010000/META/meta.json");
+        Assert.assertTrue(planner.add(meta));
+        Assert.assertTrue(planner.add(getPath("SNAP", "cf", "mc-3-big-Data.db", 0)));
+        Assert.assertTrue(planner.add(getPath("SNAP", "cf", "mc-3-big-Index.db", 0)));
+        // Same SSTable component uploaded as an incremental.
+        Assert.assertFalse(planner.add(getPath("SST", "cf", "mc-3-big-Data.db", 1024)));
+        // Same generation in another column family.
+        Assert.assertTrue(planner.add(getPath("SST", "cf2", "mc-3-big-Data.db", 1024)));
+        Assert.assertEquals(1, planner.getDuplicateFiles());
+        Assert.assertEquals(1024, planner.getBytesAvoided());
+    }
+
+    @Test
+    public void testSSTableIdentity() {
+        Assert.assertEquals(
+                "ks/cf/7213-Data.db",
+                RestorePlanner.getSSTableIdentity(
+                        getPath("SST", "cf", "ks-cf-ka-7213-Data.db", 0)));
+        Assert.assertEquals(
+                "ks/cf/3-Data.db",
+                RestorePlanner.getSSTableIdentity(getPath("SST", "cf", "mc-3-big-Data.db", 0)));
+        Assert.assertEquals(
+                "ks/cf/manifest.json",
+                RestorePlanner.getSSTableIdentity(getPath("SNAP", "cf", "manifest.json", 0)));
+    }
+}
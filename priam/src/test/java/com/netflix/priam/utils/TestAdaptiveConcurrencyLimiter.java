@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.utils;
+
+import com.google.common.base.Ticker;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit test for the AIMD concurrency limiter. */
+public class TestAdaptiveConcurrencyLimiter {
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(100);
+    private long nanos;
+    private AdaptiveConcurrencyLimiter limiter;
+
+    @Before
+    public void setup() {
+        Ticker ticker =
+                new Ticker() {
+                    @Override
+                    public long read() {
+                        return nanos;
+                    }
+                };
+        limiter = new AdaptiveConcurrencyLimiter(2, 5, ticker);
+    }
+
+    // Run the limit worth of requests for a second, each transferring the given bytes.
+    private void runWindow(long bytesPerRequest) throws Exception {
+        int limit = limiter.getLimit();
+        for (int i = 0; i < limit; i++) limiter.acquire();
+        Assert.assertEquals(limit, limiter.getInFlight());
+        nanos += TimeUnit.MILLISECONDS.toNanos(500);
+        for (int i = 1; i < limit; i++) limiter.onSuccess(bytesPerRequest, LATENCY);
+        // Last request completes the window.
+        nanos += TimeUnit.MILLISECONDS.toNanos(500);
+        limiter.onSuccess(bytesPerRequest, LATENCY);
+    }
+
+    @Test
+    public void testIncreaseWhileThroughputRises() throws Exception {
+        Assert.assertEquals(2, limiter.getLimit());
+        runWindow(100);
+        Assert.assertEquals(3, limiter.getLimit());
+        Assert.assertEquals(200, limiter.getThroughput(), 0.1);
+        runWindow(100);
+        Assert.assertEquals(4, limiter.getLimit());
+        runWindow(100);
+        runWindow(100);
+        runWindow(100);
+        // Never above the maximum.
+        Assert.assertEquals(5, limiter.getLimit());
+        Assert.assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testHoldWhenThroughputFlat() throws Exception {
+        runWindow(100);
+        Assert.assertEquals(3, limiter.getLimit());
+        // Same throughput with more requests, the endpoint is saturated.
+        runWindow(200 / 3);
+        Assert.assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    public void testDecreaseOnThrottle() throws Exception {
+        runWindow(100);
+        runWindow(100);
+        runWindow(100);
+        Assert.assertEquals(5, limiter.getLimit());
+        limiter.acquire();
+        limiter.acquire();
+        limiter.onThrottled();
+        // At most one decrease per window.
+        limiter.onThrottled();
+        Assert.assertEquals(2, limiter.getLimit());
+        Assert.assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testDecreaseOnLatencySpike() throws Exception {
+        for (int i = 0; i < 4; i++) runWindow(100);
+        Assert.assertEquals(5, limiter.getLimit());
+        limiter.acquire();
+        limiter.onSuccess(100, LATENCY * 10);
+        Assert.assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    public void testNeverBelowMinimum() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            limiter.acquire();
+            limiter.onThrottled();
+            nanos += TimeUnit.SECONDS.toNanos(1);
+        }
+        Assert.assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void testAcquireWaitsForLimit() throws Exception {
+        limiter.acquire();
+        limiter.acquire();
+        Thread waiter =
+                new Thread(
+                        () -> {
+                            try {
+                                limiter.acquire();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        });
+        waiter.start();
+        waiter.join(200);
+        Assert.assertTrue(waiter.isAlive());
+        limiter.release();
+        waiter.join(1000);
+        Assert.assertFalse(waiter.isAlive());
+        Assert.assertEquals(2, limiter.getInFlight());
+    }
+}
@@ -24,39 +24,67 @@ import com.netflix.priam.config.IConfiguration;
 import com.netflix.priam.defaultimpl.ICassandraProcess;
 import com.netflix.priam.health.InstanceState;
 import com.netflix.priam.merics.CassMonitorMetrics;
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
 import mockit.*;
 import org.apache.cassandra.tools.NodeProbe;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 /** Created by aagrawal on 7/18/17. */
 public class TestCassandraMonitor {
+    // Process file system of the test, see CassandraProcessDetector.
+    private static final File procDir = new File("/tmp/priam-test-proc");
     private static CassandraMonitor monitor;
     private static InstanceState instanceState;
     private static CassMonitorMetrics cassMonitorMetrics;
 
     private IConfiguration config;
 
-    @Mocked private Process mockProcess;
     @Mocked private NodeProbe nodeProbe;
     @Mocked private ICassandraProcess cassProcess;
 
     @Before
-    public void setUp() {
+    public void setUp() throws Exception {
         Injector injector = Guice.createInjector(new BRTestModule());
         config = injector.getInstance(IConfiguration.class);
         if (instanceState == null) instanceState = injector.getInstance(InstanceState.class);
         if (cassMonitorMetrics == null)
             cassMonitorMetrics = injector.getInstance(CassMonitorMetrics.class);
+        FileUtils.deleteQuietly(procDir);
+        FileUtils.forceMkdir(procDir);
         if (monitor == null)
-            monitor = new CassandraMonitor(config, instanceState, cassProcess, cassMonitorMetrics);
+            monitor =
+                    new CassandraMonitor(
+                            config,
+                            instanceState,
+                            cassProcess,
+                            cassMonitorMetrics,
+                            new CassandraProcessDetector(config, procDir));
+    }
+
+    @After
+    public void cleanup() {
+        FileUtils.deleteQuietly(procDir);
+    }
+
+    private void startProcess(int pid, String command) throws Exception {
+        FileUtils.writeStringToFile(
+                new File(new File(procDir, Integer.toString(pid)), "cmdline"),
+                command.replace(' ', '\0'),
+                StandardCharsets.UTF_8);
+    }
+
+    private void stopProcess(int pid) {
+        FileUtils.deleteQuietly(new File(procDir, Integer.toString(pid)));
     }
 
     @Test
     public void testCassandraMonitor() throws Exception {
+        startProcess(1, "/sbin/init");
         monitor.execute();
 
         Assert.assertFalse(CassandraMonitor.hasCassadraStarted());
@@ -76,11 +104,8 @@ public class TestCassandraMonitor {
                 return nodeProbe;
             }
         };
-        final InputStream mockOutput = new ByteArrayInputStream("a process".getBytes());
         new Expectations() {
             {
-                mockProcess.getInputStream();
-                result = mockOutput;
                 nodeProbe.isGossipRunning();
                 result = true;
                 nodeProbe.isNativeTransportRunning();
@@ -89,62 +114,43 @@ public class TestCassandraMonitor {
                 result = true;
             }
         };
-        // Mock out the ps call
-        final Runtime r = Runtime.getRuntime();
-        String[] cmd = {
-            "/bin/sh",
-            "-c",
-            "ps -ef |grep -v -P \"\\sgrep\\s\" | grep " + config.getCassProcessName()
-        };
-        new Expectations(r) {
-            {
-                r.exec(cmd);
-                result = mockProcess;
-            }
-        };
+        startProcess(1234, "java org.apache.cassandra.service." + config.getCassProcessName());
         instanceState.setShouldCassandraBeAlive(false);
         instanceState.setCassandraProcessAlive(false);
 
+        monitor.execute();
+        // The transport status is cached, and not read again over JMX.
         monitor.execute();
 
         Assert.assertTrue(!instanceState.shouldCassandraBeAlive());
         Assert.assertTrue(instanceState.isCassandraProcessAlive());
+        Assert.assertTrue(CassandraMonitor.hasCassadraStarted());
         new Verifications() {
             {
                 cassProcess.start(anyBoolean);
                 times = 0;
+                nodeProbe.isGossipRunning();
+                times = 1;
             }
         };
+
+        // A dead process is found by the next check.
+        stopProcess(1234);
+        monitor.execute();
+        Assert.assertFalse(instanceState.isCassandraProcessAlive());
+        Assert.assertFalse(CassandraMonitor.hasCassadraStarted());
     }
 
     @Test
     public void testAutoRemediationRateLimit() throws Exception {
-        final InputStream mockOutput = new ByteArrayInputStream("".getBytes());
         instanceState.setShouldCassandraBeAlive(true);
         instanceState.markLastAttemptedStartTime();
         new Expectations() {
             {
-                // 6 calls to execute should = 12 calls to getInputStream();
-                mockProcess.getInputStream();
-                result = mockOutput;
-                times = 12;
                 cassProcess.start(true);
                 times = 2;
             }
         };
-        // Mock out the ps call
-        final Runtime r = Runtime.getRuntime();
-        String[] cmd = {
-            "/bin/sh",
-            "-c",
-            "ps -ef |grep -v -P \"\\sgrep\\s\" | grep " + config.getCassProcessName()
-        };
-        new Expectations(r) {
-            {
-                r.exec(cmd);
-                result = mockProcess;
-            }
-        };
         // Sleep ahead to ensure we have permits in the rate limiter
         monitor.execute();
         Thread.sleep(1500);
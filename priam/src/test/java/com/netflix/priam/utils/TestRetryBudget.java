@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.priam.utils;
+
+import com.google.common.base.Ticker;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit test for the retry budget shared by the upload threads. */
+public class TestRetryBudget {
+    private long nanos;
+    private RetryBudget retryBudget;
+
+    @Before
+    public void setup() {
+        Ticker ticker =
+                new Ticker() {
+                    @Override
+                    public long read() {
+                        return nanos;
+                    }
+                };
+        retryBudget = new RetryBudget(0.1, 2, ticker);
+    }
+
+    @Test
+    public void testReserve() {
+        Assert.assertTrue(retryBudget.tryWithdraw());
+        Assert.assertTrue(retryBudget.tryWithdraw());
+        Assert.assertFalse(retryBudget.tryWithdraw());
+        // Reserve is refilled every second.
+        nanos += TimeUnit.SECONDS.toNanos(1);
+        Assert.assertTrue(retryBudget.tryWithdraw());
+    }
+
+    @Test
+    public void testDeposit() {
+        retryBudget.tryWithdraw();
+        retryBudget.tryWithdraw();
+        // 10% of the successful requests can be retried.
+        for (int i = 0; i < 20; i++) retryBudget.deposit();
+        Assert.assertEquals(2, retryBudget.getBalance(), 0.001);
+        Assert.assertTrue(retryBudget.tryWithdraw());
+        Assert.assertTrue(retryBudget.tryWithdraw());
+        Assert.assertFalse(retryBudget.tryWithdraw());
+    }
+
+    @Test
+    public void testMaxBalance() {
+        for (int i = 0; i < 100000; i++) retryBudget.deposit();
+        Assert.assertEquals(100, retryBudget.getBalance(), 0.001);
+    }
+}